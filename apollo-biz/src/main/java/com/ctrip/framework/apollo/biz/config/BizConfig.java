@@ -21,12 +21,40 @@ public class BizConfig extends RefreshableConfig {
   private static final int DEFAULT_ITEM_KEY_LENGTH = 128;
   private static final int DEFAULT_ITEM_VALUE_LENGTH = 20000;
   private static final int DEFAULT_APPNAMESPACE_CACHE_REBUILD_INTERVAL = 60; //60s
+  private static final int DEFAULT_APPNAMESPACE_CACHE_RECONCILE_INTERVAL = 6 * 60 * 60; //6h
   private static final int DEFAULT_GRAY_RELEASE_RULE_SCAN_INTERVAL = 60; //60s
   private static final int DEFAULT_APPNAMESPACE_CACHE_SCAN_INTERVAL = 1; //1s
   private static final int DEFAULT_RELEASE_MESSAGE_CACHE_SCAN_INTERVAL = 1; //1s
   private static final int DEFAULT_RELEASE_MESSAGE_SCAN_INTERVAL_IN_MS = 1000; //1000ms
+  private static final int DEFAULT_RELEASE_MESSAGE_SCAN_INTERVAL_WITH_PUSH_IN_MS = 5000; //5000ms
+  private static final int DEFAULT_RELEASE_MESSAGE_PUSH_TIMEOUT_IN_MS = 1000; //1000ms
+  private static final int DEFAULT_CONFIG_SERVICE_CACHE_MAX_WEIGHT = 64 * 1024 * 1024; //64M chars
+  private static final String DEFAULT_CONFIG_SERVICE_CACHE_SNAPSHOT_PATH = "/opt/data/apollo-configservice/cache-snapshot";
+  private static final int DEFAULT_CONFIG_SERVICE_CACHE_SNAPSHOT_INTERVAL = 5 * 60; //5min
+  private static final int DEFAULT_CONFIG_SERVICE_CACHE_SNAPSHOT_MAX_RELEASES = 1000;
+  private static final int DEFAULT_CONFIG_SERVICE_CACHE_PRELOAD_CONCURRENCY = 4;
+  private static final int DEFAULT_CONFIG_SERVICE_CACHE_PRELOAD_TIMEOUT = 60; //60s
+  private static final int DEFAULT_CONFIG_SERVICE_CACHE_PRELOAD_INTERVAL = 60 * 60; //1h
+  private static final int DEFAULT_LONG_POLL_TIMEOUT_MIN_IN_MILLI = 50 * 1000; //50s
+  private static final int DEFAULT_LONG_POLL_TIMEOUT_MAX_IN_MILLI = 70 * 1000; //70s
+  //should be less than the read timeout of clients, which is 90s
+  private static final int MAX_LONG_POLL_TIMEOUT_IN_MILLI = 80 * 1000; //80s
+  private static final int DEFAULT_LONG_POLL_HIGH_LOAD_THRESHOLD = 10000;
+  private static final int DEFAULT_LONG_POLL_DRAIN_WINDOW_IN_MILLI = 10 * 1000; //10s
+  private static final int DEFAULT_ADMISSION_CONTROL_LONG_POLL_MAX_CONCURRENCY = 100;
+  private static final int DEFAULT_ADMISSION_CONTROL_LONG_POLL_LATENCY_THRESHOLD_IN_MILLI = 50; //50ms
+  private static final int DEFAULT_ADMISSION_CONTROL_CONFIG_FETCH_MAX_CONCURRENCY = 150;
+  private static final int DEFAULT_ADMISSION_CONTROL_CONFIG_FETCH_LATENCY_THRESHOLD_IN_MILLI = 200; //200ms
+  //the same as the default size of the database connection pool
+  private static final int DEFAULT_ADMISSION_CONTROL_CONFIG_LOAD_MAX_CONCURRENCY = 10;
+  private static final int DEFAULT_ADMISSION_CONTROL_CONFIG_LOAD_LATENCY_THRESHOLD_IN_MILLI = 1000; //1s
+  private static final int DEFAULT_ADMISSION_CONTROL_RETRY_AFTER_IN_SECOND = 2; //2s
   private static final int DEFAULT_RELEASE_MESSAGE_NOTIFICATION_BATCH = 100;
   private static final int DEFAULT_RELEASE_MESSAGE_NOTIFICATION_BATCH_INTERVAL_IN_MILLI = 100;//100ms
+  private static final int DEFAULT_RELEASE_MESSAGE_CHANGED_KEYS_LIMIT = 100;
+  private static final int DEFAULT_RELEASE_MESSAGE_NOTIFICATION_COALESCING_MAX_DELAY_IN_MILLI = 500; //500ms
+  private static final int MAX_RELEASE_MESSAGE_NOTIFICATION_COALESCING_DELAY_IN_MILLI = 10 * 1000; //10s
+  private static final int DEFAULT_RELEASE_MESSAGE_NOTIFICATION_THREADS = 4;
 
   private Gson gson = new Gson();
   private static final Type namespaceValueLengthOverrideTypeReference =
@@ -112,6 +140,16 @@ public class BizConfig extends RefreshableConfig {
     return TimeUnit.SECONDS;
   }
 
+  public int appNamespaceCacheReconcileInterval() {
+    int interval = getIntProperty("apollo.app-namespace-cache-reconcile.interval",
+        DEFAULT_APPNAMESPACE_CACHE_RECONCILE_INTERVAL);
+    return checkInt(interval, 1, Integer.MAX_VALUE, DEFAULT_APPNAMESPACE_CACHE_RECONCILE_INTERVAL);
+  }
+
+  public TimeUnit appNamespaceCacheReconcileIntervalTimeUnit() {
+    return TimeUnit.SECONDS;
+  }
+
   public int releaseMessageCacheScanInterval() {
     int interval = getIntProperty("apollo.release-message-cache-scan.interval", DEFAULT_RELEASE_MESSAGE_CACHE_SCAN_INTERVAL);
     return checkInt(interval, 1, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_CACHE_SCAN_INTERVAL);
@@ -126,6 +164,35 @@ public class BizConfig extends RefreshableConfig {
     return checkInt(interval, 100, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_SCAN_INTERVAL_IN_MS);
   }
 
+  /**
+   * @return whether admin services push release messages to config services right after they are committed
+   */
+  public boolean isReleaseMessagePushEnabled() {
+    return getBooleanProperty("apollo.release-message.push.enabled", false);
+  }
+
+  /**
+   * @return the scan interval of release messages when they are pushed, as the scan only fills the gaps then
+   */
+  public int releaseMessageScanIntervalWithPushInMilli() {
+    int interval = getIntProperty("apollo.message-scan.interval-with-push",
+        DEFAULT_RELEASE_MESSAGE_SCAN_INTERVAL_WITH_PUSH_IN_MS);
+    return checkInt(interval, 100, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_SCAN_INTERVAL_WITH_PUSH_IN_MS);
+  }
+
+  /**
+   * @return the token shared by admin services and config services to authenticate the pushed release messages, the
+   * pushed messages are rejected if it is not set
+   */
+  public String releaseMessagePushToken() {
+    return getValue("apollo.release-message.push.token");
+  }
+
+  public int releaseMessagePushTimeoutInMilli() {
+    int timeout = getIntProperty("apollo.release-message.push.timeout", DEFAULT_RELEASE_MESSAGE_PUSH_TIMEOUT_IN_MS);
+    return checkInt(timeout, 10, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_PUSH_TIMEOUT_IN_MS);
+  }
+
   public int releaseMessageNotificationBatch() {
     int batch = getIntProperty("apollo.release-message.notification.batch", DEFAULT_RELEASE_MESSAGE_NOTIFICATION_BATCH);
     return checkInt(batch, 1, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_NOTIFICATION_BATCH);
@@ -136,10 +203,255 @@ public class BizConfig extends RefreshableConfig {
     return checkInt(interval, 10, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_NOTIFICATION_BATCH_INTERVAL_IN_MILLI);
   }
 
+  public int releaseMessageNotificationThreads() {
+    int threads = getIntProperty("apollo.release-message.notification.threads", DEFAULT_RELEASE_MESSAGE_NOTIFICATION_THREADS);
+    return checkInt(threads, 1, 64, DEFAULT_RELEASE_MESSAGE_NOTIFICATION_THREADS);
+  }
+
+  /**
+   * @return the max number of clients woken up per second, shared by all the release messages, which defaults to
+   * the rate of the notification batch and batch interval
+   */
+  public int releaseMessageNotificationRate() {
+    int defaultRate = (int) Math.max(1,
+        1000L * releaseMessageNotificationBatch() / releaseMessageNotificationBatchIntervalInMilli());
+    int rate = getIntProperty("apollo.release-message.notification.rate", defaultRate);
+    return checkInt(rate, 1, Integer.MAX_VALUE, defaultRate);
+  }
+
+  /**
+   * @return the time window, within which the release messages of the same key are coalesced into the latest one
+   * before notifying the clients, 0 means no coalescing
+   */
+  public int releaseMessageNotificationCoalescingWindowInMilli() {
+    int window = getIntProperty("apollo.release-message.notification.coalescing.window", 0);
+    return checkInt(window, 0, MAX_RELEASE_MESSAGE_NOTIFICATION_COALESCING_DELAY_IN_MILLI, 0);
+  }
+
+  /**
+   * @return the max time the first release message of a key is delayed by coalescing, which is never less than the
+   * coalescing window
+   */
+  public int releaseMessageNotificationCoalescingMaxDelayInMilli() {
+    int delay = getIntProperty("apollo.release-message.notification.coalescing.max-delay",
+        DEFAULT_RELEASE_MESSAGE_NOTIFICATION_COALESCING_MAX_DELAY_IN_MILLI);
+    delay = checkInt(delay, 0, MAX_RELEASE_MESSAGE_NOTIFICATION_COALESCING_DELAY_IN_MILLI,
+        DEFAULT_RELEASE_MESSAGE_NOTIFICATION_COALESCING_MAX_DELAY_IN_MILLI);
+    return Math.max(delay, releaseMessageNotificationCoalescingWindowInMilli());
+  }
+
+  public int releaseMessageChangedKeysLimit() {
+    int limit = getIntProperty("apollo.release-message.changed-keys.limit", DEFAULT_RELEASE_MESSAGE_CHANGED_KEYS_LIMIT);
+    return checkInt(limit, 0, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_CHANGED_KEYS_LIMIT);
+  }
+
   public boolean isConfigServiceCacheEnabled() {
     return getBooleanProperty("config-service.cache.enabled", false);
   }
 
+  /**
+   * @return the max weight of the config service cache, which is roughly the total length of the cached configurations
+   */
+  public int configServiceCacheMaxWeight() {
+    int maxWeight = getIntProperty("config-service.cache.max-weight", DEFAULT_CONFIG_SERVICE_CACHE_MAX_WEIGHT);
+    return checkInt(maxWeight, 1, Integer.MAX_VALUE, DEFAULT_CONFIG_SERVICE_CACHE_MAX_WEIGHT);
+  }
+
+  /**
+   * @return whether config services write the snapshot of their caches to local disk, and warm start from it
+   */
+  public boolean isConfigServiceCacheSnapshotEnabled() {
+    return getBooleanProperty("config-service.cache-snapshot.enabled", false);
+  }
+
+  public String configServiceCacheSnapshotPath() {
+    return getValue("config-service.cache-snapshot.path", DEFAULT_CONFIG_SERVICE_CACHE_SNAPSHOT_PATH);
+  }
+
+  public int configServiceCacheSnapshotInterval() {
+    int interval = getIntProperty("config-service.cache-snapshot.interval", DEFAULT_CONFIG_SERVICE_CACHE_SNAPSHOT_INTERVAL);
+    return checkInt(interval, 1, Integer.MAX_VALUE, DEFAULT_CONFIG_SERVICE_CACHE_SNAPSHOT_INTERVAL);
+  }
+
+  public TimeUnit configServiceCacheSnapshotIntervalTimeUnit() {
+    return TimeUnit.SECONDS;
+  }
+
+  /**
+   * @return the max number of the most requested releases in the snapshot
+   */
+  public int configServiceCacheSnapshotMaxReleases() {
+    int maxReleases = getIntProperty("config-service.cache-snapshot.max-releases",
+        DEFAULT_CONFIG_SERVICE_CACHE_SNAPSHOT_MAX_RELEASES);
+    return checkInt(maxReleases, 0, Integer.MAX_VALUE, DEFAULT_CONFIG_SERVICE_CACHE_SNAPSHOT_MAX_RELEASES);
+  }
+
+  /**
+   * @return the number of the most used namespaces preloaded into the config service cache, 0 means no preloading.
+   * Ranking them queries the InstanceConfig table on each config service startup and once a day after.
+   */
+  public int configServiceCachePreloadSize() {
+    int size = getIntProperty("config-service.cache-preload.size", 0);
+    return checkInt(size, 0, Integer.MAX_VALUE, 0);
+  }
+
+  /**
+   * @return the max number of the concurrent database loads when preloading
+   */
+  public int configServiceCachePreloadConcurrency() {
+    int concurrency = getIntProperty("config-service.cache-preload.concurrency",
+        DEFAULT_CONFIG_SERVICE_CACHE_PRELOAD_CONCURRENCY);
+    return checkInt(concurrency, 1, 64, DEFAULT_CONFIG_SERVICE_CACHE_PRELOAD_CONCURRENCY);
+  }
+
+  /**
+   * @return the max time the config service waits for the preloading on startup before it reports healthy
+   */
+  public int configServiceCachePreloadTimeout() {
+    int timeout = getIntProperty("config-service.cache-preload.timeout", DEFAULT_CONFIG_SERVICE_CACHE_PRELOAD_TIMEOUT);
+    return checkInt(timeout, 1, Integer.MAX_VALUE, DEFAULT_CONFIG_SERVICE_CACHE_PRELOAD_TIMEOUT);
+  }
+
+  public TimeUnit configServiceCachePreloadTimeoutTimeUnit() {
+    return TimeUnit.SECONDS;
+  }
+
+  /**
+   * @return the interval to preload the ranked namespaces again, which reuses the ranking and only loads the evicted
+   * releases
+   */
+  public int configServiceCachePreloadInterval() {
+    int interval = getIntProperty("config-service.cache-preload.interval", DEFAULT_CONFIG_SERVICE_CACHE_PRELOAD_INTERVAL);
+    return checkInt(interval, 1, Integer.MAX_VALUE, DEFAULT_CONFIG_SERVICE_CACHE_PRELOAD_INTERVAL);
+  }
+
+  public TimeUnit configServiceCachePreloadIntervalTimeUnit() {
+    return TimeUnit.SECONDS;
+  }
+
+  public boolean isConfigServiceResponseCacheEnabled() {
+    return getBooleanProperty("config-service.response-cache.enabled", true);
+  }
+
+  /**
+   * @return the lower bound of the randomized long polling timeout
+   */
+  public int longPollTimeoutMinInMilli() {
+    int timeout = getIntProperty("config-service.long-poll.timeout.min", DEFAULT_LONG_POLL_TIMEOUT_MIN_IN_MILLI);
+    return checkInt(timeout, 1000, MAX_LONG_POLL_TIMEOUT_IN_MILLI, DEFAULT_LONG_POLL_TIMEOUT_MIN_IN_MILLI);
+  }
+
+  /**
+   * @return the upper bound of the randomized long polling timeout, which is never less than the lower bound
+   */
+  public int longPollTimeoutMaxInMilli() {
+    int timeout = getIntProperty("config-service.long-poll.timeout.max", DEFAULT_LONG_POLL_TIMEOUT_MAX_IN_MILLI);
+    timeout = checkInt(timeout, 1000, MAX_LONG_POLL_TIMEOUT_IN_MILLI, DEFAULT_LONG_POLL_TIMEOUT_MAX_IN_MILLI);
+    return Math.max(timeout, longPollTimeoutMinInMilli());
+  }
+
+  /**
+   * @return the number of the waiting long polling clients, at which the timeouts are all close to the upper bound
+   */
+  public int longPollHighLoadThreshold() {
+    int threshold = getIntProperty("config-service.long-poll.high-load-threshold", DEFAULT_LONG_POLL_HIGH_LOAD_THRESHOLD);
+    return checkInt(threshold, 1, Integer.MAX_VALUE, DEFAULT_LONG_POLL_HIGH_LOAD_THRESHOLD);
+  }
+
+  /**
+   * @return the time window to release the waiting long polling clients in batches on shutdown, 0 means all at once
+   */
+  public int longPollDrainWindowInMilli() {
+    int window = getIntProperty("config-service.long-poll.drain.window", DEFAULT_LONG_POLL_DRAIN_WINDOW_IN_MILLI);
+    return checkInt(window, 0, Integer.MAX_VALUE, DEFAULT_LONG_POLL_DRAIN_WINDOW_IN_MILLI);
+  }
+
+  /**
+   * @return whether the config service rejects the requests beyond its adaptive concurrency limits
+   */
+  public boolean isAdmissionControlEnabled() {
+    return getBooleanProperty("config-service.admission-control.enabled", false);
+  }
+
+  /**
+   * @return the max concurrency of the long polling registrations
+   */
+  public int admissionControlLongPollMaxConcurrency() {
+    int concurrency = getIntProperty("config-service.admission-control.long-poll.max-concurrency",
+        DEFAULT_ADMISSION_CONTROL_LONG_POLL_MAX_CONCURRENCY);
+    return checkInt(concurrency, 1, Integer.MAX_VALUE, DEFAULT_ADMISSION_CONTROL_LONG_POLL_MAX_CONCURRENCY);
+  }
+
+  /**
+   * @return the latency of the long polling registrations, beyond which the concurrency limit backs off
+   */
+  public int admissionControlLongPollLatencyThresholdInMilli() {
+    int threshold = getIntProperty("config-service.admission-control.long-poll.latency-threshold",
+        DEFAULT_ADMISSION_CONTROL_LONG_POLL_LATENCY_THRESHOLD_IN_MILLI);
+    return checkInt(threshold, 1, Integer.MAX_VALUE, DEFAULT_ADMISSION_CONTROL_LONG_POLL_LATENCY_THRESHOLD_IN_MILLI);
+  }
+
+  /**
+   * @return the max concurrency of the config requests
+   */
+  public int admissionControlConfigFetchMaxConcurrency() {
+    int concurrency = getIntProperty("config-service.admission-control.config-fetch.max-concurrency",
+        DEFAULT_ADMISSION_CONTROL_CONFIG_FETCH_MAX_CONCURRENCY);
+    return checkInt(concurrency, 1, Integer.MAX_VALUE, DEFAULT_ADMISSION_CONTROL_CONFIG_FETCH_MAX_CONCURRENCY);
+  }
+
+  /**
+   * @return the latency of the config requests, beyond which the concurrency limit backs off
+   */
+  public int admissionControlConfigFetchLatencyThresholdInMilli() {
+    int threshold = getIntProperty("config-service.admission-control.config-fetch.latency-threshold",
+        DEFAULT_ADMISSION_CONTROL_CONFIG_FETCH_LATENCY_THRESHOLD_IN_MILLI);
+    return checkInt(threshold, 1, Integer.MAX_VALUE, DEFAULT_ADMISSION_CONTROL_CONFIG_FETCH_LATENCY_THRESHOLD_IN_MILLI);
+  }
+
+  /**
+   * @return the max concurrency of the database loads of the config requests missing the cache
+   */
+  public int admissionControlConfigLoadMaxConcurrency() {
+    int concurrency = getIntProperty("config-service.admission-control.config-load.max-concurrency",
+        DEFAULT_ADMISSION_CONTROL_CONFIG_LOAD_MAX_CONCURRENCY);
+    return checkInt(concurrency, 1, Integer.MAX_VALUE, DEFAULT_ADMISSION_CONTROL_CONFIG_LOAD_MAX_CONCURRENCY);
+  }
+
+  /**
+   * @return the latency of the database loads, beyond which the concurrency limit backs off
+   */
+  public int admissionControlConfigLoadLatencyThresholdInMilli() {
+    int threshold = getIntProperty("config-service.admission-control.config-load.latency-threshold",
+        DEFAULT_ADMISSION_CONTROL_CONFIG_LOAD_LATENCY_THRESHOLD_IN_MILLI);
+    return checkInt(threshold, 1, Integer.MAX_VALUE, DEFAULT_ADMISSION_CONTROL_CONFIG_LOAD_LATENCY_THRESHOLD_IN_MILLI);
+  }
+
+  /**
+   * @return the seconds the rejected clients are told to wait at least before retrying
+   */
+  public int admissionControlRetryAfterInSecond() {
+    int retryAfter = getIntProperty("config-service.admission-control.retry-after",
+        DEFAULT_ADMISSION_CONTROL_RETRY_AFTER_IN_SECOND);
+    return checkInt(retryAfter, 1, 60, DEFAULT_ADMISSION_CONTROL_RETRY_AFTER_IN_SECOND);
+  }
+
+  /**
+   * @return the port of the non-blocking long polling endpoint, which is disabled if not positive
+   */
+  public int nonBlockingLongPollPort() {
+    int port = getIntProperty("config-service.non-blocking-long-poll.port", 0);
+    return checkInt(port, 0, 65535, 0);
+  }
+
+  /**
+   * @return the number of event loop threads of the non-blocking long polling endpoint, 0 means netty's default
+   */
+  public int nonBlockingLongPollThreads() {
+    int threads = getIntProperty("config-service.non-blocking-long-poll.threads", 0);
+    return checkInt(threads, 0, 256, 0);
+  }
+
   int checkInt(int value, int min, int max, int defaultValue) {
     if (value >= min && value <= max) {
       return value;
@@ -0,0 +1,128 @@
+package com.ctrip.framework.apollo.biz.grayReleaseRule;
+
+import com.ctrip.framework.apollo.common.dto.GrayReleaseRuleItemDTO;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Longs;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable matcher of the client ips of gray release rules, which supports exact ips, all ips ({@value
+ * GrayReleaseRuleItemDTO#ALL_IP}) and IPv4 CIDR ranges such as 10.0.0.0/8.
+ */
+class ClientIpMatcher {
+  private static final long[] NO_RANGES = new long[0];
+  private static final char CIDR_SEPARATOR = '/';
+
+  private final boolean matchesAll;
+  private final Set<String> ips;
+  //pairs of (network, mask)
+  private final long[] ranges;
+
+  private ClientIpMatcher(boolean matchesAll, Set<String> ips, long[] ranges) {
+    this.matchesAll = matchesAll;
+    this.ips = ips;
+    this.ranges = ranges;
+  }
+
+  static ClientIpMatcher of(Iterable<String> clientIps) {
+    boolean matchesAll = false;
+    ImmutableSet.Builder<String> ips = ImmutableSet.builder();
+    List<Long> ranges = Lists.newArrayList();
+    for (String clientIp : clientIps) {
+      if (GrayReleaseRuleItemDTO.ALL_IP.equals(clientIp)) {
+        matchesAll = true;
+        continue;
+      }
+      int separator = clientIp.indexOf(CIDR_SEPARATOR);
+      if (separator < 0) {
+        ips.add(clientIp);
+        continue;
+      }
+      long network = parseIpv4(clientIp, 0, separator);
+      int prefixLength = parsePrefixLength(clientIp, separator + 1);
+      if (network < 0 || prefixLength < 0) {
+        //not a valid range, keep it as is so that it still works as an exact match
+        ips.add(clientIp);
+        continue;
+      }
+      long mask = prefixLength == 0 ? 0 : (0xFFFFFFFFL << (32 - prefixLength)) & 0xFFFFFFFFL;
+      ranges.add(network & mask);
+      ranges.add(mask);
+    }
+    return new ClientIpMatcher(matchesAll, ips.build(), ranges.isEmpty() ? NO_RANGES : Longs.toArray(ranges));
+  }
+
+  boolean matches(String clientIp) {
+    if (matchesAll) {
+      return true;
+    }
+    if (clientIp == null) {
+      return false;
+    }
+    if (ips.contains(clientIp)) {
+      return true;
+    }
+    if (ranges.length == 0) {
+      return false;
+    }
+    long ip = parseIpv4(clientIp, 0, clientIp.length());
+    if (ip < 0) {
+      return false;
+    }
+    for (int i = 0; i < ranges.length; i += 2) {
+      if ((ip & ranges[i + 1]) == ranges[i]) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return the ipv4 address as an unsigned int, or -1 if it's not a valid one
+   */
+  static long parseIpv4(String value, int start, int end) {
+    long result = 0;
+    int octet = -1;
+    int octets = 0;
+    for (int i = start; i < end; i++) {
+      char c = value.charAt(i);
+      if (c == '.') {
+        if (octet < 0 || octets == 3) {
+          return -1;
+        }
+        result = (result << 8) | octet;
+        octet = -1;
+        octets++;
+      } else if (c >= '0' && c <= '9') {
+        octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+        if (octet > 255) {
+          return -1;
+        }
+      } else {
+        return -1;
+      }
+    }
+    if (octet < 0 || octets != 3) {
+      return -1;
+    }
+    return (result << 8) | octet;
+  }
+
+  private static int parsePrefixLength(String value, int start) {
+    if (start >= value.length() || value.length() - start > 2) {
+      return -1;
+    }
+    int result = 0;
+    for (int i = start; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      result = result * 10 + (c - '0');
+    }
+    return result <= 32 ? result : -1;
+  }
+}
@@ -9,6 +9,8 @@ import java.util.Set;
  */
 public class GrayReleaseRuleCache {
   private long ruleId;
+  private String appId;
+  private String clusterName;
   private String branchName;
   private String namespaceName;
   private long releaseId;
@@ -16,9 +18,12 @@ public class GrayReleaseRuleCache {
   private int branchStatus;
   private Set<GrayReleaseRuleItemDTO> ruleItems;
 
-  public GrayReleaseRuleCache(long ruleId, String branchName, String namespaceName, long
-      releaseId, int branchStatus, long loadVersion, Set<GrayReleaseRuleItemDTO> ruleItems) {
+  public GrayReleaseRuleCache(long ruleId, String appId, String clusterName, String branchName,
+      String namespaceName, long releaseId, int branchStatus, long loadVersion,
+      Set<GrayReleaseRuleItemDTO> ruleItems) {
     this.ruleId = ruleId;
+    this.appId = appId;
+    this.clusterName = clusterName;
     this.branchName = branchName;
     this.namespaceName = namespaceName;
     this.releaseId = releaseId;
@@ -35,6 +40,14 @@ public class GrayReleaseRuleCache {
     return ruleItems;
   }
 
+  public String getAppId() {
+    return appId;
+  }
+
+  public String getClusterName() {
+    return clusterName;
+  }
+
   public String getBranchName() {
     return branchName;
   }
@@ -0,0 +1,147 @@
+package com.ctrip.framework.apollo.biz.grayReleaseRule;
+
+import com.ctrip.framework.apollo.common.constants.NamespaceBranchStatus;
+import com.ctrip.framework.apollo.common.dto.GrayReleaseRuleItemDTO;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable index of the active gray release rules, which is compiled from the rule caches and replaced as a whole when
+ * rules change, so that lookups need neither locks nor copies.
+ */
+class GrayReleaseRuleIndex {
+  static final GrayReleaseRuleIndex EMPTY = new GrayReleaseRuleIndex(ImmutableMap.of(), ImmutableMap.of());
+
+  //store configAppId -> configCluster -> configNamespace -> rules, newest rule first
+  private final Map<String, Map<String, Map<String, List<CompiledRule>>>> rules;
+  //store clientAppId -> configNamespace -> matcher of all the client ips in active rules
+  private final Map<String, Map<String, ClientIpMatcher>> reversedRules;
+
+  private GrayReleaseRuleIndex(Map<String, Map<String, Map<String, List<CompiledRule>>>> rules,
+                               Map<String, Map<String, ClientIpMatcher>> reversedRules) {
+    this.rules = rules;
+    this.reversedRules = reversedRules;
+  }
+
+  static GrayReleaseRuleIndex build(Collection<GrayReleaseRuleCache> ruleCaches) {
+    List<GrayReleaseRuleCache> activeRules = Lists.newArrayList();
+    for (GrayReleaseRuleCache ruleCache : ruleCaches) {
+      if (ruleCache.getBranchStatus() == NamespaceBranchStatus.ACTIVE) {
+        activeRules.add(ruleCache);
+      }
+    }
+    if (activeRules.isEmpty()) {
+      return EMPTY;
+    }
+    activeRules.sort(Comparator.comparingLong(GrayReleaseRuleCache::getRuleId).reversed());
+
+    Map<String, Map<String, Map<String, ImmutableList.Builder<CompiledRule>>>> rules = Maps.newHashMap();
+    Map<String, Multimap<String, String>> reversedRules = Maps.newHashMap();
+    for (GrayReleaseRuleCache ruleCache : activeRules) {
+      rules.computeIfAbsent(ruleCache.getAppId(), key -> Maps.newHashMap())
+          .computeIfAbsent(ruleCache.getClusterName(), key -> Maps.newHashMap())
+          .computeIfAbsent(ruleCache.getNamespaceName(), key -> ImmutableList.builder())
+          .add(CompiledRule.of(ruleCache));
+
+      for (GrayReleaseRuleItemDTO ruleItem : ruleCache.getRuleItems()) {
+        reversedRules.computeIfAbsent(ruleItem.getClientAppId(), key -> LinkedHashMultimap.create())
+            .putAll(ruleCache.getNamespaceName(), ruleItem.getClientIpList());
+      }
+    }
+
+    ImmutableMap.Builder<String, Map<String, Map<String, List<CompiledRule>>>> compiledRules = ImmutableMap.builder();
+    for (Map.Entry<String, Map<String, Map<String, ImmutableList.Builder<CompiledRule>>>> appRules : rules.entrySet()) {
+      ImmutableMap.Builder<String, Map<String, List<CompiledRule>>> clusterRules = ImmutableMap.builder();
+      for (Map.Entry<String, Map<String, ImmutableList.Builder<CompiledRule>>> namespaceRules :
+          appRules.getValue().entrySet()) {
+        ImmutableMap.Builder<String, List<CompiledRule>> compiled = ImmutableMap.builder();
+        for (Map.Entry<String, ImmutableList.Builder<CompiledRule>> entry : namespaceRules.getValue().entrySet()) {
+          compiled.put(entry.getKey(), entry.getValue().build());
+        }
+        clusterRules.put(namespaceRules.getKey(), compiled.build());
+      }
+      compiledRules.put(appRules.getKey(), clusterRules.build());
+    }
+
+    ImmutableMap.Builder<String, Map<String, ClientIpMatcher>> compiledReversedRules = ImmutableMap.builder();
+    for (Map.Entry<String, Multimap<String, String>> clientRules : reversedRules.entrySet()) {
+      ImmutableMap.Builder<String, ClientIpMatcher> matchers = ImmutableMap.builder();
+      for (Map.Entry<String, Collection<String>> entry : clientRules.getValue().asMap().entrySet()) {
+        matchers.put(entry.getKey(), ClientIpMatcher.of(entry.getValue()));
+      }
+      compiledReversedRules.put(clientRules.getKey(), matchers.build());
+    }
+
+    return new GrayReleaseRuleIndex(compiledRules.build(), compiledReversedRules.build());
+  }
+
+  Long findReleaseId(String clientAppId, String clientIp, String configAppId, String configCluster,
+                     String configNamespaceName) {
+    Map<String, Map<String, List<CompiledRule>>> clusterRules = rules.get(configAppId);
+    if (clusterRules == null) {
+      return null;
+    }
+    Map<String, List<CompiledRule>> namespaceRules = clusterRules.get(configCluster);
+    if (namespaceRules == null) {
+      return null;
+    }
+    List<CompiledRule> compiledRules = namespaceRules.get(configNamespaceName);
+    if (compiledRules == null) {
+      return null;
+    }
+    //indexed loop to avoid creating iterators
+    for (int i = 0; i < compiledRules.size(); i++) {
+      CompiledRule rule = compiledRules.get(i);
+      if (rule.matches(clientAppId, clientIp)) {
+        return rule.releaseId;
+      }
+    }
+    return null;
+  }
+
+  boolean hasGrayReleaseRule(String clientAppId, String clientIp, String namespaceName) {
+    Map<String, ClientIpMatcher> namespaceMatchers = reversedRules.get(clientAppId);
+    if (namespaceMatchers == null) {
+      return false;
+    }
+    ClientIpMatcher matcher = namespaceMatchers.get(namespaceName);
+    return matcher != null && matcher.matches(clientIp);
+  }
+
+  private static class CompiledRule {
+    private final Long releaseId;
+    //store clientAppId -> matcher of the client ips
+    private final Map<String, ClientIpMatcher> clientMatchers;
+
+    private CompiledRule(Long releaseId, Map<String, ClientIpMatcher> clientMatchers) {
+      this.releaseId = releaseId;
+      this.clientMatchers = clientMatchers;
+    }
+
+    static CompiledRule of(GrayReleaseRuleCache ruleCache) {
+      Multimap<String, String> clientIps = LinkedHashMultimap.create();
+      for (GrayReleaseRuleItemDTO ruleItem : ruleCache.getRuleItems()) {
+        clientIps.putAll(ruleItem.getClientAppId(), ruleItem.getClientIpList());
+      }
+      ImmutableMap.Builder<String, ClientIpMatcher> clientMatchers = ImmutableMap.builder();
+      for (Map.Entry<String, Collection<String>> entry : clientIps.asMap().entrySet()) {
+        clientMatchers.put(entry.getKey(), ClientIpMatcher.of(entry.getValue()));
+      }
+      return new CompiledRule(ruleCache.getReleaseId(), clientMatchers.build());
+    }
+
+    boolean matches(String clientAppId, String clientIp) {
+      ClientIpMatcher matcher = clientMatchers.get(clientAppId);
+      return matcher != null && matcher.matches(clientIp);
+    }
+  }
+}
@@ -1,10 +1,10 @@
 package com.ctrip.framework.apollo.biz.grayReleaseRule;
 
 import com.google.common.base.Joiner;
-import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Multimaps;
 import com.google.common.collect.Sets;
@@ -29,7 +29,10 @@ import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.util.CollectionUtils;
 
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -42,8 +45,10 @@ import java.util.concurrent.atomic.AtomicLong;
 public class GrayReleaseRulesHolder implements ReleaseMessageListener, InitializingBean {
   private static final Logger logger = LoggerFactory.getLogger(GrayReleaseRulesHolder.class);
   private static final Joiner STRING_JOINER = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR);
-  private static final Splitter STRING_SPLITTER =
-      Splitter.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR).omitEmptyStrings();
+  private static final int MAX_MISSING_RULES = 1000;
+  private static final int MISSING_RULES_BATCH = 500;
+  //how long to wait for a missing rule to be committed before giving it up, longer than the default scan interval
+  private static final long MISSING_RULE_TIMEOUT_IN_MILLI = TimeUnit.MINUTES.toMillis(5);
 
   @Autowired
   private GrayReleaseRuleRepository grayReleaseRuleRepository;
@@ -54,15 +59,20 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
   private ScheduledExecutorService executorService;
   //store configAppId+configCluster+configNamespace -> GrayReleaseRuleCache map
   private Multimap<String, GrayReleaseRuleCache> grayReleaseRuleCache;
-  //store clientAppId+clientNamespace+ip -> ruleId map
-  private Multimap<String, Long> reversedGrayReleaseRuleCache;
+  //compiled from grayReleaseRuleCache and replaced as a whole, so lookups don't need to lock or copy
+  private volatile GrayReleaseRuleIndex grayReleaseRuleIndex;
   //an auto increment version to indicate the age of rules
   private AtomicLong loadVersion;
+  //rules are never updated in place but replaced by new ones, so the max id scanned works as the change cursor
+  private long maxIdScanned;
+  //ids skipped by the scan as they were not committed yet -> when they were found missing, guarded by this
+  private final Map<Long, Long> missingRuleIds;
 
   public GrayReleaseRulesHolder() {
     loadVersion = new AtomicLong();
+    missingRuleIds = Maps.newTreeMap();
     grayReleaseRuleCache = Multimaps.synchronizedSetMultimap(HashMultimap.create());
-    reversedGrayReleaseRuleCache = Multimaps.synchronizedSetMultimap(HashMultimap.create());
+    grayReleaseRuleIndex = GrayReleaseRuleIndex.EMPTY;
     executorService = Executors.newScheduledThreadPool(1, ApolloThreadFactory
         .create("GrayReleaseRulesHolder", true));
   }
@@ -84,20 +94,52 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
     if (!Topics.APOLLO_RELEASE_TOPIC.equals(channel) || Strings.isNullOrEmpty(releaseMessage)) {
       return;
     }
-    List<String> keys = STRING_SPLITTER.splitToList(releaseMessage);
-    //message should be appId+cluster+namespace
-    if (keys.size() != 3) {
-      logger.error("message format invalid - {}", releaseMessage);
+    //the changed rules, if any, are committed before the release message, so they are right after the cursor
+    scanGrayReleaseRules();
+    rebuildIndex();
+  }
+
+  @Override
+  public void handleMessages(List<ReleaseMessage> messages, String channel) {
+    if (!Topics.APOLLO_RELEASE_TOPIC.equals(channel)) {
       return;
     }
-    String appId = keys.get(0);
-    String cluster = keys.get(1);
-    String namespace = keys.get(2);
-
-    List<GrayReleaseRule> rules = grayReleaseRuleRepository
-        .findByAppIdAndClusterNameAndNamespaceName(appId, cluster, namespace);
+    for (ReleaseMessage message : messages) {
+      if (!Strings.isNullOrEmpty(message.getMessage())) {
+        //one scan covers the rule changes of all the messages
+        logger.info("messages received - channel: {}, size: {}", channel, messages.size());
+        scanGrayReleaseRules();
+        rebuildIndex();
+        return;
+      }
+    }
+  }
 
-    mergeGrayReleaseRules(rules);
+  /**
+   * Drop the cached rules and load all of them from database again, which is only needed when the rules are changed
+   * without going through the branch apis, e.g. by hand.
+   * <br />
+   * Triggered by the grayreleaserules actuator endpoint of config service.
+   */
+  public synchronized void reloadGrayReleaseRules() {
+    Transaction transaction = Tracer.newTransaction("Apollo.GrayReleaseRulesScanner",
+        "reloadGrayReleaseRules");
+    try {
+      loadVersion.incrementAndGet();
+      grayReleaseRuleCache.clear();
+      maxIdScanned = 0;
+      missingRuleIds.clear();
+      scanGrayReleaseRules();
+      //lookups keep using the previous index until the new one is ready
+      rebuildIndex();
+      transaction.setStatus(Transaction.SUCCESS);
+    } catch (Throwable ex) {
+      transaction.setStatus(ex);
+      logger.error("Reload gray release rule failed", ex);
+      throw ex;
+    } finally {
+      transaction.complete();
+    }
   }
 
   private void periodicScanRules() {
@@ -106,6 +148,8 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
     try {
       loadVersion.incrementAndGet();
       scanGrayReleaseRules();
+      removeOutdatedInactiveRules();
+      rebuildIndex();
       transaction.setStatus(Transaction.SUCCESS);
     } catch (Throwable ex) {
       transaction.setStatus(ex);
@@ -117,22 +161,8 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
 
   public Long findReleaseIdFromGrayReleaseRule(String clientAppId, String clientIp, String
       configAppId, String configCluster, String configNamespaceName) {
-    String key = assembleGrayReleaseRuleKey(configAppId, configCluster, configNamespaceName);
-    if (!grayReleaseRuleCache.containsKey(key)) {
-      return null;
-    }
-    //create a new list to avoid ConcurrentModificationException
-    List<GrayReleaseRuleCache> rules = Lists.newArrayList(grayReleaseRuleCache.get(key));
-    for (GrayReleaseRuleCache rule : rules) {
-      //check branch status
-      if (rule.getBranchStatus() != NamespaceBranchStatus.ACTIVE) {
-        continue;
-      }
-      if (rule.matches(clientAppId, clientIp)) {
-        return rule.getReleaseId();
-      }
-    }
-    return null;
+    return grayReleaseRuleIndex.findReleaseId(clientAppId, clientIp, configAppId, configCluster,
+        configNamespaceName);
   }
 
   /**
@@ -141,14 +171,13 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
    * load gray releases. Because gray release rules actually apply to one more dimension - cluster.
    */
   public boolean hasGrayReleaseRule(String clientAppId, String clientIp, String namespaceName) {
-    return reversedGrayReleaseRuleCache.containsKey(assembleReversedGrayReleaseRuleKey(clientAppId,
-        namespaceName, clientIp)) || reversedGrayReleaseRuleCache.containsKey
-        (assembleReversedGrayReleaseRuleKey(clientAppId, namespaceName, GrayReleaseRuleItemDTO
-            .ALL_IP));
+    return grayReleaseRuleIndex.hasGrayReleaseRule(clientAppId, clientIp, namespaceName);
   }
 
-  private void scanGrayReleaseRules() {
-    long maxIdScanned = 0;
+  /**
+   * Scan the rules created since the last scan only
+   */
+  private synchronized void scanGrayReleaseRules() {
     boolean hasMore = true;
 
     while (hasMore && !Thread.currentThread().isInterrupted()) {
@@ -157,12 +186,74 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
       if (CollectionUtils.isEmpty(grayReleaseRules)) {
         break;
       }
+      recordMissingRules(grayReleaseRules);
       mergeGrayReleaseRules(grayReleaseRules);
       int rulesScanned = grayReleaseRules.size();
       maxIdScanned = grayReleaseRules.get(rulesScanned - 1).getId();
       //batch is 500
       hasMore = rulesScanned == 500;
     }
+    scanMissingRules();
+  }
+
+  /**
+   * Check the missing rules again, as auto increment ids could be committed out of order under concurrent
+   * gray releases, so a rule could be committed after the ones with larger ids are scanned
+   */
+  private void scanMissingRules() {
+    List<Long> ids = findMissingRuleIds();
+    if (ids.isEmpty()) {
+      return;
+    }
+    List<GrayReleaseRule> found = Lists.newArrayList();
+    for (List<Long> batch : Lists.partition(ids, MISSING_RULES_BATCH)) {
+      for (GrayReleaseRule grayReleaseRule : grayReleaseRuleRepository.findAllById(batch)) {
+        missingRuleIds.remove(grayReleaseRule.getId());
+        found.add(grayReleaseRule);
+      }
+    }
+    if (found.isEmpty()) {
+      return;
+    }
+    Tracer.logEvent("Apollo.GrayReleaseRulesScanner.MissingRuleFound", String.valueOf(found.size()));
+    //the rules of the same branch must be merged in the order of ids
+    found.sort(Comparator.comparingLong(GrayReleaseRule::getId));
+    mergeGrayReleaseRules(found);
+  }
+
+  private void recordMissingRules(List<GrayReleaseRule> grayReleaseRules) {
+    //nothing scanned yet, the ids before are not missing but deleted
+    if (maxIdScanned == 0) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    long previousId = maxIdScanned;
+    for (GrayReleaseRule grayReleaseRule : grayReleaseRules) {
+      for (long id = previousId + 1; id < grayReleaseRule.getId(); id++) {
+        if (missingRuleIds.size() >= MAX_MISSING_RULES) {
+          Tracer.logEvent("Apollo.GrayReleaseRulesScanner.TooManyMissingRules", String.valueOf(id));
+          return;
+        }
+        missingRuleIds.put(id, now);
+      }
+      previousId = grayReleaseRule.getId();
+    }
+  }
+
+  private List<Long> findMissingRuleIds() {
+    long now = System.currentTimeMillis();
+    List<Long> ids = Lists.newArrayListWithCapacity(missingRuleIds.size());
+    Iterator<Map.Entry<Long, Long>> iterator = missingRuleIds.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<Long, Long> entry = iterator.next();
+      if (now - entry.getValue() > MISSING_RULE_TIMEOUT_IN_MILLI) {
+        //most likely rolled back or deleted
+        iterator.remove();
+        continue;
+      }
+      ids.add(entry.getKey());
+    }
+    return ids;
   }
 
   private void mergeGrayReleaseRules(List<GrayReleaseRule> grayReleaseRules) {
@@ -209,26 +300,33 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
     }
   }
 
-  private void addCache(String key, GrayReleaseRuleCache ruleCache) {
-    if (ruleCache.getBranchStatus() == NamespaceBranchStatus.ACTIVE) {
-      for (GrayReleaseRuleItemDTO ruleItemDTO : ruleCache.getRuleItems()) {
-        for (String clientIp : ruleItemDTO.getClientIpList()) {
-          reversedGrayReleaseRuleCache.put(assembleReversedGrayReleaseRuleKey(ruleItemDTO
-              .getClientAppId(), ruleCache.getNamespaceName(), clientIp), ruleCache.getRuleId());
-        }
-      }
+  /**
+   * Inactive rules are only kept to shadow the rules they replaced, remove them after 2 scan cycles
+   */
+  private void removeOutdatedInactiveRules() {
+    long currentLoadVersion = loadVersion.get();
+    //iterating a synchronized multimap view needs to hold its lock
+    synchronized (grayReleaseRuleCache) {
+      grayReleaseRuleCache.values().removeIf(ruleCache -> ruleCache.getBranchStatus() != NamespaceBranchStatus.ACTIVE
+          && currentLoadVersion - ruleCache.getLoadVersion() > 1);
     }
+  }
+
+  private void addCache(String key, GrayReleaseRuleCache ruleCache) {
     grayReleaseRuleCache.put(key, ruleCache);
   }
 
   private void removeCache(String key, GrayReleaseRuleCache ruleCache) {
     grayReleaseRuleCache.remove(key, ruleCache);
-    for (GrayReleaseRuleItemDTO ruleItemDTO : ruleCache.getRuleItems()) {
-      for (String clientIp : ruleItemDTO.getClientIpList()) {
-        reversedGrayReleaseRuleCache.remove(assembleReversedGrayReleaseRuleKey(ruleItemDTO
-            .getClientAppId(), ruleCache.getNamespaceName(), clientIp), ruleCache.getRuleId());
-      }
+  }
+
+  private synchronized void rebuildIndex() {
+    List<GrayReleaseRuleCache> ruleCaches;
+    //iterating a synchronized multimap view needs to hold its lock
+    synchronized (grayReleaseRuleCache) {
+      ruleCaches = Lists.newArrayList(grayReleaseRuleCache.values());
     }
+    grayReleaseRuleIndex = GrayReleaseRuleIndex.build(ruleCaches);
   }
 
   private GrayReleaseRuleCache transformRuleToRuleCache(GrayReleaseRule grayReleaseRule) {
@@ -242,8 +340,9 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
     }
 
     GrayReleaseRuleCache ruleCache = new GrayReleaseRuleCache(grayReleaseRule.getId(),
-        grayReleaseRule.getBranchName(), grayReleaseRule.getNamespaceName(), grayReleaseRule
-        .getReleaseId(), grayReleaseRule.getBranchStatus(), loadVersion.get(), ruleItems);
+        grayReleaseRule.getAppId(), grayReleaseRule.getClusterName(), grayReleaseRule
+        .getBranchName(), grayReleaseRule.getNamespaceName(), grayReleaseRule.getReleaseId(),
+        grayReleaseRule.getBranchStatus(), loadVersion.get(), ruleItems);
 
     return ruleCache;
   }
@@ -265,9 +364,4 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
     return STRING_JOINER.join(configAppId, configCluster, configNamespaceName);
   }
 
-  private String assembleReversedGrayReleaseRuleKey(String clientAppId, String
-      clientNamespaceName, String clientIp) {
-    return STRING_JOINER.join(clientAppId, clientNamespaceName, clientIp);
-  }
-
 }
@@ -42,10 +42,20 @@ public class DatabaseMessageSender implements MessageSender {
   @Override
   @Transactional
   public void sendMessage(String message, String channel) {
+    saveMessage(message, channel);
+  }
+
+  /**
+   * Save the message to database
+   *
+   * @return the saved message, or null if the channel is not supported
+   */
+  @Transactional
+  public ReleaseMessage saveMessage(String message, String channel) {
     logger.info("Sending message {} to channel {}", message, channel);
     if (!Objects.equals(channel, Topics.APOLLO_RELEASE_TOPIC)) {
-      logger.warn("Channel {} not supported by DatabaseMessageSender!");
-      return;
+      logger.warn("Channel {} not supported by DatabaseMessageSender!", channel);
+      return null;
     }
 
     Tracer.logEvent("Apollo.AdminService.ReleaseMessage", message);
@@ -54,6 +64,7 @@ public class DatabaseMessageSender implements MessageSender {
       ReleaseMessage newMessage = releaseMessageRepository.save(new ReleaseMessage(message));
       toClean.offer(newMessage.getId());
       transaction.setStatus(Transaction.SUCCESS);
+      return newMessage;
     } catch (Throwable ex) {
       logger.error("Sending message to database failed", ex);
       transaction.setStatus(ex);
@@ -0,0 +1,142 @@
+package com.ctrip.framework.apollo.biz.message;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.core.ServiceNameConsts;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.tracer.spi.Transaction;
+import com.google.common.base.Strings;
+import com.google.common.collect.Queues;
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.discovery.EurekaClient;
+import com.netflix.discovery.shared.Application;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Primary;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves the messages to database via {@link DatabaseMessageSender}, and if push is enabled, pushes them to all the
+ * config services once they are committed, so that config services don't need to wait for the next database scan.
+ *
+ * Pushing is best effort, messages failed to push are still delivered by the database scan of config services.
+ */
+@Primary
+@Component
+public class HttpPushMessageSender implements MessageSender, DisposableBean {
+  private static final Logger logger = LoggerFactory.getLogger(HttpPushMessageSender.class);
+  static final String PUSH_PATH = "release-messages";
+  public static final String PUSH_TOKEN_HEADER = "X-Apollo-Push-Token";
+  private static final int PUSH_THREADS = 4;
+  private static final int PUSH_QUEUE_SIZE = 1000;
+
+  private final DatabaseMessageSender databaseMessageSender;
+  private final ObjectProvider<EurekaClient> eurekaClientProvider;
+  private final BizConfig bizConfig;
+  private final RestTemplate restTemplate;
+  private final ExecutorService pushExecutorService;
+
+  public HttpPushMessageSender(final DatabaseMessageSender databaseMessageSender,
+      final ObjectProvider<EurekaClient> eurekaClientProvider, final BizConfig bizConfig) {
+    this.databaseMessageSender = databaseMessageSender;
+    this.eurekaClientProvider = eurekaClientProvider;
+    this.bizConfig = bizConfig;
+
+    SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+    int timeout = bizConfig.releaseMessagePushTimeoutInMilli();
+    requestFactory.setConnectTimeout(timeout);
+    requestFactory.setReadTimeout(timeout);
+    restTemplate = new RestTemplate(requestFactory);
+    pushExecutorService = new ThreadPoolExecutor(PUSH_THREADS, PUSH_THREADS, 0L, TimeUnit.MILLISECONDS,
+        Queues.newLinkedBlockingQueue(PUSH_QUEUE_SIZE), ApolloThreadFactory.create("HttpPushMessageSender", true),
+        (runnable, executor) -> Tracer.logEvent("Apollo.ReleaseMessage.PushDiscarded", "queue is full"));
+  }
+
+  @Override
+  public void sendMessage(String message, String channel) {
+    ReleaseMessage releaseMessage = databaseMessageSender.saveMessage(message, channel);
+    if (releaseMessage == null || !bizConfig.isReleaseMessagePushEnabled()) {
+      return;
+    }
+    String token = bizConfig.releaseMessagePushToken();
+    if (Strings.isNullOrEmpty(token)) {
+      //config services won't accept it anyway
+      Tracer.logEvent("Apollo.ReleaseMessage.PushTokenMissing", String.valueOf(releaseMessage.getId()));
+      return;
+    }
+
+    //push after commit, otherwise config services might not be able to see the message
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+        @Override
+        public void afterCommit() {
+          push(releaseMessage, token);
+        }
+      });
+    } else {
+      push(releaseMessage, token);
+    }
+  }
+
+  private void push(ReleaseMessage releaseMessage, String token) {
+    for (InstanceInfo instance : findConfigServiceInstances()) {
+      String homePageUrl = instance.getHomePageUrl();
+      String url = homePageUrl.endsWith("/") ? homePageUrl + PUSH_PATH : homePageUrl + "/" + PUSH_PATH;
+      pushExecutorService.execute(() -> doPush(url, releaseMessage, token));
+    }
+  }
+
+  private void doPush(String url, ReleaseMessage releaseMessage, String token) {
+    Transaction transaction = Tracer.newTransaction("Apollo.ReleaseMessage", "push");
+    try {
+      MultiValueMap<String, String> form = new LinkedMultiValueMap<>();
+      form.add("id", String.valueOf(releaseMessage.getId()));
+      form.add("message", releaseMessage.getMessage());
+      HttpHeaders headers = new HttpHeaders();
+      headers.set(PUSH_TOKEN_HEADER, token);
+      restTemplate.postForEntity(url, new HttpEntity<>(form, headers), Void.class);
+      transaction.setStatus(Transaction.SUCCESS);
+    } catch (Throwable ex) {
+      //the config service would get the message from database later
+      logger.warn("Push release message {} to {} failed: {}", releaseMessage.getId(), url, ex.getMessage());
+      transaction.setStatus(ex);
+    } finally {
+      transaction.complete();
+    }
+  }
+
+  private List<InstanceInfo> findConfigServiceInstances() {
+    EurekaClient eurekaClient = eurekaClientProvider.getIfAvailable();
+    if (eurekaClient == null) {
+      return Collections.emptyList();
+    }
+    Application application = eurekaClient.getApplication(ServiceNameConsts.APOLLO_CONFIGSERVICE);
+    if (application == null) {
+      Tracer.logEvent("Apollo.EurekaDiscovery.NotFound", ServiceNameConsts.APOLLO_CONFIGSERVICE);
+      return Collections.emptyList();
+    }
+    return application.getInstances();
+  }
+
+  @Override
+  public void destroy() throws Exception {
+    pushExecutorService.shutdownNow();
+  }
+}
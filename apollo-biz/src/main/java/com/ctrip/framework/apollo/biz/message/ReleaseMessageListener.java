@@ -2,9 +2,21 @@ package com.ctrip.framework.apollo.biz.message;
 
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 
+import java.util.List;
+
 /**
  * @author Jason Song(song_s@ctrip.com)
  */
 public interface ReleaseMessageListener {
   void handleMessage(ReleaseMessage message, String channel);
+
+  /**
+   * Handle a batch of messages, in the order of their ids and with at most one message per key. Listeners could
+   * override it to handle the batch at once, e.g. to reload data only once.
+   */
+  default void handleMessages(List<ReleaseMessage> messages, String channel) {
+    for (ReleaseMessage message : messages) {
+      handleMessage(message, channel);
+    }
+  }
 }
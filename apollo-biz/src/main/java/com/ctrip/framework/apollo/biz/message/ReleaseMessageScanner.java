@@ -1,12 +1,27 @@
 package com.ctrip.framework.apollo.biz.message;
 
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.util.CollectionUtils;
@@ -18,31 +33,68 @@ import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.ctrip.framework.apollo.tracer.spi.Transaction;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 /**
+ * Scans the release messages and delivers them to listeners in batches.
+ *
+ * Each listener handles the batches on its own thread, so the scan is never blocked by listeners. A batch is handed
+ * to a listener only after the previous listeners are done with it, so that e.g. caches are invalidated before the
+ * clients are notified, while different batches could be handled by different listeners at the same time.
+ *
  * @author Jason Song(song_s@ctrip.com)
  */
-public class ReleaseMessageScanner implements InitializingBean {
+public class ReleaseMessageScanner implements InitializingBean, DisposableBean, MeterBinder {
   private static final Logger logger = LoggerFactory.getLogger(ReleaseMessageScanner.class);
+  private static final int MAX_IN_FLIGHT_BATCHES = 20;
+  private static final int MAX_MISSING_MESSAGES = 1000;
+  private static final int MISSING_MESSAGES_BATCH = 500;
+  private static final int MAX_PUSHED_MESSAGES = 1000;
+  //the pushed messages are committed just now, so they can't be far beyond the scanned ones
+  private static final long MAX_PUSHED_ID_AHEAD = 10000;
+  //how long to wait for a missing message to be committed before giving it up
+  private static final long MISSING_MESSAGE_TIMEOUT_IN_MILLI = TimeUnit.MINUTES.toMillis(1);
   @Autowired
   private BizConfig bizConfig;
   @Autowired
   private ReleaseMessageRepository releaseMessageRepository;
   private int databaseScanInterval;
-  private List<ReleaseMessageListener> listeners;
+  private List<ListenerDispatcher> dispatchers;
   private ScheduledExecutorService executorService;
+  //limits the batches scanned but not yet handled by all the listeners
+  private final Semaphore inFlightBatches;
+  private MeterRegistry meterRegistry;
   private long maxIdScanned;
+  //ids of the messages delivered but not scanned yet, guarded by this
+  private final NavigableSet<Long> deliveredMessageIds;
+  //ids skipped by the scan as they were not committed yet -> when they were found missing, guarded by this
+  private final Map<Long, Long> missingMessageIds;
+  //ids of the messages pushed but not checked yet -> the pushed content, guarded by this
+  private final Map<Long, String> pushedMessages;
+  //whether a delivery of the pushed messages is queued already, so there is at most one in the queue
+  private final AtomicBoolean pushedMessagesDeliveryQueued;
 
   public ReleaseMessageScanner() {
-    listeners = Lists.newCopyOnWriteArrayList();
+    dispatchers = Lists.newCopyOnWriteArrayList();
+    deliveredMessageIds = Sets.newTreeSet();
+    missingMessageIds = Maps.newTreeMap();
+    pushedMessages = Maps.newTreeMap();
+    pushedMessagesDeliveryQueued = new AtomicBoolean();
+    inFlightBatches = new Semaphore(MAX_IN_FLIGHT_BATCHES);
     executorService = Executors.newScheduledThreadPool(1, ApolloThreadFactory
         .create("ReleaseMessageScanner", true));
   }
 
   @Override
   public void afterPropertiesSet() throws Exception {
-    databaseScanInterval = bizConfig.releaseMessageScanIntervalInMilli();
-    maxIdScanned = loadLargestMessageId();
+    //when messages are pushed, the scan is only a safety net for the messages failed to push
+    databaseScanInterval = bizConfig.isReleaseMessagePushEnabled() ?
+        bizConfig.releaseMessageScanIntervalWithPushInMilli() : bizConfig.releaseMessageScanIntervalInMilli();
+    long largestMessageId = loadLargestMessageId();
+    synchronized (this) {
+      maxIdScanned = largestMessageId;
+    }
     executorService.scheduleWithFixedDelay((Runnable) () -> {
       Transaction transaction = Tracer.newTransaction("Apollo.ReleaseMessageScanner", "scanMessage");
       try {
@@ -62,9 +114,106 @@ public class ReleaseMessageScanner implements InitializingBean {
    * add message listeners for release message
    * @param listener
    */
-  public void addMessageListener(ReleaseMessageListener listener) {
-    if (!listeners.contains(listener)) {
-      listeners.add(listener);
+  public synchronized void addMessageListener(ReleaseMessageListener listener) {
+    for (ListenerDispatcher dispatcher : dispatchers) {
+      if (dispatcher.listener.equals(listener)) {
+        return;
+      }
+    }
+    ListenerDispatcher dispatcher = new ListenerDispatcher(listener);
+    if (meterRegistry != null) {
+      dispatcher.bindTo(meterRegistry);
+    }
+    dispatchers.add(dispatcher);
+  }
+
+  @Override
+  public synchronized void bindTo(MeterRegistry registry) {
+    meterRegistry = registry;
+    for (ListenerDispatcher dispatcher : dispatchers) {
+      dispatcher.bindTo(registry);
+    }
+  }
+
+  @Override
+  public void destroy() throws Exception {
+    executorService.shutdownNow();
+    for (ListenerDispatcher dispatcher : dispatchers) {
+      dispatcher.executorService.shutdownNow();
+    }
+  }
+
+  /**
+   * Handle the message pushed by admin service, which is delivered to listeners soon if it is not yet scanned.
+   * <br />
+   * The pushed messages are collected and checked in one go on the scan thread, same as the scanned messages, so that
+   * the caller is not blocked by the listeners, and a flood of pushes costs at most one queued task and a bounded
+   * number of pending ids.
+   *
+   * @return whether the message is accepted for delivery
+   */
+  public boolean handlePushedMessage(long id, String message) {
+    synchronized (this) {
+      if (id <= 0 || id > maxIdScanned + MAX_PUSHED_ID_AHEAD || isDelivered(id)) {
+        return false;
+      }
+      if (!pushedMessages.containsKey(id) && pushedMessages.size() >= MAX_PUSHED_MESSAGES) {
+        //the scan would find it anyway
+        Tracer.logEvent("Apollo.ReleaseMessageScanner.TooManyPushedMessages", String.valueOf(id));
+        return false;
+      }
+      pushedMessages.put(id, message);
+    }
+    if (pushedMessagesDeliveryQueued.compareAndSet(false, true)) {
+      try {
+        executorService.execute(this::deliverPushedMessages);
+      } catch (RejectedExecutionException ex) {
+        //shutting down
+        pushedMessagesDeliveryQueued.set(false);
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void deliverPushedMessages() {
+    //reset before draining, so the messages pushed from now on queue another delivery
+    pushedMessagesDeliveryQueued.set(false);
+    Map<Long, String> pushed;
+    synchronized (this) {
+      if (pushedMessages.isEmpty()) {
+        return;
+      }
+      pushed = Maps.newTreeMap(pushedMessages);
+      pushedMessages.clear();
+    }
+    try {
+      List<ReleaseMessage> toFire = Lists.newArrayList();
+      for (List<Long> batch : Lists.partition(Lists.newArrayList(pushed.keySet()), MISSING_MESSAGES_BATCH)) {
+        //double check with database, so that only the committed messages are delivered
+        for (ReleaseMessage releaseMessage : releaseMessageRepository.findAllById(batch)) {
+          if (!Objects.equals(releaseMessage.getMessage(), pushed.get(releaseMessage.getId()))) {
+            continue;
+          }
+          //skip the ones scanned while waiting
+          if (markDelivered(releaseMessage.getId())) {
+            toFire.add(releaseMessage);
+          }
+        }
+      }
+      if (toFire.size() < pushed.size()) {
+        Tracer.logEvent("Apollo.ReleaseMessageScanner.PushedMessageNotFound",
+            String.valueOf(pushed.size() - toFire.size()));
+      }
+      if (toFire.isEmpty()) {
+        return;
+      }
+      toFire.sort(Comparator.comparingLong(ReleaseMessage::getId));
+      Tracer.logEvent("Apollo.ReleaseMessageScanner.PushedMessage", String.valueOf(toFire.size()));
+      fireMessageScanned(toFire);
+    } catch (Throwable ex) {
+      Tracer.logError(ex);
+      logger.error("Deliver pushed messages {} failed", pushed.keySet(), ex);
     }
   }
 
@@ -76,6 +225,7 @@ public class ReleaseMessageScanner implements InitializingBean {
     while (hasMoreMessages && !Thread.currentThread().isInterrupted()) {
       hasMoreMessages = scanAndSendMessages();
     }
+    scanMissingMessages();
   }
 
   /**
@@ -86,16 +236,111 @@ public class ReleaseMessageScanner implements InitializingBean {
   private boolean scanAndSendMessages() {
     //current batch is 500
     List<ReleaseMessage> releaseMessages =
-        releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(maxIdScanned);
+        releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(currentMaxIdScanned());
     if (CollectionUtils.isEmpty(releaseMessages)) {
       return false;
     }
-    fireMessageScanned(releaseMessages);
+    recordMissingMessages(releaseMessages);
+    List<ReleaseMessage> toFire = Lists.newArrayListWithCapacity(releaseMessages.size());
+    for (ReleaseMessage releaseMessage : releaseMessages) {
+      //skip the messages already pushed
+      if (markDelivered(releaseMessage.getId())) {
+        toFire.add(releaseMessage);
+      }
+    }
+    fireMessageScanned(toFire);
     int messageScanned = releaseMessages.size();
-    maxIdScanned = releaseMessages.get(messageScanned - 1).getId();
+    markScanned(releaseMessages.get(messageScanned - 1).getId());
     return messageScanned == 500;
   }
 
+  /**
+   * Check the missing messages again, as auto increment ids could be committed out of order under concurrent
+   * publishes
+   */
+  private void scanMissingMessages() {
+    List<Long> ids = findMissingMessageIds();
+    if (ids.isEmpty()) {
+      return;
+    }
+    List<ReleaseMessage> toFire = Lists.newArrayList();
+    for (List<Long> batch : Lists.partition(ids, MISSING_MESSAGES_BATCH)) {
+      for (ReleaseMessage releaseMessage : releaseMessageRepository.findAllById(batch)) {
+        if (markDelivered(releaseMessage.getId())) {
+          toFire.add(releaseMessage);
+        }
+      }
+    }
+    if (toFire.isEmpty()) {
+      return;
+    }
+    toFire.sort(Comparator.comparingLong(ReleaseMessage::getId));
+    Tracer.logEvent("Apollo.ReleaseMessageScanner.MissingMessageFound", String.valueOf(toFire.size()));
+    fireMessageScanned(toFire);
+  }
+
+  private synchronized void recordMissingMessages(List<ReleaseMessage> releaseMessages) {
+    //nothing scanned yet, the ids before are not missing but deleted
+    if (maxIdScanned == 0) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    long previousId = maxIdScanned;
+    for (ReleaseMessage releaseMessage : releaseMessages) {
+      for (long id = previousId + 1; id < releaseMessage.getId(); id++) {
+        if (deliveredMessageIds.contains(id)) {
+          continue;
+        }
+        if (missingMessageIds.size() >= MAX_MISSING_MESSAGES) {
+          Tracer.logEvent("Apollo.ReleaseMessageScanner.TooManyMissingMessages", String.valueOf(id));
+          return;
+        }
+        missingMessageIds.put(id, now);
+      }
+      previousId = releaseMessage.getId();
+    }
+  }
+
+  private synchronized List<Long> findMissingMessageIds() {
+    long now = System.currentTimeMillis();
+    List<Long> ids = Lists.newArrayListWithCapacity(missingMessageIds.size());
+    Iterator<Map.Entry<Long, Long>> iterator = missingMessageIds.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<Long, Long> entry = iterator.next();
+      if (now - entry.getValue() > MISSING_MESSAGE_TIMEOUT_IN_MILLI) {
+        //most likely rolled back or cleaned
+        iterator.remove();
+        Tracer.logEvent("Apollo.ReleaseMessageScanner.MissingMessageGivenUp", String.valueOf(entry.getKey()));
+        continue;
+      }
+      ids.add(entry.getKey());
+    }
+    return ids;
+  }
+
+  private synchronized boolean isDelivered(long id) {
+    if (id > maxIdScanned) {
+      return deliveredMessageIds.contains(id);
+    }
+    return !missingMessageIds.containsKey(id);
+  }
+
+  private synchronized boolean markDelivered(long id) {
+    if (id > maxIdScanned) {
+      return deliveredMessageIds.add(id);
+    }
+    return missingMessageIds.remove(id) != null;
+  }
+
+  private synchronized void markScanned(long id) {
+    maxIdScanned = id;
+    deliveredMessageIds.headSet(id, true).clear();
+  }
+
+  private synchronized long currentMaxIdScanned() {
+    return maxIdScanned;
+  }
+
   /**
    * find largest message id as the current start point
    * @return current largest message id
@@ -110,13 +355,112 @@ public class ReleaseMessageScanner implements InitializingBean {
    * @param messages
    */
   private void fireMessageScanned(List<ReleaseMessage> messages) {
+    if (messages.isEmpty()) {
+      return;
+    }
+    try {
+      inFlightBatches.acquire();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return;
+    }
+    MessageBatch batch = new MessageBatch(deduplicate(messages), System.nanoTime());
+    try {
+      dispatchToNext(null, batch);
+    } catch (Throwable ex) {
+      inFlightBatches.release();
+      throw ex;
+    }
+  }
+
+  /**
+   * Only the latest message of each key is kept, as listeners only care about the latest change
+   */
+  private List<ReleaseMessage> deduplicate(List<ReleaseMessage> messages) {
+    if (messages.size() == 1) {
+      return messages;
+    }
+    Map<String, ReleaseMessage> latestMessages = Maps.newLinkedHashMap();
     for (ReleaseMessage message : messages) {
-      for (ReleaseMessageListener listener : listeners) {
+      //remove first so that the messages are still in the order of ids
+      latestMessages.remove(message.getMessage());
+      latestMessages.put(message.getMessage(), message);
+    }
+    if (latestMessages.size() == messages.size()) {
+      return messages;
+    }
+    Tracer.logEvent("Apollo.ReleaseMessageScanner.Deduplicated",
+        String.valueOf(messages.size() - latestMessages.size()));
+    return Lists.newArrayList(latestMessages.values());
+  }
+
+  private void dispatchToNext(ListenerDispatcher current, MessageBatch batch) {
+    int next = current == null ? 0 : dispatchers.indexOf(current) + 1;
+    if (next < dispatchers.size()) {
+      dispatchers.get(next).dispatch(batch);
+    } else {
+      //all the listeners are done with the batch
+      inFlightBatches.release();
+    }
+  }
+
+  private static class MessageBatch {
+    private final List<ReleaseMessage> messages;
+    private final long scannedAtNanos;
+
+    MessageBatch(List<ReleaseMessage> messages, long scannedAtNanos) {
+      this.messages = messages;
+      this.scannedAtNanos = scannedAtNanos;
+    }
+  }
+
+  private class ListenerDispatcher {
+    private final ReleaseMessageListener listener;
+    private final ExecutorService executorService;
+    private final AtomicInteger pendingMessages;
+    private volatile Timer lagTimer;
+
+    ListenerDispatcher(ReleaseMessageListener listener) {
+      this.listener = listener;
+      this.executorService = Executors.newSingleThreadExecutor(ApolloThreadFactory
+          .create("ReleaseMessageScanner-" + listener.getClass().getSimpleName(), true));
+      this.pendingMessages = new AtomicInteger();
+    }
+
+    void bindTo(MeterRegistry registry) {
+      String listenerName = listener.getClass().getSimpleName();
+      Gauge.builder("apollo.release-message.listener.pending", pendingMessages, AtomicInteger::get)
+          .description("Number of release messages waiting to be handled by the listener")
+          .tag("listener", listenerName)
+          .register(registry);
+      lagTimer = Timer.builder("apollo.release-message.listener.lag")
+          .description("Time from release messages being scanned to being handled by the listener")
+          .tag("listener", listenerName)
+          .register(registry);
+    }
+
+    void dispatch(MessageBatch batch) {
+      pendingMessages.addAndGet(batch.messages.size());
+      executorService.execute(() -> handle(batch));
+    }
+
+    private void handle(MessageBatch batch) {
+      try {
+        listener.handleMessages(batch.messages, Topics.APOLLO_RELEASE_TOPIC);
+      } catch (Throwable ex) {
+        Tracer.logError(ex);
+        logger.error("Failed to invoke message listener {}", listener.getClass(), ex);
+      } finally {
+        pendingMessages.addAndGet(-batch.messages.size());
+        Timer timer = lagTimer;
+        if (timer != null) {
+          timer.record(System.nanoTime() - batch.scannedAtNanos, TimeUnit.NANOSECONDS);
+        }
         try {
-          listener.handleMessage(message, Topics.APOLLO_RELEASE_TOPIC);
+          dispatchToNext(this, batch);
         } catch (Throwable ex) {
-          Tracer.logError(ex);
-          logger.error("Failed to invoke message listener {}", listener.getClass(), ex);
+          inFlightBatches.release();
+          logger.error("Failed to dispatch release messages after listener {}", listener.getClass(), ex);
         }
       }
     }
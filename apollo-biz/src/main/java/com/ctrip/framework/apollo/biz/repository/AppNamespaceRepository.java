@@ -5,7 +5,9 @@ import com.ctrip.framework.apollo.common.entity.AppNamespace;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Date;
 import java.util.List;
 import java.util.Set;
 
@@ -26,6 +28,17 @@ public interface AppNamespaceRepository extends PagingAndSortingRepository<AppNa
 
   List<AppNamespace> findFirst500ByIdGreaterThanOrderByIdAsc(long id);
 
+  /**
+   * Find the app namespaces changed after (lastModifiedTime, id), including the deleted ones
+   */
+  @Query(
+      value = "SELECT * FROM `AppNamespace` WHERE `DataChange_LastTime` >= :lastModifiedTime AND " +
+          "(`DataChange_LastTime` > :lastModifiedTime OR `Id` > :id) ORDER BY `DataChange_LastTime` ASC, `Id` ASC " +
+          "LIMIT 500",
+      nativeQuery = true)
+  List<AppNamespace> findFirst500ChangedAfterIncludingDeleted(@Param("lastModifiedTime") Date lastModifiedTime,
+      @Param("id") long id);
+
   @Modifying
   @Query("UPDATE AppNamespace SET IsDeleted=1,DataChange_LastModifiedBy = ?2 WHERE AppId=?1")
   int batchDeleteByAppId(String appId, String operator);
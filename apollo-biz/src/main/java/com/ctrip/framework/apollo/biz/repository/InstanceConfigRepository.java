@@ -9,6 +9,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Set;
@@ -18,6 +19,9 @@ public interface InstanceConfigRepository extends PagingAndSortingRepository<Ins
   InstanceConfig findByInstanceIdAndConfigAppIdAndConfigNamespaceName(long instanceId, String
       configAppId, String configNamespaceName);
 
+  List<InstanceConfig> findByConfigAppIdAndConfigNamespaceNameAndInstanceIdIn(String configAppId, String
+      configNamespaceName, Collection<Long> instanceIds);
+
   Page<InstanceConfig> findByReleaseKeyAndDataChangeLastModifiedTimeAfter(String releaseKey, Date
       validDate, Pageable pageable);
 
@@ -27,6 +31,17 @@ public interface InstanceConfigRepository extends PagingAndSortingRepository<Ins
   List<InstanceConfig> findByConfigAppIdAndConfigClusterNameAndConfigNamespaceNameAndDataChangeLastModifiedTimeAfterAndReleaseKeyNotIn(
       String appId, String clusterName, String namespaceName, Date validDate, Set<String> releaseKey);
 
+  /**
+   * Groups and sorts all the instance configs modified after the date, which is expensive on large tables, so it
+   * should be called sparingly.
+   *
+   * @return configAppId, configClusterName and configNamespaceName, ordered by the number of instances using them
+   */
+  @Query("select configAppId, configClusterName, configNamespaceName from InstanceConfig " +
+      "where dataChangeLastModifiedTime > :validDate " +
+      "group by configAppId, configClusterName, configNamespaceName order by count(id) desc")
+  List<Object[]> findMostUsedNamespaces(@Param("validDate") Date validDate, Pageable pageable);
+
   @Modifying
   @Query("delete from InstanceConfig  where ConfigAppId=?1 and ConfigClusterName=?2 and ConfigNamespaceName = ?3")
   int batchDelete(String appId, String clusterName, String namespaceName);
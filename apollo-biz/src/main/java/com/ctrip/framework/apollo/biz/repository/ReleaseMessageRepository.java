@@ -3,11 +3,14 @@ package com.ctrip.framework.apollo.biz.repository;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.data.repository.query.Param;
 
+import javax.persistence.QueryHint;
 import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
@@ -23,4 +26,14 @@ public interface ReleaseMessageRepository extends PagingAndSortingRepository<Rel
 
   @Query("select message, max(id) as id from ReleaseMessage where message in :messages group by message")
   List<Object[]> findLatestReleaseMessagesGroupByMessages(@Param("messages") Collection<String> messages);
+
+  /**
+   * Stream the latest id of all the messages, which should be consumed within a transaction
+   * <br />
+   * MySQL only honors the fetch size with useCursorFetch=true in the datasource url, otherwise the whole result is
+   * still loaded into memory
+   */
+  @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+  @Query("select message, max(id) as id from ReleaseMessage group by message")
+  Stream<Object[]> streamLatestReleaseMessagesGroupByMessages();
 }
@@ -6,6 +6,7 @@ import com.ctrip.framework.apollo.biz.repository.InstanceConfigRepository;
 import com.ctrip.framework.apollo.biz.repository.InstanceRepository;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import java.util.Objects;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
@@ -16,9 +17,11 @@ import org.springframework.util.CollectionUtils;
 
 import java.math.BigInteger;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -42,6 +45,13 @@ public class InstanceService {
         dataCenter, ip);
   }
 
+  public List<Instance> findInstances(String appId, String clusterName, Collection<String> ips) {
+    if (CollectionUtils.isEmpty(ips)) {
+      return Collections.emptyList();
+    }
+    return instanceRepository.findByAppIdAndClusterNameAndIpIn(appId, clusterName, ips);
+  }
+
   public List<Instance> findInstancesByIds(Set<Long> instanceIds) {
     Iterable<Instance> instances = instanceRepository.findAllById(instanceIds);
     if (instances == null) {
@@ -57,6 +67,18 @@ public class InstanceService {
     return instanceRepository.save(instance);
   }
 
+  /**
+   * Create the instances in one transaction, so either all of them are created or none of them is
+   */
+  @Transactional
+  public List<Instance> batchCreateInstances(List<Instance> instances) {
+    for (Instance instance : instances) {
+      instance.setId(0); //protection
+    }
+
+    return Lists.newArrayList(instanceRepository.saveAll(instances));
+  }
+
   public InstanceConfig findInstanceConfig(long instanceId, String configAppId, String
       configNamespaceName) {
     return instanceConfigRepository
@@ -64,6 +86,15 @@ public class InstanceService {
             instanceId, configAppId, configNamespaceName);
   }
 
+  public List<InstanceConfig> findInstanceConfigs(Collection<Long> instanceIds, String configAppId, String
+      configNamespaceName) {
+    if (CollectionUtils.isEmpty(instanceIds)) {
+      return Collections.emptyList();
+    }
+    return instanceConfigRepository.findByConfigAppIdAndConfigNamespaceNameAndInstanceIdIn(configAppId,
+        configNamespaceName, instanceIds);
+  }
+
   public Page<InstanceConfig> findActiveInstanceConfigsByReleaseKey(String releaseKey, Pageable
       pageable) {
     Page<InstanceConfig> instanceConfigs = instanceConfigRepository
@@ -174,6 +205,39 @@ public class InstanceService {
     return instanceConfigRepository.save(existedInstanceConfig);
   }
 
+  /**
+   * Create the instance configs in one transaction, so either all of them are created or none of them is
+   */
+  @Transactional
+  public List<InstanceConfig> batchCreateInstanceConfigs(List<InstanceConfig> instanceConfigs) {
+    for (InstanceConfig instanceConfig : instanceConfigs) {
+      instanceConfig.setId(0); //protection
+    }
+
+    return Lists.newArrayList(instanceConfigRepository.saveAll(instanceConfigs));
+  }
+
+  /**
+   * Update the instance configs in one transaction, the existing ones are loaded with one query and the updates are
+   * flushed together when the transaction commits
+   */
+  @Transactional
+  public void batchUpdateInstanceConfigs(List<InstanceConfig> instanceConfigs) {
+    Map<Long, InstanceConfig> toUpdate = Maps.newHashMap();
+    for (InstanceConfig instanceConfig : instanceConfigs) {
+      toUpdate.put(instanceConfig.getId(), instanceConfig);
+    }
+
+    for (InstanceConfig existedInstanceConfig : instanceConfigRepository.findAllById(toUpdate.keySet())) {
+      InstanceConfig instanceConfig = toUpdate.get(existedInstanceConfig.getId());
+      existedInstanceConfig.setConfigClusterName(instanceConfig.getConfigClusterName());
+      existedInstanceConfig.setReleaseKey(instanceConfig.getReleaseKey());
+      existedInstanceConfig.setReleaseDeliveryTime(instanceConfig.getReleaseDeliveryTime());
+      existedInstanceConfig.setDataChangeLastModifiedTime(instanceConfig
+          .getDataChangeLastModifiedTime());
+    }
+  }
+
   @Transactional
   public int batchDeleteInstanceConfig(String configAppId, String configClusterName, String configNamespaceName){
     return instanceConfigRepository.batchDelete(configAppId, configClusterName, configNamespaceName);
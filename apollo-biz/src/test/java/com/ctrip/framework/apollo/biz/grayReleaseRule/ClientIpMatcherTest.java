@@ -0,0 +1,60 @@
+package com.ctrip.framework.apollo.biz.grayReleaseRule;
+
+import com.ctrip.framework.apollo.common.dto.GrayReleaseRuleItemDTO;
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ClientIpMatcherTest {
+
+  @Test
+  public void testMatchesExactIps() throws Exception {
+    ClientIpMatcher matcher = ClientIpMatcher.of(Lists.newArrayList("1.1.1.1", "2.2.2.2"));
+
+    assertTrue(matcher.matches("1.1.1.1"));
+    assertTrue(matcher.matches("2.2.2.2"));
+    assertFalse(matcher.matches("3.3.3.3"));
+    assertFalse(matcher.matches(null));
+  }
+
+  @Test
+  public void testMatchesAllIps() throws Exception {
+    ClientIpMatcher matcher = ClientIpMatcher.of(Lists.newArrayList("1.1.1.1", GrayReleaseRuleItemDTO.ALL_IP));
+
+    assertTrue(matcher.matches("1.1.1.1"));
+    assertTrue(matcher.matches("3.3.3.3"));
+    assertTrue(matcher.matches(null));
+  }
+
+  @Test
+  public void testMatchesCidrRanges() throws Exception {
+    ClientIpMatcher matcher = ClientIpMatcher.of(Lists.newArrayList("10.0.0.0/8", "192.168.1.128/25"));
+
+    assertTrue(matcher.matches("10.1.2.3"));
+    assertTrue(matcher.matches("10.255.255.255"));
+    assertFalse(matcher.matches("11.0.0.1"));
+    assertTrue(matcher.matches("192.168.1.200"));
+    assertFalse(matcher.matches("192.168.1.127"));
+    assertFalse(matcher.matches("not-an-ip"));
+  }
+
+  @Test
+  public void testInvalidCidrIsKeptAsExactIp() throws Exception {
+    ClientIpMatcher matcher = ClientIpMatcher.of(Lists.newArrayList("10.0.0.0/33"));
+
+    assertTrue(matcher.matches("10.0.0.0/33"));
+    assertFalse(matcher.matches("10.0.0.1"));
+  }
+
+  @Test
+  public void testParseIpv4() throws Exception {
+    assertEquals(0x01020304L, ClientIpMatcher.parseIpv4("1.2.3.4", 0, 7));
+    assertEquals(0xFFFFFFFFL, ClientIpMatcher.parseIpv4("255.255.255.255", 0, 15));
+    assertEquals(-1, ClientIpMatcher.parseIpv4("256.1.1.1", 0, 9));
+    assertEquals(-1, ClientIpMatcher.parseIpv4("1.1.1", 0, 5));
+    assertEquals(-1, ClientIpMatcher.parseIpv4("1..1.1", 0, 6));
+  }
+}
@@ -29,7 +29,11 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -108,8 +112,8 @@ public class GrayReleaseRulesHolderTest {
         someNamespaceName, Lists.newArrayList(assembleRuleItem(anotherClientAppId, Sets.newHashSet
             (anotherClientIp))), someReleaseId, activeBranchStatus);
 
-    when(grayReleaseRuleRepository.findByAppIdAndClusterNameAndNamespaceName(someAppId,
-        someClusterName, someNamespaceName)).thenReturn(Lists.newArrayList(anotherRule));
+    when(grayReleaseRuleRepository.findFirst500ByIdGreaterThanOrderByIdAsc(someRule.getId()))
+        .thenReturn(Lists.newArrayList(anotherRule));
 
     //send message
     grayReleaseRulesHolder.handleMessage(assembleReleaseMessage(someAppId, someClusterName,
@@ -131,6 +135,125 @@ public class GrayReleaseRulesHolderTest {
         someNamespaceName));
     assertFalse(grayReleaseRulesHolder.hasGrayReleaseRule(anotherClientAppId, anotherClientIp,
         anotherNamespaceName));
+
+    verify(grayReleaseRuleRepository, never()).findByAppIdAndClusterNameAndNamespaceName(anyString(),
+        anyString(), anyString());
+  }
+
+  @Test
+  public void testScanDeletedBranchRuleIncrementally() throws Exception {
+    String someAppId = "someAppId";
+    String someClusterName = "someClusterName";
+    String someNamespaceName = "someNamespaceName";
+    Long someReleaseId = 1L;
+    String someClientAppId = "clientAppId1";
+    String someClientIp = "1.1.1.1";
+
+    GrayReleaseRule someRule = assembleGrayReleaseRule(someAppId, someClusterName,
+        someNamespaceName, Lists.newArrayList(assembleRuleItem(someClientAppId, Sets.newHashSet
+            (someClientIp))), someReleaseId, NamespaceBranchStatus.ACTIVE);
+    GrayReleaseRule deletedRule = assembleGrayReleaseRule(someAppId, someClusterName,
+        someNamespaceName, Lists.newArrayList(), someReleaseId, NamespaceBranchStatus.DELETED);
+
+    when(bizConfig.grayReleaseRuleScanInterval()).thenReturn(30);
+    when(grayReleaseRuleRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L)).thenReturn(Lists
+        .newArrayList(someRule));
+    when(grayReleaseRuleRepository.findFirst500ByIdGreaterThanOrderByIdAsc(someRule.getId()))
+        .thenReturn(Lists.newArrayList(deletedRule));
+
+    grayReleaseRulesHolder.afterPropertiesSet();
+
+    assertEquals(someReleaseId, grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule
+        (someClientAppId, someClientIp, someAppId, someClusterName, someNamespaceName));
+
+    grayReleaseRulesHolder.handleMessage(assembleReleaseMessage(someAppId, someClusterName,
+        someNamespaceName), Topics.APOLLO_RELEASE_TOPIC);
+
+    assertNull(grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule
+        (someClientAppId, someClientIp, someAppId, someClusterName, someNamespaceName));
+    assertFalse(grayReleaseRulesHolder.hasGrayReleaseRule(someClientAppId, someClientIp,
+        someNamespaceName));
+
+    //only the full reload starts from the beginning again
+    grayReleaseRulesHolder.reloadGrayReleaseRules();
+
+    verify(grayReleaseRuleRepository, times(2)).findFirst500ByIdGreaterThanOrderByIdAsc(0L);
+  }
+
+  @Test
+  public void testScanRuleCommittedOutOfOrder() throws Exception {
+    String someAppId = "someAppId";
+    String someClusterName = "someClusterName";
+    String someNamespaceName = "someNamespaceName";
+    String anotherNamespaceName = "anotherNamespaceName";
+    Long someReleaseId = 1L;
+    String someClientAppId = "clientAppId1";
+    String someClientIp = "1.1.1.1";
+
+    GrayReleaseRule someRule = assembleGrayReleaseRule(someAppId, someClusterName,
+        someNamespaceName, Lists.newArrayList(assembleRuleItem(someClientAppId, Sets.newHashSet
+            (someClientIp))), someReleaseId, NamespaceBranchStatus.ACTIVE);
+    //committed after the next one
+    GrayReleaseRule lateRule = assembleGrayReleaseRule(someAppId, someClusterName,
+        anotherNamespaceName, Lists.newArrayList(assembleRuleItem(someClientAppId, Sets.newHashSet
+            (someClientIp))), someReleaseId, NamespaceBranchStatus.ACTIVE);
+    GrayReleaseRule anotherRule = assembleGrayReleaseRule(someAppId, someClusterName,
+        someNamespaceName, Lists.newArrayList(assembleRuleItem(someClientAppId, Sets.newHashSet
+            (someClientIp))), someReleaseId, NamespaceBranchStatus.ACTIVE);
+
+    when(bizConfig.grayReleaseRuleScanInterval()).thenReturn(30);
+    when(grayReleaseRuleRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L)).thenReturn(Lists
+        .newArrayList(someRule));
+    when(grayReleaseRuleRepository.findFirst500ByIdGreaterThanOrderByIdAsc(someRule.getId()))
+        .thenReturn(Lists.newArrayList(anotherRule));
+
+    grayReleaseRulesHolder.afterPropertiesSet();
+
+    grayReleaseRulesHolder.handleMessage(assembleReleaseMessage(someAppId, someClusterName,
+        someNamespaceName), Topics.APOLLO_RELEASE_TOPIC);
+
+    assertNull(grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule
+        (someClientAppId, someClientIp, someAppId, someClusterName, anotherNamespaceName));
+
+    when(grayReleaseRuleRepository.findFirst500ByIdGreaterThanOrderByIdAsc(anotherRule.getId()))
+        .thenReturn(Lists.newArrayList());
+    when(grayReleaseRuleRepository.findAllById(Lists.newArrayList(lateRule.getId())))
+        .thenReturn(Lists.newArrayList(lateRule));
+
+    grayReleaseRulesHolder.handleMessage(assembleReleaseMessage(someAppId, someClusterName,
+        anotherNamespaceName), Topics.APOLLO_RELEASE_TOPIC);
+
+    assertEquals(someReleaseId, grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule
+        (someClientAppId, someClientIp, someAppId, someClusterName, anotherNamespaceName));
+  }
+
+  @Test
+  public void testScanGrayReleaseRulesWithCidrRange() throws Exception {
+    String someAppId = "someAppId";
+    String someClusterName = "someClusterName";
+    String someNamespaceName = "someNamespaceName";
+    Long someReleaseId = 1L;
+    String someClientAppId = "clientAppId1";
+
+    GrayReleaseRule someRule = assembleGrayReleaseRule(someAppId, someClusterName,
+        someNamespaceName, Lists.newArrayList(assembleRuleItem(someClientAppId, Sets.newHashSet
+            ("10.1.0.0/16"))), someReleaseId, NamespaceBranchStatus.ACTIVE);
+
+    when(bizConfig.grayReleaseRuleScanInterval()).thenReturn(30);
+    when(grayReleaseRuleRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L)).thenReturn(Lists
+        .newArrayList(someRule));
+
+    grayReleaseRulesHolder.afterPropertiesSet();
+
+    assertEquals(someReleaseId, grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule
+        (someClientAppId, "10.1.2.3", someAppId, someClusterName, someNamespaceName));
+    assertNull(grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule(someClientAppId,
+        "10.2.2.3", someAppId, someClusterName, someNamespaceName));
+
+    assertTrue(grayReleaseRulesHolder.hasGrayReleaseRule(someClientAppId, "10.1.255.1",
+        someNamespaceName));
+    assertFalse(grayReleaseRulesHolder.hasGrayReleaseRule(someClientAppId, "10.2.2.3",
+        someNamespaceName));
   }
 
   private GrayReleaseRule assembleGrayReleaseRule(String appId, String clusterName, String
@@ -0,0 +1,92 @@
+package com.ctrip.framework.apollo.biz.message;
+
+import com.ctrip.framework.apollo.biz.AbstractUnitTest;
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.core.ServiceNameConsts;
+import com.netflix.discovery.EurekaClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.springframework.beans.factory.ObjectProvider;
+
+import static org.mockito.Mockito.*;
+
+public class HttpPushMessageSenderTest extends AbstractUnitTest {
+  private HttpPushMessageSender messageSender;
+  @Mock
+  private DatabaseMessageSender databaseMessageSender;
+  @Mock
+  private ObjectProvider<EurekaClient> eurekaClientProvider;
+  @Mock
+  private EurekaClient eurekaClient;
+  @Mock
+  private BizConfig bizConfig;
+  private String someMessage;
+
+  @Before
+  public void setUp() throws Exception {
+    when(bizConfig.releaseMessagePushTimeoutInMilli()).thenReturn(1000);
+    messageSender = new HttpPushMessageSender(databaseMessageSender, eurekaClientProvider, bizConfig);
+    someMessage = "some-message";
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    messageSender.destroy();
+  }
+
+  @Test
+  public void testSendMessageWithPushDisabled() throws Exception {
+    when(databaseMessageSender.saveMessage(someMessage, Topics.APOLLO_RELEASE_TOPIC))
+        .thenReturn(assembleReleaseMessage(1, someMessage));
+    when(bizConfig.isReleaseMessagePushEnabled()).thenReturn(false);
+
+    messageSender.sendMessage(someMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    verify(databaseMessageSender, times(1)).saveMessage(someMessage, Topics.APOLLO_RELEASE_TOPIC);
+    verify(eurekaClientProvider, never()).getIfAvailable();
+  }
+
+  @Test
+  public void testSendUnsupportedMessage() throws Exception {
+    String someUnsupportedTopic = "some-invalid-topic";
+
+    messageSender.sendMessage(someMessage, someUnsupportedTopic);
+
+    verify(databaseMessageSender, times(1)).saveMessage(someMessage, someUnsupportedTopic);
+    verify(eurekaClientProvider, never()).getIfAvailable();
+  }
+
+  @Test
+  public void testSendMessageWithNoConfigServices() throws Exception {
+    when(databaseMessageSender.saveMessage(someMessage, Topics.APOLLO_RELEASE_TOPIC))
+        .thenReturn(assembleReleaseMessage(1, someMessage));
+    when(bizConfig.isReleaseMessagePushEnabled()).thenReturn(true);
+    when(bizConfig.releaseMessagePushToken()).thenReturn("someToken");
+    when(eurekaClientProvider.getIfAvailable()).thenReturn(eurekaClient);
+
+    messageSender.sendMessage(someMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    verify(eurekaClient, times(1)).getApplication(ServiceNameConsts.APOLLO_CONFIGSERVICE);
+  }
+
+  @Test
+  public void testSendMessageWithNoPushToken() throws Exception {
+    when(databaseMessageSender.saveMessage(someMessage, Topics.APOLLO_RELEASE_TOPIC))
+        .thenReturn(assembleReleaseMessage(1, someMessage));
+    when(bizConfig.isReleaseMessagePushEnabled()).thenReturn(true);
+
+    messageSender.sendMessage(someMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    verify(eurekaClientProvider, never()).getIfAvailable();
+  }
+
+  private ReleaseMessage assembleReleaseMessage(long id, String message) {
+    ReleaseMessage releaseMessage = new ReleaseMessage();
+    releaseMessage.setId(id);
+    releaseMessage.setMessage(message);
+    return releaseMessage;
+  }
+}
@@ -14,9 +14,14 @@ import org.mockito.Mock;
 import org.springframework.core.env.Environment;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.when;
 
 /**
@@ -79,6 +84,125 @@ public class ReleaseMessageScannerTest extends AbstractUnitTest {
 
   }
 
+  @Test
+  public void testHandlePushedMessage() throws Exception {
+    List<ReleaseMessage> someListenerMessages = Lists.newCopyOnWriteArrayList();
+    SettableFuture<ReleaseMessage> somePushedFuture = SettableFuture.create();
+    SettableFuture<ReleaseMessage> someListenerFuture = SettableFuture.create();
+    String someMessage = "someMessage";
+    long someId = 100;
+    String anotherMessage = "anotherMessage";
+    long anotherId = someId + 1;
+    ReleaseMessage someReleaseMessage = assembleReleaseMessage(someId, someMessage);
+    ReleaseMessage anotherReleaseMessage = assembleReleaseMessage(anotherId, anotherMessage);
+    AtomicReference<Thread> loadingThread = new AtomicReference<>();
+    releaseMessageScanner.addMessageListener((message, channel) -> {
+      someListenerMessages.add(message);
+      if (message.getId() == someId) {
+        somePushedFuture.set(message);
+      }
+      if (message.getId() == anotherId) {
+        someListenerFuture.set(message);
+      }
+    });
+
+    when(releaseMessageRepository.findAllById(Lists.newArrayList(someId)))
+        .thenReturn(Lists.newArrayList(someReleaseMessage));
+    when(releaseMessageRepository.findAllById(Lists.newArrayList(anotherId))).thenAnswer(invocation -> {
+      loadingThread.set(Thread.currentThread());
+      return Lists.newArrayList();
+    });
+
+    //too far beyond the scanned ones to be a real one
+    assertFalse(releaseMessageScanner.handlePushedMessage(someId * 1000, someMessage));
+    assertTrue(releaseMessageScanner.handlePushedMessage(someId, someMessage));
+
+    somePushedFuture.get(5000, TimeUnit.MILLISECONDS);
+
+    assertFalse(releaseMessageScanner.handlePushedMessage(someId, someMessage));
+    //not committed yet, so it is accepted but not delivered
+    assertTrue(releaseMessageScanner.handlePushedMessage(anotherId, anotherMessage));
+
+    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L)).thenReturn(
+        Lists.newArrayList(someReleaseMessage, anotherReleaseMessage));
+
+    someListenerFuture.get(5000, TimeUnit.MILLISECONDS);
+
+    assertEquals(Lists.newArrayList(someReleaseMessage, anotherReleaseMessage), someListenerMessages);
+    //the pushed messages are loaded by the scan thread, not the caller
+    assertNotSame(Thread.currentThread(), loadingThread.get());
+  }
+
+  @Test
+  public void testScanMessagesInBatchAndDeduplicate() throws Exception {
+    SettableFuture<List<ReleaseMessage>> someListenerFuture = SettableFuture.create();
+    SettableFuture<List<ReleaseMessage>> anotherListenerFuture = SettableFuture.create();
+    releaseMessageScanner.addMessageListener(new ReleaseMessageListener() {
+      @Override
+      public void handleMessage(ReleaseMessage message, String channel) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public void handleMessages(List<ReleaseMessage> messages, String channel) {
+        someListenerFuture.set(messages);
+      }
+    });
+    releaseMessageScanner.addMessageListener(new ReleaseMessageListener() {
+      @Override
+      public void handleMessage(ReleaseMessage message, String channel) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public void handleMessages(List<ReleaseMessage> messages, String channel) {
+        //the previous listener is done with the batch
+        assertTrue(someListenerFuture.isDone());
+        anotherListenerFuture.set(messages);
+      }
+    });
+
+    String someMessage = "someMessage";
+    String anotherMessage = "anotherMessage";
+    ReleaseMessage someReleaseMessage = assembleReleaseMessage(100, someMessage);
+    ReleaseMessage anotherReleaseMessage = assembleReleaseMessage(101, anotherMessage);
+    ReleaseMessage someNewReleaseMessage = assembleReleaseMessage(102, someMessage);
+
+    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L)).thenReturn(
+        Lists.newArrayList(someReleaseMessage, anotherReleaseMessage, someNewReleaseMessage));
+
+    List<ReleaseMessage> expected = Lists.newArrayList(anotherReleaseMessage, someNewReleaseMessage);
+
+    assertEquals(expected, someListenerFuture.get(5000, TimeUnit.MILLISECONDS));
+    assertEquals(expected, anotherListenerFuture.get(5000, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void testScanMissingMessages() throws Exception {
+    SettableFuture<ReleaseMessage> someListenerFuture = SettableFuture.create();
+    long someId = 100;
+    long missingId = someId + 1;
+    long anotherId = someId + 2;
+    ReleaseMessage someReleaseMessage = assembleReleaseMessage(someId, "someMessage");
+    ReleaseMessage missingReleaseMessage = assembleReleaseMessage(missingId, "missingMessage");
+    ReleaseMessage anotherReleaseMessage = assembleReleaseMessage(anotherId, "anotherMessage");
+    releaseMessageScanner.addMessageListener((message, channel) -> {
+      if (message.getId() == missingId) {
+        someListenerFuture.set(message);
+      }
+    });
+
+    when(releaseMessageRepository.findAllById(Lists.newArrayList(missingId))).thenReturn(
+        Lists.newArrayList(missingReleaseMessage));
+    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(someId)).thenReturn(
+        Lists.newArrayList(anotherReleaseMessage));
+    //the message with missingId is committed after the one with anotherId
+    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L)).thenReturn(
+        Lists.newArrayList(someReleaseMessage));
+
+    assertEquals(missingReleaseMessage, someListenerFuture.get(5000, TimeUnit.MILLISECONDS));
+  }
+
   private ReleaseMessage assembleReleaseMessage(long id, String message) {
     ReleaseMessage releaseMessage = new ReleaseMessage();
     releaseMessage.setId(id);
@@ -110,6 +110,60 @@ public class InstanceServiceTest extends AbstractIntegrationTest {
     assertEquals(anotherReleaseKey, updated.getReleaseKey());
   }
 
+  @Test
+  @Rollback
+  public void testBatchCreateAndFindInstances() throws Exception {
+    String someAppId = "someAppId";
+    String someClusterName = "someClusterName";
+    String someDataCenter = "someDataCenter";
+    String someIp = "someIp";
+    String anotherIp = "anotherIp";
+
+    List<Instance> created = instanceService.batchCreateInstances(Lists.newArrayList(
+        assembleInstance(someAppId, someClusterName, someDataCenter, someIp),
+        assembleInstance(someAppId, someClusterName, someDataCenter, anotherIp)));
+
+    List<Instance> instances = instanceService.findInstances(someAppId, someClusterName,
+        Sets.newHashSet(someIp, anotherIp, "yetAnotherIp"));
+
+    assertEquals(2, created.size());
+    assertEquals(Sets.newHashSet(someIp, anotherIp),
+        instances.stream().map(Instance::getIp).collect(Collectors.toSet()));
+  }
+
+  @Test
+  @Rollback
+  public void testBatchCreateAndUpdateInstanceConfigs() throws Exception {
+    long someInstanceId = 1;
+    long anotherInstanceId = 2;
+    String someConfigAppId = "someConfigAppId";
+    String someConfigClusterName = "someConfigClusterName";
+    String someConfigNamespaceName = "someConfigNamespaceName";
+    String someReleaseKey = "someReleaseKey";
+    String anotherReleaseKey = "anotherReleaseKey";
+
+    instanceService.batchCreateInstanceConfigs(Lists.newArrayList(
+        assembleInstanceConfig(someInstanceId, someConfigAppId, someConfigClusterName,
+            someConfigNamespaceName, someReleaseKey),
+        assembleInstanceConfig(anotherInstanceId, someConfigAppId, someConfigClusterName,
+            someConfigNamespaceName, someReleaseKey)));
+
+    List<InstanceConfig> instanceConfigs = instanceService.findInstanceConfigs(
+        Sets.newHashSet(someInstanceId, anotherInstanceId), someConfigAppId, someConfigNamespaceName);
+
+    assertEquals(2, instanceConfigs.size());
+
+    for (InstanceConfig instanceConfig : instanceConfigs) {
+      instanceConfig.setReleaseKey(anotherReleaseKey);
+    }
+    instanceService.batchUpdateInstanceConfigs(instanceConfigs);
+
+    assertEquals(anotherReleaseKey, instanceService.findInstanceConfig(someInstanceId, someConfigAppId,
+        someConfigNamespaceName).getReleaseKey());
+    assertEquals(anotherReleaseKey, instanceService.findInstanceConfig(anotherInstanceId, someConfigAppId,
+        someConfigNamespaceName).getReleaseKey());
+  }
+
   @Test
   @Rollback
   public void testFindActiveInstanceConfigs() throws Exception {
@@ -2,13 +2,20 @@ package com.ctrip.framework.apollo.build;
 
 import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
 import com.ctrip.framework.apollo.internals.Injector;
+import com.ctrip.framework.apollo.internals.SimpleInjector;
 import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.util.ExceptionUtil;
 import com.ctrip.framework.foundation.internals.ServiceBootstrap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
  */
 public class ApolloInjector {
+  private static final Logger logger = LoggerFactory.getLogger(ApolloInjector.class);
+  //set by GraalVM when running as a native image
+  private static final String NATIVE_IMAGE_PROPERTY = "org.graalvm.nativeimage.imagecode";
   private static volatile Injector s_injector;
   private static final Object lock = new Object();
 
@@ -19,6 +26,13 @@ public class ApolloInjector {
           try {
             s_injector = ServiceBootstrap.loadFirst(Injector.class);
           } catch (Throwable ex) {
+            if (isInNativeImage()) {
+              // Guice based injector is not able to run in a native image, so fall back to the reflection free one
+              logger.warn("Unable to initialize Apollo Injector in native image, will use SimpleInjector instead, reason: {}",
+                  ExceptionUtil.getDetailMessage(ex));
+              s_injector = new SimpleInjector();
+              return s_injector;
+            }
             ApolloConfigException exception = new ApolloConfigException("Unable to initialize Apollo Injector!", ex);
             Tracer.logError(exception);
             throw exception;
@@ -30,6 +44,10 @@ public class ApolloInjector {
     return s_injector;
   }
 
+  private static boolean isInNativeImage() {
+    return System.getProperty(NATIVE_IMAGE_PROPERTY) != null;
+  }
+
   public static <T> T getInstance(Class<T> clazz) {
     try {
       return getInjector().getInstance(clazz);
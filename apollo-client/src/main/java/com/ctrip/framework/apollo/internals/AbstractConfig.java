@@ -490,6 +490,41 @@ public abstract class AbstractConfig implements Config {
     return false;
   }
 
+  /**
+   * Check whether any change listener is interested in the changed keys, listeners registered without interested
+   * keys are interested in all keys unless they implement {@link InterestedKeysAware}
+   */
+  protected boolean isAnyListenerInterested(Set<String> changedKeys) {
+    for (ConfigChangeListener listener : m_listeners) {
+      Set<String> interestedKeys = m_interestedKeys.get(listener);
+      Set<String> interestedKeyPrefixes = m_interestedKeyPrefixes.get(listener);
+
+      if ((interestedKeys == null || interestedKeys.isEmpty())
+          && (interestedKeyPrefixes == null || interestedKeyPrefixes.isEmpty())) {
+        if (!(listener instanceof InterestedKeysAware)
+            || ((InterestedKeysAware) listener).isAnyKeyInterested(changedKeys)) {
+          return true;
+        }
+        continue;
+      }
+
+      for (String changedKey : changedKeys) {
+        if (interestedKeys != null && interestedKeys.contains(changedKey)) {
+          return true;
+        }
+        if (interestedKeyPrefixes != null) {
+          for (String prefix : interestedKeyPrefixes) {
+            if (changedKey.startsWith(prefix)) {
+              return true;
+            }
+          }
+        }
+      }
+    }
+
+    return false;
+  }
+
   List<ConfigChange> calcPropertyChanges(String namespace, Properties previous,
                                          Properties current) {
     if (previous == null) {
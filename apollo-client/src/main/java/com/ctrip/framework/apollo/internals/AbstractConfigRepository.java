@@ -2,6 +2,7 @@ package com.ctrip.framework.apollo.internals;
 
 import java.util.List;
 import java.util.Properties;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -54,4 +55,24 @@ public abstract class AbstractConfigRepository implements ConfigRepository {
       }
     }
   }
+
+  /**
+   * Check whether any listener of this repository is interested in the changed keys
+   */
+  protected boolean isAnyListenerInterested(Set<String> changedKeys) {
+    for (RepositoryChangeListener listener : m_listeners) {
+      if (!(listener instanceof InterestedKeysAware)) {
+        return true;
+      }
+      try {
+        if (((InterestedKeysAware) listener).isAnyKeyInterested(changedKeys)) {
+          return true;
+        }
+      } catch (Throwable ex) {
+        Tracer.logError(ex);
+        return true;
+      }
+    }
+    return false;
+  }
 }
@@ -15,26 +15,31 @@ import java.util.concurrent.atomic.AtomicReference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.ctrip.framework.apollo.build.ApolloInjector;
 import com.ctrip.framework.apollo.core.utils.ClassLoaderUtil;
 import com.ctrip.framework.apollo.enums.PropertyChangeType;
 import com.ctrip.framework.apollo.model.ConfigChange;
 import com.ctrip.framework.apollo.model.ConfigChangeEvent;
 import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.util.ConfigUtil;
 import com.ctrip.framework.apollo.util.ExceptionUtil;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.RateLimiter;
 
 
 /**
  * @author Jason Song(song_s@ctrip.com)
  */
-public class DefaultConfig extends AbstractConfig implements RepositoryChangeListener {
+public class DefaultConfig extends AbstractConfig implements RepositoryChangeListener, InterestedKeysAware {
   private static final Logger logger = LoggerFactory.getLogger(DefaultConfig.class);
   private final String m_namespace;
   private final Properties m_resourceProperties;
   private final AtomicReference<Properties> m_configProperties;
   private final ConfigRepository m_configRepository;
   private final RateLimiter m_warnLogRateLimiter;
+  //keys ever read from this config, only tracked when key level notification is enabled
+  private final Set<String> m_readKeys;
 
   private volatile ConfigSourceType m_sourceType = ConfigSourceType.NONE;
 
@@ -50,6 +55,8 @@ public class DefaultConfig extends AbstractConfig implements RepositoryChangeLis
     m_configRepository = configRepository;
     m_configProperties = new AtomicReference<>();
     m_warnLogRateLimiter = RateLimiter.create(0.017); // 1 warning log output per minute
+    m_readKeys = ApolloInjector.getInstance(ConfigUtil.class).isKeyLevelNotificationEnabled() ?
+        Sets.<String>newConcurrentHashSet() : null;
     initialize();
   }
 
@@ -69,6 +76,10 @@ public class DefaultConfig extends AbstractConfig implements RepositoryChangeLis
 
   @Override
   public String getProperty(String key, String defaultValue) {
+    if (m_readKeys != null) {
+      m_readKeys.add(key);
+    }
+
     // step 1: check system properties, i.e. -Dkey=value
     String value = System.getProperty(key);
 
@@ -98,6 +109,19 @@ public class DefaultConfig extends AbstractConfig implements RepositoryChangeLis
     return value == null ? defaultValue : value;
   }
 
+  @Override
+  public boolean isAnyKeyInterested(Set<String> changedKeys) {
+    if (m_readKeys == null) {
+      return true;
+    }
+    for (String changedKey : changedKeys) {
+      if (m_readKeys.contains(changedKey)) {
+        return true;
+      }
+    }
+    return isAnyListenerInterested(changedKeys);
+  }
+
   @Override
   public Set<String> getPropertyNames() {
     Properties properties = m_configProperties.get();
@@ -61,6 +61,7 @@ public class DefaultInjector implements Injector {
       bind(HttpUtil.class).in(Singleton.class);
       bind(ConfigServiceLocator.class).in(Singleton.class);
       bind(RemoteConfigLongPollService.class).in(Singleton.class);
+      bind(LocalFileConfigWatchService.class).in(Singleton.class);
       bind(YamlParser.class).in(Singleton.class);
     }
   }
@@ -0,0 +1,18 @@
+package com.ctrip.framework.apollo.internals;
+
+import java.util.Set;
+
+/**
+ * Implemented by change listeners which know the keys they depend on, so that the repositories could skip the
+ * refetch of a notified release when none of these keys is changed.
+ * <br />
+ * Listeners which don't implement this interface are treated as interested in all keys.
+ */
+public interface InterestedKeysAware {
+
+  /**
+   * @param changedKeys the keys changed by a release
+   * @return whether any of the changed keys is interested
+   */
+  boolean isAnyKeyInterested(Set<String> changedKeys);
+}
@@ -11,6 +11,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Properties;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,12 +31,14 @@ import com.google.common.base.Preconditions;
  * @author Jason Song(song_s@ctrip.com)
  */
 public class LocalFileConfigRepository extends AbstractConfigRepository
-    implements RepositoryChangeListener {
+    implements RepositoryChangeListener, InterestedKeysAware {
   private static final Logger logger = LoggerFactory.getLogger(LocalFileConfigRepository.class);
   private static final String CONFIG_DIR = "/config-cache";
   private final String m_namespace;
   private File m_baseDir;
   private final ConfigUtil m_configUtil;
+  private final LocalFileConfigWatchService m_watchService;
+  private volatile File m_watchedFile;
   private volatile Properties m_fileProperties;
   private volatile ConfigRepository m_upstream;
 
@@ -53,6 +56,7 @@ public class LocalFileConfigRepository extends AbstractConfigRepository
   public LocalFileConfigRepository(String namespace, ConfigRepository upstream) {
     m_namespace = namespace;
     m_configUtil = ApolloInjector.getInstance(ConfigUtil.class);
+    m_watchService = ApolloInjector.getInstance(LocalFileConfigWatchService.class);
     this.setLocalCacheDir(findLocalCacheDir(), false);
     this.setUpstreamRepository(upstream);
     this.trySync();
@@ -61,11 +65,64 @@ public class LocalFileConfigRepository extends AbstractConfigRepository
   void setLocalCacheDir(File baseDir, boolean syncImmediately) {
     m_baseDir = baseDir;
     this.checkLocalConfigCacheDir(m_baseDir);
+    this.watchLocalCacheFile();
     if (syncImmediately) {
       this.trySync();
     }
   }
 
+  /**
+   * In local mode the local cache file is the only source, so watch it for changes instead of waiting for a sync.
+   */
+  private void watchLocalCacheFile() {
+    if (!m_configUtil.isInLocalMode()) {
+      return;
+    }
+    File file = assembleLocalCacheFile(m_baseDir, m_namespace);
+    if (m_watchedFile != null) {
+      m_watchService.remove(m_watchedFile, this);
+    }
+    m_watchedFile = file;
+    m_watchService.submit(file, this);
+  }
+
+  /**
+   * Called by {@link LocalFileConfigWatchService} once the local cache file of this namespace is changed.
+   */
+  void onLocalCacheFileChanged() {
+    if (m_upstream != null) {
+      //the local cache file is maintained by the upstream
+      return;
+    }
+    Transaction transaction = Tracer.newTransaction("Apollo.ConfigService", "reloadLocalConfig");
+    Properties newProperties;
+    try {
+      transaction.addData("Basedir", m_baseDir.getAbsolutePath());
+      newProperties = this.loadFromLocalCacheFile(m_baseDir, m_namespace);
+      transaction.setStatus(Transaction.SUCCESS);
+    } catch (Throwable ex) {
+      Tracer.logEvent("ApolloConfigException", ExceptionUtil.getDetailMessage(ex));
+      transaction.setStatus(ex);
+      logger.warn("Reload local config file for namespace {} failed, reason: {}", m_namespace,
+          ExceptionUtil.getDetailMessage(ex));
+      return;
+    } finally {
+      transaction.complete();
+    }
+
+    synchronized (this) {
+      if (newProperties.equals(m_fileProperties)) {
+        return;
+      }
+      m_fileProperties = newProperties;
+      m_sourceType = ConfigSourceType.LOCAL;
+    }
+
+    Properties result = new Properties();
+    result.putAll(newProperties);
+    this.fireRepositoryChange(m_namespace, result);
+  }
+
   private File findLocalCacheDir() {
     try {
       String defaultCacheDir = m_configUtil.getDefaultLocalCacheDir();
@@ -123,6 +180,11 @@ public class LocalFileConfigRepository extends AbstractConfigRepository
     this.fireRepositoryChange(namespace, newProperties);
   }
 
+  @Override
+  public boolean isAnyKeyInterested(Set<String> changedKeys) {
+    return isAnyListenerInterested(changedKeys);
+  }
+
   @Override
   protected void sync() {
     //sync with upstream immediately
@@ -0,0 +1,287 @@
+package com.ctrip.framework.apollo.internals;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ctrip.framework.apollo.build.ApolloInjector;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.ctrip.framework.apollo.util.ExceptionUtil;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimaps;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
+
+/**
+ * Watches the local config cache files used in local mode and notifies the owning repositories once a file is
+ * changed, so that only the changed namespaces are reloaded.
+ * <br />
+ * Rapid writes to the same file are debounced. If the file system does not support {@link WatchService}, the
+ * watched files are polled by their last modified time and length instead.
+ */
+public class LocalFileConfigWatchService {
+  private static final Logger logger = LoggerFactory.getLogger(LocalFileConfigWatchService.class);
+  private final SetMultimap<Path, LocalFileConfigRepository> m_watchedFiles;
+  private final Set<Path> m_watchedDirs;
+  private final ConcurrentMap<Path, Long> m_lastChangeTimes;
+  private final ConcurrentMap<Path, FileFingerprint> m_fingerprints;
+  private final ScheduledExecutorService m_executorService;
+  private final ConfigUtil m_configUtil;
+  private volatile WatchService m_watchService;
+  private volatile boolean m_watchStarted;
+  private volatile boolean m_pollingMode;
+
+  public LocalFileConfigWatchService() {
+    m_watchedFiles = Multimaps.synchronizedSetMultimap(HashMultimap.<Path, LocalFileConfigRepository>create());
+    m_watchedDirs = Sets.newConcurrentHashSet();
+    m_lastChangeTimes = Maps.newConcurrentMap();
+    m_fingerprints = Maps.newConcurrentMap();
+    m_executorService = Executors.newScheduledThreadPool(1,
+        ApolloThreadFactory.create("LocalFileConfigWatchService", true));
+    m_configUtil = ApolloInjector.getInstance(ConfigUtil.class);
+  }
+
+  /**
+   * Start watching the local cache file for the repository.
+   *
+   * @return true if the repository was not watching the file before
+   */
+  public boolean submit(File file, LocalFileConfigRepository repository) {
+    if (!m_watchStarted) {
+      startWatching();
+    }
+    Path path = file.toPath().toAbsolutePath().normalize();
+    boolean added = m_watchedFiles.put(path, repository);
+    m_fingerprints.putIfAbsent(path, FileFingerprint.of(path.toFile()));
+    if (!m_pollingMode) {
+      registerDirectory(path.getParent());
+    }
+    return added;
+  }
+
+  /**
+   * Stop watching the local cache file for the repository.
+   */
+  public void remove(File file, LocalFileConfigRepository repository) {
+    Path path = file.toPath().toAbsolutePath().normalize();
+    m_watchedFiles.remove(path, repository);
+    if (!m_watchedFiles.containsKey(path)) {
+      m_fingerprints.remove(path);
+    }
+  }
+
+  private synchronized void startWatching() {
+    if (m_watchStarted) {
+      //already started
+      return;
+    }
+    m_watchStarted = true;
+    try {
+      m_watchService = FileSystems.getDefault().newWatchService();
+    } catch (Throwable ex) {
+      Tracer.logError(ex);
+      logger.warn("File system watch service is not available, will poll local config files instead, reason: {}",
+          ExceptionUtil.getDetailMessage(ex));
+      switchToPolling();
+      return;
+    }
+
+    Thread watchThread = ApolloThreadFactory.create("LocalFileConfigWatchService-Watcher", true)
+        .newThread(new Runnable() {
+          @Override
+          public void run() {
+            doWatch();
+          }
+        });
+    watchThread.start();
+  }
+
+  private synchronized void registerDirectory(Path dir) {
+    if (m_pollingMode || dir == null || m_watchedDirs.contains(dir)) {
+      return;
+    }
+    try {
+      dir.register(m_watchService, ENTRY_CREATE, ENTRY_MODIFY);
+      m_watchedDirs.add(dir);
+    } catch (Throwable ex) {
+      Tracer.logError(ex);
+      logger.warn("Watch local config directory {} failed, will poll local config files instead, reason: {}",
+          dir, ExceptionUtil.getDetailMessage(ex));
+      switchToPolling();
+    }
+  }
+
+  private void doWatch() {
+    while (!m_pollingMode && !Thread.currentThread().isInterrupted()) {
+      WatchKey key;
+      try {
+        key = m_watchService.take();
+      } catch (InterruptedException ex) {
+        return;
+      } catch (Throwable ex) {
+        Tracer.logError(ex);
+        logger.warn("Watch local config files failed, will poll local config files instead, reason: {}",
+            ExceptionUtil.getDetailMessage(ex));
+        switchToPolling();
+        return;
+      }
+
+      Path dir = (Path) key.watchable();
+      for (WatchEvent<?> event : key.pollEvents()) {
+        if (event.kind() == OVERFLOW) {
+          //events may have been lost, so reload every watched file in this directory
+          for (Path path : watchedFiles()) {
+            if (dir.equals(path.getParent())) {
+              scheduleReload(path);
+            }
+          }
+          continue;
+        }
+        Path path = dir.resolve((Path) event.context());
+        if (m_watchedFiles.containsKey(path)) {
+          scheduleReload(path);
+        }
+      }
+
+      if (!key.reset()) {
+        m_watchedDirs.remove(dir);
+      }
+    }
+  }
+
+  private synchronized void switchToPolling() {
+    if (m_pollingMode) {
+      return;
+    }
+    m_pollingMode = true;
+    if (m_watchService != null) {
+      try {
+        m_watchService.close();
+      } catch (IOException ex) {
+        //ignore
+      }
+    }
+    long pollingInterval = m_configUtil.getLocalFilePollingIntervalInMillis();
+    m_executorService.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        for (Path path : watchedFiles()) {
+          FileFingerprint current = FileFingerprint.of(path.toFile());
+          FileFingerprint previous = m_fingerprints.put(path, current);
+          if (!current.equals(previous)) {
+            scheduleReload(path);
+          }
+        }
+      }
+    }, pollingInterval, pollingInterval, TimeUnit.MILLISECONDS);
+  }
+
+  private void scheduleReload(Path path) {
+    //only schedule a reload if there is none pending, otherwise the pending one is postponed
+    if (m_lastChangeTimes.put(path, System.currentTimeMillis()) == null) {
+      scheduleDebouncedReload(path, m_configUtil.getLocalFileWatchDebounceInMillis());
+    }
+  }
+
+  private void scheduleDebouncedReload(final Path path, long delayInMillis) {
+    m_executorService.schedule(new Runnable() {
+      @Override
+      public void run() {
+        Long lastChangeTime = m_lastChangeTimes.get(path);
+        if (lastChangeTime == null) {
+          return;
+        }
+        long debounceInMillis = m_configUtil.getLocalFileWatchDebounceInMillis();
+        long remainingInMillis = lastChangeTime + debounceInMillis - System.currentTimeMillis();
+        if (remainingInMillis > 0) {
+          scheduleDebouncedReload(path, remainingInMillis);
+          return;
+        }
+        if (!m_lastChangeTimes.remove(path, lastChangeTime)) {
+          //changed again just now
+          scheduleDebouncedReload(path, debounceInMillis);
+          return;
+        }
+        notifyRepositories(path);
+      }
+    }, delayInMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private void notifyRepositories(Path path) {
+    List<LocalFileConfigRepository> toBeNotified;
+    synchronized (m_watchedFiles) {
+      //create a new list to avoid ConcurrentModificationException
+      toBeNotified = Lists.newArrayList(m_watchedFiles.get(path));
+    }
+    m_fingerprints.put(path, FileFingerprint.of(path.toFile()));
+    for (LocalFileConfigRepository repository : toBeNotified) {
+      try {
+        repository.onLocalCacheFileChanged();
+      } catch (Throwable ex) {
+        Tracer.logError(ex);
+      }
+    }
+  }
+
+  private List<Path> watchedFiles() {
+    synchronized (m_watchedFiles) {
+      return Lists.newArrayList(m_watchedFiles.keySet());
+    }
+  }
+
+  boolean isPollingMode() {
+    return m_pollingMode;
+  }
+
+  private static class FileFingerprint {
+    private final long lastModified;
+    private final long length;
+
+    private FileFingerprint(long lastModified, long length) {
+      this.lastModified = lastModified;
+      this.length = length;
+    }
+
+    static FileFingerprint of(File file) {
+      return new FileFingerprint(file.lastModified(), file.length());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      FileFingerprint that = (FileFingerprint) o;
+      return lastModified == that.lastModified && length == that.length;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (int) (lastModified ^ (lastModified >>> 32)) + (int) (length ^ (length >>> 32));
+    }
+  }
+}
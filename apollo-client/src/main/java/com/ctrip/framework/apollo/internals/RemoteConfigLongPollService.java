@@ -23,6 +23,7 @@ import com.ctrip.framework.apollo.core.schedule.ExponentialSchedulePolicy;
 import com.ctrip.framework.apollo.core.schedule.SchedulePolicy;
 import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigStatusCodeException;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.ctrip.framework.apollo.tracer.spi.Transaction;
 import com.ctrip.framework.apollo.util.ConfigUtil;
@@ -190,6 +191,11 @@ public class RemoteConfigLongPollService {
         Tracer.logEvent("ApolloConfigException", ExceptionUtil.getDetailMessage(ex));
         transaction.setStatus(ex);
         long sleepTimeInSecond = m_longPollFailSchedulePolicyInSecond.fail();
+        //the config service is overloaded, so wait at least as long as it tells
+        if (ex instanceof ApolloConfigStatusCodeException) {
+          sleepTimeInSecond = Math.max(sleepTimeInSecond,
+              ((ApolloConfigStatusCodeException) ex).getRetryAfterInSeconds());
+        }
         logger.warn(
             "Long polling failed, will retry in {} seconds. appId: {}, cluster: {}, namespaces: {}, long polling url: {}, reason: {}",
             sleepTimeInSecond, appId, cluster, assembleNamespaces(), url, ExceptionUtil.getDetailMessage(ex));
@@ -220,7 +226,7 @@ public class RemoteConfigLongPollService {
           .get(String.format("%s.%s", namespaceName, ConfigFileFormat.Properties.getValue())));
       for (RemoteConfigRepository remoteConfigRepository : toBeNotified) {
         try {
-          remoteConfigRepository.onLongPollNotified(lastServiceDto, remoteMessages);
+          remoteConfigRepository.onLongPollNotified(lastServiceDto, remoteMessages, notification.getChangedKeys());
         } catch (Throwable ex) {
           Tracer.logError(ex);
         }
@@ -287,6 +293,10 @@ public class RemoteConfigLongPollService {
       queryParams.put("ip", queryParamEscaper.escape(localIp));
     }
 
+    if (m_configUtil.isKeyLevelNotificationEnabled()) {
+      queryParams.put("withChangedKeys", "true");
+    }
+
     String params = MAP_JOINER.join(queryParams);
     if (!uri.endsWith("/")) {
       uri += "/";
@@ -5,8 +5,10 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
@@ -34,8 +36,10 @@ import com.ctrip.framework.apollo.util.http.HttpResponse;
 import com.ctrip.framework.apollo.util.http.HttpUtil;
 import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.common.escape.Escaper;
 import com.google.common.net.UrlEscapers;
 import com.google.common.util.concurrent.RateLimiter;
@@ -62,6 +66,9 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
   private final AtomicReference<ApolloNotificationMessages> m_remoteMessages;
   private final RateLimiter m_loadConfigRateLimiter;
   private final AtomicBoolean m_configNeedForceRefresh;
+  //the changed keys of the notified releases whose refetch is skipped, they are stale until the next sync
+  private final Set<String> m_skippedChangedKeys;
+  private final AtomicBoolean m_skippedRefetchScheduled;
   private final SchedulePolicy m_loadConfigFailSchedulePolicy;
   private final Gson gson;
 
@@ -86,6 +93,8 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
     m_remoteMessages = new AtomicReference<>();
     m_loadConfigRateLimiter = RateLimiter.create(m_configUtil.getLoadConfigQPS());
     m_configNeedForceRefresh = new AtomicBoolean(true);
+    m_skippedChangedKeys = Sets.newConcurrentHashSet();
+    m_skippedRefetchScheduled = new AtomicBoolean(false);
     m_loadConfigFailSchedulePolicy = new ExponentialSchedulePolicy(m_configUtil.getOnErrorRetryInterval(),
         m_configUtil.getOnErrorRetryInterval() * 8);
     gson = new Gson();
@@ -133,8 +142,11 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
     Transaction transaction = Tracer.newTransaction("Apollo.ConfigService", "syncRemoteConfig");
 
     try {
+      //the messages of the skipped releases are set before their keys, so the load below covers them
+      Set<String> skippedChangedKeys = ImmutableSet.copyOf(m_skippedChangedKeys);
       ApolloConfig previous = m_configCache.get();
       ApolloConfig current = loadApolloConfig();
+      m_skippedChangedKeys.removeAll(skippedChangedKeys);
 
       //reference equals means HTTP 304
       if (previous != current) {
@@ -210,6 +222,7 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
 
         Transaction transaction = Tracer.newTransaction("Apollo.ConfigService", "queryConfig");
         transaction.addData("Url", url);
+        long retryAfterInSeconds = -1;
         try {
 
           HttpResponse<ApolloConfig> response = m_httpUtil.doGet(request, ApolloConfig.class);
@@ -243,6 +256,7 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
           Tracer.logEvent("ApolloConfigException", ExceptionUtil.getDetailMessage(statusCodeException));
           transaction.setStatus(statusCodeException);
           exception = statusCodeException;
+          retryAfterInSeconds = ex.getRetryAfterInSeconds();
         } catch (Throwable ex) {
           Tracer.logEvent("ApolloConfigException", ExceptionUtil.getDetailMessage(ex));
           transaction.setStatus(ex);
@@ -254,6 +268,11 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
         // if force refresh, do normal sleep, if normal config load, do exponential sleep
         onErrorSleepTime = m_configNeedForceRefresh.get() ? m_configUtil.getOnErrorRetryInterval() :
             m_loadConfigFailSchedulePolicy.fail();
+        // the config service is overloaded, so wait at least as long as it tells
+        if (retryAfterInSeconds > 0) {
+          onErrorSleepTime = Math.max(onErrorSleepTime,
+              m_configUtil.getOnErrorRetryIntervalTimeUnit().convert(retryAfterInSeconds, TimeUnit.SECONDS));
+        }
       }
 
     }
@@ -305,8 +324,23 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
   }
 
   public void onLongPollNotified(ServiceDTO longPollNotifiedServiceDto, ApolloNotificationMessages remoteMessages) {
-    m_longPollServiceDto.set(longPollNotifiedServiceDto);
+    onLongPollNotified(longPollNotifiedServiceDto, remoteMessages, null);
+  }
+
+  /**
+   * @param changedKeys the keys changed by the notified release, null means unknown
+   */
+  public void onLongPollNotified(ServiceDTO longPollNotifiedServiceDto, ApolloNotificationMessages remoteMessages,
+                                 Set<String> changedKeys) {
     m_remoteMessages.set(remoteMessages);
+    if (canSkipRefetch(changedKeys)) {
+      Tracer.logEvent("Apollo.Client.KeyLevelNotification.Skipped", m_namespace);
+      logger.debug("None of the changed keys {} is used, skip refetching namespace {}", changedKeys, m_namespace);
+      m_skippedChangedKeys.addAll(changedKeys);
+      scheduleSkippedRefetch();
+      return;
+    }
+    m_longPollServiceDto.set(longPollNotifiedServiceDto);
     m_executorService.submit(new Runnable() {
       @Override
       public void run() {
@@ -316,6 +350,45 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
     });
   }
 
+  private boolean canSkipRefetch(Set<String> changedKeys) {
+    if (!m_configUtil.isKeyLevelNotificationEnabled() || changedKeys == null) {
+      return false;
+    }
+    //always refetch if nothing is loaded yet or the previous notified refetch didn't succeed
+    if (m_configCache.get() == null || m_configNeedForceRefresh.get()) {
+      return false;
+    }
+    //the keys skipped before may be used since then
+    if (!m_skippedChangedKeys.isEmpty()) {
+      changedKeys = Sets.union(changedKeys, m_skippedChangedKeys).immutableCopy();
+    }
+    return !isAnyListenerInterested(changedKeys);
+  }
+
+  /**
+   * The skipped changes are still pulled in shortly, rather than waiting for the periodic refresh, so that the keys
+   * read for the first time and the property names are not stale for long.
+   * The delay is randomized to spread the refetches of the clients skipping the same release.
+   */
+  private void scheduleSkippedRefetch() {
+    if (!m_skippedRefetchScheduled.compareAndSet(false, true)) {
+      return;
+    }
+    long delay = m_configUtil.getSkippedRefetchDelayInMills();
+    delay += ThreadLocalRandom.current().nextLong(delay + 1);
+    m_executorService.schedule(new Runnable() {
+      @Override
+      public void run() {
+        m_skippedRefetchScheduled.set(false);
+        if (m_skippedChangedKeys.isEmpty()) {
+          return;
+        }
+        Tracer.logEvent("Apollo.Client.KeyLevelNotification.SkippedRefetch", m_namespace);
+        trySync();
+      }
+    }, delay, TimeUnit.MILLISECONDS);
+  }
+
   private List<ServiceDTO> getConfigServices() {
     List<ServiceDTO> services = m_serviceLocator.getConfigServices();
     if (services.size() == 0) {
@@ -0,0 +1,94 @@
+package com.ctrip.framework.apollo.internals;
+
+import java.util.Map;
+
+import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
+import com.ctrip.framework.apollo.spi.ConfigFactory;
+import com.ctrip.framework.apollo.spi.ConfigFactoryManager;
+import com.ctrip.framework.apollo.spi.ConfigRegistry;
+import com.ctrip.framework.apollo.spi.DefaultConfigFactory;
+import com.ctrip.framework.apollo.spi.DefaultConfigFactoryManager;
+import com.ctrip.framework.apollo.spi.DefaultConfigRegistry;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.ctrip.framework.apollo.util.http.HttpUtil;
+import com.ctrip.framework.apollo.util.yaml.YamlParser;
+import com.google.common.collect.Maps;
+
+/**
+ * Injector which wires the same singletons as {@link DefaultInjector} with plain constructors, so Guice is never
+ * bootstrapped. This reduces startup time and class loading for short-lived applications, and it's also the injector
+ * used in GraalVM native images.
+ * <br />
+ * To use it, declare <code>com.ctrip.framework.apollo.internals.SimpleInjector</code> in the application's
+ * /META-INF/services/com.ctrip.framework.apollo.internals.Injector
+ */
+public class SimpleInjector implements Injector {
+  private final Map<Class<?>, Object> m_instances = Maps.newConcurrentMap();
+
+  @Override
+  public <T> T getInstance(Class<T> clazz) {
+    Object instance = m_instances.get(clazz);
+
+    if (instance == null) {
+      // the lock is reentrant, so the constructors could look up their own dependencies
+      synchronized (this) {
+        instance = m_instances.get(clazz);
+
+        if (instance == null) {
+          instance = createInstance(clazz);
+          m_instances.put(clazz, instance);
+        }
+      }
+    }
+
+    return clazz.cast(instance);
+  }
+
+  @Override
+  public <T> T getInstance(Class<T> clazz, String name) {
+    //the same as DefaultInjector, get instance by type and name is not supported
+    return null;
+  }
+
+  private Object createInstance(Class<?> clazz) {
+    try {
+      if (clazz == ConfigManager.class) {
+        return new DefaultConfigManager();
+      }
+      if (clazz == ConfigFactoryManager.class) {
+        return new DefaultConfigFactoryManager();
+      }
+      if (clazz == ConfigRegistry.class) {
+        return new DefaultConfigRegistry();
+      }
+      if (clazz == ConfigFactory.class) {
+        return new DefaultConfigFactory();
+      }
+      if (clazz == ConfigUtil.class) {
+        return new ConfigUtil();
+      }
+      if (clazz == HttpUtil.class) {
+        return new HttpUtil();
+      }
+      if (clazz == ConfigServiceLocator.class) {
+        return new ConfigServiceLocator();
+      }
+      if (clazz == RemoteConfigLongPollService.class) {
+        return new RemoteConfigLongPollService();
+      }
+      if (clazz == LocalFileConfigWatchService.class) {
+        return new LocalFileConfigWatchService();
+      }
+      if (clazz == YamlParser.class) {
+        return new YamlParser();
+      }
+    } catch (Throwable ex) {
+      Tracer.logError(ex);
+      throw new ApolloConfigException(
+          String.format("Unable to load instance for %s!", clazz.getName()), ex);
+    }
+
+    throw new ApolloConfigException(String.format("No binding found for %s!", clazz.getName()));
+  }
+}
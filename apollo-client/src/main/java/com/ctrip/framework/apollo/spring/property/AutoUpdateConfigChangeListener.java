@@ -2,6 +2,7 @@ package com.ctrip.framework.apollo.spring.property;
 
 import com.ctrip.framework.apollo.ConfigChangeListener;
 import com.ctrip.framework.apollo.enums.PropertyChangeType;
+import com.ctrip.framework.apollo.internals.InterestedKeysAware;
 import com.ctrip.framework.apollo.model.ConfigChange;
 import com.ctrip.framework.apollo.model.ConfigChangeEvent;
 import com.ctrip.framework.apollo.spring.util.SpringInjector;
@@ -22,7 +23,7 @@ import org.springframework.util.CollectionUtils;
 /**
  * Create by zhangzheng on 2018/3/6
  */
-public class AutoUpdateConfigChangeListener implements ConfigChangeListener{
+public class AutoUpdateConfigChangeListener implements ConfigChangeListener, InterestedKeysAware {
   private static final Logger logger = LoggerFactory.getLogger(AutoUpdateConfigChangeListener.class);
 
   private final boolean typeConverterHasConvertIfNecessaryWithFieldParameter;
@@ -63,6 +64,17 @@ public class AutoUpdateConfigChangeListener implements ConfigChangeListener{
     }
   }
 
+  @Override
+  public boolean isAnyKeyInterested(Set<String> changedKeys) {
+    for (String key : changedKeys) {
+      Collection<SpringValue> targetValues = springValueRegistry.get(beanFactory, key);
+      if (targetValues != null && !targetValues.isEmpty()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   private void updateSpringValue(SpringValue springValue) {
     try {
       Object value = resolvePropertyValue(springValue);
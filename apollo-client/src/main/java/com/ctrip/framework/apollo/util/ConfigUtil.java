@@ -35,6 +35,11 @@ public class ConfigUtil {
   private TimeUnit configCacheExpireTimeUnit = TimeUnit.MINUTES;//1 minute
   private long longPollingInitialDelayInMills = 2000;//2 seconds
   private boolean autoUpdateInjectedSpringProperties = true;
+  //for local mode file watching
+  private long localFileWatchDebounceInMillis = 100;//100 ms
+  private long localFilePollingIntervalInMillis = 1000;//1 second
+  private boolean keyLevelNotificationEnabled = false;
+  private long skippedRefetchDelayInMills = 10000;//10 seconds
   private final RateLimiter warnLogRateLimiter;
 
   public ConfigUtil() {
@@ -47,6 +52,9 @@ public class ConfigUtil {
     initMaxConfigCacheSize();
     initLongPollingInitialDelayInMills();
     initAutoUpdateInjectedSpringProperties();
+    initLocalFileWatch();
+    initKeyLevelNotification();
+    initSkippedRefetchDelayInMills();
   }
 
   /**
@@ -301,4 +309,76 @@ public class ConfigUtil {
   public boolean isAutoUpdateInjectedSpringPropertiesEnabled() {
     return autoUpdateInjectedSpringProperties;
   }
+
+  private void initLocalFileWatch() {
+    String customizedDebounce = System.getProperty("apollo.localFileWatchDebounceInMillis");
+    if (!Strings.isNullOrEmpty(customizedDebounce)) {
+      try {
+        localFileWatchDebounceInMillis = Long.valueOf(customizedDebounce);
+      } catch (Throwable ex) {
+        logger.error("Config for apollo.localFileWatchDebounceInMillis is invalid: {}", customizedDebounce);
+      }
+    }
+
+    String customizedPollingInterval = System.getProperty("apollo.localFilePollingIntervalInMillis");
+    if (!Strings.isNullOrEmpty(customizedPollingInterval)) {
+      try {
+        localFilePollingIntervalInMillis = Long.valueOf(customizedPollingInterval);
+      } catch (Throwable ex) {
+        logger.error("Config for apollo.localFilePollingIntervalInMillis is invalid: {}", customizedPollingInterval);
+      }
+    }
+  }
+
+  public long getLocalFileWatchDebounceInMillis() {
+    return localFileWatchDebounceInMillis;
+  }
+
+  public long getLocalFilePollingIntervalInMillis() {
+    return localFilePollingIntervalInMillis;
+  }
+
+  private void initKeyLevelNotification() {
+    // 1. Get from System Property
+    String enableKeyLevelNotification = System.getProperty("apollo.keyLevelNotification.enabled");
+    if (Strings.isNullOrEmpty(enableKeyLevelNotification)) {
+      // 2. Get from app.properties
+      enableKeyLevelNotification = Foundation.app().getProperty("apollo.keyLevelNotification.enabled", null);
+    }
+    if (!Strings.isNullOrEmpty(enableKeyLevelNotification)) {
+      keyLevelNotificationEnabled = Boolean.parseBoolean(enableKeyLevelNotification.trim());
+    }
+  }
+
+  /**
+   * Whether to ask the config service for the changed keys of each release, so that the client could skip the
+   * refetch when none of the keys it uses is changed.
+   */
+  public boolean isKeyLevelNotificationEnabled() {
+    return keyLevelNotificationEnabled;
+  }
+
+  private void initSkippedRefetchDelayInMills() {
+    String customizedSkippedRefetchDelay = System.getProperty("apollo.keyLevelNotification.refetchDelayInMills");
+    if (Strings.isNullOrEmpty(customizedSkippedRefetchDelay)) {
+      customizedSkippedRefetchDelay =
+          Foundation.app().getProperty("apollo.keyLevelNotification.refetchDelayInMills", null);
+    }
+    if (!Strings.isNullOrEmpty(customizedSkippedRefetchDelay)) {
+      try {
+        skippedRefetchDelayInMills = Math.max(0, Long.valueOf(customizedSkippedRefetchDelay.trim()));
+      } catch (Throwable ex) {
+        logger.error("Config for apollo.keyLevelNotification.refetchDelayInMills is invalid: {}",
+            customizedSkippedRefetchDelay);
+      }
+    }
+  }
+
+  /**
+   * The base delay to refetch a namespace whose refetch is skipped by the key level notification, the actual delay is
+   * randomized up to twice of it.
+   */
+  public long getSkippedRefetchDelayInMills() {
+    return skippedRefetchDelayInMills;
+  }
 }
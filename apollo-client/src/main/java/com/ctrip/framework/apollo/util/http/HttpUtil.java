@@ -5,7 +5,9 @@ import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
 import com.ctrip.framework.apollo.exceptions.ApolloConfigStatusCodeException;
 import com.ctrip.framework.apollo.util.ConfigUtil;
 import com.google.common.base.Function;
+import com.google.common.base.Strings;
 import com.google.common.io.CharStreams;
+import com.google.common.primitives.Longs;
 import com.google.gson.Gson;
 import java.io.IOException;
 import java.io.InputStream;
@@ -19,6 +21,9 @@ import java.nio.charset.StandardCharsets;
  * @author Jason Song(song_s@ctrip.com)
  */
 public class HttpUtil {
+  private static final String RETRY_AFTER_HEADER = "Retry-After";
+  //not to wait too long in case of a misbehaving proxy
+  private static final long MAX_RETRY_AFTER_IN_SECONDS = 120;
   private ConfigUtil m_configUtil;
   private Gson gson;
 
@@ -121,7 +126,8 @@ public class HttpUtil {
           throw ex;
         } else {
           // for status codes like 404, IOException is expected when calling conn.getInputStream()
-          throw new ApolloConfigStatusCodeException(statusCode, ex);
+          throw new ApolloConfigStatusCodeException(statusCode, ex,
+              parseRetryAfter(conn.getHeaderField(RETRY_AFTER_HEADER)));
         }
       }
 
@@ -158,4 +164,15 @@ public class HttpUtil {
         String.format("Get operation failed for %s", httpRequest.getUrl()));
   }
 
+  /**
+   * Only the delay seconds are supported, as the config service never responds with http dates
+   */
+  static long parseRetryAfter(String retryAfter) {
+    if (Strings.isNullOrEmpty(retryAfter)) {
+      return -1;
+    }
+    Long seconds = Longs.tryParse(retryAfter.trim());
+    return seconds == null || seconds < 0 ? -1 : Math.min(seconds, MAX_RETRY_AFTER_IN_SECONDS);
+  }
+
 }
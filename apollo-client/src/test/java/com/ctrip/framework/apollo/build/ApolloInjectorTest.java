@@ -0,0 +1,61 @@
+package com.ctrip.framework.apollo.build;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
+import com.ctrip.framework.apollo.internals.SimpleInjector;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+
+public class ApolloInjectorTest {
+  private static final String NATIVE_IMAGE_PROPERTY = "org.graalvm.nativeimage.imagecode";
+  private Field injectorField;
+  private Object originalInjector;
+  private ClassLoader originalClassLoader;
+
+  @Before
+  public void setUp() throws Exception {
+    injectorField = ApolloInjector.class.getDeclaredField("s_injector");
+    injectorField.setAccessible(true);
+    originalInjector = injectorField.get(null);
+    originalClassLoader = Thread.currentThread().getContextClassLoader();
+
+    injectorField.set(null, null);
+    //no injector could be found, just like the guice one failing to initialize
+    Thread.currentThread().setContextClassLoader(new URLClassLoader(new URL[0], null));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    Thread.currentThread().setContextClassLoader(originalClassLoader);
+    System.clearProperty(NATIVE_IMAGE_PROPERTY);
+    injectorField.set(null, originalInjector);
+  }
+
+  @Test
+  public void testFallbackToSimpleInjectorInNativeImage() throws Exception {
+    System.setProperty(NATIVE_IMAGE_PROPERTY, "runtime");
+
+    //the first call should succeed
+    assertNotNull(ApolloInjector.getInstance(ConfigUtil.class));
+    assertTrue(injectorField.get(null) instanceof SimpleInjector);
+  }
+
+  @Test(expected = ApolloConfigException.class)
+  public void testInitializeInjectorFailed() throws Exception {
+    try {
+      ApolloInjector.getInstance(ConfigUtil.class);
+    } finally {
+      assertNull(injectorField.get(null));
+    }
+  }
+}
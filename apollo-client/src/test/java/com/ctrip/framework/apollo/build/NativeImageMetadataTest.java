@@ -0,0 +1,66 @@
+package com.ctrip.framework.apollo.build;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.ctrip.framework.apollo.core.utils.ClassLoaderUtil;
+import com.google.common.reflect.TypeToken;
+import com.google.gson.Gson;
+
+/**
+ * Make sure the native image metadata shipped with apollo-core and apollo-client stays in sync with the code.
+ */
+public class NativeImageMetadataTest {
+  private static final String[] METADATA_DIRS = {
+      "META-INF/native-image/com.ctrip.framework.apollo/apollo-core/",
+      "META-INF/native-image/com.ctrip.framework.apollo/apollo-client/"
+  };
+  private Gson gson = new Gson();
+
+  @Test
+  public void testReflectionConfigClassesExist() throws Exception {
+    Type type = new TypeToken<List<Map<String, Object>>>() {
+    }.getType();
+
+    for (String dir : METADATA_DIRS) {
+      List<Map<String, Object>> entries = read(dir + "reflect-config.json", type);
+      assertFalse(entries.isEmpty());
+      for (Map<String, Object> entry : entries) {
+        Class.forName((String) entry.get("name"), false, ClassLoaderUtil.getLoader());
+      }
+    }
+  }
+
+  @Test
+  public void testResourceConfigServicesExist() throws Exception {
+    Type type = new TypeToken<Map<String, List<Map<String, String>>>>() {
+    }.getType();
+
+    for (String dir : METADATA_DIRS) {
+      Map<String, List<Map<String, String>>> config = read(dir + "resource-config.json", type);
+      for (Map<String, String> resource : config.get("resources")) {
+        String name = resource.get("pattern").replace("\\Q", "").replace("\\E", "");
+        // app.properties and apollo-env.properties are provided by the application
+        if (name.startsWith("META-INF/services/") || name.endsWith(".xsd")) {
+          assertNotNull(name, ClassLoaderUtil.getLoader().getResource(name));
+        }
+      }
+    }
+  }
+
+  private <T> T read(String resource, Type type) throws Exception {
+    try (InputStream in = ClassLoaderUtil.getLoader().getResourceAsStream(resource)) {
+      assertNotNull(resource, in);
+      return gson.fromJson(new InputStreamReader(in, StandardCharsets.UTF_8), type);
+    }
+  }
+}
@@ -0,0 +1,95 @@
+package com.ctrip.framework.apollo.internals;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import com.ctrip.framework.apollo.build.ApolloInjector;
+import com.ctrip.framework.apollo.spi.ConfigFactory;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.ctrip.framework.apollo.util.http.HttpUtil;
+import com.ctrip.framework.apollo.util.yaml.YamlParser;
+import com.google.common.collect.Lists;
+
+/**
+ * Compares the startup cost of {@link DefaultInjector} and {@link SimpleInjector}.
+ * <br />
+ * Each round runs in a fresh JVM, with the injector selected through /META-INF/services just like applications do,
+ * and reports the time and the number of loaded classes until the core singletons are available.
+ * <br />
+ * Usage: run the main method with the test classpath, optionally passing the number of rounds (5 by default).
+ */
+public class InjectorStartupBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+
+    List<Class<? extends Injector>> injectorClasses =
+        Lists.<Class<? extends Injector>>newArrayList(DefaultInjector.class, SimpleInjector.class);
+
+    for (Class<? extends Injector> injectorClass : injectorClasses) {
+      long totalTimeInMicros = 0;
+      long totalLoadedClasses = 0;
+      for (int i = 0; i < rounds; i++) {
+        String[] result = runProbe(injectorClass).split(",");
+        totalTimeInMicros += Long.parseLong(result[0]);
+        totalLoadedClasses += Long.parseLong(result[1]);
+      }
+      System.out.println(String.format("%s: average startup %.2f ms, average loaded classes %d",
+          injectorClass.getSimpleName(), totalTimeInMicros / 1000.0 / rounds, totalLoadedClasses / rounds));
+    }
+  }
+
+  private static String runProbe(Class<? extends Injector> injectorClass) throws Exception {
+    // put the services declaration in front of the classpath so that it's the first one ServiceBootstrap finds
+    Path servicesDir = Files.createTempDirectory("apollo-injector-benchmark");
+    Path servicesFile = servicesDir.resolve("META-INF/services/" + Injector.class.getName());
+    Files.createDirectories(servicesFile.getParent());
+    Files.write(servicesFile, injectorClass.getName().getBytes(StandardCharsets.UTF_8));
+
+    String javaBin = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+    String classpath = servicesDir.toString() + File.pathSeparator + System.getProperty("java.class.path");
+    List<String> command = Lists.newArrayList(javaBin, "-cp", classpath, Probe.class.getName());
+
+    Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+    String result = null;
+    try (BufferedReader reader = new BufferedReader(
+        new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.startsWith(Probe.RESULT_PREFIX)) {
+          result = line.substring(Probe.RESULT_PREFIX.length());
+        }
+      }
+    }
+    process.waitFor();
+
+    if (result == null) {
+      throw new IllegalStateException("Probe failed for " + injectorClass.getName());
+    }
+    return result;
+  }
+
+  public static class Probe {
+    static final String RESULT_PREFIX = "RESULT:";
+
+    public static void main(String[] args) {
+      long start = System.nanoTime();
+
+      ApolloInjector.getInstance(ConfigUtil.class);
+      ApolloInjector.getInstance(HttpUtil.class);
+      ApolloInjector.getInstance(ConfigManager.class);
+      ApolloInjector.getInstance(ConfigFactory.class);
+      ApolloInjector.getInstance(YamlParser.class);
+
+      long elapsedInMicros = (System.nanoTime() - start) / 1000;
+      long loadedClasses = ManagementFactory.getClassLoadingMXBean().getLoadedClassCount();
+      System.out.println(RESULT_PREFIX + elapsedInMicros + "," + loadedClasses);
+    }
+  }
+}
@@ -5,6 +5,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -184,6 +185,40 @@ public class LocalFileConfigRepositoryTest {
     assertEquals(anotherSourceType, localFileConfigRepository.getSourceType());
   }
 
+  @Test
+  public void testReloadLocalFileInLocalMode() throws Exception {
+    MockInjector.setInstance(ConfigUtil.class, new MockLocalModeConfigUtil());
+    MockInjector.setInstance(LocalFileConfigWatchService.class, new LocalFileConfigWatchService());
+
+    String someKey = "someKey";
+    String someValue = "someValue";
+    String anotherValue = "anotherValue";
+
+    Properties someProperties = new Properties();
+    someProperties.setProperty(someKey, someValue);
+    createLocalCachePropertyFile(someProperties);
+
+    RepositoryChangeListener someListener = mock(RepositoryChangeListener.class);
+
+    LocalFileConfigRepository localRepo = new LocalFileConfigRepository(someNamespace);
+    localRepo.setLocalCacheDir(someBaseDir, true);
+    localRepo.addChangeListener(someListener);
+
+    assertEquals(someValue, localRepo.getConfig().getProperty(someKey));
+
+    Properties anotherProperties = new Properties();
+    anotherProperties.setProperty(someKey, anotherValue);
+    createLocalCachePropertyFile(anotherProperties);
+
+    final ArgumentCaptor<Properties> captor = ArgumentCaptor.forClass(Properties.class);
+
+    verify(someListener, timeout(15000).times(1)).onRepositoryChange(eq(someNamespace), captor.capture());
+
+    assertEquals(anotherValue, captor.getValue().getProperty(someKey));
+    assertEquals(anotherValue, localRepo.getConfig().getProperty(someKey));
+    assertEquals(ConfigSourceType.LOCAL, localRepo.getSourceType());
+  }
+
   public static class MockConfigUtil extends ConfigUtil {
     @Override
     public String getAppId() {
@@ -196,6 +231,18 @@ public class LocalFileConfigRepositoryTest {
     }
   }
 
+  public static class MockLocalModeConfigUtil extends MockConfigUtil {
+    @Override
+    public boolean isInLocalMode() {
+      return true;
+    }
+
+    @Override
+    public long getLocalFilePollingIntervalInMillis() {
+      return 50;
+    }
+  }
+
   private File createLocalCachePropertyFile(Properties properties) throws IOException {
     File file = new File(someBaseDir, assembleLocalCacheFileName());
     FileOutputStream in = null;
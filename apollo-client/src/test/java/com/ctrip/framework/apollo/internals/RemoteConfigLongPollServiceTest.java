@@ -14,6 +14,7 @@ import static org.mockito.Mockito.when;
 import java.lang.reflect.Type;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -23,6 +24,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.Matchers;
 import org.mockito.Mock;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
@@ -117,7 +119,8 @@ public class RemoteConfigLongPollServiceTest {
 
     remoteConfigLongPollService.stopLongPollingRefresh();
 
-    verify(someRepository, never()).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class));
+    verify(someRepository, never()).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class),
+        Matchers.<Set<String>>any());
   }
 
   @Test
@@ -160,7 +163,8 @@ public class RemoteConfigLongPollServiceTest {
         onNotified.set(true);
         return null;
       }
-    }).when(someRepository).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class));
+    }).when(someRepository).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class),
+        Matchers.<Set<String>>any());
 
     remoteConfigLongPollService.submit(someNamespace, someRepository);
 
@@ -169,7 +173,8 @@ public class RemoteConfigLongPollServiceTest {
     remoteConfigLongPollService.stopLongPollingRefresh();
 
     final ArgumentCaptor<ApolloNotificationMessages> captor = ArgumentCaptor.forClass(ApolloNotificationMessages.class);
-    verify(someRepository, times(1)).onLongPollNotified(any(ServiceDTO.class), captor.capture());
+    verify(someRepository, times(1)).onLongPollNotified(any(ServiceDTO.class), captor.capture(),
+        Matchers.<Set<String>>any());
 
     ApolloNotificationMessages captured = captor.getValue();
 
@@ -240,7 +245,8 @@ public class RemoteConfigLongPollServiceTest {
         onAnotherRepositoryNotified.set(true);
         return null;
       }
-    }).when(anotherRepository).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class));
+    }).when(anotherRepository).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class),
+        Matchers.<Set<String>>any());
 
     remoteConfigLongPollService.submit(someNamespace, someRepository);
 
@@ -252,8 +258,10 @@ public class RemoteConfigLongPollServiceTest {
 
     remoteConfigLongPollService.stopLongPollingRefresh();
 
-    verify(someRepository, times(1)).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class));
-    verify(anotherRepository, times(1)).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class));
+    verify(someRepository, times(1)).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class),
+        Matchers.<Set<String>>any());
+    verify(anotherRepository, times(1)).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class),
+        Matchers.<Set<String>>any());
   }
 
   @Test
@@ -303,7 +311,8 @@ public class RemoteConfigLongPollServiceTest {
         someRepositoryNotified.set(true);
         return null;
       }
-    }).when(someRepository).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class));
+    }).when(someRepository).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class),
+        Matchers.<Set<String>>any());
     final SettableFuture<Boolean> anotherRepositoryNotified = SettableFuture.create();
     doAnswer(new Answer<Void>() {
       @Override
@@ -311,7 +320,8 @@ public class RemoteConfigLongPollServiceTest {
         anotherRepositoryNotified.set(true);
         return null;
       }
-    }).when(anotherRepository).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class));
+    }).when(anotherRepository).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class),
+        Matchers.<Set<String>>any());
 
     remoteConfigLongPollService.submit(someNamespace, someRepository);
     remoteConfigLongPollService.submit(anotherNamespace, anotherRepository);
@@ -323,8 +333,10 @@ public class RemoteConfigLongPollServiceTest {
 
     final ArgumentCaptor<ApolloNotificationMessages> captor = ArgumentCaptor.forClass(ApolloNotificationMessages.class);
     final ArgumentCaptor<ApolloNotificationMessages> anotherCaptor = ArgumentCaptor.forClass(ApolloNotificationMessages.class);
-    verify(someRepository, times(1)).onLongPollNotified(any(ServiceDTO.class), captor.capture());
-    verify(anotherRepository, times(1)).onLongPollNotified(any(ServiceDTO.class), anotherCaptor.capture());
+    verify(someRepository, times(1)).onLongPollNotified(any(ServiceDTO.class), captor.capture(),
+        Matchers.<Set<String>>any());
+    verify(anotherRepository, times(1)).onLongPollNotified(any(ServiceDTO.class), anotherCaptor.capture(),
+        Matchers.<Set<String>>any());
 
     ApolloNotificationMessages result = captor.getValue();
     assertEquals(1, result.getDetails().size());
@@ -372,7 +384,8 @@ public class RemoteConfigLongPollServiceTest {
         onNotified.set(true);
         return null;
       }
-    }).when(someRepository).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class));
+    }).when(someRepository).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class),
+        Matchers.<Set<String>>any());
 
     remoteConfigLongPollService.submit(someNamespace, someRepository);
 
@@ -382,7 +395,8 @@ public class RemoteConfigLongPollServiceTest {
     when(pollResponse.getStatusCode()).thenReturn(HttpServletResponse.SC_NOT_MODIFIED);
 
     final ArgumentCaptor<ApolloNotificationMessages> captor = ArgumentCaptor.forClass(ApolloNotificationMessages.class);
-    verify(someRepository, times(1)).onLongPollNotified(any(ServiceDTO.class), captor.capture());
+    verify(someRepository, times(1)).onLongPollNotified(any(ServiceDTO.class), captor.capture(),
+        Matchers.<Set<String>>any());
 
     ApolloNotificationMessages captured = captor.getValue();
 
@@ -396,7 +410,8 @@ public class RemoteConfigLongPollServiceTest {
         anotherOnNotified.set(true);
         return null;
       }
-    }).when(someRepository).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class));
+    }).when(someRepository).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class),
+        Matchers.<Set<String>>any());
 
     String anotherKey = "anotherKey";
     long anotherNotificationId = 2;
@@ -409,7 +424,8 @@ public class RemoteConfigLongPollServiceTest {
 
     remoteConfigLongPollService.stopLongPollingRefresh();
 
-    verify(someRepository, times(2)).onLongPollNotified(any(ServiceDTO.class), captor.capture());
+    verify(someRepository, times(2)).onLongPollNotified(any(ServiceDTO.class), captor.capture(),
+        Matchers.<Set<String>>any());
 
     captured = captor.getValue();
 
@@ -7,7 +7,9 @@ import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.atLeast;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -17,6 +19,7 @@ import java.lang.reflect.Type;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import javax.servlet.http.HttpServletResponse;
@@ -41,6 +44,7 @@ import com.ctrip.framework.apollo.util.http.HttpRequest;
 import com.ctrip.framework.apollo.util.http.HttpResponse;
 import com.ctrip.framework.apollo.util.http.HttpUtil;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.net.UrlEscapers;
@@ -205,6 +209,83 @@ public class RemoteConfigRepositoryTest {
     assertTrue(request.getUrl().contains("messages=%7B%22details%22%3A%7B%22someKey%22%3A1%7D%7D"));
   }
 
+  @Test
+  public void testLongPollNotifiedWithChangedKeys() throws Exception {
+    MockInjector.setInstance(ConfigUtil.class, new MockKeyLevelNotificationConfigUtil());
+
+    Map<String, String> configurations = ImmutableMap.of("someKey", "someValue");
+    ApolloConfig someApolloConfig = assembleApolloConfig(configurations);
+
+    when(someResponse.getStatusCode()).thenReturn(200);
+    when(someResponse.getBody()).thenReturn(someApolloConfig);
+
+    InterestedKeysAwareListener someListener = mock(InterestedKeysAwareListener.class);
+    Set<String> someChangedKeys = ImmutableSet.of("anotherKey");
+    Set<String> anotherChangedKeys = ImmutableSet.of("someKey");
+    when(someListener.isAnyKeyInterested(someChangedKeys)).thenReturn(false);
+    //the skipped keys are checked again along with the new ones
+    when(someListener.isAnyKeyInterested(ImmutableSet.of("someKey", "anotherKey"))).thenReturn(true);
+
+    RemoteConfigRepository remoteConfigRepository = new RemoteConfigRepository(someNamespace);
+    remoteConfigRepository.addChangeListener(someListener);
+
+    Map<String, String> newConfigurations = ImmutableMap.of("someKey", "anotherValue");
+    when(someResponse.getBody()).thenReturn(assembleApolloConfig(newConfigurations));
+
+    ServiceDTO someServiceDTO = mock(ServiceDTO.class);
+    when(someServiceDTO.getHomepageUrl()).thenReturn(someServerUrl);
+
+    //none of the changed keys is interested, so no refetch
+    remoteConfigRepository.onLongPollNotified(someServiceDTO, null, someChangedKeys);
+
+    verify(httpUtil, times(1)).doGet(any(HttpRequest.class), eq(ApolloConfig.class));
+    verify(someListener, never()).onRepositoryChange(any(String.class), any(Properties.class));
+
+    remoteConfigRepository.onLongPollNotified(someServiceDTO, null, anotherChangedKeys);
+
+    final ArgumentCaptor<Properties> captor = ArgumentCaptor.forClass(Properties.class);
+    verify(someListener, timeout(5000).times(1)).onRepositoryChange(eq(someNamespace), captor.capture());
+    assertEquals(newConfigurations, captor.getValue());
+
+    remoteConfigLongPollService.stopLongPollingRefresh();
+  }
+
+  @Test
+  public void testSkippedRefetchIsScheduled() throws Exception {
+    MockInjector.setInstance(ConfigUtil.class, new MockKeyLevelNotificationConfigUtil() {
+      @Override
+      public long getSkippedRefetchDelayInMills() {
+        return 10;
+      }
+    });
+
+    Map<String, String> configurations = ImmutableMap.of("someKey", "someValue");
+    when(someResponse.getStatusCode()).thenReturn(200);
+    when(someResponse.getBody()).thenReturn(assembleApolloConfig(configurations));
+
+    InterestedKeysAwareListener someListener = mock(InterestedKeysAwareListener.class);
+    Set<String> someChangedKeys = ImmutableSet.of("anotherKey");
+    when(someListener.isAnyKeyInterested(someChangedKeys)).thenReturn(false);
+
+    RemoteConfigRepository remoteConfigRepository = new RemoteConfigRepository(someNamespace);
+    remoteConfigRepository.addChangeListener(someListener);
+
+    Map<String, String> newConfigurations = ImmutableMap.of("someKey", "someValue", "anotherKey", "anotherValue");
+    when(someResponse.getBody()).thenReturn(assembleApolloConfig(newConfigurations));
+
+    ServiceDTO someServiceDTO = mock(ServiceDTO.class);
+
+    remoteConfigRepository.onLongPollNotified(someServiceDTO, null, someChangedKeys);
+
+    //the skipped change is still pulled in shortly
+    final ArgumentCaptor<Properties> captor = ArgumentCaptor.forClass(Properties.class);
+    verify(someListener, timeout(5000).times(1)).onRepositoryChange(eq(someNamespace), captor.capture());
+    assertEquals(newConfigurations, captor.getValue());
+    assertEquals(newConfigurations, remoteConfigRepository.getConfig());
+
+    remoteConfigLongPollService.stopLongPollingRefresh();
+  }
+
   @Test
   public void testAssembleQueryConfigUrl() throws Exception {
     Gson gson = new Gson();
@@ -293,6 +374,16 @@ public class RemoteConfigRepositoryTest {
     }
   }
 
+  public static class MockKeyLevelNotificationConfigUtil extends MockConfigUtil {
+    @Override
+    public boolean isKeyLevelNotificationEnabled() {
+      return true;
+    }
+  }
+
+  public interface InterestedKeysAwareListener extends RepositoryChangeListener, InterestedKeysAware {
+  }
+
   public static class MockHttpUtil extends HttpUtil {
     @Override
     public <T> HttpResponse<T> doGet(HttpRequest httpRequest, Class<T> responseType) {
@@ -0,0 +1,55 @@
+package com.ctrip.framework.apollo.internals;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
+import com.ctrip.framework.apollo.spi.ConfigFactory;
+import com.ctrip.framework.apollo.spi.ConfigFactoryManager;
+import com.ctrip.framework.apollo.spi.ConfigRegistry;
+import com.ctrip.framework.apollo.spi.DefaultConfigFactory;
+import com.ctrip.framework.apollo.spi.DefaultConfigFactoryManager;
+import com.ctrip.framework.apollo.spi.DefaultConfigRegistry;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.ctrip.framework.apollo.util.http.HttpUtil;
+import com.ctrip.framework.apollo.util.yaml.YamlParser;
+
+public class SimpleInjectorTest {
+  private SimpleInjector simpleInjector;
+
+  @Before
+  public void setUp() throws Exception {
+    simpleInjector = new SimpleInjector();
+  }
+
+  @Test
+  public void testGetInstance() throws Exception {
+    assertTrue(simpleInjector.getInstance(ConfigManager.class) instanceof DefaultConfigManager);
+    assertTrue(simpleInjector.getInstance(ConfigFactoryManager.class) instanceof DefaultConfigFactoryManager);
+    assertTrue(simpleInjector.getInstance(ConfigRegistry.class) instanceof DefaultConfigRegistry);
+    assertTrue(simpleInjector.getInstance(ConfigFactory.class) instanceof DefaultConfigFactory);
+    assertTrue(simpleInjector.getInstance(ConfigUtil.class) != null);
+    assertTrue(simpleInjector.getInstance(HttpUtil.class) != null);
+    assertTrue(simpleInjector.getInstance(YamlParser.class) != null);
+  }
+
+  @Test
+  public void testGetInstanceIsSingleton() throws Exception {
+    assertSame(simpleInjector.getInstance(ConfigUtil.class), simpleInjector.getInstance(ConfigUtil.class));
+    assertSame(simpleInjector.getInstance(ConfigManager.class), simpleInjector.getInstance(ConfigManager.class));
+  }
+
+  @Test
+  public void testGetInstanceWithName() throws Exception {
+    assertNull(simpleInjector.getInstance(ConfigUtil.class, "someName"));
+  }
+
+  @Test(expected = ApolloConfigException.class)
+  public void testGetInstanceWithoutBinding() throws Exception {
+    simpleInjector.getInstance(String.class);
+  }
+}
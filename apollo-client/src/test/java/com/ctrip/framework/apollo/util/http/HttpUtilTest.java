@@ -0,0 +1,23 @@
+package com.ctrip.framework.apollo.util.http;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class HttpUtilTest {
+
+  @Test
+  public void testParseRetryAfter() throws Exception {
+    assertEquals(3, HttpUtil.parseRetryAfter("3"));
+    assertEquals(3, HttpUtil.parseRetryAfter(" 3 "));
+    assertEquals(120, HttpUtil.parseRetryAfter("3600"));
+  }
+
+  @Test
+  public void testParseRetryAfterNotSupported() throws Exception {
+    assertEquals(-1, HttpUtil.parseRetryAfter(null));
+    assertEquals(-1, HttpUtil.parseRetryAfter(""));
+    assertEquals(-1, HttpUtil.parseRetryAfter("-1"));
+    assertEquals(-1, HttpUtil.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT"));
+  }
+}
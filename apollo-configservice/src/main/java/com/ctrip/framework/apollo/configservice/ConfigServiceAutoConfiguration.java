@@ -6,13 +6,22 @@ import com.ctrip.framework.apollo.biz.message.ReleaseMessageScanner;
 import com.ctrip.framework.apollo.configservice.controller.ConfigFileController;
 import com.ctrip.framework.apollo.configservice.controller.NotificationController;
 import com.ctrip.framework.apollo.configservice.controller.NotificationControllerV2;
+import com.ctrip.framework.apollo.configservice.controller.SerializedApolloConfigHttpMessageConverter;
+import com.ctrip.framework.apollo.configservice.filter.AdmissionControlFilter;
+import com.ctrip.framework.apollo.configservice.service.AdmissionControl;
+import com.ctrip.framework.apollo.configservice.service.ConfigResponseCache;
 import com.ctrip.framework.apollo.configservice.service.ReleaseMessageServiceWithCache;
 import com.ctrip.framework.apollo.configservice.service.config.ConfigService;
 import com.ctrip.framework.apollo.configservice.service.config.ConfigServiceWithCache;
 import com.ctrip.framework.apollo.configservice.service.config.DefaultConfigService;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.security.crypto.password.NoOpPasswordEncoder;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
@@ -44,6 +53,43 @@ public class ConfigServiceAutoConfiguration {
     return (NoOpPasswordEncoder) NoOpPasswordEncoder.getInstance();
   }
 
+  @Configuration
+  static class AdmissionControlConfiguration {
+    private final AdmissionControl admissionControl;
+
+    public AdmissionControlConfiguration(final AdmissionControl admissionControl) {
+      this.admissionControl = admissionControl;
+    }
+
+    @Bean
+    public FilterRegistrationBean longPollAdmissionControlFilter() {
+      FilterRegistrationBean bean = new FilterRegistrationBean();
+      bean.setFilter(new AdmissionControlFilter(admissionControl, AdmissionControl.Category.LONG_POLL));
+      bean.setName("longPollAdmissionControlFilter");
+      bean.addUrlPatterns("/notifications/v2");
+      return bean;
+    }
+
+    @Bean
+    public FilterRegistrationBean configFetchAdmissionControlFilter() {
+      FilterRegistrationBean bean = new FilterRegistrationBean();
+      bean.setFilter(new AdmissionControlFilter(admissionControl, AdmissionControl.Category.CONFIG_FETCH));
+      bean.setName("configFetchAdmissionControlFilter");
+      bean.addUrlPatterns("/configs/*", "/configfiles/*");
+      return bean;
+    }
+  }
+
+  @Configuration
+  static class MessageConverterConfiguration implements WebMvcConfigurer {
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+      //ahead of the gson converter, which would serialize the config again
+      converters.add(0, new SerializedApolloConfigHttpMessageConverter());
+    }
+  }
+
   @Configuration
   static class MessageScannerConfiguration {
     private final NotificationController notificationController;
@@ -52,6 +98,7 @@ public class ConfigServiceAutoConfiguration {
     private final GrayReleaseRulesHolder grayReleaseRulesHolder;
     private final ReleaseMessageServiceWithCache releaseMessageServiceWithCache;
     private final ConfigService configService;
+    private final ConfigResponseCache configResponseCache;
 
     public MessageScannerConfiguration(
         final NotificationController notificationController,
@@ -59,13 +106,15 @@ public class ConfigServiceAutoConfiguration {
         final NotificationControllerV2 notificationControllerV2,
         final GrayReleaseRulesHolder grayReleaseRulesHolder,
         final ReleaseMessageServiceWithCache releaseMessageServiceWithCache,
-        final ConfigService configService) {
+        final ConfigService configService,
+        final ConfigResponseCache configResponseCache) {
       this.notificationController = notificationController;
       this.configFileController = configFileController;
       this.notificationControllerV2 = notificationControllerV2;
       this.grayReleaseRulesHolder = grayReleaseRulesHolder;
       this.releaseMessageServiceWithCache = releaseMessageServiceWithCache;
       this.configService = configService;
+      this.configResponseCache = configResponseCache;
     }
 
     @Bean
@@ -77,6 +126,7 @@ public class ConfigServiceAutoConfiguration {
       releaseMessageScanner.addMessageListener(grayReleaseRulesHolder);
       //2. handle server cache
       releaseMessageScanner.addMessageListener(configService);
+      releaseMessageScanner.addMessageListener(configResponseCache);
       releaseMessageScanner.addMessageListener(configFileController);
       //3. notify clients
       releaseMessageScanner.addMessageListener(notificationControllerV2);
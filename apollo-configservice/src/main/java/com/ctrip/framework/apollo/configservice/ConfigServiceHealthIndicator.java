@@ -1,6 +1,7 @@
 package com.ctrip.framework.apollo.configservice;
 
 import com.ctrip.framework.apollo.biz.service.AppService;
+import com.ctrip.framework.apollo.configservice.service.config.ConfigCachePreloader;
 import org.springframework.boot.actuate.health.Health;
 import org.springframework.boot.actuate.health.HealthIndicator;
 import org.springframework.data.domain.PageRequest;
@@ -10,13 +11,21 @@ import org.springframework.stereotype.Component;
 public class ConfigServiceHealthIndicator implements HealthIndicator {
 
   private final AppService appService;
+  private final ConfigCachePreloader configCachePreloader;
 
-  public ConfigServiceHealthIndicator(final AppService appService) {
+  public ConfigServiceHealthIndicator(
+      final AppService appService,
+      final ConfigCachePreloader configCachePreloader) {
     this.appService = appService;
+    this.configCachePreloader = configCachePreloader;
   }
 
   @Override
   public Health health() {
+    //not to take traffic before the cache is warmed up
+    if (!configCachePreloader.isPreloaded()) {
+      return Health.outOfService().withDetail("Preloading", true).build();
+    }
     int errorCode = check();
     if (errorCode != 0) {
       return Health.down().withDetail("Error Code", errorCode).build();
@@ -0,0 +1,28 @@
+package com.ctrip.framework.apollo.configservice;
+
+import com.ctrip.framework.apollo.biz.grayReleaseRule.GrayReleaseRulesHolder;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * Lets the operators reload the gray release rules after changing them by hand.
+ * <br />
+ * Only exposed via JMX by default, to expose it via http, add grayreleaserules to
+ * management.endpoints.web.exposure.include and keep it away from the clients.
+ */
+@Component
+@Endpoint(id = "grayreleaserules")
+public class GrayReleaseRulesEndpoint {
+
+  private final GrayReleaseRulesHolder grayReleaseRulesHolder;
+
+  public GrayReleaseRulesEndpoint(final GrayReleaseRulesHolder grayReleaseRulesHolder) {
+    this.grayReleaseRulesHolder = grayReleaseRulesHolder;
+  }
+
+  @WriteOperation
+  public void reload() {
+    grayReleaseRulesHolder.reloadGrayReleaseRules();
+  }
+}
@@ -0,0 +1,33 @@
+package com.ctrip.framework.apollo.configservice.controller;
+
+import com.ctrip.framework.apollo.configservice.service.AdmissionControl;
+import com.ctrip.framework.apollo.configservice.service.AdmissionRejectedException;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+
+/**
+ * Respond to the requests rejected after being admitted, e.g. the ones missing the cache when the database loads are
+ * beyond the limit, with 503 and a Retry-After header, while skipping the error logging of
+ * {@link com.ctrip.framework.apollo.common.controller.GlobalDefaultExceptionHandler}.
+ */
+@ControllerAdvice
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class AdmissionRejectedExceptionHandler {
+  private final AdmissionControl admissionControl;
+
+  public AdmissionRejectedExceptionHandler(final AdmissionControl admissionControl) {
+    this.admissionControl = admissionControl;
+  }
+
+  @ExceptionHandler(AdmissionRejectedException.class)
+  public ResponseEntity<Void> admissionRejected(AdmissionRejectedException ex) {
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+        .header(HttpHeaders.RETRY_AFTER, String.valueOf(admissionControl.retryAfterInSeconds()))
+        .build();
+  }
+}
@@ -4,6 +4,7 @@ import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.grayReleaseRule.GrayReleaseRulesHolder;
 import com.ctrip.framework.apollo.biz.message.ReleaseMessageListener;
 import com.ctrip.framework.apollo.biz.message.Topics;
+import com.ctrip.framework.apollo.configservice.util.GzipUtil;
 import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
 import com.ctrip.framework.apollo.configservice.util.WatchKeysUtil;
 import com.ctrip.framework.apollo.core.ConfigConsts;
@@ -15,13 +16,10 @@ import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.RemovalListener;
-import com.google.common.cache.RemovalNotification;
 import com.google.common.cache.Weigher;
-import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Multimap;
-import com.google.common.collect.Multimaps;
+import com.google.common.hash.Hashing;
 import com.google.gson.Gson;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,10 +35,12 @@ import org.springframework.web.bind.annotation.RestController;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -53,16 +53,16 @@ public class ConfigFileController implements ReleaseMessageListener {
   private static final Joiner STRING_JOINER = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR);
   private static final Splitter X_FORWARDED_FOR_SPLITTER = Splitter.on(",").omitEmptyStrings()
       .trimResults();
+  private static final Splitter ETAG_SPLITTER = Splitter.on(",").omitEmptyStrings().trimResults();
   private static final long MAX_CACHE_SIZE = 50 * 1024 * 1024; // 50MB
   private static final long EXPIRE_AFTER_WRITE = 30;
+  private static final String GZIP_ETAG_SUFFIX = "-" + GzipUtil.GZIP;
   private final HttpHeaders propertiesResponseHeaders;
   private final HttpHeaders jsonResponseHeaders;
-  private final ResponseEntity<String> NOT_FOUND_RESPONSE;
-  private Cache<String, String> localCache;
-  private final Multimap<String, String>
-      watchedKeys2CacheKey = Multimaps.synchronizedSetMultimap(HashMultimap.create());
-  private final Multimap<String, String>
-      cacheKey2WatchedKeys = Multimaps.synchronizedSetMultimap(HashMultimap.create());
+  private final ResponseEntity<byte[]> NOT_FOUND_RESPONSE;
+  private Cache<String, ConfigFile> localCache;
+  private final ConcurrentMap<String, Set<String>> watchedKeys2CacheKey = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Set<String>> cacheKey2WatchedKeys = new ConcurrentHashMap<>();
   private static final Gson gson = new Gson();
 
   private final ConfigController configController;
@@ -77,20 +77,12 @@ public class ConfigFileController implements ReleaseMessageListener {
       final GrayReleaseRulesHolder grayReleaseRulesHolder) {
     localCache = CacheBuilder.newBuilder()
         .expireAfterWrite(EXPIRE_AFTER_WRITE, TimeUnit.MINUTES)
-        .weigher((Weigher<String, String>) (key, value) -> value == null ? 0 : value.length())
+        .weigher((Weigher<String, ConfigFile>) (key, value) -> value == null ? 0 : value.weight())
         .maximumWeight(MAX_CACHE_SIZE)
         .removalListener(notification -> {
           String cacheKey = notification.getKey();
           logger.debug("removing cache key: {}", cacheKey);
-          if (!cacheKey2WatchedKeys.containsKey(cacheKey)) {
-            return;
-          }
-          //create a new list to avoid ConcurrentModificationException
-          List<String> watchedKeys = new ArrayList<>(cacheKey2WatchedKeys.get(cacheKey));
-          for (String watchedKey : watchedKeys) {
-            watchedKeys2CacheKey.remove(watchedKey, cacheKey);
-          }
-          cacheKey2WatchedKeys.removeAll(cacheKey);
+          unindex(cacheKey);
           logger.debug("removed cache key: {}", cacheKey);
         })
         .build();
@@ -106,7 +98,7 @@ public class ConfigFileController implements ReleaseMessageListener {
   }
 
   @GetMapping(value = "/{appId}/{clusterName}/{namespace:.+}")
-  public ResponseEntity<String> queryConfigAsProperties(@PathVariable String appId,
+  public ResponseEntity<byte[]> queryConfigAsProperties(@PathVariable String appId,
                                                         @PathVariable String clusterName,
                                                         @PathVariable String namespace,
                                                         @RequestParam(value = "dataCenter", required = false) String dataCenter,
@@ -115,7 +107,7 @@ public class ConfigFileController implements ReleaseMessageListener {
                                                         HttpServletResponse response)
       throws IOException {
 
-    String result =
+    ConfigFile result =
         queryConfig(ConfigFileOutputFormat.PROPERTIES, appId, clusterName, namespace, dataCenter,
             clientIp, request, response);
 
@@ -123,11 +115,11 @@ public class ConfigFileController implements ReleaseMessageListener {
       return NOT_FOUND_RESPONSE;
     }
 
-    return new ResponseEntity<>(result, propertiesResponseHeaders, HttpStatus.OK);
+    return assembleResponse(result, propertiesResponseHeaders, request);
   }
 
   @GetMapping(value = "/json/{appId}/{clusterName}/{namespace:.+}")
-  public ResponseEntity<String> queryConfigAsJson(@PathVariable String appId,
+  public ResponseEntity<byte[]> queryConfigAsJson(@PathVariable String appId,
                                                   @PathVariable String clusterName,
                                                   @PathVariable String namespace,
                                                   @RequestParam(value = "dataCenter", required = false) String dataCenter,
@@ -135,7 +127,7 @@ public class ConfigFileController implements ReleaseMessageListener {
                                                   HttpServletRequest request,
                                                   HttpServletResponse response) throws IOException {
 
-    String result =
+    ConfigFile result =
         queryConfig(ConfigFileOutputFormat.JSON, appId, clusterName, namespace, dataCenter,
             clientIp, request, response);
 
@@ -143,13 +135,13 @@ public class ConfigFileController implements ReleaseMessageListener {
       return NOT_FOUND_RESPONSE;
     }
 
-    return new ResponseEntity<>(result, jsonResponseHeaders, HttpStatus.OK);
+    return assembleResponse(result, jsonResponseHeaders, request);
   }
 
-  String queryConfig(ConfigFileOutputFormat outputFormat, String appId, String clusterName,
-                     String namespace, String dataCenter, String clientIp,
-                     HttpServletRequest request,
-                     HttpServletResponse response) throws IOException {
+  ConfigFile queryConfig(ConfigFileOutputFormat outputFormat, String appId, String clusterName,
+                         String namespace, String dataCenter, String clientIp,
+                         HttpServletRequest request,
+                         HttpServletResponse response) throws IOException {
     //strip out .properties suffix
     namespace = namespaceUtil.filterNamespaceName(namespace);
     //fix the character case issue, such as FX.apollo <-> fx.apollo
@@ -173,10 +165,10 @@ public class ConfigFileController implements ReleaseMessageListener {
     }
 
     //3. if not gray release, check weather cache exists, if exists, return
-    String result = localCache.getIfPresent(cacheKey);
+    ConfigFile result = localCache.getIfPresent(cacheKey);
 
     //4. if not exists, load from ConfigController
-    if (Strings.isNullOrEmpty(result)) {
+    if (result == null) {
       Tracer.logEvent("ConfigFile.Cache.Miss", cacheKey);
       result = loadConfig(outputFormat, appId, clusterName, namespace, dataCenter, clientIp,
           request, response);
@@ -198,11 +190,7 @@ public class ConfigFileController implements ReleaseMessageListener {
       Set<String> watchedKeys =
           watchKeysUtil.assembleAllWatchKeys(appId, clusterName, namespace, dataCenter);
 
-      for (String watchedKey : watchedKeys) {
-        watchedKeys2CacheKey.put(watchedKey, cacheKey);
-      }
-
-      cacheKey2WatchedKeys.putAll(cacheKey, watchedKeys);
+      index(cacheKey, watchedKeys);
       logger.debug("added cache for key: {}", cacheKey);
     } else {
       Tracer.logEvent("ConfigFile.Cache.Hit", cacheKey);
@@ -211,10 +199,10 @@ public class ConfigFileController implements ReleaseMessageListener {
     return result;
   }
 
-  private String loadConfig(ConfigFileOutputFormat outputFormat, String appId, String clusterName,
-                            String namespace, String dataCenter, String clientIp,
-                            HttpServletRequest request,
-                            HttpServletResponse response) throws IOException {
+  private ConfigFile loadConfig(ConfigFileOutputFormat outputFormat, String appId, String clusterName,
+                                String namespace, String dataCenter, String clientIp,
+                                HttpServletRequest request,
+                                HttpServletResponse response) throws IOException {
     ApolloConfig apolloConfig = configController.queryConfig(appId, clusterName, namespace,
         dataCenter, "-1", clientIp, null, request, response);
 
@@ -235,7 +223,73 @@ public class ConfigFileController implements ReleaseMessageListener {
         break;
     }
 
-    return result;
+    return new ConfigFile(result.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Answer with 304 if the client has the same content already, and with the gzipped content if the client accepts it
+   */
+  private ResponseEntity<byte[]> assembleResponse(ConfigFile configFile, HttpHeaders contentHeaders,
+                                                  HttpServletRequest request) {
+    boolean gzipped = configFile.getGzippedContent() != null
+        && GzipUtil.acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+
+    HttpHeaders headers = new HttpHeaders();
+    headers.putAll(contentHeaders);
+    headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    headers.setETag(gzipped ? configFile.getGzipETag() : configFile.getETag());
+
+    if (matchesETag(request.getHeader(HttpHeaders.IF_NONE_MATCH), configFile)) {
+      Tracer.logEvent("ConfigFile.NotModified", configFile.getETag());
+      return new ResponseEntity<>(headers, HttpStatus.NOT_MODIFIED);
+    }
+
+    if (gzipped) {
+      headers.set(HttpHeaders.CONTENT_ENCODING, GzipUtil.GZIP);
+      return new ResponseEntity<>(configFile.getGzippedContent(), headers, HttpStatus.OK);
+    }
+    return new ResponseEntity<>(configFile.getContent(), headers, HttpStatus.OK);
+  }
+
+  private boolean matchesETag(String ifNoneMatch, ConfigFile configFile) {
+    if (Strings.isNullOrEmpty(ifNoneMatch)) {
+      return false;
+    }
+    for (String etag : ETAG_SPLITTER.split(ifNoneMatch)) {
+      //weak comparison, the gzipped content is the same as the plain one
+      if (etag.startsWith("W/")) {
+        etag = etag.substring(2);
+      }
+      if ("*".equals(etag) || configFile.getETag().equals(etag) || configFile.getGzipETag().equals(etag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void index(String cacheKey, Set<String> watchedKeys) {
+    for (String watchedKey : watchedKeys) {
+      //add inside compute so that it won't race with the removal of the empty set
+      watchedKeys2CacheKey.compute(watchedKey, (key, cacheKeys) -> {
+        Set<String> target = cacheKeys == null ? ConcurrentHashMap.newKeySet() : cacheKeys;
+        target.add(cacheKey);
+        return target;
+      });
+    }
+    cacheKey2WatchedKeys.put(cacheKey, ImmutableSet.copyOf(watchedKeys));
+  }
+
+  private void unindex(String cacheKey) {
+    Set<String> watchedKeys = cacheKey2WatchedKeys.remove(cacheKey);
+    if (watchedKeys == null) {
+      return;
+    }
+    for (String watchedKey : watchedKeys) {
+      watchedKeys2CacheKey.computeIfPresent(watchedKey, (key, cacheKeys) -> {
+        cacheKeys.remove(cacheKey);
+        return cacheKeys.isEmpty() ? null : cacheKeys;
+      });
+    }
   }
 
   String assembleCacheKey(ConfigFileOutputFormat outputFormat, String appId, String clusterName,
@@ -258,13 +312,12 @@ public class ConfigFileController implements ReleaseMessageListener {
       return;
     }
 
-    if (!watchedKeys2CacheKey.containsKey(content)) {
+    Set<String> cacheKeys = watchedKeys2CacheKey.get(content);
+    if (cacheKeys == null) {
       return;
     }
 
-    //create a new list to avoid ConcurrentModificationException
-    List<String> cacheKeys = new ArrayList<>(watchedKeys2CacheKey.get(content));
-
+    //invalidating removes the cache key from the set, which is fine for the concurrent set
     for (String cacheKey : cacheKeys) {
       logger.debug("invalidate cache key: {}", cacheKey);
       localCache.invalidate(cacheKey);
@@ -285,6 +338,44 @@ public class ConfigFileController implements ReleaseMessageListener {
     }
   }
 
+  /**
+   * The encoded config file, with the gzipped variant and the strong etag computed once
+   */
+  static class ConfigFile {
+    private final byte[] content;
+    private final byte[] gzippedContent;
+    private final String etag;
+    private final String gzipETag;
+
+    ConfigFile(byte[] content) throws IOException {
+      this.content = content;
+      this.gzippedContent = GzipUtil.gzipIfWorthIt(content);
+      String hash = Hashing.murmur3_128().hashBytes(content).toString();
+      this.etag = "\"" + hash + "\"";
+      this.gzipETag = "\"" + hash + GZIP_ETAG_SUFFIX + "\"";
+    }
+
+    byte[] getContent() {
+      return content;
+    }
+
+    byte[] getGzippedContent() {
+      return gzippedContent;
+    }
+
+    String getETag() {
+      return etag;
+    }
+
+    String getGzipETag() {
+      return gzipETag;
+    }
+
+    int weight() {
+      return content.length + (gzippedContent == null ? 0 : gzippedContent.length);
+    }
+  }
+
   private String tryToGetClientIp(HttpServletRequest request) {
     String forwardedFor = request.getHeader("X-FORWARDED-FOR");
     if (!Strings.isNullOrEmpty(forwardedFor)) {
@@ -6,21 +6,24 @@ import com.ctrip.framework.apollo.biz.message.ReleaseMessageListener;
 import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.biz.utils.EntityManagerUtil;
 import com.ctrip.framework.apollo.common.exception.BadRequestException;
+import com.ctrip.framework.apollo.configservice.service.DeferredResultRegistry;
+import com.ctrip.framework.apollo.configservice.service.NotificationFanoutService;
+import com.ctrip.framework.apollo.configservice.service.ReleaseMessageCoalescer;
 import com.ctrip.framework.apollo.configservice.service.ReleaseMessageServiceWithCache;
+import com.ctrip.framework.apollo.configservice.util.LongPollTimeoutUtil;
 import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
+import com.ctrip.framework.apollo.configservice.util.ReleaseChangedKeysUtil;
 import com.ctrip.framework.apollo.configservice.util.WatchKeysUtil;
 import com.ctrip.framework.apollo.configservice.wrapper.DeferredResultWrapper;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
-import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
-import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
-import com.google.common.collect.Multimaps;
 import com.google.common.collect.Sets;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
@@ -41,9 +44,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 /**
@@ -53,20 +53,21 @@ import java.util.function.Function;
 @RequestMapping("/notifications/v2")
 public class NotificationControllerV2 implements ReleaseMessageListener {
   private static final Logger logger = LoggerFactory.getLogger(NotificationControllerV2.class);
-  private final Multimap<String, DeferredResultWrapper> deferredResults =
-      Multimaps.synchronizedSetMultimap(HashMultimap.create());
   private static final Splitter STRING_SPLITTER =
       Splitter.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR).omitEmptyStrings();
   private static final Type notificationsTypeReference =
       new TypeToken<List<ApolloConfigNotification>>() {
       }.getType();
 
-  private final ExecutorService largeNotificationBatchExecutorService;
-
+  private final DeferredResultRegistry deferredResults;
+  private final NotificationFanoutService notificationFanoutService;
+  private final LongPollTimeoutUtil longPollTimeoutUtil;
+  private final ReleaseMessageCoalescer releaseMessageCoalescer;
   private final WatchKeysUtil watchKeysUtil;
   private final ReleaseMessageServiceWithCache releaseMessageService;
   private final EntityManagerUtil entityManagerUtil;
   private final NamespaceUtil namespaceUtil;
+  private final ReleaseChangedKeysUtil releaseChangedKeysUtil;
   private final Gson gson;
   private final BizConfig bizConfig;
 
@@ -76,16 +77,24 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
       final ReleaseMessageServiceWithCache releaseMessageService,
       final EntityManagerUtil entityManagerUtil,
       final NamespaceUtil namespaceUtil,
+      final ReleaseChangedKeysUtil releaseChangedKeysUtil,
       final Gson gson,
-      final BizConfig bizConfig) {
-    largeNotificationBatchExecutorService = Executors.newSingleThreadExecutor(ApolloThreadFactory.create
-        ("NotificationControllerV2", true));
+      final BizConfig bizConfig,
+      final DeferredResultRegistry deferredResults,
+      final NotificationFanoutService notificationFanoutService,
+      final LongPollTimeoutUtil longPollTimeoutUtil,
+      final ReleaseMessageCoalescer releaseMessageCoalescer) {
     this.watchKeysUtil = watchKeysUtil;
     this.releaseMessageService = releaseMessageService;
     this.entityManagerUtil = entityManagerUtil;
     this.namespaceUtil = namespaceUtil;
+    this.releaseChangedKeysUtil = releaseChangedKeysUtil;
     this.gson = gson;
     this.bizConfig = bizConfig;
+    this.deferredResults = deferredResults;
+    this.notificationFanoutService = notificationFanoutService;
+    this.longPollTimeoutUtil = longPollTimeoutUtil;
+    this.releaseMessageCoalescer = releaseMessageCoalescer;
   }
 
   @GetMapping
@@ -94,7 +103,18 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
       @RequestParam(value = "cluster") String cluster,
       @RequestParam(value = "notifications") String notificationsAsString,
       @RequestParam(value = "dataCenter", required = false) String dataCenter,
-      @RequestParam(value = "ip", required = false) String clientIp) {
+      @RequestParam(value = "ip", required = false) String clientIp,
+      @RequestParam(value = "withChangedKeys", defaultValue = "false") boolean withChangedKeys) {
+    return startLongPoll(appId, cluster, notificationsAsString, dataCenter, clientIp, withChangedKeys).getResult();
+  }
+
+  /**
+   * Register the long polling request, which is shared by the servlet endpoint and the non-blocking one
+   *
+   * @return the registered request, which is completed immediately if there are new notifications already
+   */
+  public DeferredResultWrapper startLongPoll(String appId, String cluster, String notificationsAsString,
+                                             String dataCenter, String clientIp, boolean withChangedKeys) {
     List<ApolloConfigNotification> notifications = null;
 
     try {
@@ -108,7 +128,8 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
       throw new BadRequestException("Invalid format of notifications: " + notificationsAsString);
     }
 
-    DeferredResultWrapper deferredResultWrapper = new DeferredResultWrapper();
+    DeferredResultWrapper deferredResultWrapper = new DeferredResultWrapper(longPollTimeoutUtil.nextTimeoutInMillis());
+    deferredResultWrapper.setChangedKeysRequested(withChangedKeys);
     Set<String> namespaces = Sets.newHashSet();
     Map<String, Long> clientSideNotifications = Maps.newHashMap();
     Map<String, ApolloConfigNotification> filteredNotifications = filterNotifications(appId, notifications);
@@ -127,10 +148,13 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
       throw new BadRequestException("Invalid format of notifications: " + notificationsAsString);
     }
 
-    Multimap<String, String> watchedKeysMap =
-        watchKeysUtil.assembleAllWatchKeys(appId, cluster, namespaces, dataCenter);
+    if (withChangedKeys) {
+      deferredResultWrapper.setClientSideNotifications(clientSideNotifications);
+    }
 
-    Set<String> watchedKeys = Sets.newHashSet(watchedKeysMap.values());
+    WatchKeysUtil.WatchKeys watchKeys = watchKeysUtil.findWatchKeys(appId, cluster, namespaces, dataCenter);
+    Multimap<String, String> watchedKeysMap = watchKeys.getNamespaceWatchKeys();
+    Set<String> watchedKeys = watchKeys.getAllWatchKeys();
 
     /**
      * 1、set deferredResult before the check, for avoid more waiting
@@ -140,19 +164,15 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
     deferredResultWrapper
           .onTimeout(() -> logWatchedKeys(watchedKeys, "Apollo.LongPoll.TimeOutKeys"));
 
+    //register all keys
+    DeferredResultRegistry.Registration registration = deferredResults.register(deferredResultWrapper, watchedKeys);
+
     deferredResultWrapper.onCompletion(() -> {
       //unregister all keys
-      for (String key : watchedKeys) {
-        deferredResults.remove(key, deferredResultWrapper);
-      }
+      registration.unregister();
       logWatchedKeys(watchedKeys, "Apollo.LongPoll.CompletedKeys");
     });
 
-    //register all keys
-    for (String key : watchedKeys) {
-      this.deferredResults.put(key, deferredResultWrapper);
-    }
-
     logWatchedKeys(watchedKeys, "Apollo.LongPoll.RegisteredKeys");
     logger.debug("Listening {} from appId: {}, cluster: {}, namespace: {}, datacenter: {}",
         watchedKeys, appId, cluster, namespaces, dataCenter);
@@ -179,7 +199,7 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
       deferredResultWrapper.setResult(newNotifications);
     }
 
-    return deferredResultWrapper.getResult();
+    return deferredResultWrapper;
   }
 
   private Map<String, ApolloConfigNotification> filterNotifications(String appId,
@@ -262,40 +282,87 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
       return;
     }
 
-    //create a new list to avoid ConcurrentModificationException
-    List<DeferredResultWrapper> results = Lists.newArrayList(deferredResults.get(content));
+    //the ones registered after this message are skipped as they should have seen it already
+    long registrationSequence = deferredResults.currentSequence();
+    releaseMessageCoalescer.submit(content, message.getId(),
+        coalesced -> notifyWaitingClients(message, changedNamespace, registrationSequence, coalesced));
+  }
+
+  private void notifyWaitingClients(ReleaseMessage message, String changedNamespace, long registrationSequence,
+                                    boolean coalesced) {
+    String content = message.getMessage();
+    //the registry tolerates the completed results being removed while iterating, so no need to copy
+    Collection<DeferredResultWrapper> results = deferredResults.get(content);
 
     ApolloConfigNotification configNotification = new ApolloConfigNotification(changedNamespace, message.getId());
     configNotification.addMessage(content, message.getId());
 
+    //the waiting clients up to date with the previous message could skip the refresh if none of the changed keys
+    //matters to them, unless the earlier messages are coalesced, whose changed keys are not included
+    ChangedKeysNotification configNotificationWithChangedKeys =
+        coalesced ? null : assembleNotificationWithChangedKeys(results, changedNamespace, message);
+
     //do async notification if too many clients
-    if (results.size() > bizConfig.releaseMessageNotificationBatch()) {
-      largeNotificationBatchExecutorService.submit(() -> {
-        logger.debug("Async notify {} clients for key {} with batch {}", results.size(), content,
-            bizConfig.releaseMessageNotificationBatch());
-        for (int i = 0; i < results.size(); i++) {
-          if (i > 0 && i % bizConfig.releaseMessageNotificationBatch() == 0) {
-            try {
-              TimeUnit.MILLISECONDS.sleep(bizConfig.releaseMessageNotificationBatchIntervalInMilli());
-            } catch (InterruptedException e) {
-              //ignore
-            }
-          }
-          logger.debug("Async notify {}", results.get(i));
-          results.get(i).setResult(configNotification);
-        }
-      });
+    int size = results.size();
+    if (size > bizConfig.releaseMessageNotificationBatch()) {
+      logger.debug("Async notify {} clients for key {}", size, content);
+      notificationFanoutService.submit(content,
+          Iterables.filter(results, result -> result.getRegistrationSequence() <= registrationSequence), size,
+          result -> result.setResult(selectNotification(result, configNotification, configNotificationWithChangedKeys)));
       return;
     }
 
     logger.debug("Notify {} clients for key {}", results.size(), content);
 
     for (DeferredResultWrapper result : results) {
-      result.setResult(configNotification);
+      if (result.getRegistrationSequence() > registrationSequence) {
+        continue;
+      }
+      result.setResult(selectNotification(result, configNotification, configNotificationWithChangedKeys));
     }
     logger.debug("Notification completed");
   }
 
+  private ChangedKeysNotification assembleNotificationWithChangedKeys(Collection<DeferredResultWrapper> results,
+                                                                      String changedNamespace, ReleaseMessage message) {
+    if (results.stream().noneMatch(DeferredResultWrapper::isChangedKeysRequested)) {
+      return null;
+    }
+    ReleaseChangedKeysUtil.ChangedKeys changedKeys = releaseChangedKeysUtil.findChangedKeys(message);
+    if (changedKeys == null) {
+      return null;
+    }
+    ApolloConfigNotification notification = new ApolloConfigNotification(changedNamespace, message.getId());
+    notification.addMessage(message.getMessage(), message.getId());
+    notification.setChangedKeys(changedKeys.getKeys());
+    return new ChangedKeysNotification(changedNamespace, changedKeys.getPreviousMessageId(), notification);
+  }
+
+  private ApolloConfigNotification selectNotification(DeferredResultWrapper result,
+                                                      ApolloConfigNotification configNotification,
+                                                      ChangedKeysNotification configNotificationWithChangedKeys) {
+    //only the clients which have seen the previous message know what the keys are changed from
+    if (configNotificationWithChangedKeys != null && result.isChangedKeysRequested()
+        && result.getClientSideNotificationId(configNotificationWithChangedKeys.namespace)
+        == configNotificationWithChangedKeys.previousMessageId) {
+      return configNotificationWithChangedKeys.notification;
+    }
+    return configNotification;
+  }
+
+  private static class ChangedKeysNotification {
+    //the normalized one, as the namespace name of the notification is replaced with the client side one
+    private final String namespace;
+    private final long previousMessageId;
+    private final ApolloConfigNotification notification;
+
+    private ChangedKeysNotification(String namespace, long previousMessageId, ApolloConfigNotification notification) {
+      this.namespace = namespace;
+      this.previousMessageId = previousMessageId;
+      this.notification = notification;
+    }
+  }
+
   private static final Function<String, String> retrieveNamespaceFromReleaseMessage =
       releaseMessage -> {
         if (Strings.isNullOrEmpty(releaseMessage)) {
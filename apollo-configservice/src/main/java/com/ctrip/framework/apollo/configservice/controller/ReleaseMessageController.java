@@ -0,0 +1,55 @@
+package com.ctrip.framework.apollo.configservice.controller;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.message.HttpPushMessageSender;
+import com.ctrip.framework.apollo.biz.message.ReleaseMessageScanner;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.google.common.base.Strings;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Receives the release messages pushed by admin services, see
+ * {@link com.ctrip.framework.apollo.biz.message.HttpPushMessageSender}.
+ * <br />
+ * As it sits with the client facing apis, only the pushes carrying the token shared with admin services are accepted.
+ */
+@RestController
+@RequestMapping("/release-messages")
+public class ReleaseMessageController {
+  private final ReleaseMessageScanner releaseMessageScanner;
+  private final BizConfig bizConfig;
+
+  public ReleaseMessageController(final ReleaseMessageScanner releaseMessageScanner, final BizConfig bizConfig) {
+    this.releaseMessageScanner = releaseMessageScanner;
+    this.bizConfig = bizConfig;
+  }
+
+  @PostMapping
+  public ResponseEntity<Void> pushMessage(@RequestParam("id") long id, @RequestParam("message") String message,
+      @RequestHeader(value = HttpPushMessageSender.PUSH_TOKEN_HEADER, required = false) String token) {
+    if (!bizConfig.isReleaseMessagePushEnabled() || !isTokenValid(token)) {
+      Tracer.logEvent("Apollo.ReleaseMessage.PushRejected", String.valueOf(id));
+      return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+    }
+    releaseMessageScanner.handlePushedMessage(id, message);
+    return new ResponseEntity<>(HttpStatus.OK);
+  }
+
+  private boolean isTokenValid(String token) {
+    String expected = bizConfig.releaseMessagePushToken();
+    if (Strings.isNullOrEmpty(expected) || Strings.isNullOrEmpty(token)) {
+      return false;
+    }
+    //constant time comparison
+    return MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8));
+  }
+}
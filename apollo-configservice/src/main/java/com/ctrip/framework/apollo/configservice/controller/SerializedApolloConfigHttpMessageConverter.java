@@ -0,0 +1,65 @@
+package com.ctrip.framework.apollo.configservice.controller;
+
+import com.ctrip.framework.apollo.configservice.util.GzipUtil;
+import com.ctrip.framework.apollo.configservice.wrapper.SerializedApolloConfig;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.io.IOException;
+
+/**
+ * Writes the pre-serialized response of {@link SerializedApolloConfig} as is, and the gzipped one if the client accepts
+ * it, instead of serializing the config for each request.
+ */
+public class SerializedApolloConfigHttpMessageConverter extends AbstractHttpMessageConverter<SerializedApolloConfig> {
+  public SerializedApolloConfigHttpMessageConverter() {
+    super(MediaType.APPLICATION_JSON_UTF8, MediaType.APPLICATION_JSON);
+  }
+
+  @Override
+  protected boolean supports(Class<?> clazz) {
+    return SerializedApolloConfig.class.isAssignableFrom(clazz);
+  }
+
+  @Override
+  protected boolean canRead(MediaType mediaType) {
+    return false;
+  }
+
+  @Override
+  protected SerializedApolloConfig readInternal(Class<? extends SerializedApolloConfig> clazz,
+                                                HttpInputMessage inputMessage) {
+    throw new HttpMessageNotReadableException("SerializedApolloConfig is for responses only");
+  }
+
+  @Override
+  protected void writeInternal(SerializedApolloConfig apolloConfig, HttpOutputMessage outputMessage)
+      throws IOException {
+    byte[] body = apolloConfig.getJson();
+    HttpHeaders headers = outputMessage.getHeaders();
+    headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    if (apolloConfig.getGzippedJson() != null && acceptsGzip()) {
+      body = apolloConfig.getGzippedJson();
+      headers.set(HttpHeaders.CONTENT_ENCODING, GzipUtil.GZIP);
+    }
+    headers.setContentLength(body.length);
+    StreamUtils.copy(body, outputMessage.getBody());
+  }
+
+  private boolean acceptsGzip() {
+    RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+    if (!(requestAttributes instanceof ServletRequestAttributes)) {
+      return false;
+    }
+    return GzipUtil.acceptsGzip(((ServletRequestAttributes) requestAttributes).getRequest()
+        .getHeader(HttpHeaders.ACCEPT_ENCODING));
+  }
+}
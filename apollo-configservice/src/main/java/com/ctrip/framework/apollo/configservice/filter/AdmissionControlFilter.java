@@ -0,0 +1,61 @@
+package com.ctrip.framework.apollo.configservice.filter;
+
+import com.ctrip.framework.apollo.configservice.service.AdmissionControl;
+import com.ctrip.framework.apollo.configservice.util.AdaptiveConcurrencyLimiter.Permit;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Reject the requests beyond the concurrency limit of the category with 429 and a Retry-After header, before they
+ * take any database connection or get parsed.
+ * <br />
+ * For the long polling requests, the permit only covers the registration, as the request is released from the
+ * container thread once the deferred result is returned.
+ */
+public class AdmissionControlFilter implements Filter {
+  private final AdmissionControl admissionControl;
+  private final AdmissionControl.Category category;
+
+  public AdmissionControlFilter(AdmissionControl admissionControl, AdmissionControl.Category category) {
+    this.admissionControl = admissionControl;
+    this.category = category;
+  }
+
+  @Override
+  public void init(FilterConfig filterConfig) throws ServletException {
+    //nothing
+  }
+
+  @Override
+  public void doFilter(ServletRequest req, ServletResponse resp, FilterChain chain) throws
+      IOException, ServletException {
+    Permit permit = admissionControl.tryAcquire(category);
+    if (permit == null) {
+      HttpServletResponse response = (HttpServletResponse) resp;
+      response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(admissionControl.retryAfterInSeconds()));
+      response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+      return;
+    }
+
+    try {
+      chain.doFilter(req, resp);
+    } finally {
+      permit.release();
+    }
+  }
+
+  @Override
+  public void destroy() {
+    //nothing
+  }
+}
@@ -0,0 +1,159 @@
+package com.ctrip.framework.apollo.configservice.netty;
+
+import com.ctrip.framework.apollo.common.exception.AbstractApolloHttpException;
+import com.ctrip.framework.apollo.configservice.controller.NotificationControllerV2;
+import com.ctrip.framework.apollo.configservice.wrapper.DeferredResultWrapper;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.google.gson.Gson;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.ScheduledFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.ResponseEntity;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves the same contract as {@link NotificationControllerV2#pollNotification}, while a waiting client only costs a
+ * channel and a registered {@link DeferredResultWrapper}, no servlet request or container thread.
+ */
+@ChannelHandler.Sharable
+public class NonBlockingNotificationHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+  private static final Logger logger = LoggerFactory.getLogger(NonBlockingNotificationHandler.class);
+  static final String PATH = "/notifications/v2";
+  private static final AttributeKey<DeferredResultWrapper> PENDING_LONG_POLL =
+      AttributeKey.valueOf("apolloPendingLongPoll");
+
+  private final NotificationControllerV2 notificationControllerV2;
+  private final Gson gson;
+
+  public NonBlockingNotificationHandler(final NotificationControllerV2 notificationControllerV2, final Gson gson) {
+    this.notificationControllerV2 = notificationControllerV2;
+    this.gson = gson;
+  }
+
+  @Override
+  protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request) {
+    boolean keepAlive = HttpUtil.isKeepAlive(request);
+    if (!HttpMethod.GET.equals(request.method())) {
+      writeResponse(ctx, HttpResponseStatus.METHOD_NOT_ALLOWED, null, keepAlive);
+      return;
+    }
+    QueryStringDecoder decoder = new QueryStringDecoder(request.uri());
+    if (!PATH.equals(decoder.path())) {
+      writeResponse(ctx, HttpResponseStatus.NOT_FOUND, null, keepAlive);
+      return;
+    }
+
+    if (ctx.channel().attr(PENDING_LONG_POLL).get() != null) {
+      //a request pipelined behind the pending one can't be answered before it, the client should not do so anyway
+      Tracer.logEvent("Apollo.LongPoll.NonBlocking.Pipelined", String.valueOf(ctx.channel().remoteAddress()));
+      ctx.close();
+      return;
+    }
+
+    String appId = parameter(decoder, "appId");
+    String cluster = parameter(decoder, "cluster");
+    String notifications = parameter(decoder, "notifications");
+    if (appId == null || cluster == null || notifications == null) {
+      writeResponse(ctx, HttpResponseStatus.BAD_REQUEST, "appId, cluster and notifications are required", keepAlive);
+      return;
+    }
+
+    DeferredResultWrapper deferredResultWrapper;
+    try {
+      deferredResultWrapper = notificationControllerV2.startLongPoll(appId, cluster, notifications,
+          parameter(decoder, "dataCenter"), parameter(decoder, "ip"),
+          Boolean.parseBoolean(parameter(decoder, "withChangedKeys")));
+    } catch (AbstractApolloHttpException ex) {
+      writeResponse(ctx, HttpResponseStatus.valueOf(ex.getHttpStatus().value()), ex.getMessage(), keepAlive);
+      return;
+    } catch (Throwable ex) {
+      Tracer.logError(ex);
+      logger.error("Start long polling failed", ex);
+      writeResponse(ctx, HttpResponseStatus.INTERNAL_SERVER_ERROR, null, keepAlive);
+      return;
+    }
+
+    ctx.channel().attr(PENDING_LONG_POLL).set(deferredResultWrapper);
+    ScheduledFuture<?> timeoutFuture = ctx.executor().schedule(deferredResultWrapper::timeout,
+        deferredResultWrapper.getTimeoutInMillis(), TimeUnit.MILLISECONDS);
+
+    //the result is set by the thread handling the release message, or immediately if there is one already
+    deferredResultWrapper.getResult().setResultHandler(result -> ctx.executor().execute(() -> {
+      timeoutFuture.cancel(false);
+      if (!ctx.channel().attr(PENDING_LONG_POLL).compareAndSet(deferredResultWrapper, null)) {
+        //the connection is closed already, make sure the keys are not watched any more
+        deferredResultWrapper.complete();
+        return;
+      }
+      writeResult(ctx, result, keepAlive);
+      deferredResultWrapper.complete();
+    }));
+  }
+
+  @Override
+  public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+    DeferredResultWrapper deferredResultWrapper = ctx.channel().attr(PENDING_LONG_POLL).getAndSet(null);
+    if (deferredResultWrapper != null) {
+      //the client is gone, stop watching the keys for it
+      deferredResultWrapper.complete();
+    }
+    super.channelInactive(ctx);
+  }
+
+  @Override
+  public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+    logger.debug("Non-blocking long polling connection failed, closing it", cause);
+    ctx.close();
+  }
+
+  private void writeResult(ChannelHandlerContext ctx, Object result, boolean keepAlive) {
+    if (!(result instanceof ResponseEntity)) {
+      writeResponse(ctx, HttpResponseStatus.INTERNAL_SERVER_ERROR, null, keepAlive);
+      return;
+    }
+    ResponseEntity<?> responseEntity = (ResponseEntity<?>) result;
+    HttpResponseStatus status = HttpResponseStatus.valueOf(responseEntity.getStatusCodeValue());
+    Object body = responseEntity.getBody();
+    writeResponse(ctx, status, body == null ? null : gson.toJson(body), keepAlive);
+  }
+
+  private void writeResponse(ChannelHandlerContext ctx, HttpResponseStatus status, String body, boolean keepAlive) {
+    ByteBuf content = body == null ? Unpooled.EMPTY_BUFFER : Unpooled.copiedBuffer(body, StandardCharsets.UTF_8);
+    FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status, content);
+    if (body != null) {
+      response.headers().set(HttpHeaderNames.CONTENT_TYPE, "application/json;charset=UTF-8");
+    }
+    HttpUtil.setContentLength(response, content.readableBytes());
+    if (keepAlive) {
+      response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
+      ctx.writeAndFlush(response);
+    } else {
+      ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+    }
+  }
+
+  private String parameter(QueryStringDecoder decoder, String name) {
+    List<String> values = decoder.parameters().get(name);
+    return values == null || values.isEmpty() ? null : values.get(0);
+  }
+}
@@ -0,0 +1,103 @@
+package com.ctrip.framework.apollo.configservice.netty;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.configservice.controller.NotificationControllerV2;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.google.gson.Gson;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpServerCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.stereotype.Component;
+
+/**
+ * Optional long polling endpoint on a separate port, enabled by config-service.non-blocking-long-poll.port.
+ * <br />
+ * It shares the watch keys registry with {@link NotificationControllerV2}, so the clients polling either endpoint are
+ * notified by the same release messages. The long polls are registered on the event loop, which is fine as the watch
+ * keys and the latest release messages are served from the in-memory caches.
+ */
+@Component
+public class NonBlockingNotificationServer implements InitializingBean, DisposableBean {
+  private static final Logger logger = LoggerFactory.getLogger(NonBlockingNotificationServer.class);
+  //the notifications of a long polling request are small, reject the abnormal ones
+  private static final int MAX_REQUEST_SIZE = 64 * 1024;
+
+  private final BizConfig bizConfig;
+  private final NotificationControllerV2 notificationControllerV2;
+  private final Gson gson;
+  private EventLoopGroup bossGroup;
+  private EventLoopGroup workerGroup;
+  private Channel serverChannel;
+
+  public NonBlockingNotificationServer(final BizConfig bizConfig,
+                                       final NotificationControllerV2 notificationControllerV2,
+                                       final Gson gson) {
+    this.bizConfig = bizConfig;
+    this.notificationControllerV2 = notificationControllerV2;
+    this.gson = gson;
+  }
+
+  @Override
+  public void afterPropertiesSet() throws Exception {
+    int port = bizConfig.nonBlockingLongPollPort();
+    if (port <= 0) {
+      return;
+    }
+
+    NonBlockingNotificationHandler handler = new NonBlockingNotificationHandler(notificationControllerV2, gson);
+    bossGroup = new NioEventLoopGroup(1, ApolloThreadFactory.create("NonBlockingNotificationServer-boss", true));
+    workerGroup = new NioEventLoopGroup(bizConfig.nonBlockingLongPollThreads(),
+        ApolloThreadFactory.create("NonBlockingNotificationServer-worker", true));
+
+    ServerBootstrap bootstrap = new ServerBootstrap()
+        .group(bossGroup, workerGroup)
+        .channel(NioServerSocketChannel.class)
+        .option(ChannelOption.SO_BACKLOG, 1024)
+        .childOption(ChannelOption.TCP_NODELAY, true)
+        .childOption(ChannelOption.SO_KEEPALIVE, true)
+        .childHandler(new ChannelInitializer<SocketChannel>() {
+          @Override
+          protected void initChannel(SocketChannel channel) {
+            channel.pipeline()
+                .addLast(new HttpServerCodec())
+                .addLast(new HttpObjectAggregator(MAX_REQUEST_SIZE))
+                .addLast(handler);
+          }
+        });
+
+    try {
+      serverChannel = bootstrap.bind(port).sync().channel();
+    } catch (Throwable ex) {
+      destroy();
+      throw ex;
+    }
+    logger.info("Non-blocking long polling endpoint started on port {}", port);
+  }
+
+  @Override
+  public void destroy() {
+    if (serverChannel != null) {
+      serverChannel.close().syncUninterruptibly();
+      serverChannel = null;
+    }
+    if (bossGroup != null) {
+      bossGroup.shutdownGracefully();
+      bossGroup = null;
+    }
+    if (workerGroup != null) {
+      workerGroup.shutdownGracefully();
+      workerGroup = null;
+    }
+  }
+}
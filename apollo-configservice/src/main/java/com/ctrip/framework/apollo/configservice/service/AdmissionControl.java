@@ -0,0 +1,110 @@
+package com.ctrip.framework.apollo.configservice.service;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.configservice.util.AdaptiveConcurrencyLimiter;
+import com.ctrip.framework.apollo.configservice.util.AdaptiveConcurrencyLimiter.Permit;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Admission control of the config service requests, so that an overloaded config service rejects the requests it
+ * could not serve in time cheaply, instead of queueing them on the container threads and the database connections.
+ * <br />
+ * Each {@link Category} has its own {@link AdaptiveConcurrencyLimiter}, so that a storm of cache misses doesn't starve
+ * the requests served from cache, and the rejected clients are told when to retry with jitter.
+ */
+@Service
+public class AdmissionControl implements MeterBinder {
+  private static final Permit UNLIMITED = new Permit() {
+    @Override
+    public void release() {
+    }
+
+    @Override
+    public void drop() {
+    }
+  };
+
+  public enum Category {
+    /**
+     * the registration of long polling requests, not the waiting
+     */
+    LONG_POLL,
+    /**
+     * the config requests, most of which are served from cache
+     */
+    CONFIG_FETCH,
+    /**
+     * the database loads of the config requests missing the cache
+     */
+    CONFIG_LOAD
+  }
+
+  private final BizConfig bizConfig;
+  private final Map<Category, AdaptiveConcurrencyLimiter> limiters;
+
+  public AdmissionControl(final BizConfig bizConfig) {
+    this.bizConfig = bizConfig;
+    this.limiters = new EnumMap<>(Category.class);
+    limiters.put(Category.LONG_POLL, new AdaptiveConcurrencyLimiter(
+        bizConfig::admissionControlLongPollMaxConcurrency,
+        bizConfig::admissionControlLongPollLatencyThresholdInMilli));
+    limiters.put(Category.CONFIG_FETCH, new AdaptiveConcurrencyLimiter(
+        bizConfig::admissionControlConfigFetchMaxConcurrency,
+        bizConfig::admissionControlConfigFetchLatencyThresholdInMilli));
+    limiters.put(Category.CONFIG_LOAD, new AdaptiveConcurrencyLimiter(
+        bizConfig::admissionControlConfigLoadMaxConcurrency,
+        bizConfig::admissionControlConfigLoadLatencyThresholdInMilli));
+  }
+
+  /**
+   * @return the permit which must be released when the request is done, or null if the request should be rejected
+   */
+  public Permit tryAcquire(Category category) {
+    if (!bizConfig.isAdmissionControlEnabled()) {
+      return UNLIMITED;
+    }
+    Permit permit = limiters.get(category).tryAcquire();
+    if (permit == null) {
+      Tracer.logEvent("Apollo.AdmissionControl.Rejected", category.name());
+    }
+    return permit;
+  }
+
+  /**
+   * @return the seconds the rejected client should wait before retrying, randomized between the configured one and
+   * twice of it, so that the rejected clients don't retry at the same time
+   */
+  public long retryAfterInSeconds() {
+    int retryAfter = bizConfig.admissionControlRetryAfterInSecond();
+    return ThreadLocalRandom.current().nextLong(retryAfter, retryAfter * 2L + 1);
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    for (Map.Entry<Category, AdaptiveConcurrencyLimiter> entry : limiters.entrySet()) {
+      String category = entry.getKey().name().toLowerCase();
+      AdaptiveConcurrencyLimiter limiter = entry.getValue();
+      Gauge.builder("apollo.admission.limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+          .description("Current concurrency limit of the requests")
+          .tag("category", category)
+          .register(registry);
+      Gauge.builder("apollo.admission.inflight", limiter, AdaptiveConcurrencyLimiter::getInFlight)
+          .description("Number of the admitted requests in flight")
+          .tag("category", category)
+          .register(registry);
+      FunctionCounter.builder("apollo.admission.rejected", limiter, AdaptiveConcurrencyLimiter::getRejected)
+          .description("Number of the rejected requests")
+          .tag("category", category)
+          .register(registry);
+    }
+  }
+}
@@ -0,0 +1,18 @@
+package com.ctrip.framework.apollo.configservice.service;
+
+/**
+ * Thrown when the request is beyond the concurrency limit of the category, which is expected under overload, so it
+ * doesn't fill in the stack trace.
+ */
+public class AdmissionRejectedException extends RuntimeException {
+  private final AdmissionControl.Category category;
+
+  public AdmissionRejectedException(AdmissionControl.Category category) {
+    super(String.format("Rejected by the concurrency limit of %s", category), null, false, false);
+    this.category = category;
+  }
+
+  public AdmissionControl.Category getCategory() {
+    return category;
+  }
+}
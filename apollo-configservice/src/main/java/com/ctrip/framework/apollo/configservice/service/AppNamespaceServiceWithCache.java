@@ -21,13 +21,18 @@ import org.springframework.beans.factory.InitializingBean;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
@@ -37,15 +42,23 @@ public class AppNamespaceServiceWithCache implements InitializingBean {
   private static final Logger logger = LoggerFactory.getLogger(AppNamespaceServiceWithCache.class);
   private static final Joiner STRING_JOINER = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
       .skipNulls();
+  //rescan the changes shortly before the cursor, in case of transactions committed later than their timestamps
+  private static final long CHANGE_SCAN_LOOKBACK_IN_MILLI = TimeUnit.SECONDS.toMillis(10);
+  private static final String SNAPSHOT_SECTION = "appNamespaces";
   private final AppNamespaceRepository appNamespaceRepository;
   private final BizConfig bizConfig;
+  private final CacheSnapshotStore cacheSnapshotStore;
 
   private int scanInterval;
   private TimeUnit scanIntervalTimeUnit;
   private int rebuildInterval;
   private TimeUnit rebuildIntervalTimeUnit;
+  private int reconcileInterval;
+  private TimeUnit reconcileIntervalTimeUnit;
   private ScheduledExecutorService scheduledExecutorService;
-  private long maxIdScanned;
+  private volatile long maxIdScanned;
+  //the last modified time of the latest change applied
+  private volatile Date changeCursor;
 
   //store namespaceName -> AppNamespace
   private CaseInsensitiveMapWrapper<AppNamespace> publicAppNamespaceCache;
@@ -56,16 +69,21 @@ public class AppNamespaceServiceWithCache implements InitializingBean {
   //store id -> AppNamespace
   private Map<Long, AppNamespace> appNamespaceIdCache;
 
+  private final List<Consumer<List<AppNamespace>>> changeListeners = Lists.newCopyOnWriteArrayList();
+
   public AppNamespaceServiceWithCache(
       final AppNamespaceRepository appNamespaceRepository,
-      final BizConfig bizConfig) {
+      final BizConfig bizConfig,
+      final CacheSnapshotStore cacheSnapshotStore) {
     this.appNamespaceRepository = appNamespaceRepository;
     this.bizConfig = bizConfig;
+    this.cacheSnapshotStore = cacheSnapshotStore;
     initialize();
   }
 
   private void initialize() {
     maxIdScanned = 0;
+    changeCursor = new Date(0);
     publicAppNamespaceCache = new CaseInsensitiveMapWrapper<>(Maps.newConcurrentMap());
     appNamespaceCache = new CaseInsensitiveMapWrapper<>(Maps.newConcurrentMap());
     appNamespaceIdCache = Maps.newConcurrentMap();
@@ -113,10 +131,44 @@ public class AppNamespaceServiceWithCache implements InitializingBean {
     return result;
   }
 
+  /**
+   * Add a listener to be notified with the app namespaces added, updated or deleted. For updated app namespaces, both
+   * the old and the new ones are notified.
+   */
+  public void addChangeListener(Consumer<List<AppNamespace>> listener) {
+    changeListeners.add(listener);
+  }
+
+  private void notifyChangeListeners(List<AppNamespace> changed) {
+    if (changed.isEmpty()) {
+      return;
+    }
+    for (Consumer<List<AppNamespace>> listener : changeListeners) {
+      try {
+        listener.accept(changed);
+      } catch (Throwable ex) {
+        Tracer.logError(ex);
+        logger.error("Notify app namespace change listener failed", ex);
+      }
+    }
+  }
+
   @Override
   public void afterPropertiesSet() throws Exception {
     populateDataBaseInterval();
-    scanNewAppNamespaces(); //block the startup process until load finished
+    //block the startup process until load finished
+    if (restoreSnapshot()) {
+      //catch up with the changes since the snapshot
+      scanNewAppNamespaces();
+      scanChangedAppNamespaces();
+    } else {
+      scanNewAppNamespaces();
+      initializeChangeCursor();
+    }
+    cacheSnapshotStore.registerSection(SNAPSHOT_SECTION, this::writeSnapshot);
+    scheduledExecutorService.scheduleAtFixedRate(this::scanChangedAppNamespaces, rebuildInterval, rebuildInterval,
+        rebuildIntervalTimeUnit);
+    //full rebuild is only a reconciliation in case some changes are missed by the change scan
     scheduledExecutorService.scheduleAtFixedRate(() -> {
       Transaction transaction = Tracer.newTransaction("Apollo.AppNamespaceServiceWithCache",
           "rebuildCache");
@@ -129,7 +181,7 @@ public class AppNamespaceServiceWithCache implements InitializingBean {
       } finally {
         transaction.complete();
       }
-    }, rebuildInterval, rebuildInterval, rebuildIntervalTimeUnit);
+    }, reconcileInterval, reconcileInterval, reconcileIntervalTimeUnit);
     scheduledExecutorService.scheduleWithFixedDelay(this::scanNewAppNamespaces, scanInterval,
         scanInterval, scanIntervalTimeUnit);
   }
@@ -148,6 +200,20 @@ public class AppNamespaceServiceWithCache implements InitializingBean {
     }
   }
 
+  private void scanChangedAppNamespaces() {
+    Transaction transaction = Tracer.newTransaction("Apollo.AppNamespaceServiceWithCache",
+        "scanChangedAppNamespaces");
+    try {
+      this.loadChangedAppNamespaces();
+      transaction.setStatus(Transaction.SUCCESS);
+    } catch (Throwable ex) {
+      transaction.setStatus(ex);
+      logger.error("Load changed app namespaces failed", ex);
+    } finally {
+      transaction.complete();
+    }
+  }
+
   //for those new app namespaces
   private void loadNewAppNamespaces() {
     boolean hasMore = true;
@@ -174,9 +240,54 @@ public class AppNamespaceServiceWithCache implements InitializingBean {
         publicAppNamespaceCache.put(appNamespace.getName(), appNamespace);
       }
     }
+    notifyChangeListeners(appNamespaces);
   }
 
-  //for those updated or deleted app namespaces
+  private void initializeChangeCursor() {
+    for (AppNamespace appNamespace : appNamespaceIdCache.values()) {
+      Date lastModifiedTime = appNamespace.getDataChangeLastModifiedTime();
+      if (lastModifiedTime != null && lastModifiedTime.after(changeCursor)) {
+        changeCursor = lastModifiedTime;
+      }
+    }
+  }
+
+  //for those updated or deleted app namespaces since the last scan, deleted ones are detected by the soft delete flag
+  private void loadChangedAppNamespaces() {
+    Date lastModifiedTime = new Date(changeCursor.getTime() - CHANGE_SCAN_LOOKBACK_IN_MILLI);
+    long lastId = 0;
+    boolean hasMore = true;
+    while (hasMore && !Thread.currentThread().isInterrupted()) {
+      //current batch is 500
+      List<AppNamespace> appNamespaces = appNamespaceRepository
+          .findFirst500ChangedAfterIncludingDeleted(lastModifiedTime, lastId);
+      if (CollectionUtils.isEmpty(appNamespaces)) {
+        break;
+      }
+      List<AppNamespace> updated = Lists.newArrayList();
+      Set<Long> deletedIds = Sets.newHashSet();
+      for (AppNamespace appNamespace : appNamespaces) {
+        if (appNamespace.isDeleted()) {
+          deletedIds.add(appNamespace.getId());
+        } else {
+          updated.add(appNamespace);
+        }
+      }
+      handleUpdatedAppNamespaces(updated);
+      handleDeletedAppNamespaces(deletedIds);
+
+      int scanned = appNamespaces.size();
+      AppNamespace lastScanned = appNamespaces.get(scanned - 1);
+      lastModifiedTime = lastScanned.getDataChangeLastModifiedTime();
+      lastId = lastScanned.getId();
+      hasMore = scanned == 500;
+    }
+    if (lastModifiedTime.after(changeCursor)) {
+      changeCursor = lastModifiedTime;
+    }
+  }
+
+  //reconcile all the app namespaces in cache, for those updated or deleted app namespaces
   private void updateAndDeleteCache() {
     List<Long> ids = Lists.newArrayList(appNamespaceIdCache.keySet());
     if (CollectionUtils.isEmpty(ids)) {
@@ -201,6 +312,7 @@ public class AppNamespaceServiceWithCache implements InitializingBean {
   //for those updated app namespaces
   private Set<Long> handleUpdatedAppNamespaces(Iterable<AppNamespace> appNamespaces) {
     Set<Long> foundIds = Sets.newHashSet();
+    List<AppNamespace> changed = Lists.newArrayList();
     for (AppNamespace appNamespace : appNamespaces) {
       foundIds.add(appNamespace.getId());
       AppNamespace thatInCache = appNamespaceIdCache.get(appNamespace.getId());
@@ -227,9 +339,12 @@ public class AppNamespaceServiceWithCache implements InitializingBean {
           //just in case isPublic changes
           publicAppNamespaceCache.remove(thatInCache.getName());
         }
+        changed.add(thatInCache);
+        changed.add(appNamespace);
         logger.info("Found AppNamespace changes, old: {}, new: {}", thatInCache, appNamespace);
       }
     }
+    notifyChangeListeners(changed);
     return foundIds;
   }
 
@@ -238,12 +353,17 @@ public class AppNamespaceServiceWithCache implements InitializingBean {
     if (CollectionUtils.isEmpty(deletedIds)) {
       return;
     }
+    List<AppNamespace> changed = Lists.newArrayList();
     for (Long deletedId : deletedIds) {
       AppNamespace deleted = appNamespaceIdCache.remove(deletedId);
       if (deleted == null) {
         continue;
       }
-      appNamespaceCache.remove(assembleAppNamespaceKey(deleted));
+      String key = assembleAppNamespaceKey(deleted);
+      // in case the app namespace is created again after deleted
+      if (appNamespaceCache.get(key) == deleted) {
+        appNamespaceCache.remove(key);
+      }
       if (deleted.isPublic()) {
         AppNamespace publicAppNamespace = publicAppNamespaceCache.get(deleted.getName());
         // in case there is some dirty data, e.g. public namespace deleted in some app and now created in another app
@@ -251,8 +371,70 @@ public class AppNamespaceServiceWithCache implements InitializingBean {
           publicAppNamespaceCache.remove(deleted.getName());
         }
       }
+      changed.add(deleted);
       logger.info("Found AppNamespace deleted, {}", deleted);
     }
+    notifyChangeListeners(changed);
+  }
+
+  /**
+   * @return whether the app namespaces are restored from the snapshot
+   */
+  private boolean restoreSnapshot() {
+    DataInputStream in = cacheSnapshotStore.readSection(SNAPSHOT_SECTION);
+    if (in == null) {
+      return false;
+    }
+    try {
+      long snapshotMaxIdScanned = in.readLong();
+      Date snapshotChangeCursor = new Date(in.readLong());
+      List<AppNamespace> appNamespaces = Lists.newArrayList();
+      while (in.readBoolean()) {
+        appNamespaces.add(readAppNamespace(in));
+      }
+      mergeAppNamespaces(appNamespaces);
+      maxIdScanned = snapshotMaxIdScanned;
+      changeCursor = snapshotChangeCursor;
+      logger.info("Restored {} app namespaces from snapshot, max id {}", appNamespaces.size(), maxIdScanned);
+      return true;
+    } catch (IOException ex) {
+      Tracer.logError(ex);
+      logger.warn("Restore app namespaces from snapshot failed", ex);
+      return false;
+    }
+  }
+
+  private void writeSnapshot(DataOutputStream out) throws IOException {
+    //the cursors are read first, so that the changes after them are caught up when restored
+    out.writeLong(maxIdScanned);
+    out.writeLong(changeCursor.getTime());
+    for (AppNamespace appNamespace : appNamespaceIdCache.values()) {
+      out.writeBoolean(true);
+      writeAppNamespace(out, appNamespace);
+    }
+    out.writeBoolean(false);
+  }
+
+  private static void writeAppNamespace(DataOutputStream out, AppNamespace appNamespace) throws IOException {
+    out.writeLong(appNamespace.getId());
+    CacheSnapshotStore.writeString(out, appNamespace.getAppId());
+    CacheSnapshotStore.writeString(out, appNamespace.getName());
+    CacheSnapshotStore.writeString(out, appNamespace.getFormat());
+    out.writeBoolean(appNamespace.isPublic());
+    CacheSnapshotStore.writeString(out, appNamespace.getComment());
+    out.writeLong(appNamespace.getDataChangeLastModifiedTime().getTime());
+  }
+
+  private static AppNamespace readAppNamespace(DataInputStream in) throws IOException {
+    AppNamespace appNamespace = new AppNamespace();
+    appNamespace.setId(in.readLong());
+    appNamespace.setAppId(CacheSnapshotStore.readString(in));
+    appNamespace.setName(CacheSnapshotStore.readString(in));
+    appNamespace.setFormat(CacheSnapshotStore.readString(in));
+    appNamespace.setPublic(in.readBoolean());
+    appNamespace.setComment(CacheSnapshotStore.readString(in));
+    appNamespace.setDataChangeLastModifiedTime(new Date(in.readLong()));
+    return appNamespace;
   }
 
   private String assembleAppNamespaceKey(AppNamespace appNamespace) {
@@ -264,11 +446,14 @@ public class AppNamespaceServiceWithCache implements InitializingBean {
     scanIntervalTimeUnit = bizConfig.appNamespaceCacheScanIntervalTimeUnit();
     rebuildInterval = bizConfig.appNamespaceCacheRebuildInterval();
     rebuildIntervalTimeUnit = bizConfig.appNamespaceCacheRebuildIntervalTimeUnit();
+    reconcileInterval = bizConfig.appNamespaceCacheReconcileInterval();
+    reconcileIntervalTimeUnit = bizConfig.appNamespaceCacheReconcileIntervalTimeUnit();
   }
 
   //only for test use
   private void reset() throws Exception {
     scheduledExecutorService.shutdownNow();
+    notifyChangeListeners(Lists.newArrayList(appNamespaceIdCache.values()));
     initialize();
     afterPropertiesSet();
   }
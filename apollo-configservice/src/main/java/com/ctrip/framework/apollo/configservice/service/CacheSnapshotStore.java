@@ -0,0 +1,218 @@
+package com.ctrip.framework.apollo.configservice.service;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.tracer.spi.Transaction;
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local snapshot of the config service caches, so that a restarted config service could warm start from it and only
+ * reconcile the changes since the snapshot with database.
+ *
+ * The snapshot consists of named sections, each of which is written and read by the cache it belongs to. The sections
+ * are read once on startup, and the whole snapshot is written periodically and on shutdown.
+ */
+@Component
+public class CacheSnapshotStore implements InitializingBean, DisposableBean {
+  private static final Logger logger = LoggerFactory.getLogger(CacheSnapshotStore.class);
+  private static final int MAGIC = 0x41504f43;
+  private static final int VERSION = 1;
+  //too old snapshots take longer to reconcile than a full load
+  private static final long MAX_SNAPSHOT_AGE_IN_MILLI = TimeUnit.DAYS.toMillis(1);
+  private static final int NULL_LENGTH = -1;
+  private static final long SHUTDOWN_TIMEOUT_IN_SECONDS = 10;
+
+  private final BizConfig bizConfig;
+  private final Map<String, SnapshotWriter> snapshotWriters = Maps.newConcurrentMap();
+  //guarded by this
+  private Map<String, byte[]> loadedSections;
+  private ScheduledExecutorService scheduledExecutorService;
+  //the snapshot is written through the same temp file, so the writes must not overlap
+  private final Object writeLock = new Object();
+
+  public CacheSnapshotStore(final BizConfig bizConfig) {
+    this.bizConfig = bizConfig;
+  }
+
+  /**
+   * Register the writer of the section, which is called each time the snapshot is written
+   */
+  public void registerSection(String name, SnapshotWriter writer) {
+    snapshotWriters.put(name, writer);
+  }
+
+  /**
+   * Read the section from the snapshot, each section could only be read once
+   *
+   * @return the section, or null if snapshot is disabled or the section is not found
+   */
+  public synchronized DataInputStream readSection(String name) {
+    if (!bizConfig.isConfigServiceCacheSnapshotEnabled()) {
+      return null;
+    }
+    if (loadedSections == null) {
+      loadedSections = loadSnapshot();
+    }
+    byte[] section = loadedSections.remove(name);
+    return section == null ? null : new DataInputStream(new ByteArrayInputStream(section));
+  }
+
+  @Override
+  public void afterPropertiesSet() throws Exception {
+    scheduledExecutorService = Executors.newSingleThreadScheduledExecutor(ApolloThreadFactory
+        .create("CacheSnapshotStore", true));
+    int interval = bizConfig.configServiceCacheSnapshotInterval();
+    scheduledExecutorService.scheduleWithFixedDelay(this::writeSnapshot, interval, interval,
+        bizConfig.configServiceCacheSnapshotIntervalTimeUnit());
+  }
+
+  @Override
+  public void destroy() throws Exception {
+    //don't interrupt the running write, which would close the file channel half way
+    scheduledExecutorService.shutdown();
+    if (!scheduledExecutorService.awaitTermination(SHUTDOWN_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS)) {
+      logger.warn("Cache snapshot write is not finished in {} seconds", SHUTDOWN_TIMEOUT_IN_SECONDS);
+    }
+    //the latest snapshot makes the next startup cheaper
+    writeSnapshot();
+  }
+
+  void writeSnapshot() {
+    if (!bizConfig.isConfigServiceCacheSnapshotEnabled() || snapshotWriters.isEmpty()) {
+      return;
+    }
+    synchronized (writeLock) {
+      doWriteSnapshot();
+    }
+  }
+
+  private void doWriteSnapshot() {
+    Transaction transaction = Tracer.newTransaction("Apollo.CacheSnapshot", "write");
+    try {
+      Path path = Paths.get(bizConfig.configServiceCacheSnapshotPath());
+      Path parent = path.toAbsolutePath().getParent();
+      if (parent != null) {
+        Files.createDirectories(parent);
+      }
+      //write to a temp file first, so that the snapshot is never partially written
+      Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+      Map<String, SnapshotWriter> writers = Maps.newHashMap(snapshotWriters);
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files
+          .newOutputStream(tempPath))))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(System.currentTimeMillis());
+        out.writeInt(writers.size());
+        for (Map.Entry<String, SnapshotWriter> writer : writers.entrySet()) {
+          ByteArrayOutputStream section = new ByteArrayOutputStream();
+          writer.getValue().write(new DataOutputStream(section));
+          out.writeUTF(writer.getKey());
+          out.writeInt(section.size());
+          section.writeTo(out);
+        }
+      }
+      Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      transaction.setStatus(Transaction.SUCCESS);
+    } catch (Throwable ex) {
+      transaction.setStatus(ex);
+      logger.warn("Write cache snapshot failed", ex);
+    } finally {
+      transaction.complete();
+    }
+  }
+
+  private Map<String, byte[]> loadSnapshot() {
+    Path path = Paths.get(bizConfig.configServiceCacheSnapshotPath());
+    if (!Files.exists(path)) {
+      return Collections.emptyMap();
+    }
+    Transaction transaction = Tracer.newTransaction("Apollo.CacheSnapshot", "load");
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files
+        .newInputStream(path))))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        logger.warn("Ignore cache snapshot {} with unknown format", path);
+        transaction.setStatus(Transaction.SUCCESS);
+        return Collections.emptyMap();
+      }
+      long timestamp = in.readLong();
+      if (System.currentTimeMillis() - timestamp > MAX_SNAPSHOT_AGE_IN_MILLI) {
+        logger.warn("Ignore cache snapshot {} written at {}, which is too old", path, timestamp);
+        transaction.setStatus(Transaction.SUCCESS);
+        return Collections.emptyMap();
+      }
+      int sectionCount = in.readInt();
+      Map<String, byte[]> sections = Maps.newHashMapWithExpectedSize(sectionCount);
+      for (int i = 0; i < sectionCount; i++) {
+        String name = in.readUTF();
+        byte[] section = new byte[in.readInt()];
+        in.readFully(section);
+        sections.put(name, section);
+      }
+      transaction.setStatus(Transaction.SUCCESS);
+      logger.info("Loaded cache snapshot {} written at {}, sections: {}", path, timestamp, sections.keySet());
+      return sections;
+    } catch (Throwable ex) {
+      //fall back to load from database
+      transaction.setStatus(ex);
+      logger.warn("Load cache snapshot {} failed", path, ex);
+      return Collections.emptyMap();
+    } finally {
+      transaction.complete();
+    }
+  }
+
+  /**
+   * Write the string, which might be null or longer than {@link DataOutput#writeUTF(String)} supports
+   */
+  public static void writeString(DataOutput out, String value) throws IOException {
+    if (value == null) {
+      out.writeInt(NULL_LENGTH);
+      return;
+    }
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  public static String readString(DataInput in) throws IOException {
+    int length = in.readInt();
+    if (length == NULL_LENGTH) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  public interface SnapshotWriter {
+    void write(DataOutputStream out) throws IOException;
+  }
+}
@@ -0,0 +1,157 @@
+package com.ctrip.framework.apollo.configservice.service;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.Release;
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.biz.message.ReleaseMessageListener;
+import com.ctrip.framework.apollo.biz.message.Topics;
+import com.ctrip.framework.apollo.configservice.util.GzipUtil;
+import com.ctrip.framework.apollo.configservice.wrapper.SerializedApolloConfig;
+import com.ctrip.framework.apollo.core.ConfigConsts;
+import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.google.common.base.Joiner;
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Multimaps;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.gson.Gson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Cache of the config responses, keyed by appId, cluster, namespace and the merged release key.
+ * <br />
+ * The content of a release never changes, so the cached response is always up to date for its key. Thousands of
+ * clients fetch the same release right after it's published, this cache makes them share a single merge and
+ * serialization. The entries are evicted once a new release of their namespaces is published, to free the memory
+ * early.
+ */
+@Service
+public class ConfigResponseCache implements ReleaseMessageListener {
+  private static final Logger logger = LoggerFactory.getLogger(ConfigResponseCache.class);
+  private static final Joiner STRING_JOINER = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR);
+  private static final long MAX_CACHE_SIZE = 50 * 1024 * 1024; // 50MB
+  private static final long EXPIRE_AFTER_ACCESS = 30;
+
+  private final Cache<String, SerializedApolloConfig> localCache;
+  private final Multimap<String, String>
+      watchedKeys2CacheKey = Multimaps.synchronizedSetMultimap(HashMultimap.create());
+  private final Multimap<String, String>
+      cacheKey2WatchedKeys = Multimaps.synchronizedSetMultimap(HashMultimap.create());
+
+  private final BizConfig bizConfig;
+  private final Gson gson;
+
+  public ConfigResponseCache(final BizConfig bizConfig, final Gson gson) {
+    this.bizConfig = bizConfig;
+    this.gson = gson;
+    localCache = CacheBuilder.newBuilder()
+        .expireAfterAccess(EXPIRE_AFTER_ACCESS, TimeUnit.MINUTES)
+        .weigher((Weigher<String, SerializedApolloConfig>) (key, value) -> weigh(value))
+        .maximumWeight(MAX_CACHE_SIZE)
+        .removalListener(notification -> {
+          String cacheKey = notification.getKey();
+          //create a new list to avoid ConcurrentModificationException
+          List<String> watchedKeys = new ArrayList<>(cacheKey2WatchedKeys.get(cacheKey));
+          for (String watchedKey : watchedKeys) {
+            watchedKeys2CacheKey.remove(watchedKey, cacheKey);
+          }
+          cacheKey2WatchedKeys.removeAll(cacheKey);
+        })
+        .build();
+  }
+
+  /**
+   * Get the config of the releases, which is served from the cache if enabled
+   *
+   * @param releases               the releases merged into the config
+   * @param configurationsSupplier merges the configurations of the releases, only called if not cached
+   */
+  public ApolloConfig getConfig(String appId, String cluster, String namespace, String mergedReleaseKey,
+                                List<Release> releases, Supplier<Map<String, String>> configurationsSupplier) {
+    if (!bizConfig.isConfigServiceResponseCacheEnabled()) {
+      ApolloConfig apolloConfig = new ApolloConfig(appId, cluster, namespace, mergedReleaseKey);
+      apolloConfig.setConfigurations(configurationsSupplier.get());
+      return apolloConfig;
+    }
+
+    String cacheKey = STRING_JOINER.join(appId, cluster, namespace, mergedReleaseKey);
+    SerializedApolloConfig apolloConfig = localCache.getIfPresent(cacheKey);
+    if (apolloConfig != null) {
+      Tracer.logEvent("ConfigService.ResponseCache.Hit", cacheKey);
+      return apolloConfig;
+    }
+
+    Tracer.logEvent("ConfigService.ResponseCache.Miss", cacheKey);
+    try {
+      //concurrent misses of the same key wait for the single load
+      return localCache.get(cacheKey, () -> {
+        SerializedApolloConfig loaded = serialize(appId, cluster, namespace, mergedReleaseKey,
+            configurationsSupplier.get());
+        for (Release release : releases) {
+          String watchedKey = STRING_JOINER.join(release.getAppId(), release.getClusterName(),
+              release.getNamespaceName());
+          watchedKeys2CacheKey.put(watchedKey, cacheKey);
+          cacheKey2WatchedKeys.put(cacheKey, watchedKey);
+        }
+        return loaded;
+      });
+    } catch (ExecutionException | UncheckedExecutionException ex) {
+      throw new IllegalStateException(String.format("Load config for %s failed", cacheKey), ex.getCause());
+    }
+  }
+
+  private SerializedApolloConfig serialize(String appId, String cluster, String namespace, String mergedReleaseKey,
+                                           Map<String, String> configurations) throws IOException {
+    SerializedApolloConfig apolloConfig = new SerializedApolloConfig(appId, cluster, namespace, mergedReleaseKey);
+    apolloConfig.setConfigurations(Collections.unmodifiableMap(configurations));
+
+    byte[] json = gson.toJson(apolloConfig).getBytes(StandardCharsets.UTF_8);
+    apolloConfig.setJson(json);
+    apolloConfig.setGzippedJson(GzipUtil.gzipIfWorthIt(json));
+    return apolloConfig;
+  }
+
+  private int weigh(SerializedApolloConfig apolloConfig) {
+    //the configurations map takes roughly the same size as its json
+    int jsonSize = apolloConfig.getJson() == null ? 0 : apolloConfig.getJson().length;
+    int gzippedSize = apolloConfig.getGzippedJson() == null ? 0 : apolloConfig.getGzippedJson().length;
+    return jsonSize * 2 + gzippedSize;
+  }
+
+  @Override
+  public void handleMessage(ReleaseMessage message, String channel) {
+    String content = message.getMessage();
+    if (!Topics.APOLLO_RELEASE_TOPIC.equals(channel) || Strings.isNullOrEmpty(content)) {
+      return;
+    }
+
+    if (!watchedKeys2CacheKey.containsKey(content)) {
+      return;
+    }
+
+    //create a new list to avoid ConcurrentModificationException
+    List<String> cacheKeys = new ArrayList<>(watchedKeys2CacheKey.get(content));
+
+    for (String cacheKey : cacheKeys) {
+      logger.debug("invalidate response cache key: {}", cacheKey);
+      localCache.invalidate(cacheKey);
+    }
+  }
+}
@@ -0,0 +1,141 @@
+package com.ctrip.framework.apollo.configservice.service;
+
+import com.ctrip.framework.apollo.configservice.wrapper.DeferredResultWrapper;
+import com.google.common.collect.Lists;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registry of the long polling requests, indexed by their watch keys.
+ * <br />
+ * Each watch key has its own concurrent set, so registering, unregistering and notifying different keys never contend
+ * on a global lock. A registration keeps back-pointers to the sets it joined, so unregistering doesn't need to look
+ * up the keys again, and notifying iterates the live set without copying it.
+ */
+@Service
+public class DeferredResultRegistry {
+  private final ConcurrentMap<String, Set<DeferredResultWrapper>> deferredResults = new ConcurrentHashMap<>();
+  private final AtomicInteger size = new AtomicInteger();
+  private final AtomicInteger registrations = new AtomicInteger();
+  private final AtomicLong sequence = new AtomicLong();
+
+  /**
+   * Register the deferred result for all the watch keys
+   *
+   * @return the registration, which should be unregistered when the deferred result is completed
+   */
+  public Registration register(DeferredResultWrapper deferredResult, Collection<String> watchKeys) {
+    deferredResult.setRegistrationSequence(sequence.incrementAndGet());
+    List<KeyedSet> joinedSets = Lists.newArrayListWithCapacity(watchKeys.size());
+    for (String watchKey : watchKeys) {
+      //add inside compute so that it won't race with the removal of the empty set
+      Set<DeferredResultWrapper> set = deferredResults.compute(watchKey, (key, existing) -> {
+        Set<DeferredResultWrapper> target = existing == null ? ConcurrentHashMap.newKeySet() : existing;
+        if (target.add(deferredResult)) {
+          size.incrementAndGet();
+        }
+        return target;
+      });
+      joinedSets.add(new KeyedSet(watchKey, set));
+    }
+    registrations.incrementAndGet();
+    return new Registration(deferredResult, joinedSets);
+  }
+
+  /**
+   * @return a live read-only view of the deferred results watching the key, which could be iterated while they are
+   * being completed
+   */
+  public Collection<DeferredResultWrapper> get(String watchKey) {
+    Set<DeferredResultWrapper> set = deferredResults.get(watchKey);
+    return set == null ? Collections.emptySet() : Collections.unmodifiableSet(set);
+  }
+
+  /**
+   * @return the sequence of the latest registration, deferred results registered later have greater sequences
+   */
+  public long currentSequence() {
+    return sequence.get();
+  }
+
+  public boolean containsKey(String watchKey) {
+    Set<DeferredResultWrapper> set = deferredResults.get(watchKey);
+    return set != null && !set.isEmpty();
+  }
+
+  /**
+   * @return the number of (watch key, deferred result) pairs
+   */
+  public int size() {
+    return size.get();
+  }
+
+  /**
+   * @return the number of the deferred results registered and not yet unregistered
+   */
+  public int registrationCount() {
+    return registrations.get();
+  }
+
+  /**
+   * @return a snapshot of all the deferred results, each of which appears once no matter how many keys it watches
+   */
+  public Set<DeferredResultWrapper> getAll() {
+    Set<DeferredResultWrapper> all = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (Set<DeferredResultWrapper> set : deferredResults.values()) {
+      all.addAll(set);
+    }
+    return all;
+  }
+
+  private void unregister(DeferredResultWrapper deferredResult, List<KeyedSet> joinedSets) {
+    for (KeyedSet joined : joinedSets) {
+      if (joined.set.remove(deferredResult)) {
+        size.decrementAndGet();
+      }
+      if (joined.set.isEmpty()) {
+        //remove the empty set only if nothing was added in the meantime
+        deferredResults.computeIfPresent(joined.key, (key, existing) ->
+            existing == joined.set && existing.isEmpty() ? null : existing);
+      }
+    }
+  }
+
+  public class Registration {
+    private final DeferredResultWrapper deferredResult;
+    private final List<KeyedSet> joinedSets;
+    private final AtomicBoolean unregistered = new AtomicBoolean(false);
+
+    private Registration(DeferredResultWrapper deferredResult, List<KeyedSet> joinedSets) {
+      this.deferredResult = deferredResult;
+      this.joinedSets = joinedSets;
+    }
+
+    public void unregister() {
+      if (unregistered.compareAndSet(false, true)) {
+        DeferredResultRegistry.this.unregister(deferredResult, joinedSets);
+        registrations.decrementAndGet();
+      }
+    }
+  }
+
+  private static class KeyedSet {
+    private final String key;
+    private final Set<DeferredResultWrapper> set;
+
+    private KeyedSet(String key, Set<DeferredResultWrapper> set) {
+      this.key = key;
+      this.set = set;
+    }
+  }
+}
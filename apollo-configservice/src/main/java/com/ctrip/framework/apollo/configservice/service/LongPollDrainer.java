@@ -0,0 +1,102 @@
+package com.ctrip.framework.apollo.configservice.service;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.configservice.wrapper.DeferredResultWrapper;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Release the waiting long polling clients on shutdown in batches spread over
+ * {@link BizConfig#longPollDrainWindowInMilli()}, so that they move to the other config services gradually instead of
+ * reconnecting all at once.
+ * <br />
+ * It stops after the service registration, which has the phase of 0, so that the clients don't find this config
+ * service any more, and before the web server stops.
+ */
+@Service
+public class LongPollDrainer implements SmartLifecycle {
+  private static final Logger logger = LoggerFactory.getLogger(LongPollDrainer.class);
+  private static final int PHASE = -1;
+  private static final long DRAIN_BATCH_INTERVAL_IN_MILLI = 100;
+
+  private final DeferredResultRegistry deferredResults;
+  private final BizConfig bizConfig;
+  private volatile boolean running;
+
+  public LongPollDrainer(
+      final DeferredResultRegistry deferredResults,
+      final BizConfig bizConfig) {
+    this.deferredResults = deferredResults;
+    this.bizConfig = bizConfig;
+  }
+
+  @Override
+  public void start() {
+    running = true;
+  }
+
+  @Override
+  public void stop() {
+    drain();
+    running = false;
+  }
+
+  @Override
+  public void stop(Runnable callback) {
+    ApolloThreadFactory.create("LongPollDrainer", true).newThread(() -> {
+      try {
+        stop();
+      } finally {
+        callback.run();
+      }
+    }).start();
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  @Override
+  public boolean isAutoStartup() {
+    return true;
+  }
+
+  @Override
+  public int getPhase() {
+    return PHASE;
+  }
+
+  void drain() {
+    long window = bizConfig.longPollDrainWindowInMilli();
+    List<DeferredResultWrapper> waiters = Lists.newArrayList(deferredResults.getAll());
+    //not to release the same clients first every time
+    Collections.shuffle(waiters);
+    logger.info("Draining {} long polling clients in {} ms", waiters.size(), window);
+    Tracer.logEvent("Apollo.LongPoll.Drain", String.valueOf(waiters.size()));
+
+    int batches = (int) Math.max(1, window / DRAIN_BATCH_INTERVAL_IN_MILLI);
+    int batchSize = Math.max(1, (waiters.size() + batches - 1) / batches);
+    try {
+      for (List<DeferredResultWrapper> batch : Iterables.partition(waiters, batchSize)) {
+        batch.forEach(DeferredResultWrapper::release);
+        TimeUnit.MILLISECONDS.sleep(DRAIN_BATCH_INTERVAL_IN_MILLI);
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    } finally {
+      //including the ones connected during draining
+      deferredResults.getAll().forEach(DeferredResultWrapper::release);
+    }
+  }
+}
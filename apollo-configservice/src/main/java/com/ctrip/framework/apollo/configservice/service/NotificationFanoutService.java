@@ -0,0 +1,205 @@
+package com.ctrip.framework.apollo.configservice.service;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.configservice.wrapper.DeferredResultWrapper;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.RateLimiter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Service;
+
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Wakes up the long polling clients of the release messages with too many waiters to be notified inline.
+ * <br />
+ * The fan-outs are processed by a pool of workers in slices of {@link BizConfig#releaseMessageNotificationBatch()}
+ * clients, round robin across the keys, so a hot key doesn't delay the others. All the wakeups share a global rate of
+ * {@link BizConfig#releaseMessageNotificationRate()} per second, which shapes the refetch storm that follows.
+ */
+@Service
+public class NotificationFanoutService implements MeterBinder, DisposableBean {
+  private static final Logger logger = LoggerFactory.getLogger(NotificationFanoutService.class);
+
+  private final BizConfig bizConfig;
+  private final ExecutorService workers;
+  private final BlockingQueue<FanoutJob> pendingJobs = new LinkedBlockingQueue<>();
+  //the latest fan-out of each key, an older one is superseded by the newer message of the same key
+  private final ConcurrentMap<String, FanoutJob> activeJobs = Maps.newConcurrentMap();
+  private final RateLimiter rateLimiter;
+  private final AtomicLong backlog = new AtomicLong();
+  private volatile Timer fanoutTimer;
+
+  public NotificationFanoutService(final BizConfig bizConfig) {
+    this.bizConfig = bizConfig;
+    this.rateLimiter = RateLimiter.create(Math.max(1, bizConfig.releaseMessageNotificationRate()));
+    int threads = Math.max(1, bizConfig.releaseMessageNotificationThreads());
+    this.workers = Executors.newFixedThreadPool(threads, ApolloThreadFactory.create("NotificationFanoutService", true));
+    for (int i = 0; i < threads; i++) {
+      workers.submit(this::work);
+    }
+  }
+
+  /**
+   * Wake up the waiting clients asynchronously
+   *
+   * @param key     the release message
+   * @param waiters the clients to wake up, which could be a live view as it's iterated lazily
+   * @param size    the estimated number of the clients
+   * @param wakeUp  the action to wake up one client
+   */
+  public void submit(String key, Iterable<DeferredResultWrapper> waiters, int size,
+                     Consumer<DeferredResultWrapper> wakeUp) {
+    FanoutJob job = new FanoutJob(key, waiters.iterator(), size, wakeUp);
+    backlog.addAndGet(size);
+    FanoutJob previous = activeJobs.put(key, job);
+    if (previous != null) {
+      previous.cancel();
+    }
+    pendingJobs.offer(job);
+  }
+
+  /**
+   * @return the estimated number of clients waiting to be woken up
+   */
+  public long getBacklog() {
+    return Math.max(0, backlog.get());
+  }
+
+  public int getActiveFanouts() {
+    return activeJobs.size();
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    Gauge.builder("apollo.notification.fanout.backlog", this, NotificationFanoutService::getBacklog)
+        .description("Estimated number of long polling clients waiting to be woken up")
+        .register(registry);
+    Gauge.builder("apollo.notification.fanout.active", this, NotificationFanoutService::getActiveFanouts)
+        .description("Number of release messages being fanned out")
+        .register(registry);
+    fanoutTimer = Timer.builder("apollo.notification.fanout.duration")
+        .description("Time to wake up all the long polling clients of a release message")
+        .register(registry);
+  }
+
+  @Override
+  public void destroy() {
+    workers.shutdownNow();
+  }
+
+  private void work() {
+    while (!Thread.currentThread().isInterrupted()) {
+      FanoutJob job;
+      try {
+        job = pendingJobs.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+
+      try {
+        if (job.runSlice()) {
+          job.finish();
+        } else {
+          //back to the tail, so the other keys get their turns
+          pendingJobs.offer(job);
+        }
+      } catch (Throwable ex) {
+        Tracer.logError(ex);
+        logger.error("Notify clients of {} failed", job.key, ex);
+        job.finish();
+      }
+    }
+  }
+
+  private class FanoutJob {
+    private final String key;
+    private final Iterator<DeferredResultWrapper> waiters;
+    private final Consumer<DeferredResultWrapper> wakeUp;
+    private final long startTimeInNanos = System.nanoTime();
+    private long remaining;
+    private int notified;
+    private volatile boolean cancelled;
+
+    private FanoutJob(String key, Iterator<DeferredResultWrapper> waiters, int size,
+                      Consumer<DeferredResultWrapper> wakeUp) {
+      this.key = key;
+      this.waiters = waiters;
+      this.remaining = size;
+      this.wakeUp = wakeUp;
+    }
+
+    /**
+     * @return whether all the waiters are notified
+     */
+    private boolean runSlice() {
+      adjustRate();
+      int slice = Math.max(1, bizConfig.releaseMessageNotificationBatch());
+      for (int i = 0; i < slice; i++) {
+        if (cancelled || !waiters.hasNext()) {
+          return true;
+        }
+        DeferredResultWrapper waiter = waiters.next();
+        consumeBacklog();
+        //the waiter might have been completed by timeout or by a newer message
+        if (waiter.getResult().isSetOrExpired()) {
+          continue;
+        }
+        rateLimiter.acquire();
+        wakeUp.accept(waiter);
+        notified++;
+      }
+      return cancelled || !waiters.hasNext();
+    }
+
+    private void consumeBacklog() {
+      if (remaining > 0) {
+        remaining--;
+        backlog.decrementAndGet();
+      }
+    }
+
+    private void cancel() {
+      cancelled = true;
+    }
+
+    private void finish() {
+      backlog.addAndGet(-remaining);
+      remaining = 0;
+      activeJobs.remove(key, this);
+
+      long duration = System.nanoTime() - startTimeInNanos;
+      Timer timer = fanoutTimer;
+      if (timer != null) {
+        timer.record(duration, TimeUnit.NANOSECONDS);
+      }
+      Tracer.logEvent("Apollo.LongPoll.Fanout", key, "0",
+          String.format("notified=%d&durationInMillis=%d&cancelled=%s", notified,
+              TimeUnit.NANOSECONDS.toMillis(duration), cancelled));
+      logger.debug("Notified {} clients for key {} in {} ms", notified, key, TimeUnit.NANOSECONDS.toMillis(duration));
+    }
+  }
+
+  private void adjustRate() {
+    int rate = Math.max(1, bizConfig.releaseMessageNotificationRate());
+    if (rateLimiter.getRate() != rate) {
+      rateLimiter.setRate(rate);
+    }
+  }
+}
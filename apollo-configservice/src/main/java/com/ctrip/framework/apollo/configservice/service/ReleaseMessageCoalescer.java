@@ -0,0 +1,126 @@
+package com.ctrip.framework.apollo.configservice.service;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesce the release messages of the same key arriving in quick succession, e.g. the releases published one after
+ * another by automated deployments, so that the waiting clients are woken up once for the latest one instead of once
+ * for each.
+ * <br />
+ * The delivery of a key is delayed until no newer message arrives within
+ * {@link BizConfig#releaseMessageNotificationCoalescingWindowInMilli()}, but at most
+ * {@link BizConfig#releaseMessageNotificationCoalescingMaxDelayInMilli()} after the first one, and only the delivery of
+ * the message with the highest id is run.
+ */
+@Service
+public class ReleaseMessageCoalescer implements DisposableBean {
+  private static final Logger logger = LoggerFactory.getLogger(ReleaseMessageCoalescer.class);
+
+  private final BizConfig bizConfig;
+  //key -> the delivery waiting for the window to close, guarded by this
+  private final Map<String, PendingDelivery> pendingDeliveries;
+  private final ScheduledExecutorService scheduledExecutorService;
+
+  public ReleaseMessageCoalescer(final BizConfig bizConfig) {
+    this.bizConfig = bizConfig;
+    this.pendingDeliveries = Maps.newHashMap();
+    this.scheduledExecutorService = Executors.newSingleThreadScheduledExecutor(ApolloThreadFactory
+        .create("ReleaseMessageCoalescer", true));
+  }
+
+  /**
+   * Run the delivery of the message at once if coalescing is disabled, otherwise when the coalescing window of the key
+   * closes, unless it is superseded by a newer message of the same key
+   *
+   * @param key       the release message
+   * @param messageId the release message id
+   * @param delivery  the delivery of the message
+   */
+  public void submit(String key, long messageId, Delivery delivery) {
+    int window = bizConfig.releaseMessageNotificationCoalescingWindowInMilli();
+    if (window <= 0) {
+      delivery.deliver(false);
+      return;
+    }
+    long now = System.nanoTime();
+    long windowInNanos = TimeUnit.MILLISECONDS.toNanos(window);
+    synchronized (this) {
+      PendingDelivery pending = pendingDeliveries.get(key);
+      if (pending == null) {
+        pendingDeliveries.put(key, new PendingDelivery(messageId, delivery, now, now + windowInNanos));
+        scheduledExecutorService.schedule(() -> flush(key), windowInNanos, TimeUnit.NANOSECONDS);
+        return;
+      }
+      if (messageId > pending.messageId) {
+        pending.messageId = messageId;
+        pending.delivery = delivery;
+      }
+      pending.coalesced = true;
+      long maxDelayInNanos = TimeUnit.MILLISECONDS.toNanos(bizConfig.releaseMessageNotificationCoalescingMaxDelayInMilli());
+      pending.dueNanos = Math.min(now + windowInNanos, pending.firstNanos + maxDelayInNanos);
+    }
+    Tracer.logEvent("Apollo.LongPoll.Coalesced", key);
+  }
+
+  private void flush(String key) {
+    PendingDelivery due;
+    synchronized (this) {
+      due = pendingDeliveries.get(key);
+      if (due == null) {
+        return;
+      }
+      long remaining = due.dueNanos - System.nanoTime();
+      if (remaining > 0) {
+        //extended by the newer messages
+        scheduledExecutorService.schedule(() -> flush(key), remaining, TimeUnit.NANOSECONDS);
+        return;
+      }
+      pendingDeliveries.remove(key);
+    }
+    try {
+      due.delivery.deliver(due.coalesced);
+    } catch (Throwable ex) {
+      Tracer.logError(ex);
+      logger.error("Deliver release message {} of {} failed", due.messageId, key, ex);
+    }
+  }
+
+  @Override
+  public void destroy() throws Exception {
+    scheduledExecutorService.shutdownNow();
+  }
+
+  public interface Delivery {
+    /**
+     * @param coalesced whether the message is delivered in place of the earlier ones of the same key
+     */
+    void deliver(boolean coalesced);
+  }
+
+  private static class PendingDelivery {
+    private final long firstNanos;
+    private long messageId;
+    private Delivery delivery;
+    private long dueNanos;
+    private boolean coalesced;
+
+    private PendingDelivery(long messageId, Delivery delivery, long firstNanos, long dueNanos) {
+      this.messageId = messageId;
+      this.delivery = delivery;
+      this.firstNanos = firstNanos;
+      this.dueNanos = dueNanos;
+    }
+  }
+}
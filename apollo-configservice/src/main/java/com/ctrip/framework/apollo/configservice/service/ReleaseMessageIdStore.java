@@ -0,0 +1,137 @@
+package com.ctrip.framework.apollo.configservice.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Compact map of release message -> the latest release message id, which keeps the ids as primitive longs in an open
+ * addressing table instead of holding an entity per message.
+ *
+ * Lookups are lock free, while updates are serialized. Messages are never removed.
+ */
+class ReleaseMessageIdStore {
+  static final long NO_ID = 0;
+  private static final int INITIAL_CAPACITY = 1 << 10;
+
+  private volatile Table table;
+  //guarded by this
+  private int size;
+
+  ReleaseMessageIdStore() {
+    table = new Table(INITIAL_CAPACITY);
+  }
+
+  /**
+   * @return the latest id of the message, or {@link #NO_ID} if not found
+   */
+  long get(String message) {
+    Table current = table;
+    int mask = current.capacity() - 1;
+    int index = Table.spread(message.hashCode()) & mask;
+    while (true) {
+      //the key is read only once, as the slot could be taken by another message in the meantime
+      String key = current.keys.get(index);
+      if (key == null) {
+        return NO_ID;
+      }
+      if (key.equals(message)) {
+        return current.ids.get(index);
+      }
+      index = (index + 1) & mask;
+    }
+  }
+
+  /**
+   * Update the latest id of the message, if the id is larger than the current one
+   *
+   * @return whether the id is updated
+   */
+  synchronized boolean update(String message, long id) {
+    Table current = table;
+    int index = current.indexOf(message);
+    if (current.keys.get(index) != null) {
+      if (id <= current.ids.get(index)) {
+        return false;
+      }
+      current.ids.set(index, id);
+      return true;
+    }
+
+    //keep the load factor under 0.75
+    if ((size + 1) * 4L > current.capacity() * 3L) {
+      current = current.resize();
+      table = current;
+      index = current.indexOf(message);
+    }
+    //the id is set before the key, so that lookups finding the key always see the id
+    current.ids.set(index, id);
+    current.keys.set(index, message);
+    size++;
+    return true;
+  }
+
+  synchronized int size() {
+    return size;
+  }
+
+  /**
+   * Iterate the messages and their latest ids without locking, messages updated meanwhile might or might not be seen
+   */
+  void forEach(ObjLongConsumer<String> consumer) {
+    Table current = table;
+    for (int i = 0; i < current.capacity(); i++) {
+      String key = current.keys.get(i);
+      if (key != null) {
+        consumer.accept(key, current.ids.get(i));
+      }
+    }
+  }
+
+  private static class Table {
+    private final AtomicReferenceArray<String> keys;
+    private final AtomicLongArray ids;
+
+    Table(int capacity) {
+      keys = new AtomicReferenceArray<>(capacity);
+      ids = new AtomicLongArray(capacity);
+    }
+
+    int capacity() {
+      return keys.length();
+    }
+
+    /**
+     * @return the index of the message, or the empty slot to put it
+     */
+    int indexOf(String message) {
+      int mask = capacity() - 1;
+      int index = spread(message.hashCode()) & mask;
+      while (true) {
+        String key = keys.get(index);
+        if (key == null || key.equals(message)) {
+          return index;
+        }
+        index = (index + 1) & mask;
+      }
+    }
+
+    //spread the higher bits as the capacity is a power of two
+    static int spread(int hash) {
+      return hash ^ (hash >>> 16);
+    }
+
+    Table resize() {
+      Table resized = new Table(capacity() << 1);
+      for (int i = 0; i < capacity(); i++) {
+        String key = keys.get(i);
+        if (key != null) {
+          int index = resized.indexOf(key);
+          resized.ids.set(index, ids.get(i));
+          resized.keys.set(index, key);
+        }
+      }
+      return resized;
+    }
+  }
+}
@@ -10,21 +10,26 @@ import com.ctrip.framework.apollo.tracer.Tracer;
 import com.ctrip.framework.apollo.tracer.spi.Transaction;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.CollectionUtils;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
@@ -33,29 +38,39 @@ import java.util.concurrent.atomic.AtomicBoolean;
 public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, InitializingBean {
   private static final Logger logger = LoggerFactory.getLogger(ReleaseMessageServiceWithCache
       .class);
+  private static final String SNAPSHOT_SECTION = "releaseMessages";
+  //rescan the messages shortly before the snapshot, in case of the id gaps not filled when it was written
+  private static final long SNAPSHOT_RECONCILE_LOOKBACK = 1000;
   private final ReleaseMessageRepository releaseMessageRepository;
   private final BizConfig bizConfig;
+  private final CacheSnapshotStore cacheSnapshotStore;
+  private final TransactionTemplate readOnlyTransactionTemplate;
 
   private int scanInterval;
   private TimeUnit scanIntervalTimeUnit;
 
   private volatile long maxIdScanned;
 
-  private ConcurrentMap<String, ReleaseMessage> releaseMessageCache;
+  private ReleaseMessageIdStore releaseMessageIdStore;
 
   private AtomicBoolean doScan;
   private ExecutorService executorService;
 
   public ReleaseMessageServiceWithCache(
       final ReleaseMessageRepository releaseMessageRepository,
-      final BizConfig bizConfig) {
+      final BizConfig bizConfig,
+      final PlatformTransactionManager transactionManager,
+      final CacheSnapshotStore cacheSnapshotStore) {
     this.releaseMessageRepository = releaseMessageRepository;
     this.bizConfig = bizConfig;
+    this.cacheSnapshotStore = cacheSnapshotStore;
+    this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+    this.readOnlyTransactionTemplate.setReadOnly(true);
     initialize();
   }
 
   private void initialize() {
-    releaseMessageCache = Maps.newConcurrentMap();
+    releaseMessageIdStore = new ReleaseMessageIdStore();
     doScan = new AtomicBoolean(true);
     executorService = Executors.newSingleThreadExecutor(ApolloThreadFactory
         .create("ReleaseMessageServiceWithCache", true));
@@ -66,17 +81,17 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
       return null;
     }
 
-    long maxReleaseMessageId = 0;
-    ReleaseMessage result = null;
+    long maxReleaseMessageId = ReleaseMessageIdStore.NO_ID;
+    String result = null;
     for (String message : messages) {
-      ReleaseMessage releaseMessage = releaseMessageCache.get(message);
-      if (releaseMessage != null && releaseMessage.getId() > maxReleaseMessageId) {
-        maxReleaseMessageId = releaseMessage.getId();
-        result = releaseMessage;
+      long releaseMessageId = releaseMessageIdStore.get(message);
+      if (releaseMessageId > maxReleaseMessageId) {
+        maxReleaseMessageId = releaseMessageId;
+        result = message;
       }
     }
 
-    return result;
+    return result == null ? null : assembleReleaseMessage(maxReleaseMessageId, result);
   }
 
   public List<ReleaseMessage> findLatestReleaseMessagesGroupByMessages(Set<String> messages) {
@@ -86,9 +101,9 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
     List<ReleaseMessage> releaseMessages = Lists.newArrayList();
 
     for (String message : messages) {
-      ReleaseMessage releaseMessage = releaseMessageCache.get(message);
-      if (releaseMessage != null) {
-        releaseMessages.add(releaseMessage);
+      long releaseMessageId = releaseMessageIdStore.get(message);
+      if (releaseMessageId != ReleaseMessageIdStore.NO_ID) {
+        releaseMessages.add(assembleReleaseMessage(releaseMessageId, message));
       }
     }
 
@@ -98,7 +113,10 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
   @Override
   public void handleMessage(ReleaseMessage message, String channel) {
     //Could stop once the ReleaseMessageScanner starts to work
-    doScan.set(false);
+    if (doScan.getAndSet(false)) {
+      //catch up with the messages between the startup load and the start of ReleaseMessageScanner
+      loadReleaseMessages(maxIdScanned);
+    }
     logger.info("message received - channel: {}, message: {}", channel, message);
 
     String content = message.getMessage();
@@ -107,13 +125,8 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
       return;
     }
 
-    long gap = message.getId() - maxIdScanned;
-    if (gap == 1) {
-      mergeReleaseMessage(message);
-    } else if (gap > 1) {
-      //gap found!
-      loadReleaseMessages(maxIdScanned);
-    }
+    //ReleaseMessageScanner takes care of the id gaps, so that messages could be merged as they come
+    mergeReleaseMessage(message);
   }
 
   @Override
@@ -121,7 +134,13 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
     populateDataBaseInterval();
     //block the startup process until load finished
     //this should happen before ReleaseMessageScanner due to autowire
-    loadReleaseMessages(0);
+    if (restoreSnapshot()) {
+      loadReleaseMessages(Math.max(0, maxIdScanned - SNAPSHOT_RECONCILE_LOOKBACK));
+    } else {
+      loadLatestReleaseMessages();
+      loadReleaseMessages(maxIdScanned);
+    }
+    cacheSnapshotStore.registerSection(SNAPSHOT_SECTION, this::writeSnapshot);
 
     executorService.submit(() -> {
       while (doScan.get() && !Thread.currentThread().isInterrupted()) {
@@ -145,12 +164,92 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
     });
   }
 
-  private synchronized void mergeReleaseMessage(ReleaseMessage releaseMessage) {
-    ReleaseMessage old = releaseMessageCache.get(releaseMessage.getMessage());
-    if (old == null || releaseMessage.getId() > old.getId()) {
-      releaseMessageCache.put(releaseMessage.getMessage(), releaseMessage);
-      maxIdScanned = releaseMessage.getId();
+  private void mergeReleaseMessage(ReleaseMessage releaseMessage) {
+    mergeReleaseMessage(releaseMessage.getMessage(), releaseMessage.getId());
+  }
+
+  private synchronized void mergeReleaseMessage(String message, long id) {
+    releaseMessageIdStore.update(message, id);
+    if (id > maxIdScanned) {
+      maxIdScanned = id;
+    }
+  }
+
+  /**
+   * Load the latest id of each message with one aggregated query, instead of paging through the whole history
+   */
+  private void loadLatestReleaseMessages() {
+    Transaction transaction = Tracer.newTransaction("Apollo.ReleaseMessageServiceWithCache",
+        "loadLatestReleaseMessages");
+    try {
+      readOnlyTransactionTemplate.execute(status -> {
+        try (Stream<Object[]> latestReleaseMessages = releaseMessageRepository
+            .streamLatestReleaseMessagesGroupByMessages()) {
+          latestReleaseMessages.forEach(row -> mergeReleaseMessage((String) row[0], ((Number) row[1]).longValue()));
+        }
+        return null;
+      });
+      transaction.setStatus(Transaction.SUCCESS);
+      logger.info("Loaded the latest ids of {} release messages, max id {}", releaseMessageIdStore.size(),
+          maxIdScanned);
+    } catch (Throwable ex) {
+      transaction.setStatus(ex);
+      throw ex;
+    } finally {
+      transaction.complete();
+    }
+  }
+
+  /**
+   * @return whether the release messages are restored from the snapshot
+   */
+  private boolean restoreSnapshot() {
+    DataInputStream in = cacheSnapshotStore.readSection(SNAPSHOT_SECTION);
+    if (in == null) {
+      return false;
+    }
+    try {
+      long snapshotMaxIdScanned = in.readLong();
+      while (in.readBoolean()) {
+        String message = CacheSnapshotStore.readString(in);
+        releaseMessageIdStore.update(message, in.readLong());
+      }
+      //the messages newer than the snapshot are not necessarily complete
+      maxIdScanned = snapshotMaxIdScanned;
+      logger.info("Restored the latest ids of {} release messages from snapshot, max id {}",
+          releaseMessageIdStore.size(), maxIdScanned);
+      return true;
+    } catch (IOException ex) {
+      //the messages restored are still valid, as they are overridden by the newer ones loaded from database
+      Tracer.logError(ex);
+      logger.warn("Restore release messages from snapshot failed", ex);
+      return false;
+    }
+  }
+
+  private void writeSnapshot(DataOutputStream out) throws IOException {
+    //the max id is read first, so that all the messages up to it are written
+    out.writeLong(maxIdScanned);
+    try {
+      releaseMessageIdStore.forEach((message, id) -> {
+        try {
+          out.writeBoolean(true);
+          CacheSnapshotStore.writeString(out, message);
+          out.writeLong(id);
+        } catch (IOException ex) {
+          throw new UncheckedIOException(ex);
+        }
+      });
+    } catch (UncheckedIOException ex) {
+      throw ex.getCause();
     }
+    out.writeBoolean(false);
+  }
+
+  private ReleaseMessage assembleReleaseMessage(long id, String message) {
+    ReleaseMessage releaseMessage = new ReleaseMessage(message);
+    releaseMessage.setId(id);
+    return releaseMessage;
   }
 
   private void loadReleaseMessages(long startId) {
@@ -0,0 +1,151 @@
+package com.ctrip.framework.apollo.configservice.service.config;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.repository.InstanceConfigRepository;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.tracer.spi.Transaction;
+import com.google.common.collect.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Preload the releases of the most used namespaces, which are ranked by the instances using them recently, into
+ * {@link ConfigServiceWithCache}, so that a newly started config service doesn't load them on the first requests.
+ *
+ * The config service reports out of service until the preloading on startup is done or timed out, see
+ * {@link com.ctrip.framework.apollo.configservice.ConfigServiceHealthIndicator}
+ *
+ * Ranking the namespaces groups a full day of the InstanceConfig table, which is huge, so it is done on startup and
+ * then at most once a day, the periodic preloading in between reuses the ranking.
+ */
+@Component
+public class ConfigCachePreloader implements InitializingBean, DisposableBean {
+  private static final Logger logger = LoggerFactory.getLogger(ConfigCachePreloader.class);
+  //the same as the valid instance config date of portal
+  private static final long INSTANCE_CONFIG_VALID_PERIOD_IN_MILLI = TimeUnit.DAYS.toMillis(1);
+  //the most used namespaces hardly change within a day
+  private static final long RANKING_VALID_PERIOD_IN_MILLI = TimeUnit.DAYS.toMillis(1);
+
+  private final ConfigService configService;
+  private final InstanceConfigRepository instanceConfigRepository;
+  private final BizConfig bizConfig;
+
+  private volatile boolean preloaded;
+  //guarded by this
+  private List<Object[]> mostUsedNamespaces;
+  private long rankedTimeInMilli;
+  private ScheduledExecutorService scheduledExecutorService;
+  //bounds the concurrent database loads
+  private ExecutorService preloadExecutorService;
+
+  public ConfigCachePreloader(
+      final ConfigService configService,
+      final InstanceConfigRepository instanceConfigRepository,
+      final BizConfig bizConfig) {
+    this.configService = configService;
+    this.instanceConfigRepository = instanceConfigRepository;
+    this.bizConfig = bizConfig;
+  }
+
+  /**
+   * @return whether the preloading on startup is done, timed out or not needed
+   */
+  public boolean isPreloaded() {
+    return preloaded;
+  }
+
+  @Override
+  public void afterPropertiesSet() throws Exception {
+    if (!(configService instanceof ConfigServiceWithCache) || bizConfig.configServiceCachePreloadSize() <= 0) {
+      preloaded = true;
+      return;
+    }
+    preloadExecutorService = Executors.newFixedThreadPool(bizConfig.configServiceCachePreloadConcurrency(),
+        ApolloThreadFactory.create("ConfigCachePreloader", true));
+    scheduledExecutorService = Executors.newSingleThreadScheduledExecutor(ApolloThreadFactory
+        .create("ConfigCachePreloader-Scheduler", true));
+    //the cache entries might be evicted or expired, so preload periodically as well
+    int interval = bizConfig.configServiceCachePreloadInterval();
+    scheduledExecutorService.scheduleWithFixedDelay(() -> {
+      try {
+        preload();
+      } finally {
+        preloaded = true;
+      }
+    }, 0, interval, bizConfig.configServiceCachePreloadIntervalTimeUnit());
+  }
+
+  void preload() {
+    Transaction transaction = Tracer.newTransaction("Apollo.ConfigCachePreloader", "preload");
+    try {
+      List<Object[]> namespaces = findMostUsedNamespaces();
+
+      ConfigServiceWithCache configServiceWithCache = (ConfigServiceWithCache) configService;
+      List<CompletableFuture<Void>> preloads = Lists.newArrayListWithCapacity(namespaces.size());
+      for (Object[] namespace : namespaces) {
+        String appId = (String) namespace[0];
+        String clusterName = (String) namespace[1];
+        String namespaceName = (String) namespace[2];
+        preloads.add(CompletableFuture.runAsync(() -> {
+          try {
+            configServiceWithCache.preload(appId, clusterName, namespaceName);
+          } catch (Throwable ex) {
+            //would be loaded on demand
+            Tracer.logError(ex);
+          }
+        }, preloadExecutorService));
+      }
+
+      try {
+        CompletableFuture.allOf(preloads.toArray(new CompletableFuture[0]))
+            .get(bizConfig.configServiceCachePreloadTimeout(), bizConfig.configServiceCachePreloadTimeoutTimeUnit());
+        logger.info("Preloaded the releases of {} namespaces", namespaces.size());
+      } catch (TimeoutException ex) {
+        //the rest are still being preloaded in background
+        Tracer.logEvent("Apollo.ConfigCachePreloader.Timeout", String.valueOf(namespaces.size()));
+        logger.warn("Preloading the releases of {} namespaces timed out", namespaces.size());
+      }
+      transaction.setStatus(Transaction.SUCCESS);
+    } catch (Throwable ex) {
+      transaction.setStatus(ex);
+      logger.error("Preload releases failed", ex);
+    } finally {
+      transaction.complete();
+    }
+  }
+
+  private synchronized List<Object[]> findMostUsedNamespaces() {
+    long now = System.currentTimeMillis();
+    if (mostUsedNamespaces == null || now - rankedTimeInMilli > RANKING_VALID_PERIOD_IN_MILLI) {
+      Date validDate = new Date(now - INSTANCE_CONFIG_VALID_PERIOD_IN_MILLI);
+      mostUsedNamespaces = instanceConfigRepository.findMostUsedNamespaces(validDate,
+          PageRequest.of(0, bizConfig.configServiceCachePreloadSize()));
+      rankedTimeInMilli = now;
+    }
+    return mostUsedNamespaces;
+  }
+
+  @Override
+  public void destroy() throws Exception {
+    if (scheduledExecutorService != null) {
+      scheduledExecutorService.shutdownNow();
+    }
+    if (preloadExecutorService != null) {
+      preloadExecutorService.shutdownNow();
+    }
+  }
+}
@@ -2,19 +2,29 @@ package com.ctrip.framework.apollo.configservice.service.config;
 
 import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Queues;
 
+import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.Release;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.biz.service.ReleaseMessageService;
 import com.ctrip.framework.apollo.biz.service.ReleaseService;
 import com.ctrip.framework.apollo.biz.utils.ReleaseMessageKeyGenerator;
+import com.ctrip.framework.apollo.configservice.service.AdmissionControl;
+import com.ctrip.framework.apollo.configservice.service.AdmissionRejectedException;
+import com.ctrip.framework.apollo.configservice.service.CacheSnapshotStore;
+import com.ctrip.framework.apollo.configservice.service.ReleaseMessageServiceWithCache;
+import com.ctrip.framework.apollo.configservice.util.AdaptiveConcurrencyLimiter.Permit;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.ctrip.framework.apollo.tracer.spi.Transaction;
 
@@ -24,22 +34,42 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.annotation.PostConstruct;
 
 /**
  * config service with guava cache
  *
+ * Each cache entry carries the notification id it is loaded with. An entry is replaced only by the one loaded with a
+ * newer notification id, and there is at most one load per key at a time, which concurrent requests join instead of
+ * loading again. Requests keep being served with the cached entry until the one they need is loaded.
+ *
  * @author Jason Song(song_s@ctrip.com)
  */
 public class ConfigServiceWithCache extends AbstractConfigService {
   private static final Logger logger = LoggerFactory.getLogger(ConfigServiceWithCache.class);
   private static final long DEFAULT_EXPIRED_AFTER_ACCESS_IN_MINUTES = 60;//1 hour
+  private static final int WARM_UP_QUEUE_SIZE = 10000;
+  //join the in-flight load at most twice, in case it was started before the notification
+  private static final int MAX_LOAD_ATTEMPTS = 2;
+  private static final String SNAPSHOT_SECTION = "releases";
   private static final String TRACER_EVENT_CACHE_INVALIDATE = "ConfigCache.Invalidate";
   private static final String TRACER_EVENT_CACHE_LOAD = "ConfigCache.LoadFromDB";
   private static final String TRACER_EVENT_CACHE_LOAD_ID = "ConfigCache.LoadFromDBById";
+  private static final String TRACER_EVENT_CACHE_LOAD_JOINED = "ConfigCache.LoadJoined";
   private static final String TRACER_EVENT_CACHE_GET = "ConfigCache.Get";
   private static final String TRACER_EVENT_CACHE_GET_ID = "ConfigCache.GetById";
   private static final Splitter STRING_SPLITTER =
@@ -51,57 +81,50 @@ public class ConfigServiceWithCache extends AbstractConfigService {
   @Autowired
   private ReleaseMessageService releaseMessageService;
 
-  private LoadingCache<String, ConfigCacheEntry> configCache;
+  @Autowired
+  private BizConfig bizConfig;
+
+  @Autowired
+  private ReleaseMessageServiceWithCache releaseMessageServiceWithCache;
+
+  @Autowired
+  private CacheSnapshotStore cacheSnapshotStore;
+
+  @Autowired
+  private AdmissionControl admissionControl;
+
+  private Cache<String, ConfigCacheEntry> configCache;
 
   private LoadingCache<Long, Optional<Release>> configIdCache;
 
+  //key -> the load in progress
+  private final ConcurrentMap<String, CompletableFuture<ConfigCacheEntry>> inFlightLoads;
+
   private ConfigCacheEntry nullConfigCacheEntry;
 
+  //warming up is best effort, as the cache would be loaded on demand anyway
+  private final ExecutorService warmUpExecutorService;
+
   public ConfigServiceWithCache() {
     nullConfigCacheEntry = new ConfigCacheEntry(ConfigConsts.NOTIFICATION_ID_PLACEHOLDER, null);
+    inFlightLoads = Maps.newConcurrentMap();
+    warmUpExecutorService = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+        Queues.newLinkedBlockingQueue(WARM_UP_QUEUE_SIZE), ApolloThreadFactory.create("ConfigServiceWithCache", true),
+        new ThreadPoolExecutor.DiscardPolicy());
   }
 
   @PostConstruct
   void initialize() {
+    int maxWeight = bizConfig.configServiceCacheMaxWeight();
     configCache = CacheBuilder.newBuilder()
         .expireAfterAccess(DEFAULT_EXPIRED_AFTER_ACCESS_IN_MINUTES, TimeUnit.MINUTES)
-        .build(new CacheLoader<String, ConfigCacheEntry>() {
-          @Override
-          public ConfigCacheEntry load(String key) throws Exception {
-            List<String> namespaceInfo = STRING_SPLITTER.splitToList(key);
-            if (namespaceInfo.size() != 3) {
-              Tracer.logError(
-                  new IllegalArgumentException(String.format("Invalid cache load key %s", key)));
-              return nullConfigCacheEntry;
-            }
-
-            Transaction transaction = Tracer.newTransaction(TRACER_EVENT_CACHE_LOAD, key);
-            try {
-              ReleaseMessage latestReleaseMessage = releaseMessageService.findLatestReleaseMessageForMessages(Lists
-                  .newArrayList(key));
-              Release latestRelease = releaseService.findLatestActiveRelease(namespaceInfo.get(0), namespaceInfo.get(1),
-                  namespaceInfo.get(2));
-
-              transaction.setStatus(Transaction.SUCCESS);
-
-              long notificationId = latestReleaseMessage == null ? ConfigConsts.NOTIFICATION_ID_PLACEHOLDER : latestReleaseMessage
-                  .getId();
-
-              if (notificationId == ConfigConsts.NOTIFICATION_ID_PLACEHOLDER && latestRelease == null) {
-                return nullConfigCacheEntry;
-              }
-
-              return new ConfigCacheEntry(notificationId, latestRelease);
-            } catch (Throwable ex) {
-              transaction.setStatus(ex);
-              throw ex;
-            } finally {
-              transaction.complete();
-            }
-          }
-        });
+        .maximumWeight(maxWeight)
+        .weigher((String key, ConfigCacheEntry entry) -> key.length() + weigh(entry.getRelease()))
+        .build();
     configIdCache = CacheBuilder.newBuilder()
         .expireAfterAccess(DEFAULT_EXPIRED_AFTER_ACCESS_IN_MINUTES, TimeUnit.MINUTES)
+        .maximumWeight(maxWeight)
+        .weigher((Long key, Optional<Release> release) -> 1 + weigh(release.orElse(null)))
         .build(new CacheLoader<Long, Optional<Release>>() {
           @Override
           public Optional<Release> load(Long key) throws Exception {
@@ -120,6 +143,97 @@ public class ConfigServiceWithCache extends AbstractConfigService {
             }
           }
         });
+    restoreSnapshot();
+    cacheSnapshotStore.registerSection(SNAPSHOT_SECTION, this::writeSnapshot);
+  }
+
+  /**
+   * Restore the releases which are still the latest, while the others are loaded on demand
+   */
+  private void restoreSnapshot() {
+    DataInputStream in = cacheSnapshotStore.readSection(SNAPSHOT_SECTION);
+    if (in == null) {
+      return;
+    }
+    try {
+      Map<String, ConfigCacheEntry> cacheEntries = Maps.newHashMap();
+      while (in.readBoolean()) {
+        String key = CacheSnapshotStore.readString(in);
+        long notificationId = in.readLong();
+        cacheEntries.put(key, new ConfigCacheEntry(notificationId, readRelease(in)));
+      }
+      int restored = 0;
+      for (ReleaseMessage releaseMessage : releaseMessageServiceWithCache
+          .findLatestReleaseMessagesGroupByMessages(cacheEntries.keySet())) {
+        ConfigCacheEntry cacheEntry = cacheEntries.get(releaseMessage.getMessage());
+        if (cacheEntry.getNotificationId() == releaseMessage.getId()) {
+          configCache.put(releaseMessage.getMessage(), cacheEntry);
+          restored++;
+        }
+      }
+      logger.info("Restored {} of {} releases from snapshot", restored, cacheEntries.size());
+    } catch (IOException ex) {
+      Tracer.logError(ex);
+      logger.warn("Restore releases from snapshot failed", ex);
+    }
+  }
+
+  /**
+   * Write the most requested releases which are up to date
+   */
+  private void writeSnapshot(DataOutputStream out) throws IOException {
+    List<Map.Entry<String, ConfigCacheEntry>> cacheEntries = Lists.newArrayList();
+    for (Map.Entry<String, ConfigCacheEntry> cacheEntry : configCache.asMap().entrySet()) {
+      ConfigCacheEntry value = cacheEntry.getValue();
+      if (value.getRelease() != null && value.getPendingNotificationId() <= value.getNotificationId()) {
+        cacheEntries.add(cacheEntry);
+      }
+    }
+    cacheEntries.sort(Comparator.comparingLong(
+        (Map.Entry<String, ConfigCacheEntry> cacheEntry) -> cacheEntry.getValue().getHits()).reversed());
+
+    int maxReleases = Math.min(cacheEntries.size(), bizConfig.configServiceCacheSnapshotMaxReleases());
+    for (Map.Entry<String, ConfigCacheEntry> cacheEntry : cacheEntries.subList(0, maxReleases)) {
+      out.writeBoolean(true);
+      CacheSnapshotStore.writeString(out, cacheEntry.getKey());
+      out.writeLong(cacheEntry.getValue().getNotificationId());
+      writeRelease(out, cacheEntry.getValue().getRelease());
+    }
+    out.writeBoolean(false);
+  }
+
+  private static void writeRelease(DataOutputStream out, Release release) throws IOException {
+    out.writeLong(release.getId());
+    CacheSnapshotStore.writeString(out, release.getReleaseKey());
+    CacheSnapshotStore.writeString(out, release.getName());
+    CacheSnapshotStore.writeString(out, release.getAppId());
+    CacheSnapshotStore.writeString(out, release.getClusterName());
+    CacheSnapshotStore.writeString(out, release.getNamespaceName());
+    CacheSnapshotStore.writeString(out, release.getConfigurations());
+    CacheSnapshotStore.writeString(out, release.getComment());
+  }
+
+  private static Release readRelease(DataInputStream in) throws IOException {
+    Release release = new Release();
+    release.setId(in.readLong());
+    release.setReleaseKey(CacheSnapshotStore.readString(in));
+    release.setName(CacheSnapshotStore.readString(in));
+    release.setAppId(CacheSnapshotStore.readString(in));
+    release.setClusterName(CacheSnapshotStore.readString(in));
+    release.setNamespaceName(CacheSnapshotStore.readString(in));
+    release.setConfigurations(CacheSnapshotStore.readString(in));
+    release.setComment(CacheSnapshotStore.readString(in));
+    return release;
+  }
+
+  /**
+   * @return the weight of the release, which is roughly the length of its configurations
+   */
+  private static int weigh(Release release) {
+    if (release == null || release.getConfigurations() == null) {
+      return 1;
+    }
+    return release.getConfigurations().length() + 1;
   }
 
   @Override
@@ -135,22 +249,146 @@ public class ConfigServiceWithCache extends AbstractConfigService {
 
     Tracer.logEvent(TRACER_EVENT_CACHE_GET, key);
 
-    ConfigCacheEntry cacheEntry = configCache.getUnchecked(key);
+    ConfigCacheEntry cacheEntry = configCache.getIfPresent(key);
+    if (cacheEntry == null) {
+      return loadAtLeast(key, ConfigConsts.NOTIFICATION_ID_PLACEHOLDER).getRelease();
+    }
+    cacheEntry.hit();
+
+    //clients telling their notification ids only need the release of that notification, the others need the latest
+    long requiredNotificationId = clientMessages != null && clientMessages.has(key) ? clientMessages.get(key) :
+        cacheEntry.getPendingNotificationId();
 
     //cache is out-dated
-    if (clientMessages != null && clientMessages.has(key) &&
-        clientMessages.get(key) > cacheEntry.getNotificationId()) {
-      //invalidate the cache and try to load from db again
-      invalidate(key);
-      cacheEntry = configCache.getUnchecked(key);
+    if (requiredNotificationId > cacheEntry.getNotificationId()) {
+      cacheEntry = loadAtLeast(key, requiredNotificationId);
     }
 
     return cacheEntry.getRelease();
   }
 
-  private void invalidate(String key) {
-    configCache.invalidate(key);
-    Tracer.logEvent(TRACER_EVENT_CACHE_INVALIDATE, key);
+  /**
+   * Load the latest release into cache if it's not cached yet, so that the requests later are served from cache
+   */
+  public void preload(String appId, String clusterName, String namespaceName) {
+    String key = ReleaseMessageKeyGenerator.generate(appId, clusterName, namespaceName);
+    if (configCache.getIfPresent(key) == null) {
+      loadAtLeast(key, ConfigConsts.NOTIFICATION_ID_PLACEHOLDER);
+    }
+  }
+
+  /**
+   * Load the cache entry from database, or join the load in progress, until the entry is of the notification id
+   */
+  private ConfigCacheEntry loadAtLeast(String key, long notificationId) {
+    for (int attempt = 0; attempt < MAX_LOAD_ATTEMPTS; attempt++) {
+      CompletableFuture<ConfigCacheEntry> load = new CompletableFuture<>();
+      CompletableFuture<ConfigCacheEntry> inFlightLoad = inFlightLoads.putIfAbsent(key, load);
+      if (inFlightLoad == null) {
+        return doLoad(key, load);
+      }
+      Tracer.logEvent(TRACER_EVENT_CACHE_LOAD_JOINED, key);
+      try {
+        ConfigCacheEntry cacheEntry = inFlightLoad.join();
+        if (cacheEntry.getNotificationId() >= notificationId) {
+          return cacheEntry;
+        }
+        //the joined load might be started before the notification
+      } catch (CompletionException ex) {
+        //try again
+      }
+    }
+    //load by itself, without being joined
+    return doLoad(key, new CompletableFuture<>());
+  }
+
+  private ConfigCacheEntry doLoad(String key, CompletableFuture<ConfigCacheEntry> load) {
+    try {
+      ConfigCacheEntry loaded = admitAndLoadFromDB(key);
+      //replace only with the newer one, and keep the pending notification id if it is not loaded yet
+      ConfigCacheEntry cacheEntry = configCache.asMap().compute(key, (k, old) -> {
+        if (old == null) {
+          return loaded;
+        }
+        if (old.getNotificationId() > loaded.getNotificationId()) {
+          return old;
+        }
+        return old.getPendingNotificationId() > loaded.getNotificationId() ?
+            loaded.withPendingNotificationId(old.getPendingNotificationId()) : loaded;
+      });
+      load.complete(cacheEntry);
+      return cacheEntry;
+    } catch (Throwable ex) {
+      load.completeExceptionally(ex);
+      throw ex;
+    } finally {
+      inFlightLoads.remove(key, load);
+    }
+  }
+
+  /**
+   * Load from database within the concurrency limit, so that a storm of cache misses is rejected instead of queueing
+   * on the database connections
+   */
+  private ConfigCacheEntry admitAndLoadFromDB(String key) {
+    Permit permit = admissionControl.tryAcquire(AdmissionControl.Category.CONFIG_LOAD);
+    if (permit == null) {
+      throw new AdmissionRejectedException(AdmissionControl.Category.CONFIG_LOAD);
+    }
+    try {
+      ConfigCacheEntry loaded = loadFromDB(key);
+      permit.release();
+      return loaded;
+    } catch (Throwable ex) {
+      //the database might be overloaded
+      permit.drop();
+      throw ex;
+    }
+  }
+
+  private ConfigCacheEntry loadFromDB(String key) {
+    List<String> namespaceInfo = STRING_SPLITTER.splitToList(key);
+    if (namespaceInfo.size() != 3) {
+      Tracer.logError(
+          new IllegalArgumentException(String.format("Invalid cache load key %s", key)));
+      return nullConfigCacheEntry;
+    }
+
+    Transaction transaction = Tracer.newTransaction(TRACER_EVENT_CACHE_LOAD, key);
+    try {
+      ReleaseMessage latestReleaseMessage = releaseMessageService.findLatestReleaseMessageForMessages(Lists
+          .newArrayList(key));
+      Release latestRelease = releaseService.findLatestActiveRelease(namespaceInfo.get(0), namespaceInfo.get(1),
+          namespaceInfo.get(2));
+
+      transaction.setStatus(Transaction.SUCCESS);
+
+      long notificationId = latestReleaseMessage == null ? ConfigConsts.NOTIFICATION_ID_PLACEHOLDER : latestReleaseMessage
+          .getId();
+
+      if (notificationId == ConfigConsts.NOTIFICATION_ID_PLACEHOLDER && latestRelease == null) {
+        return nullConfigCacheEntry;
+      }
+
+      return new ConfigCacheEntry(notificationId, latestRelease);
+    } catch (Throwable ex) {
+      transaction.setStatus(ex);
+      throw ex;
+    } finally {
+      transaction.complete();
+    }
+  }
+
+  /**
+   * Mark the cache entry out-dated, which is still served to the clients not yet notified until the new one is loaded
+   */
+  private void invalidate(String key, long notificationId) {
+    ConfigCacheEntry cacheEntry = configCache.asMap().computeIfPresent(key,
+        (k, old) -> notificationId > old.getNotificationId() && notificationId > old.getPendingNotificationId() ?
+            old.withPendingNotificationId(notificationId) : old);
+    if (cacheEntry != null) {
+      Tracer.logEvent(TRACER_EVENT_CACHE_INVALIDATE, key);
+    }
   }
 
   @Override
@@ -161,22 +399,68 @@ public class ConfigServiceWithCache extends AbstractConfigService {
     }
 
     try {
-      invalidate(message.getMessage());
+      invalidate(message.getMessage(), message.getId());
 
       //warm up the cache
-      configCache.getUnchecked(message.getMessage());
+      loadAtLeast(message.getMessage(), message.getId());
     } catch (Throwable ex) {
       //ignore
     }
   }
 
+  /**
+   * Invalidate the cache at once so that the following listeners, e.g. notifications, see the new releases, while
+   * warming up the cache in background so that they are not blocked by the database queries.
+   */
+  @Override
+  public void handleMessages(List<ReleaseMessage> messages, String channel) {
+    if (!Topics.APOLLO_RELEASE_TOPIC.equals(channel)) {
+      return;
+    }
+    List<ReleaseMessage> toWarmUp = Lists.newArrayListWithCapacity(messages.size());
+    for (ReleaseMessage message : messages) {
+      if (!Strings.isNullOrEmpty(message.getMessage())) {
+        invalidate(message.getMessage(), message.getId());
+        toWarmUp.add(message);
+      }
+    }
+    if (toWarmUp.isEmpty()) {
+      return;
+    }
+    logger.info("messages received - channel: {}, size: {}", channel, toWarmUp.size());
+    warmUpExecutorService.execute(() -> {
+      for (ReleaseMessage message : toWarmUp) {
+        //might be loaded on demand already
+        ConfigCacheEntry cacheEntry = configCache.getIfPresent(message.getMessage());
+        if (cacheEntry != null && cacheEntry.getNotificationId() >= message.getId()) {
+          continue;
+        }
+        try {
+          loadAtLeast(message.getMessage(), message.getId());
+        } catch (Throwable ex) {
+          //ignore
+        }
+      }
+    });
+  }
+
   private static class ConfigCacheEntry {
     private final long notificationId;
     private final Release release;
+    //the newer notification id received, whose release is not loaded yet
+    private final long pendingNotificationId;
+    //the number of requests served, which decides the releases in the snapshot
+    private final LongAdder hits;
 
     public ConfigCacheEntry(long notificationId, Release release) {
+      this(notificationId, release, ConfigConsts.NOTIFICATION_ID_PLACEHOLDER, new LongAdder());
+    }
+
+    private ConfigCacheEntry(long notificationId, Release release, long pendingNotificationId, LongAdder hits) {
       this.notificationId = notificationId;
       this.release = release;
+      this.pendingNotificationId = pendingNotificationId;
+      this.hits = hits;
     }
 
     public long getNotificationId() {
@@ -186,5 +470,21 @@ public class ConfigServiceWithCache extends AbstractConfigService {
     public Release getRelease() {
       return release;
     }
+
+    public long getPendingNotificationId() {
+      return pendingNotificationId;
+    }
+
+    public long getHits() {
+      return hits.sum();
+    }
+
+    void hit() {
+      hits.increment();
+    }
+
+    ConfigCacheEntry withPendingNotificationId(long pendingNotificationId) {
+      return new ConfigCacheEntry(notificationId, release, pendingNotificationId, hits);
+    }
   }
 }
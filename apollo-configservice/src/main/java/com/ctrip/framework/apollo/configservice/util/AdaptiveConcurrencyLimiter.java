@@ -0,0 +1,125 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import com.google.common.util.concurrent.AtomicDouble;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.IntSupplier;
+
+/**
+ * Limit the concurrent requests with an AIMD limit.
+ * <br />
+ * The limit backs off multiplicatively when a request is slower than the latency threshold or dropped, at most once
+ * per round trip, as the requests in flight at that time are probably slow as well. It grows by one with each
+ * request completed in time while the limit is at least half used, up to the max limit.
+ */
+public class AdaptiveConcurrencyLimiter {
+  private static final int MIN_LIMIT = 1;
+  private static final double BACKOFF_RATIO = 0.9;
+
+  private final IntSupplier maxLimit;
+  private final IntSupplier latencyThresholdInMilli;
+  private final AtomicInteger inFlight;
+  //starts with the max limit, see getLimit()
+  private final AtomicDouble limit;
+  private final AtomicLong lastBackoffNanos;
+  private final LongAdder rejected;
+
+  public AdaptiveConcurrencyLimiter(IntSupplier maxLimit, IntSupplier latencyThresholdInMilli) {
+    this.maxLimit = maxLimit;
+    this.latencyThresholdInMilli = latencyThresholdInMilli;
+    this.inFlight = new AtomicInteger();
+    this.limit = new AtomicDouble(Integer.MAX_VALUE);
+    this.lastBackoffNanos = new AtomicLong(System.nanoTime());
+    this.rejected = new LongAdder();
+  }
+
+  /**
+   * @return the permit which must be released when the request is done, or null if the limit is reached
+   */
+  public Permit tryAcquire() {
+    int currentLimit = getLimit();
+    while (true) {
+      int current = inFlight.get();
+      if (current >= currentLimit) {
+        rejected.increment();
+        return null;
+      }
+      if (inFlight.compareAndSet(current, current + 1)) {
+        return new LimiterPermit(System.nanoTime());
+      }
+    }
+  }
+
+  public int getLimit() {
+    return (int) Math.max(MIN_LIMIT, Math.min(limit.get(), maxLimit.getAsInt()));
+  }
+
+  public int getInFlight() {
+    return inFlight.get();
+  }
+
+  public long getRejected() {
+    return rejected.sum();
+  }
+
+  private void onComplete(long startNanos, boolean dropped) {
+    int current = inFlight.getAndDecrement();
+    long now = System.nanoTime();
+    int max = Math.max(MIN_LIMIT, maxLimit.getAsInt());
+
+    if (dropped || now - startNanos > TimeUnit.MILLISECONDS.toNanos(latencyThresholdInMilli.getAsInt())) {
+      long lastBackoff = lastBackoffNanos.get();
+      if (startNanos - lastBackoff > 0 && lastBackoffNanos.compareAndSet(lastBackoff, now)) {
+        updateLimit(value -> Math.max(MIN_LIMIT, Math.min(value, max) * BACKOFF_RATIO));
+      }
+      return;
+    }
+
+    if (current * 2 >= getLimit()) {
+      updateLimit(value -> Math.min(max, value + 1));
+    }
+  }
+
+  private void updateLimit(DoubleUnaryOperator update) {
+    while (true) {
+      double current = limit.get();
+      if (limit.compareAndSet(current, update.applyAsDouble(current))) {
+        return;
+      }
+    }
+  }
+
+  public interface Permit {
+    /**
+     * The request is done
+     */
+    void release();
+
+    /**
+     * The request failed because of the overload, e.g. timed out, which backs off the limit
+     */
+    void drop();
+  }
+
+  private class LimiterPermit implements Permit {
+    private final long startNanos;
+
+    private LimiterPermit(long startNanos) {
+      this.startNanos = startNanos;
+    }
+
+    @Override
+    public void release() {
+      onComplete(startNanos, false);
+    }
+
+    @Override
+    public void drop() {
+      onComplete(startNanos, true);
+    }
+  }
+}
@@ -0,0 +1,80 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip the pre-serialized responses once, so that they could be sent as is to the clients accepting gzip
+ */
+public class GzipUtil {
+  public static final String GZIP = "gzip";
+  private static final String X_GZIP = "x-gzip";
+  //gzip doesn't pay off for the tiny responses
+  private static final int MIN_GZIP_SIZE = 1024;
+  private static final String ANY_CODING = "*";
+  private static final String QUALITY_PREFIX = "q=";
+  private static final Splitter CODING_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+  private static final Splitter PARAMETER_SPLITTER = Splitter.on(';').trimResults();
+
+  private GzipUtil() {
+  }
+
+  /**
+   * @return the gzipped content, or null if the content is too small to be worth it
+   */
+  public static byte[] gzipIfWorthIt(byte[] content) throws IOException {
+    if (content.length < MIN_GZIP_SIZE) {
+      return null;
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 4);
+    try (GZIPOutputStream gzipOut = new GZIPOutputStream(out)) {
+      gzipOut.write(content);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * @param acceptEncoding the Accept-Encoding header of the request, e.g. gzip, deflate;q=0.5
+   * @return whether gzip is accepted, either explicitly or by *, with a non zero quality
+   */
+  public static boolean acceptsGzip(String acceptEncoding) {
+    if (Strings.isNullOrEmpty(acceptEncoding)) {
+      return false;
+    }
+    Boolean anyCodingAccepted = null;
+    for (String coding : CODING_SPLITTER.split(acceptEncoding)) {
+      Iterator<String> parameters = PARAMETER_SPLITTER.split(coding).iterator();
+      String name = parameters.next();
+      boolean accepted = isQualityPositive(parameters);
+      if (GZIP.equalsIgnoreCase(name) || X_GZIP.equalsIgnoreCase(name)) {
+        //the explicit one wins over *
+        return accepted;
+      }
+      if (ANY_CODING.equals(name)) {
+        anyCodingAccepted = accepted;
+      }
+    }
+    return anyCodingAccepted != null && anyCodingAccepted;
+  }
+
+  private static boolean isQualityPositive(Iterator<String> parameters) {
+    while (parameters.hasNext()) {
+      String parameter = parameters.next();
+      if (parameter.regionMatches(true, 0, QUALITY_PREFIX, 0, QUALITY_PREFIX.length())) {
+        try {
+          return Double.parseDouble(parameter.substring(QUALITY_PREFIX.length()).trim()) > 0;
+        } catch (NumberFormatException ex) {
+          //treat the malformed quality as not acceptable
+          return false;
+        }
+      }
+    }
+    //the quality is 1 by default
+    return true;
+  }
+}
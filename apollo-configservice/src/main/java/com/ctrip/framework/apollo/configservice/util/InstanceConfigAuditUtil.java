@@ -4,8 +4,12 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Queues;
+import com.google.common.collect.Sets;
 
 import com.ctrip.framework.apollo.biz.entity.Instance;
 import com.ctrip.framework.apollo.biz.entity.InstanceConfig;
@@ -14,34 +18,47 @@ import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.tracer.Tracer;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
  */
 @Service
-public class InstanceConfigAuditUtil implements InitializingBean {
+public class InstanceConfigAuditUtil implements InitializingBean, DisposableBean, MeterBinder {
+  //max size of each partition
   private static final int INSTANCE_CONFIG_AUDIT_MAX_SIZE = 10000;
+  private static final int INSTANCE_CONFIG_AUDIT_PARTITIONS = 4;
+  private static final int INSTANCE_CONFIG_AUDIT_BATCH_SIZE = 200;
   private static final int INSTANCE_CACHE_MAX_SIZE = 50000;
   private static final int INSTANCE_CONFIG_CACHE_MAX_SIZE = 50000;
   private static final long OFFER_TIME_LAST_MODIFIED_TIME_THRESHOLD_IN_MILLI = TimeUnit.MINUTES.toMillis(10);//10 minutes
   private static final Joiner STRING_JOINER = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR);
   private final ExecutorService auditExecutorService;
   private final AtomicBoolean auditStopped;
-  private BlockingQueue<InstanceConfigAuditModel> audits = Queues.newLinkedBlockingQueue
-      (INSTANCE_CONFIG_AUDIT_MAX_SIZE);
+  //audits are partitioned by instance, so that the same instance is always audited by the same worker
+  private final List<BlockingQueue<InstanceConfigAuditModel>> audits;
+  private final AtomicLong droppedAudits;
+  private final AtomicLong writtenAudits;
   private Cache<String, Long> instanceCache;
   private Cache<String, String> instanceConfigReleaseKeyCache;
 
@@ -49,9 +66,15 @@ public class InstanceConfigAuditUtil implements InitializingBean {
 
   public InstanceConfigAuditUtil(final InstanceService instanceService) {
     this.instanceService = instanceService;
-    auditExecutorService = Executors.newSingleThreadExecutor(
+    auditExecutorService = Executors.newFixedThreadPool(INSTANCE_CONFIG_AUDIT_PARTITIONS,
         ApolloThreadFactory.create("InstanceConfigAuditUtil", true));
     auditStopped = new AtomicBoolean(false);
+    audits = Lists.newArrayListWithCapacity(INSTANCE_CONFIG_AUDIT_PARTITIONS);
+    for (int i = 0; i < INSTANCE_CONFIG_AUDIT_PARTITIONS; i++) {
+      audits.add(Queues.newLinkedBlockingQueue(INSTANCE_CONFIG_AUDIT_MAX_SIZE));
+    }
+    droppedAudits = new AtomicLong();
+    writtenAudits = new AtomicLong();
     instanceCache = CacheBuilder.newBuilder().expireAfterAccess(1, TimeUnit.HOURS)
         .maximumSize(INSTANCE_CACHE_MAX_SIZE).build();
     instanceConfigReleaseKeyCache = CacheBuilder.newBuilder().expireAfterWrite(1, TimeUnit.DAYS)
@@ -60,53 +83,113 @@ public class InstanceConfigAuditUtil implements InitializingBean {
 
   public boolean audit(String appId, String clusterName, String dataCenter, String
       ip, String configAppId, String configClusterName, String configNamespace, String releaseKey) {
-    return this.audits.offer(new InstanceConfigAuditModel(appId, clusterName, dataCenter, ip,
-        configAppId, configClusterName, configNamespace, releaseKey));
+    InstanceConfigAuditModel auditModel = new InstanceConfigAuditModel(appId, clusterName, dataCenter, ip,
+        configAppId, configClusterName, configNamespace, releaseKey);
+    String instanceKey = assembleInstanceKey(auditModel);
+    BlockingQueue<InstanceConfigAuditModel> partition = audits.get(
+        Math.floorMod(instanceKey.hashCode(), INSTANCE_CONFIG_AUDIT_PARTITIONS));
+    if (partition.offer(auditModel)) {
+      return true;
+    }
+    droppedAudits.incrementAndGet();
+    return false;
   }
 
-  void doAudit(InstanceConfigAuditModel auditModel) {
-    String instanceCacheKey = assembleInstanceKey(auditModel.getAppId(), auditModel
-        .getClusterName(), auditModel.getIp(), auditModel.getDataCenter());
-    Long instanceId = instanceCache.getIfPresent(instanceCacheKey);
-    if (instanceId == null) {
-      instanceId = prepareInstanceId(auditModel);
-      instanceCache.put(instanceCacheKey, instanceId);
+  void doAudit(List<InstanceConfigAuditModel> auditModels) {
+    //only the latest audit of the same instance and namespace matters
+    Map<String, InstanceConfigAuditModel> latestAudits = Maps.newLinkedHashMap();
+    for (InstanceConfigAuditModel auditModel : auditModels) {
+      latestAudits.put(STRING_JOINER.join(assembleInstanceKey(auditModel), auditModel.getConfigAppId(),
+          auditModel.getConfigNamespace()), auditModel);
     }
 
-    //load instance config release key from cache, and check if release key is the same
-    String instanceConfigCacheKey = assembleInstanceConfigKey(instanceId, auditModel
-        .getConfigAppId(), auditModel.getConfigNamespace());
-    String cacheReleaseKey = instanceConfigReleaseKeyCache.getIfPresent(instanceConfigCacheKey);
+    Map<String, Long> instanceIds = prepareInstanceIds(latestAudits.values());
+
+    //group the audits by namespace, so that the instance configs of each namespace are loaded with one query
+    Map<String, Map<Long, InstanceConfigAuditModel>> namespaceAudits = Maps.newLinkedHashMap();
+    for (InstanceConfigAuditModel auditModel : latestAudits.values()) {
+      Long instanceId = instanceIds.get(assembleInstanceKey(auditModel));
+      if (instanceId == null) {
+        continue;
+      }
+
+      //load instance config release key from cache, and check if release key is the same
+      String instanceConfigCacheKey = assembleInstanceConfigKey(instanceId, auditModel
+          .getConfigAppId(), auditModel.getConfigNamespace());
+      String cacheReleaseKey = instanceConfigReleaseKeyCache.getIfPresent(instanceConfigCacheKey);
+
+      //if release key is the same, then skip audit
+      if (cacheReleaseKey != null && Objects.equals(cacheReleaseKey, auditModel.getReleaseKey())) {
+        continue;
+      }
+
+      instanceConfigReleaseKeyCache.put(instanceConfigCacheKey, auditModel.getReleaseKey());
 
-    //if release key is the same, then skip audit
-    if (cacheReleaseKey != null && Objects.equals(cacheReleaseKey, auditModel.getReleaseKey())) {
-      return;
+      namespaceAudits.computeIfAbsent(STRING_JOINER.join(auditModel.getConfigAppId(),
+          auditModel.getConfigNamespace()), key -> Maps.newLinkedHashMap()).put(instanceId, auditModel);
     }
 
-    instanceConfigReleaseKeyCache.put(instanceConfigCacheKey, auditModel.getReleaseKey());
+    List<InstanceConfig> toUpdate = Lists.newArrayList();
+    List<InstanceConfig> toCreate = Lists.newArrayList();
+    for (Map<Long, InstanceConfigAuditModel> instanceAudits : namespaceAudits.values()) {
+      InstanceConfigAuditModel someAuditModel = instanceAudits.values().iterator().next();
+      //if release key is not the same or cannot find in cache, then do audit
+      Map<Long, InstanceConfig> instanceConfigs = Maps.newHashMap();
+      for (InstanceConfig instanceConfig : instanceService.findInstanceConfigs(instanceAudits.keySet(),
+          someAuditModel.getConfigAppId(), someAuditModel.getConfigNamespace())) {
+        instanceConfigs.put(instanceConfig.getInstanceId(), instanceConfig);
+      }
+
+      for (Map.Entry<Long, InstanceConfigAuditModel> entry : instanceAudits.entrySet()) {
+        InstanceConfigAuditModel auditModel = entry.getValue();
+        InstanceConfig instanceConfig = instanceConfigs.get(entry.getKey());
+        if (instanceConfig == null) {
+          toCreate.add(assembleInstanceConfig(entry.getKey(), auditModel));
+          continue;
+        }
+        if (!Objects.equals(instanceConfig.getReleaseKey(), auditModel.getReleaseKey())) {
+          instanceConfig.setConfigClusterName(auditModel.getConfigClusterName());
+          instanceConfig.setReleaseKey(auditModel.getReleaseKey());
+          instanceConfig.setReleaseDeliveryTime(auditModel.getOfferTime());
+        } else if (offerTimeAndLastModifiedTimeCloseEnough(auditModel.getOfferTime(),
+            instanceConfig.getDataChangeLastModifiedTime())) {
+          //when releaseKey is the same, optimize to reduce writes if the record was updated not long ago
+          continue;
+        }
+        //we need to update no matter the release key is the same or not, to ensure the
+        //last modified time is updated each day
+        instanceConfig.setDataChangeLastModifiedTime(auditModel.getOfferTime());
+        toUpdate.add(instanceConfig);
+      }
+    }
 
-    //if release key is not the same or cannot find in cache, then do audit
-    InstanceConfig instanceConfig = instanceService.findInstanceConfig(instanceId, auditModel
-        .getConfigAppId(), auditModel.getConfigNamespace());
+    if (!toUpdate.isEmpty()) {
+      instanceService.batchUpdateInstanceConfigs(toUpdate);
+      writtenAudits.addAndGet(toUpdate.size());
+    }
+    if (!toCreate.isEmpty()) {
+      createInstanceConfigs(toCreate);
+      writtenAudits.addAndGet(toCreate.size());
+    }
+  }
 
-    if (instanceConfig != null) {
-      if (!Objects.equals(instanceConfig.getReleaseKey(), auditModel.getReleaseKey())) {
-        instanceConfig.setConfigClusterName(auditModel.getConfigClusterName());
-        instanceConfig.setReleaseKey(auditModel.getReleaseKey());
-        instanceConfig.setReleaseDeliveryTime(auditModel.getOfferTime());
-      } else if (offerTimeAndLastModifiedTimeCloseEnough(auditModel.getOfferTime(),
-          instanceConfig.getDataChangeLastModifiedTime())) {
-        //when releaseKey is the same, optimize to reduce writes if the record was updated not long ago
-        return;
+  private void createInstanceConfigs(List<InstanceConfig> instanceConfigs) {
+    try {
+      instanceService.batchCreateInstanceConfigs(instanceConfigs);
+    } catch (DataIntegrityViolationException ex) {
+      //concurrent insertion by other config services, create them one by one to skip the existing ones
+      for (InstanceConfig instanceConfig : instanceConfigs) {
+        try {
+          instanceService.createInstanceConfig(instanceConfig);
+        } catch (DataIntegrityViolationException e) {
+          //concurrent insertion, safe to ignore
+        }
       }
-      //we need to update no matter the release key is the same or not, to ensure the
-      //last modified time is updated each day
-      instanceConfig.setDataChangeLastModifiedTime(auditModel.getOfferTime());
-      instanceService.updateInstanceConfig(instanceConfig);
-      return;
     }
+  }
 
-    instanceConfig = new InstanceConfig();
+  private InstanceConfig assembleInstanceConfig(long instanceId, InstanceConfigAuditModel auditModel) {
+    InstanceConfig instanceConfig = new InstanceConfig();
     instanceConfig.setInstanceId(instanceId);
     instanceConfig.setConfigAppId(auditModel.getConfigAppId());
     instanceConfig.setConfigClusterName(auditModel.getConfigClusterName());
@@ -114,12 +197,7 @@ public class InstanceConfigAuditUtil implements InitializingBean {
     instanceConfig.setReleaseKey(auditModel.getReleaseKey());
     instanceConfig.setReleaseDeliveryTime(auditModel.getOfferTime());
     instanceConfig.setDataChangeCreatedTime(auditModel.getOfferTime());
-
-    try {
-      instanceService.createInstanceConfig(instanceConfig);
-    } catch (DataIntegrityViolationException ex) {
-      //concurrent insertion, safe to ignore
-    }
+    return instanceConfig;
   }
 
   private boolean offerTimeAndLastModifiedTimeCloseEnough(Date offerTime, Date lastModifiedTime) {
@@ -127,6 +205,82 @@ public class InstanceConfigAuditUtil implements InitializingBean {
         OFFER_TIME_LAST_MODIFIED_TIME_THRESHOLD_IN_MILLI;
   }
 
+  /**
+   * @return instance key -> instance id
+   */
+  private Map<String, Long> prepareInstanceIds(Collection<InstanceConfigAuditModel> auditModels) {
+    Map<String, Long> instanceIds = Maps.newHashMap();
+    Map<String, InstanceConfigAuditModel> toFind = Maps.newLinkedHashMap();
+    for (InstanceConfigAuditModel auditModel : auditModels) {
+      String instanceKey = assembleInstanceKey(auditModel);
+      Long instanceId = instanceCache.getIfPresent(instanceKey);
+      if (instanceId != null) {
+        instanceIds.put(instanceKey, instanceId);
+      } else {
+        toFind.putIfAbsent(instanceKey, auditModel);
+      }
+    }
+    if (toFind.isEmpty()) {
+      return instanceIds;
+    }
+
+    //group the instances by app and cluster, so that they are found with one query per group
+    ListMultimap<String, InstanceConfigAuditModel> appClusterAudits = ArrayListMultimap.create();
+    for (InstanceConfigAuditModel auditModel : toFind.values()) {
+      appClusterAudits.put(STRING_JOINER.join(auditModel.getAppId(), auditModel.getClusterName()), auditModel);
+    }
+    for (Collection<InstanceConfigAuditModel> instanceAudits : appClusterAudits.asMap().values()) {
+      InstanceConfigAuditModel someAuditModel = instanceAudits.iterator().next();
+      Set<String> ips = Sets.newHashSet();
+      for (InstanceConfigAuditModel auditModel : instanceAudits) {
+        ips.add(auditModel.getIp());
+      }
+      for (Instance instance : instanceService.findInstances(someAuditModel.getAppId(),
+          someAuditModel.getClusterName(), ips)) {
+        String instanceKey = assembleInstanceKey(instance.getAppId(), instance.getClusterName(), instance.getIp(),
+            instance.getDataCenter());
+        if (toFind.remove(instanceKey) != null) {
+          instanceIds.put(instanceKey, instance.getId());
+          instanceCache.put(instanceKey, instance.getId());
+        }
+      }
+    }
+    if (toFind.isEmpty()) {
+      return instanceIds;
+    }
+
+    List<Instance> toCreate = Lists.newArrayListWithCapacity(toFind.size());
+    for (InstanceConfigAuditModel auditModel : toFind.values()) {
+      Instance instance = new Instance();
+      instance.setAppId(auditModel.getAppId());
+      instance.setClusterName(auditModel.getClusterName());
+      instance.setDataCenter(auditModel.getDataCenter());
+      instance.setIp(auditModel.getIp());
+      toCreate.add(instance);
+    }
+
+    try {
+      for (Instance instance : instanceService.batchCreateInstances(toCreate)) {
+        String instanceKey = assembleInstanceKey(instance.getAppId(), instance.getClusterName(), instance.getIp(),
+            instance.getDataCenter());
+        instanceIds.put(instanceKey, instance.getId());
+        instanceCache.put(instanceKey, instance.getId());
+      }
+    } catch (DataIntegrityViolationException ex) {
+      //concurrent insertion by other config services, prepare them one by one
+      for (Map.Entry<String, InstanceConfigAuditModel> entry : toFind.entrySet()) {
+        try {
+          long instanceId = prepareInstanceId(entry.getValue());
+          instanceIds.put(entry.getKey(), instanceId);
+          instanceCache.put(entry.getKey(), instanceId);
+        } catch (Throwable e) {
+          Tracer.logError(e);
+        }
+      }
+    }
+    return instanceIds;
+  }
+
   private long prepareInstanceId(InstanceConfigAuditModel auditModel) {
     Instance instance = instanceService.findInstance(auditModel.getAppId(), auditModel
         .getClusterName(), auditModel.getDataCenter(), auditModel.getIp());
@@ -151,20 +305,64 @@ public class InstanceConfigAuditUtil implements InitializingBean {
 
   @Override
   public void afterPropertiesSet() throws Exception {
-    auditExecutorService.submit(() -> {
-      while (!auditStopped.get() && !Thread.currentThread().isInterrupted()) {
-        try {
-          InstanceConfigAuditModel model = audits.poll();
-          if (model == null) {
-            TimeUnit.SECONDS.sleep(1);
-            continue;
+    for (BlockingQueue<InstanceConfigAuditModel> partition : audits) {
+      auditExecutorService.submit(() -> {
+        List<InstanceConfigAuditModel> auditModels = Lists.newArrayListWithCapacity(INSTANCE_CONFIG_AUDIT_BATCH_SIZE);
+        while (!auditStopped.get() && !Thread.currentThread().isInterrupted()) {
+          try {
+            InstanceConfigAuditModel model = partition.poll(1, TimeUnit.SECONDS);
+            if (model == null) {
+              continue;
+            }
+            auditModels.add(model);
+            partition.drainTo(auditModels, INSTANCE_CONFIG_AUDIT_BATCH_SIZE - 1);
+            doAudit(auditModels);
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+          } catch (Throwable ex) {
+            Tracer.logError(ex);
+          } finally {
+            auditModels.clear();
           }
-          doAudit(model);
-        } catch (Throwable ex) {
-          Tracer.logError(ex);
         }
-      }
-    });
+      });
+    }
+  }
+
+  @Override
+  public void destroy() throws Exception {
+    auditStopped.set(true);
+    auditExecutorService.shutdownNow();
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    Gauge.builder("apollo.instance.config.audit.queue.size", this, InstanceConfigAuditUtil::getQueueSize)
+        .description("Number of instance config audits waiting to be written")
+        .register(registry);
+    FunctionCounter.builder("apollo.instance.config.audit.dropped", droppedAudits, AtomicLong::get)
+        .description("Number of instance config audits dropped because the queue is full")
+        .register(registry);
+    FunctionCounter.builder("apollo.instance.config.audit.written", writtenAudits, AtomicLong::get)
+        .description("Number of instance configs created or updated")
+        .register(registry);
+  }
+
+  int getQueueSize() {
+    int size = 0;
+    for (BlockingQueue<InstanceConfigAuditModel> partition : audits) {
+      size += partition.size();
+    }
+    return size;
+  }
+
+  long getDroppedAudits() {
+    return droppedAudits.get();
+  }
+
+  private String assembleInstanceKey(InstanceConfigAuditModel auditModel) {
+    return assembleInstanceKey(auditModel.getAppId(), auditModel.getClusterName(), auditModel.getIp(),
+        auditModel.getDataCenter());
   }
 
   private String assembleInstanceKey(String appId, String cluster, String ip, String datacenter) {
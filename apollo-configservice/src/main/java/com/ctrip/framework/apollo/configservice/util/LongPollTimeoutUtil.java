@@ -0,0 +1,39 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.configservice.service.DeferredResultRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decide the timeout of each long polling request.
+ * <br />
+ * The timeouts are randomized between {@link BizConfig#longPollTimeoutMinInMilli()} and
+ * {@link BizConfig#longPollTimeoutMaxInMilli()}, so that the clients connected at the same time don't reconnect at
+ * the same time again and again. The more clients are waiting, the more the timeouts lean to the upper bound, which
+ * lowers the reconnecting rate of a busy config service, while they are still spread over the upper half at least.
+ */
+@Component
+public class LongPollTimeoutUtil {
+  private final BizConfig bizConfig;
+  private final DeferredResultRegistry deferredResults;
+
+  public LongPollTimeoutUtil(
+      final BizConfig bizConfig,
+      final DeferredResultRegistry deferredResults) {
+    this.bizConfig = bizConfig;
+    this.deferredResults = deferredResults;
+  }
+
+  public long nextTimeoutInMillis() {
+    int min = bizConfig.longPollTimeoutMinInMilli();
+    int max = bizConfig.longPollTimeoutMaxInMilli();
+    if (max <= min) {
+      return min;
+    }
+    double load = Math.min(1.0, (double) deferredResults.registrationCount() / bizConfig.longPollHighLoadThreshold());
+    long lowerBound = min + (long) ((max - min) * load / 2);
+    return ThreadLocalRandom.current().nextLong(lowerBound, max + 1);
+  }
+}
@@ -0,0 +1,226 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.Release;
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.biz.entity.ReleaseHistory;
+import com.ctrip.framework.apollo.biz.service.ReleaseHistoryService;
+import com.ctrip.framework.apollo.biz.service.ReleaseService;
+import com.ctrip.framework.apollo.common.constants.ReleaseOperation;
+import com.ctrip.framework.apollo.core.ConfigConsts;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Find out which configuration keys are changed by the release behind a release message.
+ * <br />
+ * Only normal releases and rollbacks of the main branch have a definite change set for every client, for other
+ * operations, e.g. gray releases, or when the release history can't be matched, the changed keys are unknown.
+ * <br />
+ * The changed keys are relative to the release of the previous message of the same key, so they only apply to the
+ * clients whose notification id is that message's id. As the release history only tells the latest release, the keys
+ * are given only when it is proven to be the one right after the release of the previous message, e.g. not when
+ * several releases are committed before their messages are handled.
+ */
+@Component
+public class ReleaseChangedKeysUtil {
+  private static final Splitter STRING_SPLITTER =
+      Splitter.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR).omitEmptyStrings();
+  private static final Type configurationTypeReference = new TypeToken<Map<String, String>>() {
+  }.getType();
+  private static final Pageable FIRST_ITEM = PageRequest.of(0, 1);
+  private static final int CHANGED_KEYS_CACHE_MAX_SIZE = 1000;
+  private static final int RESOLVED_MESSAGES_MAX_SIZE = 10000;
+  private static final long RESOLVED_MESSAGES_EXPIRE_HOURS = 24;
+  private static final long UNKNOWN_RELEASE_ID = -1;
+
+  private final ReleaseHistoryService releaseHistoryService;
+  private final ReleaseService releaseService;
+  private final BizConfig bizConfig;
+  private final Gson gson = new Gson();
+  //message id -> the changed keys, as one message is handled by several listeners
+  private final Cache<Long, Optional<ChangedKeys>> changedKeysCache;
+  //message -> the latest handled message of it, an evicted message only costs a full notification of its next release
+  private final ConcurrentMap<String, ResolvedMessage> resolvedMessages;
+
+  public ReleaseChangedKeysUtil(
+      final ReleaseHistoryService releaseHistoryService,
+      final ReleaseService releaseService,
+      final BizConfig bizConfig) {
+    this.releaseHistoryService = releaseHistoryService;
+    this.releaseService = releaseService;
+    this.bizConfig = bizConfig;
+    this.changedKeysCache = CacheBuilder.newBuilder().maximumSize(CHANGED_KEYS_CACHE_MAX_SIZE).build();
+    Cache<String, ResolvedMessage> resolvedMessagesCache = CacheBuilder.newBuilder()
+        .maximumSize(RESOLVED_MESSAGES_MAX_SIZE)
+        .expireAfterAccess(RESOLVED_MESSAGES_EXPIRE_HOURS, TimeUnit.HOURS)
+        .build();
+    this.resolvedMessages = resolvedMessagesCache.asMap();
+  }
+
+  /**
+   * @param releaseMessage the release message, whose message is appId+cluster+namespace
+   * @return the changed keys and the message they are relative to, or null if they are unknown or too many
+   */
+  public ChangedKeys findChangedKeys(ReleaseMessage releaseMessage) {
+    try {
+      return changedKeysCache.get(releaseMessage.getId(),
+          () -> Optional.ofNullable(resolveChangedKeys(releaseMessage))).orElse(null);
+    } catch (ExecutionException ex) {
+      Tracer.logError(ex);
+      return null;
+    }
+  }
+
+  private ChangedKeys resolveChangedKeys(ReleaseMessage releaseMessage) {
+    String message = releaseMessage.getMessage();
+    ResolvedRelease release = resolveLatestRelease(message);
+    ResolvedMessage current = new ResolvedMessage(releaseMessage.getId(),
+        release == null ? UNKNOWN_RELEASE_ID : release.releaseId);
+
+    ResolvedMessage previous;
+    do {
+      previous = resolvedMessages.get(message);
+      if (previous != null && previous.messageId >= current.messageId) {
+        //handled out of order, not worth chasing
+        return null;
+      }
+    } while (previous == null ? resolvedMessages.putIfAbsent(message, current) != null
+        : !resolvedMessages.replace(message, previous, current));
+
+    //the release of the previous message must be the one this release is based on
+    if (release == null || release.changedKeys == null || previous == null
+        || previous.releaseId != release.previousReleaseId) {
+      return null;
+    }
+    return new ChangedKeys(previous.messageId, release.changedKeys);
+  }
+
+  private ResolvedRelease resolveLatestRelease(String releaseMessage) {
+    List<String> keys = STRING_SPLITTER.splitToList(releaseMessage);
+    //message should be appId+cluster+namespace
+    if (keys.size() != 3) {
+      return null;
+    }
+    String appId = keys.get(0);
+    String clusterName = keys.get(1);
+    String namespaceName = keys.get(2);
+
+    try {
+      Page<ReleaseHistory> histories =
+          releaseHistoryService.findReleaseHistoriesByNamespace(appId, clusterName, namespaceName, FIRST_ITEM);
+      if (histories == null || !histories.hasContent()) {
+        return null;
+      }
+
+      ReleaseHistory latestHistory = histories.getContent().get(0);
+      if (!Objects.equals(clusterName, latestHistory.getBranchName()) || latestHistory.getPreviousReleaseId() <= 0) {
+        return null;
+      }
+      if (latestHistory.getOperation() != ReleaseOperation.NORMAL_RELEASE
+          && latestHistory.getOperation() != ReleaseOperation.ROLLBACK) {
+        return null;
+      }
+
+      //make sure the history describes the release which is active now
+      Release latestRelease = releaseService.findLatestActiveRelease(appId, clusterName, namespaceName);
+      if (latestRelease == null || latestRelease.getId() != latestHistory.getReleaseId()) {
+        return null;
+      }
+      Release previousRelease = releaseService.findOne(latestHistory.getPreviousReleaseId());
+      if (previousRelease == null) {
+        return null;
+      }
+
+      Set<String> changedKeys = diff(previousRelease, latestRelease);
+      if (changedKeys.size() > bizConfig.releaseMessageChangedKeysLimit()) {
+        changedKeys = null;
+      }
+      return new ResolvedRelease(latestRelease.getId(), previousRelease.getId(), changedKeys);
+    } catch (Throwable ex) {
+      Tracer.logError(ex);
+      return null;
+    }
+  }
+
+  private Set<String> diff(Release previousRelease, Release latestRelease) {
+    Map<String, String> previous = parseConfigurations(previousRelease);
+    Map<String, String> latest = parseConfigurations(latestRelease);
+
+    Set<String> changedKeys = Sets.newHashSet();
+    for (String key : Sets.union(previous.keySet(), latest.keySet())) {
+      if (!Objects.equals(previous.get(key), latest.get(key))) {
+        changedKeys.add(key);
+      }
+    }
+    return changedKeys;
+  }
+
+  private Map<String, String> parseConfigurations(Release release) {
+    Map<String, String> configurations = gson.fromJson(release.getConfigurations(), configurationTypeReference);
+    return configurations == null ? Maps.newHashMap() : configurations;
+  }
+
+  public static class ChangedKeys {
+    private final long previousMessageId;
+    private final Set<String> keys;
+
+    public ChangedKeys(long previousMessageId, Set<String> keys) {
+      this.previousMessageId = previousMessageId;
+      this.keys = keys;
+    }
+
+    /**
+     * @return the id of the previous message of the same key, the keys only apply to the clients which have seen it
+     */
+    public long getPreviousMessageId() {
+      return previousMessageId;
+    }
+
+    public Set<String> getKeys() {
+      return keys;
+    }
+  }
+
+  private static class ResolvedRelease {
+    private final long releaseId;
+    private final long previousReleaseId;
+    private final Set<String> changedKeys;
+
+    private ResolvedRelease(long releaseId, long previousReleaseId, Set<String> changedKeys) {
+      this.releaseId = releaseId;
+      this.previousReleaseId = previousReleaseId;
+      this.changedKeys = changedKeys;
+    }
+  }
+
+  private static class ResolvedMessage {
+    private final long messageId;
+    private final long releaseId;
+
+    private ResolvedMessage(long messageId, long releaseId) {
+      this.messageId = messageId;
+      this.releaseId = releaseId;
+    }
+  }
+}
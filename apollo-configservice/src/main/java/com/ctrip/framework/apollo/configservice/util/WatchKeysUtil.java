@@ -5,15 +5,24 @@ import com.ctrip.framework.apollo.configservice.service.AppNamespaceServiceWithC
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
 import org.springframework.stereotype.Component;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 /**
@@ -22,10 +31,21 @@ import java.util.stream.Collectors;
 @Component
 public class WatchKeysUtil {
   private static final Joiner STRING_JOINER = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR);
+  private static final int WATCH_KEYS_CACHE_MAX_SIZE = 10000;
   private final AppNamespaceServiceWithCache appNamespaceService;
+  //the same watch keys are assembled for all the clients of the same app, so share them
+  private final Interner<String> watchKeyInterner;
+  private final Cache<WatchKeysCacheKey, WatchKeys> watchKeysCache;
+  //increased on each invalidation, so that watch keys assembled with outdated app namespaces are not cached
+  private final AtomicLong watchKeysCacheVersion;
 
   public WatchKeysUtil(final AppNamespaceServiceWithCache appNamespaceService) {
     this.appNamespaceService = appNamespaceService;
+    watchKeyInterner = Interners.newWeakInterner();
+    watchKeysCache = CacheBuilder.newBuilder().maximumSize(WATCH_KEYS_CACHE_MAX_SIZE)
+        .expireAfterAccess(1, TimeUnit.HOURS).build();
+    watchKeysCacheVersion = new AtomicLong();
+    appNamespaceService.addChangeListener(this::invalidate);
   }
 
   /**
@@ -33,19 +53,60 @@ public class WatchKeysUtil {
    */
   public Set<String> assembleAllWatchKeys(String appId, String clusterName, String namespace,
                                           String dataCenter) {
-    Multimap<String, String> watchedKeysMap =
-        assembleAllWatchKeys(appId, clusterName, Sets.newHashSet(namespace), dataCenter);
-    return Sets.newHashSet(watchedKeysMap.get(namespace));
+    return findWatchKeys(appId, clusterName, ImmutableSet.of(namespace), dataCenter).getAllWatchKeys();
   }
 
   /**
    * Assemble watch keys for the given appId, cluster, namespaces, dataCenter combination
    *
-   * @return a multimap with namespace as the key and watch keys as the value
+   * @return an immutable multimap with namespace as the key and watch keys as the value
    */
   public Multimap<String, String> assembleAllWatchKeys(String appId, String clusterName,
                                                        Set<String> namespaces,
                                                        String dataCenter) {
+    return findWatchKeys(appId, clusterName, namespaces, dataCenter).getNamespaceWatchKeys();
+  }
+
+  /**
+   * Find the watch keys for the given appId, cluster, namespaces, dataCenter combination, which are cached until the
+   * related app namespaces change
+   */
+  public WatchKeys findWatchKeys(String appId, String clusterName, Set<String> namespaces,
+                                 String dataCenter) {
+    WatchKeysCacheKey cacheKey = new WatchKeysCacheKey(appId, clusterName, namespaces, dataCenter);
+    WatchKeys watchKeys = watchKeysCache.getIfPresent(cacheKey);
+    if (watchKeys != null) {
+      return watchKeys;
+    }
+
+    long version = watchKeysCacheVersion.get();
+    Multimap<String, String> watchedKeysMap = doAssembleAllWatchKeys(appId, clusterName, namespaces, dataCenter);
+    ImmutableSetMultimap.Builder<String, String> interned = ImmutableSetMultimap.builder();
+    for (Map.Entry<String, String> entry : watchedKeysMap.entries()) {
+      interned.put(entry.getKey(), watchKeyInterner.intern(entry.getValue()));
+    }
+    watchKeys = new WatchKeys(interned.build());
+
+    //app namespaces changed during the assembling, the watch keys might be outdated
+    if (version == watchKeysCacheVersion.get()) {
+      watchKeysCache.put(cacheKey, watchKeys);
+      //an invalidation could run between the check and the put, which bumps the version before removing the entries,
+      //so check again and take back the entry if it might have missed it
+      if (version != watchKeysCacheVersion.get()) {
+        watchKeysCache.asMap().remove(cacheKey, watchKeys);
+      }
+    }
+    return watchKeys;
+  }
+
+  private void invalidate(List<AppNamespace> changedAppNamespaces) {
+    watchKeysCacheVersion.incrementAndGet();
+    watchKeysCache.asMap().keySet().removeIf(cacheKey -> cacheKey.isAffectedBy(changedAppNamespaces));
+  }
+
+  private Multimap<String, String> doAssembleAllWatchKeys(String appId, String clusterName,
+                                                          Set<String> namespaces,
+                                                          String dataCenter) {
     Multimap<String, String> watchedKeysMap =
         assembleWatchKeys(appId, clusterName, namespaces, dataCenter);
 
@@ -139,4 +200,77 @@ public class WatchKeysUtil {
 
     return appNamespaces.stream().map(AppNamespace::getName).collect(Collectors.toSet());
   }
+
+  public static class WatchKeys {
+    private final ImmutableSetMultimap<String, String> namespaceWatchKeys;
+    private final ImmutableSet<String> allWatchKeys;
+
+    public WatchKeys(Multimap<String, String> namespaceWatchKeys) {
+      this.namespaceWatchKeys = ImmutableSetMultimap.copyOf(namespaceWatchKeys);
+      this.allWatchKeys = ImmutableSet.copyOf(namespaceWatchKeys.values());
+    }
+
+    /**
+     * @return namespace -> watch keys
+     */
+    public Multimap<String, String> getNamespaceWatchKeys() {
+      return namespaceWatchKeys;
+    }
+
+    public Set<String> getAllWatchKeys() {
+      return allWatchKeys;
+    }
+  }
+
+  private static class WatchKeysCacheKey {
+    private final String appId;
+    private final String clusterName;
+    private final Set<String> namespaces;
+    private final String dataCenter;
+    private final int hashCode;
+
+    WatchKeysCacheKey(String appId, String clusterName, Set<String> namespaces, String dataCenter) {
+      this.appId = appId;
+      this.clusterName = clusterName;
+      this.namespaces = ImmutableSet.copyOf(namespaces);
+      this.dataCenter = dataCenter;
+      this.hashCode = Objects.hash(appId, clusterName, this.namespaces, dataCenter);
+    }
+
+    boolean isAffectedBy(List<AppNamespace> changedAppNamespaces) {
+      for (AppNamespace appNamespace : changedAppNamespaces) {
+        //app namespaces are case insensitive
+        if (appNamespace.getAppId() != null && appNamespace.getAppId().equalsIgnoreCase(appId)) {
+          return true;
+        }
+        for (String namespace : namespaces) {
+          if (namespace.equalsIgnoreCase(appNamespace.getName())) {
+            return true;
+          }
+        }
+      }
+      return false;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      WatchKeysCacheKey that = (WatchKeysCacheKey) o;
+      return hashCode == that.hashCode &&
+          Objects.equals(appId, that.appId) &&
+          Objects.equals(clusterName, that.clusterName) &&
+          Objects.equals(namespaces, that.namespaces) &&
+          Objects.equals(dataCenter, that.dataCenter);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
 }
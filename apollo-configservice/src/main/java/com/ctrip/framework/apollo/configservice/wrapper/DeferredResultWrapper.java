@@ -3,6 +3,7 @@ package com.ctrip.framework.apollo.configservice.wrapper;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
+import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
 
 import org.springframework.http.HttpStatus;
@@ -11,21 +12,34 @@ import org.springframework.web.context.request.async.DeferredResult;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
  */
 public class DeferredResultWrapper {
-  private static final long TIMEOUT = 60 * 1000;//60 seconds
+  private static final long DEFAULT_TIMEOUT = 60 * 1000;//60 seconds
   private static final ResponseEntity<List<ApolloConfigNotification>>
       NOT_MODIFIED_RESPONSE_LIST = new ResponseEntity<>(HttpStatus.NOT_MODIFIED);
 
   private Map<String, String> normalizedNamespaceNameToOriginalNamespaceName;
   private DeferredResult<ResponseEntity<List<ApolloConfigNotification>>> result;
+  private final long timeoutInMillis;
+  private boolean changedKeysRequested;
+  private Map<String, Long> clientSideNotifications;
+  private volatile long registrationSequence;
+  private Runnable timeoutCallback;
+  private Runnable completionCallback;
+  private final AtomicBoolean completed = new AtomicBoolean(false);
 
 
   public DeferredResultWrapper() {
-    result = new DeferredResult<>(TIMEOUT, NOT_MODIFIED_RESPONSE_LIST);
+    this(DEFAULT_TIMEOUT);
+  }
+
+  public DeferredResultWrapper(long timeoutInMillis) {
+    this.timeoutInMillis = timeoutInMillis;
+    result = new DeferredResult<>(timeoutInMillis, NOT_MODIFIED_RESPONSE_LIST);
   }
 
   public void recordNamespaceNameNormalizedResult(String originalNamespaceName, String normalizedNamespaceName) {
@@ -36,14 +50,85 @@ public class DeferredResultWrapper {
   }
 
 
+  public boolean isChangedKeysRequested() {
+    return changedKeysRequested;
+  }
+
+  public void setChangedKeysRequested(boolean changedKeysRequested) {
+    this.changedKeysRequested = changedKeysRequested;
+  }
+
+  /**
+   * Record the notification ids the client has seen, so as to tell whether the changed keys apply to it
+   *
+   * @param clientSideNotifications normalized namespace name -> notification id
+   */
+  public void setClientSideNotifications(Map<String, Long> clientSideNotifications) {
+    this.clientSideNotifications = clientSideNotifications;
+  }
+
+  public long getClientSideNotificationId(String normalizedNamespaceName) {
+    if (clientSideNotifications == null) {
+      return ConfigConsts.NOTIFICATION_ID_PLACEHOLDER;
+    }
+    return clientSideNotifications.getOrDefault(normalizedNamespaceName, ConfigConsts.NOTIFICATION_ID_PLACEHOLDER);
+  }
+
+  public long getRegistrationSequence() {
+    return registrationSequence;
+  }
+
+  public void setRegistrationSequence(long registrationSequence) {
+    this.registrationSequence = registrationSequence;
+  }
+
+  public long getTimeoutInMillis() {
+    return timeoutInMillis;
+  }
+
   public void onTimeout(Runnable timeoutCallback) {
+    this.timeoutCallback = timeoutCallback;
     result.onTimeout(timeoutCallback);
   }
 
   public void onCompletion(Runnable completionCallback) {
+    this.completionCallback = completionCallback;
     result.onCompletion(completionCallback);
   }
 
+  /**
+   * Time out the request, only for the hosts which don't drive the lifecycle of the {@link DeferredResult}, the
+   * servlet container does it by itself
+   */
+  public void timeout() {
+    if (result.isSetOrExpired()) {
+      return;
+    }
+    if (timeoutCallback != null) {
+      timeoutCallback.run();
+    }
+    result.setResult(NOT_MODIFIED_RESPONSE_LIST);
+  }
+
+  /**
+   * Release the request with no changes before it times out, e.g. when the config service is shutting down
+   */
+  public void release() {
+    if (!result.isSetOrExpired()) {
+      result.setResult(NOT_MODIFIED_RESPONSE_LIST);
+    }
+  }
+
+  /**
+   * Complete the request once the response is written or the connection is closed, only for the hosts which don't
+   * drive the lifecycle of the {@link DeferredResult}, the servlet container does it by itself
+   */
+  public void complete() {
+    if (completionCallback != null && completed.compareAndSet(false, true)) {
+      completionCallback.run();
+    }
+  }
+
 
   public void setResult(ApolloConfigNotification notification) {
     setResult(Lists.newArrayList(notification));
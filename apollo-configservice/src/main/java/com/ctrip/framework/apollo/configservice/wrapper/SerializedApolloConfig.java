@@ -0,0 +1,36 @@
+package com.ctrip.framework.apollo.configservice.wrapper;
+
+import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+
+/**
+ * An {@link ApolloConfig} carrying its serialized response, which is shared by all the requests of the same release,
+ * so it must not be modified.
+ */
+public class SerializedApolloConfig extends ApolloConfig {
+  //transient so that it's never serialized as part of the config itself
+  private transient byte[] json;
+  private transient byte[] gzippedJson;
+
+  public SerializedApolloConfig(String appId, String cluster, String namespaceName, String releaseKey) {
+    super(appId, cluster, namespaceName, releaseKey);
+  }
+
+  public byte[] getJson() {
+    return json;
+  }
+
+  public void setJson(byte[] json) {
+    this.json = json;
+  }
+
+  /**
+   * @return the gzipped json, or null if the json is too small to be worth compressing
+   */
+  public byte[] getGzippedJson() {
+    return gzippedJson;
+  }
+
+  public void setGzippedJson(byte[] gzippedJson) {
+    this.gzippedJson = gzippedJson;
+  }
+}
@@ -9,8 +9,9 @@ import com.ctrip.framework.apollo.core.dto.ApolloConfig;
 import com.google.common.cache.Cache;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Multimap;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
 import com.google.common.reflect.TypeToken;
 import com.google.gson.Gson;
 import org.junit.Before;
@@ -18,17 +19,23 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
@@ -56,8 +63,8 @@ public class ConfigFileControllerTest {
   private HttpServletResponse someResponse;
   @Mock
   private HttpServletRequest someRequest;
-  Multimap<String, String> watchedKeys2CacheKey;
-  Multimap<String, String> cacheKey2WatchedKeys;
+  ConcurrentMap<String, Set<String>> watchedKeys2CacheKey;
+  ConcurrentMap<String, Set<String>> cacheKey2WatchedKeys;
 
   @Before
   public void setUp() throws Exception {
@@ -77,10 +84,10 @@ public class ConfigFileControllerTest {
         .thenReturn(false);
 
     watchedKeys2CacheKey =
-        (Multimap<String, String>) ReflectionTestUtils
+        (ConcurrentMap<String, Set<String>>) ReflectionTestUtils
             .getField(configFileController, "watchedKeys2CacheKey");
     cacheKey2WatchedKeys =
-        (Multimap<String, String>) ReflectionTestUtils
+        (ConcurrentMap<String, Set<String>>) ReflectionTestUtils
             .getField(configFileController, "cacheKey2WatchedKeys");
   }
 
@@ -110,23 +117,23 @@ public class ConfigFileControllerTest {
         .assembleAllWatchKeys(someAppId, someClusterName, someNamespace, someDataCenter))
         .thenReturn(watchKeys);
 
-    ResponseEntity<String> response =
+    ResponseEntity<byte[]> response =
         configFileController
             .queryConfigAsProperties(someAppId, someClusterName, someNamespace, someDataCenter,
                 someClientIp, someRequest, someResponse);
 
     assertEquals(2, watchedKeys2CacheKey.size());
-    assertEquals(2, cacheKey2WatchedKeys.size());
-    assertTrue(watchedKeys2CacheKey.containsEntry(someWatchKey, cacheKey));
-    assertTrue(watchedKeys2CacheKey.containsEntry(anotherWatchKey, cacheKey));
-    assertTrue(cacheKey2WatchedKeys.containsEntry(cacheKey, someWatchKey));
-    assertTrue(cacheKey2WatchedKeys.containsEntry(cacheKey, anotherWatchKey));
+    assertEquals(1, cacheKey2WatchedKeys.size());
+    assertTrue(watchedKeys2CacheKey.get(someWatchKey).contains(cacheKey));
+    assertTrue(watchedKeys2CacheKey.get(anotherWatchKey).contains(cacheKey));
+    assertEquals(watchKeys, cacheKey2WatchedKeys.get(cacheKey));
 
+    String body = new String(response.getBody(), StandardCharsets.UTF_8);
     assertEquals(HttpStatus.OK, response.getStatusCode());
-    assertTrue(response.getBody().contains(String.format("%s=%s", someKey, someValue)));
-    assertTrue(response.getBody().contains(String.format("%s=%s", anotherKey, anotherValue)));
+    assertTrue(body.contains(String.format("%s=%s", someKey, someValue)));
+    assertTrue(body.contains(String.format("%s=%s", anotherKey, anotherValue)));
 
-    ResponseEntity<String> anotherResponse =
+    ResponseEntity<byte[]> anotherResponse =
         configFileController
             .queryConfigAsProperties(someAppId, someClusterName, someNamespace, someDataCenter,
                 someClientIp, someRequest, someResponse);
@@ -159,13 +166,75 @@ public class ConfigFileControllerTest {
         .assembleAllWatchKeys(someAppId, someClusterName, someNamespace, someDataCenter))
         .thenReturn(watchKeys);
 
-    ResponseEntity<String> response =
+    ResponseEntity<byte[]> response =
         configFileController
             .queryConfigAsJson(someAppId, someClusterName, someNamespace, someDataCenter,
                 someClientIp, someRequest, someResponse);
 
     assertEquals(HttpStatus.OK, response.getStatusCode());
-    assertEquals(configurations, gson.fromJson(response.getBody(), responseType));
+    assertEquals(configurations,
+        gson.fromJson(new String(response.getBody(), StandardCharsets.UTF_8), responseType));
+  }
+
+  @Test
+  public void testQueryConfigWithETag() throws Exception {
+    Map<String, String> configurations = ImmutableMap.of("someKey", "someValue");
+    ApolloConfig someApolloConfig = mock(ApolloConfig.class);
+    when(someApolloConfig.getConfigurations()).thenReturn(configurations);
+    when(configController
+        .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, null,
+            someRequest, someResponse)).thenReturn(someApolloConfig);
+    when(watchKeysUtil
+        .assembleAllWatchKeys(someAppId, someClusterName, someNamespace, someDataCenter))
+        .thenReturn(Sets.newHashSet("someWatchKey"));
+
+    ResponseEntity<byte[]> response =
+        configFileController
+            .queryConfigAsProperties(someAppId, someClusterName, someNamespace, someDataCenter,
+                someClientIp, someRequest, someResponse);
+
+    String etag = response.getHeaders().getETag();
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertTrue(etag.startsWith("\""));
+
+    when(someRequest.getHeader(HttpHeaders.IF_NONE_MATCH)).thenReturn(etag);
+
+    ResponseEntity<byte[]> anotherResponse =
+        configFileController
+            .queryConfigAsProperties(someAppId, someClusterName, someNamespace, someDataCenter,
+                someClientIp, someRequest, someResponse);
+
+    assertEquals(HttpStatus.NOT_MODIFIED, anotherResponse.getStatusCode());
+    assertEquals(etag, anotherResponse.getHeaders().getETag());
+    assertNull(anotherResponse.getBody());
+  }
+
+  @Test
+  public void testQueryConfigWithGzip() throws Exception {
+    Map<String, String> configurations = Maps.newHashMap();
+    for (int i = 0; i < 100; i++) {
+      configurations.put("someKey" + i, "someValue" + i);
+    }
+    ApolloConfig someApolloConfig = mock(ApolloConfig.class);
+    when(someApolloConfig.getConfigurations()).thenReturn(configurations);
+    when(configController
+        .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, null,
+            someRequest, someResponse)).thenReturn(someApolloConfig);
+    when(watchKeysUtil
+        .assembleAllWatchKeys(someAppId, someClusterName, someNamespace, someDataCenter))
+        .thenReturn(Sets.newHashSet("someWatchKey"));
+    when(someRequest.getHeader(HttpHeaders.ACCEPT_ENCODING)).thenReturn("gzip, deflate");
+
+    ResponseEntity<byte[]> response =
+        configFileController
+            .queryConfigAsProperties(someAppId, someClusterName, someNamespace, someDataCenter,
+                someClientIp, someRequest, someResponse);
+
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals("gzip", response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+    String body = new String(ByteStreams.toByteArray(
+        new GZIPInputStream(new ByteArrayInputStream(response.getBody()))), StandardCharsets.UTF_8);
+    assertTrue(body.contains("someKey1=someValue1"));
   }
 
   @Test
@@ -187,12 +256,12 @@ public class ConfigFileControllerTest {
         .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, null,
             someRequest, someResponse)).thenReturn(someApolloConfig);
 
-    ResponseEntity<String> response =
+    ResponseEntity<byte[]> response =
         configFileController
             .queryConfigAsJson(someAppId, someClusterName, someNamespace, someDataCenter,
                 someClientIp, someRequest, someResponse);
 
-    ResponseEntity<String> anotherResponse =
+    ResponseEntity<byte[]> anotherResponse =
         configFileController
             .queryConfigAsJson(someAppId, someClusterName, someNamespace, someDataCenter,
                 someClientIp, someRequest, someResponse);
@@ -202,7 +271,8 @@ public class ConfigFileControllerTest {
             someRequest, someResponse);
 
     assertEquals(HttpStatus.OK, response.getStatusCode());
-    assertEquals(configurations, gson.fromJson(response.getBody(), responseType));
+    assertEquals(configurations,
+        gson.fromJson(new String(response.getBody(), StandardCharsets.UTF_8), responseType));
     assertTrue(watchedKeys2CacheKey.isEmpty());
     assertTrue(cacheKey2WatchedKeys.isEmpty());
   }
@@ -218,16 +288,21 @@ public class ConfigFileControllerTest {
     ReleaseMessage someReleaseMessage = mock(ReleaseMessage.class);
     when(someReleaseMessage.getMessage()).thenReturn(someWatchKey);
 
-    Cache<String, String> cache =
-        (Cache<String, String>) ReflectionTestUtils.getField(configFileController, "localCache");
-    cache.put(someCacheKey, someValue);
-    cache.put(anotherCacheKey, someValue);
-
-    watchedKeys2CacheKey.putAll(someWatchKey, Lists.newArrayList(someCacheKey, anotherCacheKey));
-    watchedKeys2CacheKey.putAll(anotherWatchKey, Lists.newArrayList(someCacheKey, anotherCacheKey));
-
-    cacheKey2WatchedKeys.putAll(someCacheKey, Lists.newArrayList(someWatchKey, anotherWatchKey));
-    cacheKey2WatchedKeys.putAll(anotherCacheKey, Lists.newArrayList(someWatchKey, anotherWatchKey));
+    Cache<String, ConfigFileController.ConfigFile> cache =
+        (Cache<String, ConfigFileController.ConfigFile>) ReflectionTestUtils.getField(configFileController,
+            "localCache");
+    ConfigFileController.ConfigFile someConfigFile =
+        new ConfigFileController.ConfigFile(someValue.getBytes(StandardCharsets.UTF_8));
+    cache.put(someCacheKey, someConfigFile);
+    cache.put(anotherCacheKey, someConfigFile);
+
+    watchedKeys2CacheKey.put(someWatchKey,
+        Sets.newConcurrentHashSet(Lists.newArrayList(someCacheKey, anotherCacheKey)));
+    watchedKeys2CacheKey.put(anotherWatchKey,
+        Sets.newConcurrentHashSet(Lists.newArrayList(someCacheKey, anotherCacheKey)));
+
+    cacheKey2WatchedKeys.put(someCacheKey, Sets.newHashSet(someWatchKey, anotherWatchKey));
+    cacheKey2WatchedKeys.put(anotherCacheKey, Sets.newHashSet(someWatchKey, anotherWatchKey));
 
     configFileController.handleMessage(someReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
 
@@ -4,8 +4,13 @@ import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.biz.utils.EntityManagerUtil;
+import com.ctrip.framework.apollo.configservice.service.DeferredResultRegistry;
+import com.ctrip.framework.apollo.configservice.service.NotificationFanoutService;
+import com.ctrip.framework.apollo.configservice.service.ReleaseMessageCoalescer;
 import com.ctrip.framework.apollo.configservice.service.ReleaseMessageServiceWithCache;
+import com.ctrip.framework.apollo.configservice.util.LongPollTimeoutUtil;
 import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
+import com.ctrip.framework.apollo.configservice.util.ReleaseChangedKeysUtil;
 import com.ctrip.framework.apollo.configservice.util.WatchKeysUtil;
 import com.ctrip.framework.apollo.configservice.wrapper.DeferredResultWrapper;
 import com.ctrip.framework.apollo.core.ConfigConsts;
@@ -24,12 +29,12 @@ import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.context.request.async.DeferredResult;
 
 import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
@@ -58,17 +63,24 @@ public class NotificationControllerV2Test {
   @Mock
   private WatchKeysUtil watchKeysUtil;
   @Mock
+  private ReleaseChangedKeysUtil releaseChangedKeysUtil;
+  @Mock
   private BizConfig bizConfig;
+  @Mock
+  private LongPollTimeoutUtil longPollTimeoutUtil;
 
   private Gson gson;
 
-  private Multimap<String, DeferredResultWrapper> deferredResults;
+  private DeferredResultRegistry deferredResults;
 
   @Before
   public void setUp() throws Exception {
     gson = new Gson();
+    deferredResults = new DeferredResultRegistry();
     controller = new NotificationControllerV2(
-        watchKeysUtil, releaseMessageService, entityManagerUtil, namespaceUtil, gson, bizConfig
+        watchKeysUtil, releaseMessageService, entityManagerUtil, namespaceUtil, releaseChangedKeysUtil, gson,
+        bizConfig, deferredResults, new NotificationFanoutService(bizConfig), longPollTimeoutUtil,
+        new ReleaseMessageCoalescer(bizConfig)
     );
 
     when(bizConfig.releaseMessageNotificationBatch()).thenReturn(100);
@@ -87,9 +99,6 @@ public class NotificationControllerV2Test {
     when(namespaceUtil.filterNamespaceName(somePublicNamespace)).thenReturn(somePublicNamespace);
     when(namespaceUtil.normalizeNamespace(someAppId, defaultNamespace)).thenReturn(defaultNamespace);
     when(namespaceUtil.normalizeNamespace(someAppId, somePublicNamespace)).thenReturn(somePublicNamespace);
-
-    deferredResults =
-        (Multimap<String, DeferredResultWrapper>) ReflectionTestUtils.getField(controller, "deferredResults");
   }
 
   @Test
@@ -104,14 +113,14 @@ public class NotificationControllerV2Test {
         transformApolloConfigNotificationsToString(defaultNamespace, someNotificationId);
 
     when(watchKeysUtil
-        .assembleAllWatchKeys(someAppId, someCluster, Sets.newHashSet(defaultNamespace),
+        .findWatchKeys(someAppId, someCluster, Sets.newHashSet(defaultNamespace),
             someDataCenter)).thenReturn(
-        watchKeysMap);
+        new WatchKeysUtil.WatchKeys(watchKeysMap));
 
     DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
         deferredResult = controller
         .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
-            someClientIp);
+            someClientIp, false);
 
     assertEquals(watchKeysMap.size(), deferredResults.size());
 
@@ -133,14 +142,14 @@ public class NotificationControllerV2Test {
         transformApolloConfigNotificationsToString(namespace, someNotificationId);
 
     when(watchKeysUtil
-        .assembleAllWatchKeys(someAppId, someCluster, Sets.newHashSet(defaultNamespace),
+        .findWatchKeys(someAppId, someCluster, Sets.newHashSet(defaultNamespace),
             someDataCenter)).thenReturn(
-        watchKeysMap);
+        new WatchKeysUtil.WatchKeys(watchKeysMap));
 
     DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
         deferredResult = controller
         .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
-            someClientIp);
+            someClientIp, false);
 
     assertEquals(watchKeysMap.size(), deferredResults.size());
 
@@ -176,21 +185,21 @@ public class NotificationControllerV2Test {
             someNotificationId);
 
     when(watchKeysUtil
-        .assembleAllWatchKeys(someAppId, someCluster,
+        .findWatchKeys(someAppId, someCluster,
             Sets.newHashSet(defaultNamespace, somePublicNamespace, somePublicNamespaceAsFile),
             someDataCenter)).thenReturn(
-        watchKeysMap);
+        new WatchKeysUtil.WatchKeys(watchKeysMap));
 
     DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
         deferredResult = controller
         .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
-            someClientIp);
+            someClientIp, false);
 
     assertEquals(watchKeysMap.size(), deferredResults.size());
 
     assertWatchKeys(watchKeysMap, deferredResult);
 
-    verify(watchKeysUtil, times(1)).assembleAllWatchKeys(someAppId, someCluster,
+    verify(watchKeysUtil, times(1)).findWatchKeys(someAppId, someCluster,
         Sets.newHashSet(defaultNamespace, somePublicNamespace, somePublicNamespaceAsFile),
         someDataCenter);
   }
@@ -212,9 +221,9 @@ public class NotificationControllerV2Test {
         .putAll(assembleMultiMap(somePublicNamespace, Lists.newArrayList(anotherWatchKey, yetAnotherWatchKey)));
 
     when(watchKeysUtil
-        .assembleAllWatchKeys(someAppId, someCluster,
+        .findWatchKeys(someAppId, someCluster,
             Sets.newHashSet(defaultNamespace, somePublicNamespace), someDataCenter)).thenReturn(
-        watchKeysMap);
+        new WatchKeysUtil.WatchKeys(watchKeysMap));
 
     ReleaseMessage someReleaseMessage = mock(ReleaseMessage.class);
     when(someReleaseMessage.getId()).thenReturn(notificationId);
@@ -233,7 +242,7 @@ public class NotificationControllerV2Test {
     DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
         deferredResult = controller
         .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
-            someClientIp);
+            someClientIp, false);
 
     ResponseEntity<List<ApolloConfigNotification>> result =
         (ResponseEntity<List<ApolloConfigNotification>>) deferredResult.getResult();
@@ -261,9 +270,9 @@ public class NotificationControllerV2Test {
         .putAll(assembleMultiMap(somePublicNamespace, Lists.newArrayList(anotherWatchKey)));
 
     when(watchKeysUtil
-        .assembleAllWatchKeys(someAppId, someCluster,
+        .findWatchKeys(someAppId, someCluster,
             Sets.newHashSet(defaultNamespace, somePublicNamespace), someDataCenter)).thenReturn(
-        watchKeysMap);
+        new WatchKeysUtil.WatchKeys(watchKeysMap));
 
     String notificationAsString =
         transformApolloConfigNotificationsToString(defaultNamespace, someNotificationId,
@@ -272,7 +281,7 @@ public class NotificationControllerV2Test {
     DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
         deferredResult = controller
         .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
-            someClientIp);
+            someClientIp, false);
 
     assertEquals(watchKeysMap.size(), deferredResults.size());
 
@@ -301,7 +310,8 @@ public class NotificationControllerV2Test {
     String someWatchKey = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
         .join(someAppId, someCluster, defaultNamespace);
     int someBatch = 1;
-    int someBatchInterval = 10;
+    int someRate = 100;
+    int someBatchInterval = 1000 / someRate;
 
     Multimap<String, String> watchKeysMap =
         assembleMultiMap(defaultNamespace, Lists.newArrayList(someWatchKey));
@@ -310,20 +320,21 @@ public class NotificationControllerV2Test {
         transformApolloConfigNotificationsToString(defaultNamespace, someNotificationId);
 
     when(watchKeysUtil
-        .assembleAllWatchKeys(someAppId, someCluster, Sets.newHashSet(defaultNamespace),
-            someDataCenter)).thenReturn(watchKeysMap);
+        .findWatchKeys(someAppId, someCluster, Sets.newHashSet(defaultNamespace),
+            someDataCenter)).thenReturn(
+        new WatchKeysUtil.WatchKeys(watchKeysMap));
 
     when(bizConfig.releaseMessageNotificationBatch()).thenReturn(someBatch);
-    when(bizConfig.releaseMessageNotificationBatchIntervalInMilli()).thenReturn(someBatchInterval);
+    when(bizConfig.releaseMessageNotificationRate()).thenReturn(someRate);
 
     DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
         deferredResult = controller
         .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
-            someClientIp);
+            someClientIp, false);
     DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
         anotherDeferredResult = controller
         .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
-            someClientIp);
+            someClientIp, false);
 
     long someId = 1;
     ReleaseMessage someReleaseMessage = new ReleaseMessage(someWatchKey);
@@ -340,6 +351,110 @@ public class NotificationControllerV2Test {
     assertTrue(deferredResult.hasResult() && anotherDeferredResult.hasResult());
   }
 
+  @Test
+  public void testPollNotificationWithChangedKeys() throws Exception {
+    String someWatchKey = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
+        .join(someAppId, someCluster, defaultNamespace);
+    Set<String> someChangedKeys = Sets.newHashSet("someKey");
+
+    Multimap<String, String> watchKeysMap =
+        assembleMultiMap(defaultNamespace, Lists.newArrayList(someWatchKey));
+
+    String notificationAsString =
+        transformApolloConfigNotificationsToString(defaultNamespace, someNotificationId);
+    //not up to date with the message the keys are changed from
+    String outdatedNotificationAsString =
+        transformApolloConfigNotificationsToString(defaultNamespace, someNotificationId - 1);
+
+    when(watchKeysUtil
+        .findWatchKeys(someAppId, someCluster, Sets.newHashSet(defaultNamespace),
+            someDataCenter)).thenReturn(
+        new WatchKeysUtil.WatchKeys(watchKeysMap));
+
+    DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
+        deferredResult = controller
+        .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
+            someClientIp, true);
+    DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
+        anotherDeferredResult = controller
+        .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
+            someClientIp, false);
+    DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
+        outdatedDeferredResult = controller
+        .pollNotification(someAppId, someCluster, outdatedNotificationAsString, someDataCenter,
+            someClientIp, true);
+
+    long someId = someNotificationId + 1;
+    ReleaseMessage someReleaseMessage = new ReleaseMessage(someWatchKey);
+    someReleaseMessage.setId(someId);
+    when(releaseChangedKeysUtil.findChangedKeys(someReleaseMessage))
+        .thenReturn(new ReleaseChangedKeysUtil.ChangedKeys(someNotificationId, someChangedKeys));
+
+    controller.handleMessage(someReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    ResponseEntity<List<ApolloConfigNotification>> response =
+        (ResponseEntity<List<ApolloConfigNotification>>) deferredResult.getResult();
+    ResponseEntity<List<ApolloConfigNotification>> anotherResponse =
+        (ResponseEntity<List<ApolloConfigNotification>>) anotherDeferredResult.getResult();
+    ResponseEntity<List<ApolloConfigNotification>> outdatedResponse =
+        (ResponseEntity<List<ApolloConfigNotification>>) outdatedDeferredResult.getResult();
+
+    assertEquals(someChangedKeys, response.getBody().get(0).getChangedKeys());
+    assertEquals(someId, response.getBody().get(0).getNotificationId());
+    assertNull(anotherResponse.getBody().get(0).getChangedKeys());
+    assertEquals(someId, anotherResponse.getBody().get(0).getNotificationId());
+    assertNull(outdatedResponse.getBody().get(0).getChangedKeys());
+    assertEquals(someId, outdatedResponse.getBody().get(0).getNotificationId());
+  }
+
+  @Test
+  public void testPollNotificationWithCoalescedMessages() throws Exception {
+    String someWatchKey = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
+        .join(someAppId, someCluster, defaultNamespace);
+    int someCoalescingWindow = 50;
+
+    Multimap<String, String> watchKeysMap =
+        assembleMultiMap(defaultNamespace, Lists.newArrayList(someWatchKey));
+
+    String notificationAsString =
+        transformApolloConfigNotificationsToString(defaultNamespace, someNotificationId);
+
+    when(watchKeysUtil
+        .findWatchKeys(someAppId, someCluster, Sets.newHashSet(defaultNamespace),
+            someDataCenter)).thenReturn(
+        new WatchKeysUtil.WatchKeys(watchKeysMap));
+    when(bizConfig.releaseMessageNotificationCoalescingWindowInMilli()).thenReturn(someCoalescingWindow);
+    when(bizConfig.releaseMessageNotificationCoalescingMaxDelayInMilli()).thenReturn(someCoalescingWindow * 10);
+
+    DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
+        deferredResult = controller
+        .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
+            someClientIp, true);
+
+    long someId = 1;
+    long anotherId = 2;
+    ReleaseMessage someReleaseMessage = new ReleaseMessage(someWatchKey);
+    someReleaseMessage.setId(someId);
+    ReleaseMessage anotherReleaseMessage = new ReleaseMessage(someWatchKey);
+    anotherReleaseMessage.setId(anotherId);
+
+    controller.handleMessage(someReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
+    controller.handleMessage(anotherReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    //delayed by the coalescing window
+    assertFalse(deferredResult.hasResult());
+
+    TimeUnit.MILLISECONDS.sleep(someCoalescingWindow * 5);
+
+    ResponseEntity<List<ApolloConfigNotification>> response =
+        (ResponseEntity<List<ApolloConfigNotification>>) deferredResult.getResult();
+
+    assertEquals(anotherId, response.getBody().get(0).getNotificationId());
+    //the changed keys of the coalesced messages are unknown
+    assertNull(response.getBody().get(0).getChangedKeys());
+    verify(releaseChangedKeysUtil, never()).findChangedKeys(any(ReleaseMessage.class));
+  }
+
   private String transformApolloConfigNotificationsToString(
       String namespace, long notificationId) {
     List<ApolloConfigNotification> notifications =
@@ -0,0 +1,160 @@
+package com.ctrip.framework.apollo.configservice.netty;
+
+import com.ctrip.framework.apollo.common.exception.BadRequestException;
+import com.ctrip.framework.apollo.configservice.controller.NotificationControllerV2;
+import com.ctrip.framework.apollo.configservice.wrapper.DeferredResultWrapper;
+import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
+import com.google.common.collect.Lists;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.QueryStringEncoder;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class NonBlockingNotificationHandlerTest {
+  @Mock
+  private NotificationControllerV2 notificationControllerV2;
+  private Gson gson;
+  private EmbeddedChannel channel;
+  private String someAppId;
+  private String someCluster;
+  private String someNotifications;
+  private String someNamespace;
+
+  @Before
+  public void setUp() throws Exception {
+    gson = new Gson();
+    channel = new EmbeddedChannel(new NonBlockingNotificationHandler(notificationControllerV2, gson));
+    someAppId = "someAppId";
+    someCluster = "someCluster";
+    someNamespace = "someNamespace";
+    someNotifications = gson.toJson(Lists.newArrayList(new ApolloConfigNotification(someNamespace, -1)));
+  }
+
+  @Test
+  public void testPollNotificationWithNewNotification() throws Exception {
+    long someNotificationId = 1;
+    DeferredResultWrapper deferredResultWrapper = new DeferredResultWrapper();
+    deferredResultWrapper.setResult(new ApolloConfigNotification(someNamespace, someNotificationId));
+
+    when(notificationControllerV2.startLongPoll(someAppId, someCluster, someNotifications, null, null, false))
+        .thenReturn(deferredResultWrapper);
+
+    channel.writeInbound(assembleRequest());
+    channel.runPendingTasks();
+
+    FullHttpResponse response = channel.readOutbound();
+
+    assertEquals(HttpResponseStatus.OK, response.status());
+    List<ApolloConfigNotification> notifications = gson.fromJson(response.content().toString(StandardCharsets.UTF_8),
+        new TypeToken<List<ApolloConfigNotification>>() {
+        }.getType());
+    assertEquals(1, notifications.size());
+    assertEquals(someNamespace, notifications.get(0).getNamespaceName());
+    assertEquals(someNotificationId, notifications.get(0).getNotificationId());
+  }
+
+  @Test
+  public void testPollNotificationWaitsForRelease() throws Exception {
+    DeferredResultWrapper deferredResultWrapper = new DeferredResultWrapper();
+    AtomicBoolean completed = new AtomicBoolean();
+    deferredResultWrapper.onCompletion(() -> completed.set(true));
+
+    when(notificationControllerV2.startLongPoll(someAppId, someCluster, someNotifications, null, null, false))
+        .thenReturn(deferredResultWrapper);
+
+    channel.writeInbound(assembleRequest());
+    channel.runPendingTasks();
+
+    assertNull(channel.readOutbound());
+
+    deferredResultWrapper.setResult(new ApolloConfigNotification(someNamespace, 1));
+    channel.runPendingTasks();
+
+    FullHttpResponse response = channel.readOutbound();
+
+    assertEquals(HttpResponseStatus.OK, response.status());
+    assertTrue(completed.get());
+  }
+
+  @Test
+  public void testPollNotificationWithClientDisconnected() throws Exception {
+    DeferredResultWrapper deferredResultWrapper = new DeferredResultWrapper();
+    AtomicBoolean completed = new AtomicBoolean();
+    deferredResultWrapper.onCompletion(() -> completed.set(true));
+
+    when(notificationControllerV2.startLongPoll(someAppId, someCluster, someNotifications, null, null, false))
+        .thenReturn(deferredResultWrapper);
+
+    channel.writeInbound(assembleRequest());
+    channel.close();
+
+    assertTrue(completed.get());
+  }
+
+  @Test
+  public void testPollNotificationWithPipelinedRequest() throws Exception {
+    DeferredResultWrapper deferredResultWrapper = new DeferredResultWrapper();
+    AtomicBoolean completed = new AtomicBoolean();
+    deferredResultWrapper.onCompletion(() -> completed.set(true));
+
+    when(notificationControllerV2.startLongPoll(someAppId, someCluster, someNotifications, null, null, false))
+        .thenReturn(deferredResultWrapper);
+
+    channel.writeInbound(assembleRequest());
+    channel.writeInbound(assembleRequest());
+
+    assertFalse(channel.isOpen());
+    assertTrue(completed.get());
+    verify(notificationControllerV2, times(1))
+        .startLongPoll(someAppId, someCluster, someNotifications, null, null, false);
+  }
+
+  @Test
+  public void testPollNotificationWithBadRequest() throws Exception {
+    when(notificationControllerV2.startLongPoll(someAppId, someCluster, someNotifications, null, null, false))
+        .thenThrow(new BadRequestException("some message"));
+
+    channel.writeInbound(assembleRequest());
+
+    FullHttpResponse response = channel.readOutbound();
+
+    assertEquals(HttpResponseStatus.BAD_REQUEST, response.status());
+  }
+
+  @Test
+  public void testPollNotificationWithUnknownPath() throws Exception {
+    channel.writeInbound(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/configs/someAppId"));
+
+    FullHttpResponse response = channel.readOutbound();
+
+    assertEquals(HttpResponseStatus.NOT_FOUND, response.status());
+  }
+
+  private DefaultFullHttpRequest assembleRequest() {
+    QueryStringEncoder encoder = new QueryStringEncoder(NonBlockingNotificationHandler.PATH);
+    encoder.addParam("appId", someAppId);
+    encoder.addParam("cluster", someCluster);
+    encoder.addParam("notifications", someNotifications);
+    return new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, encoder.toString());
+  }
+}
@@ -20,6 +20,11 @@ import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -34,6 +39,9 @@ public class AppNamespaceServiceWithCacheTest {
   @Mock
   private BizConfig bizConfig;
 
+  @Mock
+  private CacheSnapshotStore cacheSnapshotStore;
+
   private int scanInterval;
   private TimeUnit scanIntervalTimeUnit;
   private Comparator<AppNamespace> appNamespaceComparator = (o1, o2) -> (int) (o1.getId() -
@@ -41,7 +49,8 @@ public class AppNamespaceServiceWithCacheTest {
 
   @Before
   public void setUp() throws Exception {
-    appNamespaceServiceWithCache = new AppNamespaceServiceWithCache(appNamespaceRepository, bizConfig);
+    appNamespaceServiceWithCache = new AppNamespaceServiceWithCache(appNamespaceRepository, bizConfig,
+        cacheSnapshotStore);
 
     scanInterval = 50;
     scanIntervalTimeUnit = TimeUnit.MILLISECONDS;
@@ -49,6 +58,8 @@ public class AppNamespaceServiceWithCacheTest {
     when(bizConfig.appNamespaceCacheRebuildIntervalTimeUnit()).thenReturn(scanIntervalTimeUnit);
     when(bizConfig.appNamespaceCacheScanInterval()).thenReturn(scanInterval);
     when(bizConfig.appNamespaceCacheScanIntervalTimeUnit()).thenReturn(scanIntervalTimeUnit);
+    when(bizConfig.appNamespaceCacheReconcileInterval()).thenReturn(1);
+    when(bizConfig.appNamespaceCacheReconcileIntervalTimeUnit()).thenReturn(TimeUnit.HOURS);
   }
 
   @Test
@@ -92,13 +103,6 @@ public class AppNamespaceServiceWithCacheTest {
     Set<String> publicNamespacesWithIncorrectCase = Sets.newHashSet(somePublicNamespaceWithIncorrectCase,
         anotherPublicNamespace);
 
-    List<Long> appNamespaceIds = Lists.newArrayList(somePrivateNamespaceId,
-        somePublicNamespaceId, anotherPrivateNamespaceId, yetAnotherPrivateNamespaceId,
-        anotherPublicNamespaceId);
-    List<AppNamespace> allAppNamespaces = Lists.newArrayList(somePrivateAppNamespace,
-        somePublicAppNamespace, anotherPrivateAppNamespace, yetAnotherPrivateAppNamespace,
-        anotherPublicAppNamespace);
-
     // Test init
     appNamespaceServiceWithCache.afterPropertiesSet();
 
@@ -125,9 +129,6 @@ public class AppNamespaceServiceWithCacheTest {
     // Add 1 private namespace and 1 public namespace
     when(appNamespaceRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0)).thenReturn(Lists
         .newArrayList(somePrivateAppNamespace, somePublicAppNamespace));
-    when(appNamespaceRepository.findAllById(Lists.newArrayList(somePrivateNamespaceId,
-        somePublicNamespaceId))).thenReturn(Lists.newArrayList(somePrivateAppNamespace,
-        somePublicAppNamespace));
 
     scanIntervalTimeUnit.sleep(sleepInterval);
 
@@ -157,7 +158,6 @@ public class AppNamespaceServiceWithCacheTest {
     when(appNamespaceRepository.findFirst500ByIdGreaterThanOrderByIdAsc(somePublicNamespaceId))
         .thenReturn(Lists.newArrayList(anotherPrivateAppNamespace, yetAnotherPrivateAppNamespace,
             anotherPublicAppNamespace));
-    when(appNamespaceRepository.findAllById(appNamespaceIds)).thenReturn(allAppNamespaces);
 
     scanIntervalTimeUnit.sleep(sleepInterval);
 
@@ -205,16 +205,17 @@ public class AppNamespaceServiceWithCacheTest {
         (somePublicAppNamespace.getDataChangeLastModifiedTime(), 1));
 
     // Delete 1 private and 1 public
+    AppNamespace anotherPrivateAppNamespaceDeleted = assembleAppNamespace(anotherPrivateNamespaceId,
+        somePublicAppId, anotherPrivateNamespace, false);
+    anotherPrivateAppNamespaceDeleted.setDeleted(true);
+    AppNamespace anotherPublicAppNamespaceDeleted = assembleAppNamespace(anotherPublicNamespaceId,
+        someAppId, anotherPublicNamespace, true);
+    anotherPublicAppNamespaceDeleted.setDeleted(true);
 
-    // should prepare for the case after deleted first, or in 2 rebuild intervals, all will be deleted
-    List<Long> appNamespaceIdsAfterDelete = Lists
-        .newArrayList(somePrivateNamespaceId, somePublicNamespaceId, yetAnotherPrivateNamespaceId);
-    when(appNamespaceRepository.findAllById(appNamespaceIdsAfterDelete)).thenReturn(Lists.newArrayList
-        (somePrivateAppNamespaceNew, yetAnotherPrivateAppNamespaceNew, somePublicAppNamespaceNew));
-
-    // do delete
-    when(appNamespaceRepository.findAllById(appNamespaceIds)).thenReturn(Lists.newArrayList
-        (somePrivateAppNamespaceNew, yetAnotherPrivateAppNamespaceNew, somePublicAppNamespaceNew));
+    // only the changed ones are scanned
+    when(appNamespaceRepository.findFirst500ChangedAfterIncludingDeleted(any(Date.class), anyLong()))
+        .thenReturn(Lists.newArrayList(somePrivateAppNamespaceNew, yetAnotherPrivateAppNamespaceNew,
+            somePublicAppNamespaceNew, anotherPrivateAppNamespaceDeleted, anotherPublicAppNamespaceDeleted));
 
     scanIntervalTimeUnit.sleep(sleepInterval);
 
@@ -241,6 +242,8 @@ public class AppNamespaceServiceWithCacheTest {
         appNamespaceServiceWithCache.findByAppIdAndNamespace(someAppIdNew, yetAnotherPrivateNamespace));
     check(Lists.newArrayList(yetAnotherPrivateAppNamespaceNew), appNamespaceServiceWithCache
         .findByAppIdAndNamespaces(someAppIdNew, Sets.newHashSet(yetAnotherPrivateNamespace)));
+
+    verify(appNamespaceRepository, never()).findAllById(anyIterable());
   }
 
   private void check(List<AppNamespace> someList, List<AppNamespace> anotherList) {
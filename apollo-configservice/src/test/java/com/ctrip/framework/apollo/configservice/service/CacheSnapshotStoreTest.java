@@ -0,0 +1,104 @@
+package com.ctrip.framework.apollo.configservice.service;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.google.common.base.Strings;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.DataInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CacheSnapshotStoreTest {
+  private CacheSnapshotStore cacheSnapshotStore;
+  @Mock
+  private BizConfig bizConfig;
+  private Path someDirectory;
+  private Path someSnapshotPath;
+
+  @Before
+  public void setUp() throws Exception {
+    someDirectory = Files.createTempDirectory("apollo-cache-snapshot");
+    someSnapshotPath = someDirectory.resolve("some-dir").resolve("cache-snapshot");
+    cacheSnapshotStore = new CacheSnapshotStore(bizConfig);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    FileSystemUtils.deleteRecursively(someDirectory.toFile());
+  }
+
+  @Test
+  public void testWriteAndReadSnapshot() throws Exception {
+    String someSection = "someSection";
+    String anotherSection = "anotherSection";
+    String someValue = "someValue";
+    String someLongValue = Strings.repeat("someLongValue", 10000);
+    long someNumber = 1;
+
+    enableSnapshot();
+    cacheSnapshotStore.registerSection(someSection, out -> {
+      CacheSnapshotStore.writeString(out, someValue);
+      CacheSnapshotStore.writeString(out, null);
+      CacheSnapshotStore.writeString(out, someLongValue);
+    });
+    cacheSnapshotStore.registerSection(anotherSection, out -> out.writeLong(someNumber));
+
+    cacheSnapshotStore.writeSnapshot();
+
+    CacheSnapshotStore anotherCacheSnapshotStore = new CacheSnapshotStore(bizConfig);
+
+    DataInputStream someSectionInput = anotherCacheSnapshotStore.readSection(someSection);
+    assertEquals(someValue, CacheSnapshotStore.readString(someSectionInput));
+    assertNull(CacheSnapshotStore.readString(someSectionInput));
+    assertEquals(someLongValue, CacheSnapshotStore.readString(someSectionInput));
+
+    assertEquals(someNumber, anotherCacheSnapshotStore.readSection(anotherSection).readLong());
+
+    //each section could only be read once
+    assertNull(anotherCacheSnapshotStore.readSection(someSection));
+    assertNull(anotherCacheSnapshotStore.readSection("someUnknownSection"));
+  }
+
+  @Test
+  public void testReadSnapshotNotFound() throws Exception {
+    enableSnapshot();
+
+    assertNull(cacheSnapshotStore.readSection("someSection"));
+  }
+
+  @Test
+  public void testReadCorruptedSnapshot() throws Exception {
+    enableSnapshot();
+    Files.createDirectories(someSnapshotPath.getParent());
+    Files.write(someSnapshotPath, "some-corrupted-snapshot".getBytes());
+
+    assertNull(cacheSnapshotStore.readSection("someSection"));
+  }
+
+  @Test
+  public void testWriteSnapshotWithSnapshotDisabled() throws Exception {
+    when(bizConfig.isConfigServiceCacheSnapshotEnabled()).thenReturn(false);
+    cacheSnapshotStore.registerSection("someSection", out -> out.writeLong(1));
+
+    cacheSnapshotStore.writeSnapshot();
+
+    assertFalse(Files.exists(someSnapshotPath));
+  }
+
+  private void enableSnapshot() {
+    when(bizConfig.isConfigServiceCacheSnapshotEnabled()).thenReturn(true);
+    when(bizConfig.configServiceCacheSnapshotPath()).thenReturn(someSnapshotPath.toString());
+  }
+}
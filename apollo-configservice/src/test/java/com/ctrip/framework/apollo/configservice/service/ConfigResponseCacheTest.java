@@ -0,0 +1,155 @@
+package com.ctrip.framework.apollo.configservice.service;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.Release;
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.biz.message.Topics;
+import com.ctrip.framework.apollo.configservice.wrapper.SerializedApolloConfig;
+import com.ctrip.framework.apollo.core.ConfigConsts;
+import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+import com.google.gson.Gson;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ConfigResponseCacheTest {
+  private ConfigResponseCache configResponseCache;
+  @Mock
+  private BizConfig bizConfig;
+  private Gson gson;
+  private String someAppId;
+  private String someCluster;
+  private String someNamespace;
+  private String someReleaseKey;
+  private List<Release> someReleases;
+  private AtomicInteger mergeCounter;
+
+  @Before
+  public void setUp() throws Exception {
+    gson = new Gson();
+    configResponseCache = new ConfigResponseCache(bizConfig, gson);
+    someAppId = "someAppId";
+    someCluster = "someCluster";
+    someNamespace = "someNamespace";
+    someReleaseKey = "someReleaseKey";
+    someReleases = Lists.newArrayList(assembleRelease(someAppId, someCluster, someNamespace));
+    mergeCounter = new AtomicInteger();
+  }
+
+  @Test
+  public void testGetConfig() throws Exception {
+    when(bizConfig.isConfigServiceResponseCacheEnabled()).thenReturn(true);
+    Map<String, String> someConfigurations = ImmutableMap.of("someKey", "someValue");
+
+    ApolloConfig apolloConfig = configResponseCache.getConfig(someAppId, someCluster, someNamespace, someReleaseKey,
+        someReleases, countingSupplier(someConfigurations));
+    ApolloConfig anotherApolloConfig = configResponseCache.getConfig(someAppId, someCluster, someNamespace,
+        someReleaseKey, someReleases, countingSupplier(someConfigurations));
+
+    assertSame(apolloConfig, anotherApolloConfig);
+    assertEquals(1, mergeCounter.get());
+    assertEquals(someConfigurations, apolloConfig.getConfigurations());
+
+    SerializedApolloConfig serializedApolloConfig = (SerializedApolloConfig) apolloConfig;
+    ApolloConfig deserialized = gson.fromJson(new String(serializedApolloConfig.getJson(), StandardCharsets.UTF_8),
+        ApolloConfig.class);
+    assertEquals(someAppId, deserialized.getAppId());
+    assertEquals(someCluster, deserialized.getCluster());
+    assertEquals(someNamespace, deserialized.getNamespaceName());
+    assertEquals(someReleaseKey, deserialized.getReleaseKey());
+    assertEquals(someConfigurations, deserialized.getConfigurations());
+    //too small to be gzipped
+    assertNull(serializedApolloConfig.getGzippedJson());
+  }
+
+  @Test
+  public void testGetConfigWithLargeConfigurations() throws Exception {
+    when(bizConfig.isConfigServiceResponseCacheEnabled()).thenReturn(true);
+    Map<String, String> someConfigurations = Maps.newHashMap();
+    for (int i = 0; i < 100; i++) {
+      someConfigurations.put("someKey" + i, "someValue" + i);
+    }
+
+    SerializedApolloConfig apolloConfig = (SerializedApolloConfig) configResponseCache.getConfig(someAppId,
+        someCluster, someNamespace, someReleaseKey, someReleases, countingSupplier(someConfigurations));
+
+    assertNotNull(apolloConfig.getGzippedJson());
+    assertTrue(apolloConfig.getGzippedJson().length < apolloConfig.getJson().length);
+    byte[] unzipped = ByteStreams.toByteArray(
+        new GZIPInputStream(new ByteArrayInputStream(apolloConfig.getGzippedJson())));
+    assertArrayEquals(apolloConfig.getJson(), unzipped);
+  }
+
+  @Test
+  public void testGetConfigWithCacheDisabled() throws Exception {
+    when(bizConfig.isConfigServiceResponseCacheEnabled()).thenReturn(false);
+    Map<String, String> someConfigurations = ImmutableMap.of("someKey", "someValue");
+
+    ApolloConfig apolloConfig = configResponseCache.getConfig(someAppId, someCluster, someNamespace, someReleaseKey,
+        someReleases, countingSupplier(someConfigurations));
+    ApolloConfig anotherApolloConfig = configResponseCache.getConfig(someAppId, someCluster, someNamespace,
+        someReleaseKey, someReleases, countingSupplier(someConfigurations));
+
+    assertFalse(apolloConfig instanceof SerializedApolloConfig);
+    assertNotSame(apolloConfig, anotherApolloConfig);
+    assertEquals(2, mergeCounter.get());
+  }
+
+  @Test
+  public void testHandleMessage() throws Exception {
+    when(bizConfig.isConfigServiceResponseCacheEnabled()).thenReturn(true);
+    Map<String, String> someConfigurations = ImmutableMap.of("someKey", "someValue");
+    String someMessage = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR).join(someAppId, someCluster,
+        someNamespace);
+    String anotherMessage = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR).join(someAppId, someCluster,
+        "anotherNamespace");
+
+    ApolloConfig apolloConfig = configResponseCache.getConfig(someAppId, someCluster, someNamespace, someReleaseKey,
+        someReleases, countingSupplier(someConfigurations));
+
+    configResponseCache.handleMessage(new ReleaseMessage(anotherMessage), Topics.APOLLO_RELEASE_TOPIC);
+
+    assertSame(apolloConfig, configResponseCache.getConfig(someAppId, someCluster, someNamespace, someReleaseKey,
+        someReleases, countingSupplier(someConfigurations)));
+
+    configResponseCache.handleMessage(new ReleaseMessage(someMessage), Topics.APOLLO_RELEASE_TOPIC);
+
+    assertNotSame(apolloConfig, configResponseCache.getConfig(someAppId, someCluster, someNamespace, someReleaseKey,
+        someReleases, countingSupplier(someConfigurations)));
+    assertEquals(2, mergeCounter.get());
+  }
+
+  private Supplier<Map<String, String>> countingSupplier(Map<String, String> configurations) {
+    return () -> {
+      mergeCounter.incrementAndGet();
+      return configurations;
+    };
+  }
+
+  private Release assembleRelease(String appId, String cluster, String namespace) {
+    Release release = new Release();
+    release.setAppId(appId);
+    release.setClusterName(cluster);
+    release.setNamespaceName(namespace);
+    return release;
+  }
+}
@@ -0,0 +1,116 @@
+package com.ctrip.framework.apollo.configservice.service;
+
+import com.ctrip.framework.apollo.configservice.wrapper.DeferredResultWrapper;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Multimaps;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simulates the long polling churn on a config service node: each operation registers a request with several watch
+ * keys, notifies one key and completes the request, compared between {@link DeferredResultRegistry} and the
+ * synchronized multimap it replaced.
+ * <br />
+ * Usage: run the main method with the test classpath, or through the JMH runner with this class name.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+public class DeferredResultRegistryBenchmark {
+  @Param({"1000"})
+  private int keyCount;
+  @Param({"5"})
+  private int keysPerRequest;
+  //requests which keep waiting during the benchmark, like the idle long polls on a real node
+  @Param({"10000"})
+  private int idleRequests;
+
+  private List<String> keys;
+  private DeferredResultRegistry registry;
+  private Multimap<String, DeferredResultWrapper> multimap;
+
+  @Setup
+  public void setUp() {
+    keys = Lists.newArrayListWithCapacity(keyCount);
+    for (int i = 0; i < keyCount; i++) {
+      keys.add("someAppId+default+namespace" + i);
+    }
+    registry = new DeferredResultRegistry();
+    multimap = Multimaps.synchronizedSetMultimap(HashMultimap.create());
+    for (int i = 0; i < idleRequests; i++) {
+      DeferredResultWrapper idle = new DeferredResultWrapper();
+      List<String> watchKeys = randomKeys();
+      registry.register(idle, watchKeys);
+      for (String key : watchKeys) {
+        multimap.put(key, idle);
+      }
+    }
+  }
+
+  @Benchmark
+  public void registry(Blackhole blackhole) {
+    DeferredResultWrapper deferredResult = new DeferredResultWrapper();
+    List<String> watchKeys = randomKeys();
+    DeferredResultRegistry.Registration registration = registry.register(deferredResult, watchKeys);
+
+    for (DeferredResultWrapper waiting : registry.get(watchKeys.get(0))) {
+      blackhole.consume(waiting);
+    }
+
+    registration.unregister();
+  }
+
+  @Benchmark
+  public void synchronizedMultimap(Blackhole blackhole) {
+    DeferredResultWrapper deferredResult = new DeferredResultWrapper();
+    List<String> watchKeys = randomKeys();
+    for (String key : watchKeys) {
+      multimap.put(key, deferredResult);
+    }
+
+    Collection<DeferredResultWrapper> waitings = Lists.newArrayList(multimap.get(watchKeys.get(0)));
+    for (DeferredResultWrapper waiting : waitings) {
+      blackhole.consume(waiting);
+    }
+
+    for (String key : watchKeys) {
+      multimap.remove(key, deferredResult);
+    }
+  }
+
+  private List<String> randomKeys() {
+    List<String> watchKeys = Lists.newArrayListWithCapacity(keysPerRequest);
+    for (int i = 0; i < keysPerRequest; i++) {
+      watchKeys.add(keys.get(ThreadLocalRandom.current().nextInt(keyCount)));
+    }
+    return watchKeys;
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(new OptionsBuilder().include(DeferredResultRegistryBenchmark.class.getSimpleName()).build()).run();
+  }
+}
@@ -0,0 +1,106 @@
+package com.ctrip.framework.apollo.configservice.service;
+
+import com.ctrip.framework.apollo.configservice.wrapper.DeferredResultWrapper;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class DeferredResultRegistryTest {
+  private DeferredResultRegistry registry;
+  private String someKey;
+  private String anotherKey;
+
+  @Before
+  public void setUp() throws Exception {
+    registry = new DeferredResultRegistry();
+    someKey = "someKey";
+    anotherKey = "anotherKey";
+  }
+
+  @Test
+  public void testRegisterAndUnregister() throws Exception {
+    DeferredResultWrapper someResult = new DeferredResultWrapper();
+    DeferredResultWrapper anotherResult = new DeferredResultWrapper();
+
+    DeferredResultRegistry.Registration someRegistration =
+        registry.register(someResult, Sets.newHashSet(someKey, anotherKey));
+    registry.register(anotherResult, Sets.newHashSet(someKey));
+
+    assertEquals(3, registry.size());
+    assertEquals(2, registry.registrationCount());
+    assertEquals(Sets.newHashSet(someResult, anotherResult), registry.getAll());
+    assertEquals(Sets.newHashSet(someResult, anotherResult), Sets.newHashSet(registry.get(someKey)));
+    assertEquals(Sets.newHashSet(someResult), Sets.newHashSet(registry.get(anotherKey)));
+    assertTrue(someResult.getRegistrationSequence() < anotherResult.getRegistrationSequence());
+    assertEquals(anotherResult.getRegistrationSequence(), registry.currentSequence());
+
+    someRegistration.unregister();
+    //unregister twice should be fine
+    someRegistration.unregister();
+
+    assertEquals(1, registry.size());
+    assertEquals(1, registry.registrationCount());
+    assertEquals(Sets.newHashSet(anotherResult), Sets.newHashSet(registry.get(someKey)));
+    assertFalse(registry.containsKey(anotherKey));
+    assertTrue(registry.get(anotherKey).isEmpty());
+  }
+
+  @Test
+  public void testIterateWhileUnregistering() throws Exception {
+    List<DeferredResultRegistry.Registration> registrations = Lists.newArrayList();
+    for (int i = 0; i < 10; i++) {
+      registrations.add(registry.register(new DeferredResultWrapper(), Sets.newHashSet(someKey)));
+    }
+
+    Collection<DeferredResultWrapper> results = registry.get(someKey);
+    int iterated = 0;
+    for (DeferredResultWrapper ignored : results) {
+      registrations.get(iterated).unregister();
+      iterated++;
+    }
+
+    assertEquals(10, iterated);
+    assertEquals(0, registry.size());
+    assertFalse(registry.containsKey(someKey));
+  }
+
+  @Test
+  public void testConcurrentRegisterAndUnregister() throws Exception {
+    int threads = 8;
+    int rounds = 1000;
+    ExecutorService executorService = Executors.newFixedThreadPool(threads);
+    CountDownLatch latch = new CountDownLatch(threads);
+
+    for (int i = 0; i < threads; i++) {
+      executorService.submit(() -> {
+        try {
+          for (int j = 0; j < rounds; j++) {
+            registry.register(new DeferredResultWrapper(), Sets.newHashSet(someKey, anotherKey)).unregister();
+          }
+        } finally {
+          latch.countDown();
+        }
+      });
+    }
+    DeferredResultWrapper someResult = new DeferredResultWrapper();
+    registry.register(someResult, Sets.newHashSet(someKey));
+
+    assertTrue(latch.await(10, TimeUnit.SECONDS));
+    executorService.shutdown();
+
+    //the long living registration must survive the churn of the others
+    assertEquals(1, registry.size());
+    assertEquals(Sets.newHashSet(someResult), Sets.newHashSet(registry.get(someKey)));
+    assertFalse(registry.containsKey(anotherKey));
+  }
+}
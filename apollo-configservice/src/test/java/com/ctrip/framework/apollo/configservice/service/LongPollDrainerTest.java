@@ -0,0 +1,63 @@
+package com.ctrip.framework.apollo.configservice.service;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.configservice.wrapper.DeferredResultWrapper;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class LongPollDrainerTest {
+  private LongPollDrainer longPollDrainer;
+  private DeferredResultRegistry deferredResults;
+  @Mock
+  private BizConfig bizConfig;
+
+  @Before
+  public void setUp() throws Exception {
+    deferredResults = new DeferredResultRegistry();
+    longPollDrainer = new LongPollDrainer(deferredResults, bizConfig);
+  }
+
+  @Test
+  public void testDrain() throws Exception {
+    String someKey = "someKey";
+    String anotherKey = "anotherKey";
+    int someWindow = 500;
+    List<DeferredResultWrapper> waiters = Lists.newArrayList();
+    for (int i = 0; i < 20; i++) {
+      DeferredResultWrapper waiter = new DeferredResultWrapper();
+      deferredResults.register(waiter, Sets.newHashSet(someKey, anotherKey));
+      waiters.add(waiter);
+    }
+
+    when(bizConfig.longPollDrainWindowInMilli()).thenReturn(someWindow);
+
+    longPollDrainer.start();
+    assertTrue(longPollDrainer.isRunning());
+
+    long start = System.currentTimeMillis();
+    longPollDrainer.stop();
+
+    //spread over the window
+    assertTrue(System.currentTimeMillis() - start >= someWindow / 2);
+    assertFalse(longPollDrainer.isRunning());
+    for (DeferredResultWrapper waiter : waiters) {
+      assertTrue(waiter.getResult().hasResult());
+      assertEquals(HttpStatus.NOT_MODIFIED, ((ResponseEntity<?>) waiter.getResult().getResult()).getStatusCode());
+    }
+  }
+}
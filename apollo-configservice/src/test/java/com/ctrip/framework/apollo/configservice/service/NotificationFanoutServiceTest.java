@@ -0,0 +1,137 @@
+package com.ctrip.framework.apollo.configservice.service;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.configservice.wrapper.DeferredResultWrapper;
+import com.google.common.collect.Lists;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class NotificationFanoutServiceTest {
+  private NotificationFanoutService notificationFanoutService;
+  @Mock
+  private BizConfig bizConfig;
+  private String someKey;
+  private String anotherKey;
+
+  @Before
+  public void setUp() throws Exception {
+    when(bizConfig.releaseMessageNotificationThreads()).thenReturn(1);
+    when(bizConfig.releaseMessageNotificationRate()).thenReturn(1000);
+    when(bizConfig.releaseMessageNotificationBatch()).thenReturn(1);
+
+    notificationFanoutService = new NotificationFanoutService(bizConfig);
+    someKey = "someKey";
+    anotherKey = "anotherKey";
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    notificationFanoutService.destroy();
+  }
+
+  @Test
+  public void testSubmit() throws Exception {
+    when(bizConfig.releaseMessageNotificationBatch()).thenReturn(2);
+    int someSize = 5;
+    List<DeferredResultWrapper> waiters = assembleWaiters(someSize);
+    CountDownLatch latch = new CountDownLatch(someSize);
+
+    notificationFanoutService.submit(someKey, waiters, waiters.size(), waiter -> {
+      waiter.setResult(Collections.emptyList());
+      latch.countDown();
+    });
+
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    for (DeferredResultWrapper waiter : waiters) {
+      assertTrue(waiter.getResult().hasResult());
+    }
+
+    TimeUnit.MILLISECONDS.sleep(50);
+
+    assertEquals(0, notificationFanoutService.getBacklog());
+    assertEquals(0, notificationFanoutService.getActiveFanouts());
+  }
+
+  @Test
+  public void testSubmitSkipsCompletedWaiters() throws Exception {
+    List<DeferredResultWrapper> waiters = assembleWaiters(3);
+    DeferredResultWrapper completedWaiter = waiters.get(1);
+    completedWaiter.setResult(Collections.emptyList());
+    List<DeferredResultWrapper> notified = Collections.synchronizedList(Lists.newArrayList());
+    CountDownLatch latch = new CountDownLatch(2);
+
+    notificationFanoutService.submit(someKey, waiters, waiters.size(), waiter -> {
+      notified.add(waiter);
+      latch.countDown();
+    });
+
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    TimeUnit.MILLISECONDS.sleep(50);
+
+    assertEquals(2, notified.size());
+    assertFalse(notified.contains(completedWaiter));
+  }
+
+  @Test
+  public void testSubmitIsFairAcrossKeys() throws Exception {
+    int someSize = 50;
+    int anotherSize = 2;
+    List<String> notifiedKeys = Collections.synchronizedList(Lists.newArrayList());
+    CountDownLatch latch = new CountDownLatch(someSize + anotherSize);
+
+    notificationFanoutService.submit(someKey, assembleWaiters(someSize), someSize, waiter -> {
+      notifiedKeys.add(someKey);
+      latch.countDown();
+    });
+    notificationFanoutService.submit(anotherKey, assembleWaiters(anotherSize), anotherSize, waiter -> {
+      notifiedKeys.add(anotherKey);
+      latch.countDown();
+    });
+
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+    //the small fan-out should not wait for the large one to complete
+    assertTrue(notifiedKeys.lastIndexOf(anotherKey) < someSize / 2);
+  }
+
+  @Test
+  public void testSubmitCancelsSupersededFanout() throws Exception {
+    when(bizConfig.releaseMessageNotificationRate()).thenReturn(20);
+    int someSize = 20;
+    int anotherSize = 2;
+    AtomicInteger supersededNotified = new AtomicInteger();
+    CountDownLatch latch = new CountDownLatch(anotherSize);
+
+    notificationFanoutService.submit(someKey, assembleWaiters(someSize), someSize,
+        waiter -> supersededNotified.incrementAndGet());
+    notificationFanoutService.submit(someKey, assembleWaiters(anotherSize), anotherSize, waiter -> latch.countDown());
+
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    TimeUnit.MILLISECONDS.sleep(200);
+
+    assertTrue(supersededNotified.get() < someSize);
+    assertEquals(0, notificationFanoutService.getBacklog());
+  }
+
+  private List<DeferredResultWrapper> assembleWaiters(int size) {
+    List<DeferredResultWrapper> waiters = Lists.newArrayListWithCapacity(size);
+    for (int i = 0; i < size; i++) {
+      waiters.add(new DeferredResultWrapper());
+    }
+    return waiters;
+  }
+}
@@ -0,0 +1,89 @@
+package com.ctrip.framework.apollo.configservice.service;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.google.common.collect.Lists;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ReleaseMessageCoalescerTest {
+  private ReleaseMessageCoalescer releaseMessageCoalescer;
+  @Mock
+  private BizConfig bizConfig;
+  private String someKey;
+  private String anotherKey;
+  private List<String> deliveries;
+
+  @Before
+  public void setUp() throws Exception {
+    releaseMessageCoalescer = new ReleaseMessageCoalescer(bizConfig);
+    someKey = "someAppId+someCluster+someNamespace";
+    anotherKey = "someAppId+someCluster+anotherNamespace";
+    deliveries = Collections.synchronizedList(Lists.newArrayList());
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    releaseMessageCoalescer.destroy();
+  }
+
+  @Test
+  public void testSubmitWithCoalescingDisabled() throws Exception {
+    when(bizConfig.releaseMessageNotificationCoalescingWindowInMilli()).thenReturn(0);
+
+    releaseMessageCoalescer.submit(someKey, 1, coalesced -> deliveries.add(someKey + 1 + coalesced));
+    releaseMessageCoalescer.submit(someKey, 2, coalesced -> deliveries.add(someKey + 2 + coalesced));
+
+    assertEquals(Lists.newArrayList(someKey + 1 + false, someKey + 2 + false), deliveries);
+  }
+
+  @Test
+  public void testSubmitWithCoalescing() throws Exception {
+    int someWindow = 50;
+    when(bizConfig.releaseMessageNotificationCoalescingWindowInMilli()).thenReturn(someWindow);
+    when(bizConfig.releaseMessageNotificationCoalescingMaxDelayInMilli()).thenReturn(someWindow * 10);
+
+    releaseMessageCoalescer.submit(someKey, 1, coalesced -> deliveries.add(someKey + 1 + coalesced));
+    releaseMessageCoalescer.submit(anotherKey, 2, coalesced -> deliveries.add(anotherKey + 2 + coalesced));
+    releaseMessageCoalescer.submit(someKey, 3, coalesced -> deliveries.add(someKey + 3 + coalesced));
+
+    assertTrue(deliveries.isEmpty());
+
+    TimeUnit.MILLISECONDS.sleep(someWindow * 5);
+
+    assertEquals(2, deliveries.size());
+    assertTrue(deliveries.contains(someKey + 3 + true));
+    assertTrue(deliveries.contains(anotherKey + 2 + false));
+  }
+
+  @Test
+  public void testSubmitWithinMaxDelay() throws Exception {
+    int someWindow = 50;
+    int someMaxDelay = 100;
+    when(bizConfig.releaseMessageNotificationCoalescingWindowInMilli()).thenReturn(someWindow);
+    when(bizConfig.releaseMessageNotificationCoalescingMaxDelayInMilli()).thenReturn(someMaxDelay);
+
+    long start = System.currentTimeMillis();
+    //keeps extending the window
+    for (int i = 1; deliveries.isEmpty() && i < 100; i++) {
+      long messageId = i;
+      releaseMessageCoalescer.submit(someKey, messageId, coalesced -> deliveries.add(someKey + messageId));
+      TimeUnit.MILLISECONDS.sleep(someWindow / 5);
+    }
+
+    assertEquals(1, deliveries.size());
+    assertTrue(System.currentTimeMillis() - start < someMaxDelay * 5);
+  }
+}
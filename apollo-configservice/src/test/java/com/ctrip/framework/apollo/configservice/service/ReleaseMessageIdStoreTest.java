@@ -0,0 +1,47 @@
+package com.ctrip.framework.apollo.configservice.service;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ReleaseMessageIdStoreTest {
+  private ReleaseMessageIdStore releaseMessageIdStore;
+
+  @Before
+  public void setUp() throws Exception {
+    releaseMessageIdStore = new ReleaseMessageIdStore();
+  }
+
+  @Test
+  public void testUpdate() throws Exception {
+    String someMessage = "someAppId+someCluster+someNamespace";
+    String anotherMessage = "anotherAppId+someCluster+someNamespace";
+
+    assertEquals(ReleaseMessageIdStore.NO_ID, releaseMessageIdStore.get(someMessage));
+
+    assertTrue(releaseMessageIdStore.update(someMessage, 2));
+    assertFalse(releaseMessageIdStore.update(someMessage, 1));
+    assertTrue(releaseMessageIdStore.update(anotherMessage, 3));
+
+    assertEquals(2, releaseMessageIdStore.get(someMessage));
+    assertEquals(3, releaseMessageIdStore.get(anotherMessage));
+    assertEquals(2, releaseMessageIdStore.size());
+  }
+
+  @Test
+  public void testUpdateWithManyMessages() throws Exception {
+    int someSize = 10000;
+    for (int i = 0; i < someSize; i++) {
+      releaseMessageIdStore.update("someMessage" + i, i + 1);
+    }
+
+    assertEquals(someSize, releaseMessageIdStore.size());
+    for (int i = 0; i < someSize; i++) {
+      assertEquals(i + 1, releaseMessageIdStore.get("someMessage" + i));
+    }
+    assertEquals(ReleaseMessageIdStore.NO_ID, releaseMessageIdStore.get("anotherMessage"));
+  }
+}
@@ -9,15 +9,21 @@ import com.google.common.collect.Sets;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.transaction.PlatformTransactionManager;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
@@ -36,6 +42,12 @@ public class ReleaseMessageServiceWithCacheTest {
   @Mock
   private BizConfig bizConfig;
 
+  @Mock
+  private PlatformTransactionManager transactionManager;
+
+  @Mock
+  private CacheSnapshotStore cacheSnapshotStore;
+
   private int scanInterval;
 
   private TimeUnit scanIntervalTimeUnit;
@@ -44,7 +56,7 @@ public class ReleaseMessageServiceWithCacheTest {
 
   public void setUp() throws Exception {
     releaseMessageServiceWithCache = new ReleaseMessageServiceWithCache(
-        releaseMessageRepository, bizConfig
+        releaseMessageRepository, bizConfig, transactionManager, cacheSnapshotStore
     );
 
     scanInterval = 10;
@@ -55,8 +67,7 @@ public class ReleaseMessageServiceWithCacheTest {
 
   @Test
   public void testWhenNoReleaseMessages() throws Exception {
-    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L)).thenReturn
-        (Collections.emptyList());
+    when(releaseMessageRepository.streamLatestReleaseMessagesGroupByMessages()).thenReturn(Stream.empty());
 
     releaseMessageServiceWithCache.afterPropertiesSet();
 
@@ -77,8 +88,9 @@ public class ReleaseMessageServiceWithCacheTest {
     ReleaseMessage anotherMsg = assembleReleaseMsg(2, anotherMsgContent);
     ReleaseMessage anotherRepeatMsg = assembleReleaseMsg(3, anotherMsgContent);
 
-    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L))
-        .thenReturn(Arrays.asList(someMsg, anotherMsg, anotherRepeatMsg));
+    when(releaseMessageRepository.streamLatestReleaseMessagesGroupByMessages())
+        .thenReturn(Stream.<Object[]>of(assembleLatestReleaseMsg(someMsg),
+            assembleLatestReleaseMsg(anotherRepeatMsg)));
 
     releaseMessageServiceWithCache.afterPropertiesSet();
 
@@ -115,8 +127,8 @@ public class ReleaseMessageServiceWithCacheTest {
     String antherMsgContent = "msg2";
     ReleaseMessage antherMsg = assembleReleaseMsg(501, antherMsgContent);
 
-    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L))
-        .thenReturn(firstBatchReleaseMsg);
+    when(releaseMessageRepository.streamLatestReleaseMessagesGroupByMessages())
+        .thenReturn(Stream.<Object[]>of(assembleLatestReleaseMsg(firstBatchReleaseMsg.get(499))));
     when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(500L))
         .thenReturn(Collections.singletonList(antherMsg));
 
@@ -147,8 +159,8 @@ public class ReleaseMessageServiceWithCacheTest {
     long someMessageId = 1;
     ReleaseMessage someMessage = assembleReleaseMsg(someMessageId, someMessageContent);
 
-    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L)).thenReturn(Lists.newArrayList
-        (someMessage));
+    when(releaseMessageRepository.streamLatestReleaseMessagesGroupByMessages())
+        .thenReturn(Stream.<Object[]>of(assembleLatestReleaseMsg(someMessage)));
 
     releaseMessageServiceWithCache.afterPropertiesSet();
 
@@ -162,7 +174,8 @@ public class ReleaseMessageServiceWithCacheTest {
 
     assertEquals(someMessageId, latestReleaseMsg.getId());
     assertEquals(someMessageContent, latestReleaseMsg.getMessage());
-    assertEquals(latestReleaseMsg, latestReleaseMsgGroupByMsgContent.get(0));
+    assertEquals(latestReleaseMsg.getId(), latestReleaseMsgGroupByMsgContent.get(0).getId());
+    assertEquals(latestReleaseMsg.getMessage(), latestReleaseMsgGroupByMsgContent.get(0).getMessage());
 
     long newMessageId = 2;
     ReleaseMessage newMessage = assembleReleaseMsg(newMessageId, someMessageContent);
@@ -182,7 +195,8 @@ public class ReleaseMessageServiceWithCacheTest {
 
     assertEquals(newMessageId, newLatestReleaseMsg.getId());
     assertEquals(someMessageContent, newLatestReleaseMsg.getMessage());
-    assertEquals(newLatestReleaseMsg, newLatestReleaseMsgGroupByMsgContent.get(0));
+    assertEquals(newLatestReleaseMsg.getId(), newLatestReleaseMsgGroupByMsgContent.get(0).getId());
+    assertEquals(newLatestReleaseMsg.getMessage(), newLatestReleaseMsgGroupByMsgContent.get(0).getMessage());
   }
 
   @Test
@@ -191,8 +205,8 @@ public class ReleaseMessageServiceWithCacheTest {
     long someMessageId = 1;
     ReleaseMessage someMessage = assembleReleaseMsg(someMessageId, someMessageContent);
 
-    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L)).thenReturn(Lists.newArrayList
-        (someMessage));
+    when(releaseMessageRepository.streamLatestReleaseMessagesGroupByMessages())
+        .thenReturn(Stream.<Object[]>of(assembleLatestReleaseMsg(someMessage)));
 
     releaseMessageServiceWithCache.afterPropertiesSet();
 
@@ -206,7 +220,8 @@ public class ReleaseMessageServiceWithCacheTest {
 
     assertEquals(someMessageId, latestReleaseMsg.getId());
     assertEquals(someMessageContent, latestReleaseMsg.getMessage());
-    assertEquals(latestReleaseMsg, latestReleaseMsgGroupByMsgContent.get(0));
+    assertEquals(latestReleaseMsg.getId(), latestReleaseMsgGroupByMsgContent.get(0).getId());
+    assertEquals(latestReleaseMsg.getMessage(), latestReleaseMsgGroupByMsgContent.get(0).getMessage());
 
     long newMessageId = 2;
     ReleaseMessage newMessage = assembleReleaseMsg(newMessageId, someMessageContent);
@@ -223,7 +238,48 @@ public class ReleaseMessageServiceWithCacheTest {
 
     assertEquals(newMessageId, newLatestReleaseMsg.getId());
     assertEquals(someMessageContent, newLatestReleaseMsg.getMessage());
-    assertEquals(newLatestReleaseMsg, newLatestReleaseMsgGroupByMsgContent.get(0));
+    assertEquals(newLatestReleaseMsg.getId(), newLatestReleaseMsgGroupByMsgContent.get(0).getId());
+    assertEquals(newLatestReleaseMsg.getMessage(), newLatestReleaseMsgGroupByMsgContent.get(0).getMessage());
+  }
+
+  @Test
+  public void testRestoreFromSnapshot() throws Exception {
+    String someMessageContent = "someMessage";
+    long someMessageId = 1;
+    ReleaseMessage someMessage = assembleReleaseMsg(someMessageId, someMessageContent);
+    String anotherMessageContent = "anotherMessage";
+    long anotherMessageId = 2;
+    ReleaseMessage anotherMessage = assembleReleaseMsg(anotherMessageId, anotherMessageContent);
+
+    when(releaseMessageRepository.streamLatestReleaseMessagesGroupByMessages())
+        .thenReturn(Stream.<Object[]>of(assembleLatestReleaseMsg(someMessage)));
+
+    releaseMessageServiceWithCache.afterPropertiesSet();
+
+    ArgumentCaptor<CacheSnapshotStore.SnapshotWriter> writerCaptor =
+        ArgumentCaptor.forClass(CacheSnapshotStore.SnapshotWriter.class);
+    verify(cacheSnapshotStore, times(1)).registerSection(anyString(), writerCaptor.capture());
+    ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+    writerCaptor.getValue().write(new DataOutputStream(snapshot));
+
+    when(cacheSnapshotStore.readSection(anyString()))
+        .thenReturn(new DataInputStream(new ByteArrayInputStream(snapshot.toByteArray())));
+    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L))
+        .thenReturn(Lists.newArrayList(someMessage, anotherMessage));
+
+    ReleaseMessageServiceWithCache anotherReleaseMessageServiceWithCache = new ReleaseMessageServiceWithCache(
+        releaseMessageRepository, bizConfig, transactionManager, cacheSnapshotStore);
+    anotherReleaseMessageServiceWithCache.afterPropertiesSet();
+
+    //no full load, but only the messages shortly before the snapshot
+    verify(releaseMessageRepository, times(1)).streamLatestReleaseMessagesGroupByMessages();
+
+    List<ReleaseMessage> latestReleaseMsgGroupByMsgContent = anotherReleaseMessageServiceWithCache
+        .findLatestReleaseMessagesGroupByMessages(Sets.newHashSet(someMessageContent, anotherMessageContent));
+
+    assertEquals(2, latestReleaseMsgGroupByMsgContent.size());
+    assertEquals(Sets.newHashSet(someMessageId, anotherMessageId), Sets.newHashSet(
+        latestReleaseMsgGroupByMsgContent.get(0).getId(), latestReleaseMsgGroupByMsgContent.get(1).getId()));
   }
 
   private ReleaseMessage assembleReleaseMsg(long id, String msgContent) {
@@ -233,4 +289,8 @@ public class ReleaseMessageServiceWithCacheTest {
 
     return msg;
   }
+
+  private Object[] assembleLatestReleaseMsg(ReleaseMessage releaseMessage) {
+    return new Object[]{releaseMessage.getMessage(), releaseMessage.getId()};
+  }
 }
@@ -0,0 +1,104 @@
+package com.ctrip.framework.apollo.configservice.service.config;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.repository.InstanceConfigRepository;
+import com.google.common.collect.Lists;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ConfigCachePreloaderTest {
+  private ConfigCachePreloader configCachePreloader;
+  @Mock
+  private ConfigServiceWithCache configServiceWithCache;
+  @Mock
+  private DefaultConfigService defaultConfigService;
+  @Mock
+  private InstanceConfigRepository instanceConfigRepository;
+  @Mock
+  private BizConfig bizConfig;
+
+  @After
+  public void tearDown() throws Exception {
+    if (configCachePreloader != null) {
+      configCachePreloader.destroy();
+    }
+  }
+
+  @Test
+  public void testPreload() throws Exception {
+    String someAppId = "someAppId";
+    String someClusterName = "someClusterName";
+    String someNamespaceName = "someNamespaceName";
+    String anotherNamespaceName = "anotherNamespaceName";
+    int somePreloadSize = 10;
+
+    when(bizConfig.configServiceCachePreloadSize()).thenReturn(somePreloadSize);
+    when(bizConfig.configServiceCachePreloadConcurrency()).thenReturn(2);
+    when(bizConfig.configServiceCachePreloadTimeout()).thenReturn(10);
+    when(bizConfig.configServiceCachePreloadTimeoutTimeUnit()).thenReturn(TimeUnit.SECONDS);
+    when(bizConfig.configServiceCachePreloadInterval()).thenReturn(1);
+    when(bizConfig.configServiceCachePreloadIntervalTimeUnit()).thenReturn(TimeUnit.HOURS);
+    when(instanceConfigRepository.findMostUsedNamespaces(any(Date.class), eq(PageRequest.of(0, somePreloadSize))))
+        .thenReturn(Lists.newArrayList(new Object[]{someAppId, someClusterName, someNamespaceName},
+            new Object[]{someAppId, someClusterName, anotherNamespaceName}));
+    doThrow(new RuntimeException("some exception")).when(configServiceWithCache)
+        .preload(someAppId, someClusterName, someNamespaceName);
+
+    configCachePreloader = new ConfigCachePreloader(configServiceWithCache, instanceConfigRepository, bizConfig);
+    configCachePreloader.afterPropertiesSet();
+
+    verify(configServiceWithCache, timeout(5000).times(1)).preload(someAppId, someClusterName, someNamespaceName);
+    verify(configServiceWithCache, timeout(5000).times(1)).preload(someAppId, someClusterName, anotherNamespaceName);
+
+    TimeUnit.MILLISECONDS.sleep(100);
+
+    //failed preloading doesn't block the startup
+    assertTrue(configCachePreloader.isPreloaded());
+
+    //the ranking is reused by the periodic preloading
+    configCachePreloader.preload();
+
+    verify(configServiceWithCache, times(2)).preload(someAppId, someClusterName, anotherNamespaceName);
+    verify(instanceConfigRepository, times(1)).findMostUsedNamespaces(any(Date.class), any());
+  }
+
+  @Test
+  public void testPreloadDisabled() throws Exception {
+    when(bizConfig.configServiceCachePreloadSize()).thenReturn(0);
+
+    configCachePreloader = new ConfigCachePreloader(configServiceWithCache, instanceConfigRepository, bizConfig);
+    configCachePreloader.afterPropertiesSet();
+
+    assertTrue(configCachePreloader.isPreloaded());
+    verify(instanceConfigRepository, never()).findMostUsedNamespaces(any(Date.class), any());
+    verify(configServiceWithCache, never()).preload(anyString(), anyString(), anyString());
+  }
+
+  @Test
+  public void testPreloadWithoutCache() throws Exception {
+    configCachePreloader = new ConfigCachePreloader(defaultConfigService, instanceConfigRepository, bizConfig);
+    configCachePreloader.afterPropertiesSet();
+
+    assertTrue(configCachePreloader.isPreloaded());
+    verify(bizConfig, times(0)).configServiceCachePreloadSize();
+  }
+}
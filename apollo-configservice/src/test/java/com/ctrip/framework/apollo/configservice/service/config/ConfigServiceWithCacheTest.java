@@ -3,12 +3,17 @@ package com.ctrip.framework.apollo.configservice.service.config;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
 import com.google.common.collect.Lists;
 
+import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.Release;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.biz.service.ReleaseMessageService;
 import com.ctrip.framework.apollo.biz.service.ReleaseService;
 import com.ctrip.framework.apollo.biz.utils.ReleaseMessageKeyGenerator;
+import com.ctrip.framework.apollo.configservice.service.AdmissionControl;
+import com.ctrip.framework.apollo.configservice.service.AdmissionRejectedException;
+import com.ctrip.framework.apollo.configservice.service.CacheSnapshotStore;
+import com.ctrip.framework.apollo.configservice.service.ReleaseMessageServiceWithCache;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -19,7 +24,9 @@ import org.springframework.test.util.ReflectionTestUtils;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -36,6 +43,12 @@ public class ConfigServiceWithCacheTest {
   @Mock
   private ReleaseMessageService releaseMessageService;
   @Mock
+  private BizConfig bizConfig;
+  @Mock
+  private ReleaseMessageServiceWithCache releaseMessageServiceWithCache;
+  @Mock
+  private CacheSnapshotStore cacheSnapshotStore;
+  @Mock
   private Release someRelease;
   @Mock
   private ReleaseMessage someReleaseMessage;
@@ -52,6 +65,13 @@ public class ConfigServiceWithCacheTest {
     configServiceWithCache = new ConfigServiceWithCache();
     ReflectionTestUtils.setField(configServiceWithCache, "releaseService", releaseService);
     ReflectionTestUtils.setField(configServiceWithCache, "releaseMessageService", releaseMessageService);
+    ReflectionTestUtils.setField(configServiceWithCache, "bizConfig", bizConfig);
+    ReflectionTestUtils.setField(configServiceWithCache, "releaseMessageServiceWithCache",
+        releaseMessageServiceWithCache);
+    ReflectionTestUtils.setField(configServiceWithCache, "cacheSnapshotStore", cacheSnapshotStore);
+    ReflectionTestUtils.setField(configServiceWithCache, "admissionControl", new AdmissionControl(bizConfig));
+
+    when(bizConfig.configServiceCacheMaxWeight()).thenReturn(Integer.MAX_VALUE);
 
     configServiceWithCache.initialize();
 
@@ -148,6 +168,25 @@ public class ConfigServiceWithCacheTest {
     verify(releaseService, times(1)).findLatestActiveRelease(someAppId, someClusterName, someNamespaceName);
   }
 
+  @Test
+  public void testFindLatestActiveReleaseRejectedByAdmissionControl() throws Exception {
+    AdmissionControl admissionControl = mock(AdmissionControl.class);
+    ReflectionTestUtils.setField(configServiceWithCache, "admissionControl", admissionControl);
+
+    when(admissionControl.tryAcquire(AdmissionControl.Category.CONFIG_LOAD)).thenReturn(null);
+
+    try {
+      configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName,
+          someNotificationMessages);
+      fail("Should be rejected");
+    } catch (AdmissionRejectedException ex) {
+      assertEquals(AdmissionControl.Category.CONFIG_LOAD, ex.getCategory());
+    }
+
+    verify(releaseMessageService, never()).findLatestReleaseMessageForMessages(Lists.newArrayList(someKey));
+    verify(releaseService, never()).findLatestActiveRelease(someAppId, someClusterName, someNamespaceName);
+  }
+
   @Test
   public void testFindLatestActiveReleaseWithReleaseNotFound() throws Exception {
     when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey))).thenReturn(null);
@@ -247,6 +286,38 @@ public class ConfigServiceWithCacheTest {
     verify(releaseService, times(2)).findLatestActiveRelease(someAppId, someClusterName, someNamespaceName);
   }
 
+  @Test
+  public void testFindLatestActiveReleaseWithReleaseMessagesInBatch() throws Exception {
+    long someNewNotificationId = someNotificationId + 1;
+    ReleaseMessage anotherReleaseMessage = mock(ReleaseMessage.class);
+    Release anotherRelease = mock(Release.class);
+
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey))).thenReturn
+        (someReleaseMessage);
+    when(releaseService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName)).thenReturn
+        (someRelease);
+    when(someReleaseMessage.getId()).thenReturn(someNotificationId);
+
+    Release release = configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName,
+        someNotificationMessages);
+
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey))).thenReturn
+        (anotherReleaseMessage);
+    when(releaseService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName)).thenReturn
+        (anotherRelease);
+    when(anotherReleaseMessage.getMessage()).thenReturn(someKey);
+    when(anotherReleaseMessage.getId()).thenReturn(someNewNotificationId);
+
+    configServiceWithCache.handleMessages(Lists.newArrayList(anotherReleaseMessage), Topics.APOLLO_RELEASE_TOPIC);
+
+    //either loaded on demand or by the warm up, but never served with the invalidated one
+    Release shouldBeNewRelease = configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName,
+        someNamespaceName, someNotificationMessages);
+
+    assertEquals(someRelease, release);
+    assertEquals(anotherRelease, shouldBeNewRelease);
+  }
+
   @Test
   public void testFindLatestActiveReleaseWithIrrelevantMessages() throws Exception {
     long someNewNotificationId = someNotificationId + 1;
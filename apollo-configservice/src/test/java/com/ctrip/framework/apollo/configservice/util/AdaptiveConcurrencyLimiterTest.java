@@ -0,0 +1,104 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import com.ctrip.framework.apollo.configservice.util.AdaptiveConcurrencyLimiter.Permit;
+import com.google.common.collect.Lists;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class AdaptiveConcurrencyLimiterTest {
+  private AdaptiveConcurrencyLimiter limiter;
+  private int someMaxLimit;
+  private int someLatencyThresholdInMilli;
+
+  @Before
+  public void setUp() throws Exception {
+    someMaxLimit = 10;
+    someLatencyThresholdInMilli = 50;
+    limiter = new AdaptiveConcurrencyLimiter(() -> someMaxLimit, () -> someLatencyThresholdInMilli);
+  }
+
+  @Test
+  public void testTryAcquireWithinLimit() throws Exception {
+    List<Permit> permits = acquire(someMaxLimit);
+
+    assertEquals(someMaxLimit, limiter.getInFlight());
+    assertNull(limiter.tryAcquire());
+    assertEquals(1, limiter.getRejected());
+
+    permits.get(0).release();
+
+    assertNotNull(limiter.tryAcquire());
+    assertEquals(someMaxLimit, limiter.getLimit());
+  }
+
+  @Test
+  public void testBackoffOncePerRoundTrip() throws Exception {
+    List<Permit> permits = acquire(someMaxLimit);
+
+    for (Permit permit : permits) {
+      permit.drop();
+    }
+
+    assertEquals(0, limiter.getInFlight());
+    assertEquals((int) (someMaxLimit * 0.9), limiter.getLimit());
+
+    limiter.tryAcquire().drop();
+
+    assertEquals((int) (someMaxLimit * 0.9 * 0.9), limiter.getLimit());
+  }
+
+  @Test
+  public void testBackoffWithSlowRequest() throws Exception {
+    someLatencyThresholdInMilli = 1;
+
+    Permit permit = limiter.tryAcquire();
+    TimeUnit.MILLISECONDS.sleep(10);
+    permit.release();
+
+    assertEquals((int) (someMaxLimit * 0.9), limiter.getLimit());
+  }
+
+  @Test
+  public void testRecoverUnderLoad() throws Exception {
+    limiter.tryAcquire().drop();
+    int limitAfterBackoff = limiter.getLimit();
+
+    List<Permit> permits = acquire(limitAfterBackoff);
+    permits.get(0).release();
+
+    assertEquals(limitAfterBackoff + 1, limiter.getLimit());
+
+    for (Permit permit : permits.subList(1, permits.size())) {
+      permit.release();
+    }
+
+    //never beyond the max limit
+    assertEquals(someMaxLimit, limiter.getLimit());
+  }
+
+  @Test
+  public void testMaxLimitChanged() throws Exception {
+    someMaxLimit = 2;
+
+    acquire(someMaxLimit);
+
+    assertNull(limiter.tryAcquire());
+  }
+
+  private List<Permit> acquire(int count) {
+    List<Permit> permits = Lists.newArrayList();
+    for (int i = 0; i < count; i++) {
+      Permit permit = limiter.tryAcquire();
+      assertNotNull(permit);
+      permits.add(permit);
+    }
+    return permits;
+  }
+}
@@ -0,0 +1,30 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GzipUtilTest {
+
+  @Test
+  public void testAcceptsGzip() throws Exception {
+    assertTrue(GzipUtil.acceptsGzip("gzip"));
+    assertTrue(GzipUtil.acceptsGzip("deflate, GZIP"));
+    assertTrue(GzipUtil.acceptsGzip("gzip;q=0.5, deflate"));
+    assertTrue(GzipUtil.acceptsGzip("x-gzip"));
+    assertTrue(GzipUtil.acceptsGzip("*"));
+  }
+
+  @Test
+  public void testNotAcceptsGzip() throws Exception {
+    assertFalse(GzipUtil.acceptsGzip(null));
+    assertFalse(GzipUtil.acceptsGzip(""));
+    assertFalse(GzipUtil.acceptsGzip("identity"));
+    assertFalse(GzipUtil.acceptsGzip("gzip;q=0"));
+    assertFalse(GzipUtil.acceptsGzip("gzip; q=0.0, deflate"));
+    assertFalse(GzipUtil.acceptsGzip("*;q=0"));
+    assertFalse(GzipUtil.acceptsGzip("gzip;q=0, *"));
+    assertFalse(GzipUtil.acceptsGzip("gzip;q=abc"));
+  }
+}
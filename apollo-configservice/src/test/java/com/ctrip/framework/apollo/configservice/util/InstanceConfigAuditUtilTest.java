@@ -3,18 +3,27 @@ package com.ctrip.framework.apollo.configservice.util;
 import com.ctrip.framework.apollo.biz.entity.Instance;
 import com.ctrip.framework.apollo.biz.entity.InstanceConfig;
 import com.ctrip.framework.apollo.biz.service.InstanceService;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.Date;
+import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.BlockingQueue;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.Mockito.*;
 
 /**
@@ -26,7 +35,7 @@ public class InstanceConfigAuditUtilTest {
 
   @Mock
   private InstanceService instanceService;
-  private BlockingQueue<InstanceConfigAuditUtil.InstanceConfigAuditModel> audits;
+  private List<BlockingQueue<InstanceConfigAuditUtil.InstanceConfigAuditModel>> audits;
 
   private String someAppId;
   private String someConfigClusterName;
@@ -43,7 +52,7 @@ public class InstanceConfigAuditUtilTest {
   public void setUp() throws Exception {
     instanceConfigAuditUtil = new InstanceConfigAuditUtil(instanceService);
 
-    audits = (BlockingQueue<InstanceConfigAuditUtil.InstanceConfigAuditModel>)
+    audits = (List<BlockingQueue<InstanceConfigAuditUtil.InstanceConfigAuditModel>>)
         ReflectionTestUtils.getField(instanceConfigAuditUtil, "audits");
 
     someAppId = "someAppId";
@@ -65,29 +74,120 @@ public class InstanceConfigAuditUtilTest {
     boolean result = instanceConfigAuditUtil.audit(someAppId, someClusterName, someDataCenter,
         someIp, someConfigAppId, someConfigClusterName, someConfigNamespace, someReleaseKey);
 
-    InstanceConfigAuditUtil.InstanceConfigAuditModel audit = audits.poll();
+    InstanceConfigAuditUtil.InstanceConfigAuditModel audit = null;
+    for (BlockingQueue<InstanceConfigAuditUtil.InstanceConfigAuditModel> partition : audits) {
+      if (audit == null) {
+        audit = partition.poll();
+      }
+    }
 
     assertTrue(result);
     assertTrue(Objects.equals(someAuditModel, audit));
   }
 
+  @Test
+  public void testAuditWhenQueueIsFull() throws Exception {
+    boolean result = true;
+    int someMaxSize = 10000;
+    for (int i = 0; i <= someMaxSize; i++) {
+      result = instanceConfigAuditUtil.audit(someAppId, someClusterName, someDataCenter,
+          someIp, someConfigAppId, someConfigClusterName, someConfigNamespace, someReleaseKey);
+    }
+
+    assertFalse(result);
+    assertEquals(someMaxSize, instanceConfigAuditUtil.getQueueSize());
+    assertEquals(1, instanceConfigAuditUtil.getDroppedAudits());
+  }
+
   @Test
   public void testDoAudit() throws Exception {
     long someInstanceId = 1;
-    Instance someInstance = mock(Instance.class);
+    Instance someInstance = assembleInstance(someInstanceId);
 
-    when(someInstance.getId()).thenReturn(someInstanceId);
-    when(instanceService.createInstance(any(Instance.class))).thenReturn(someInstance);
+    when(instanceService.batchCreateInstances(anyList())).thenReturn(Lists.newArrayList(someInstance));
 
-    instanceConfigAuditUtil.doAudit(someAuditModel);
+    instanceConfigAuditUtil.doAudit(Lists.newArrayList(someAuditModel));
 
-    verify(instanceService, times(1)).findInstance(someAppId, someClusterName, someDataCenter,
-        someIp);
-    verify(instanceService, times(1)).createInstance(any(Instance.class));
-    verify(instanceService, times(1)).findInstanceConfig(someInstanceId, someConfigAppId,
+    verify(instanceService, times(1)).findInstances(someAppId, someClusterName,
+        Sets.newHashSet(someIp));
+    verify(instanceService, times(1)).batchCreateInstances(anyList());
+    verify(instanceService, times(1)).findInstanceConfigs(Sets.newHashSet(someInstanceId), someConfigAppId,
         someConfigNamespace);
+
+    ArgumentCaptor<List<InstanceConfig>> instanceConfigs = ArgumentCaptor.forClass(List.class);
+    verify(instanceService, times(1)).batchCreateInstanceConfigs(instanceConfigs.capture());
+    assertEquals(1, instanceConfigs.getValue().size());
+    assertEquals(someInstanceId, instanceConfigs.getValue().get(0).getInstanceId());
+    assertEquals(someReleaseKey, instanceConfigs.getValue().get(0).getReleaseKey());
+  }
+
+  @Test
+  public void testDoAuditWithDuplicateAudits() throws Exception {
+    long someInstanceId = 1;
+    String anotherReleaseKey = "anotherReleaseKey";
+    InstanceConfigAuditUtil.InstanceConfigAuditModel anotherAuditModel =
+        new InstanceConfigAuditUtil.InstanceConfigAuditModel(someAppId, someClusterName, someDataCenter, someIp,
+            someConfigAppId, someConfigClusterName, someConfigNamespace, anotherReleaseKey);
+
+    when(instanceService.findInstances(someAppId, someClusterName, Sets.newHashSet(someIp)))
+        .thenReturn(Lists.newArrayList(assembleInstance(someInstanceId)));
+
+    instanceConfigAuditUtil.doAudit(Lists.newArrayList(someAuditModel, anotherAuditModel));
+
+    verify(instanceService, never()).batchCreateInstances(anyList());
+
+    ArgumentCaptor<List<InstanceConfig>> instanceConfigs = ArgumentCaptor.forClass(List.class);
+    verify(instanceService, times(1)).batchCreateInstanceConfigs(instanceConfigs.capture());
+    assertEquals(1, instanceConfigs.getValue().size());
+    assertEquals(anotherReleaseKey, instanceConfigs.getValue().get(0).getReleaseKey());
+  }
+
+  @Test
+  public void testDoAuditWithExistingInstanceConfig() throws Exception {
+    long someInstanceId = 1;
+    InstanceConfig someInstanceConfig = new InstanceConfig();
+    someInstanceConfig.setInstanceId(someInstanceId);
+    someInstanceConfig.setReleaseKey("someOldReleaseKey");
+    someInstanceConfig.setDataChangeLastModifiedTime(new Date());
+
+    when(instanceService.findInstances(someAppId, someClusterName, Sets.newHashSet(someIp)))
+        .thenReturn(Lists.newArrayList(assembleInstance(someInstanceId)));
+    when(instanceService.findInstanceConfigs(Sets.newHashSet(someInstanceId), someConfigAppId,
+        someConfigNamespace)).thenReturn(Lists.newArrayList(someInstanceConfig));
+
+    instanceConfigAuditUtil.doAudit(Lists.newArrayList(someAuditModel));
+    //the same release key is skipped by cache
+    instanceConfigAuditUtil.doAudit(Lists.newArrayList(someAuditModel));
+
+    verify(instanceService, times(1)).batchUpdateInstanceConfigs(Lists.newArrayList(someInstanceConfig));
+    verify(instanceService, never()).batchCreateInstanceConfigs(anyList());
+    assertEquals(someReleaseKey, someInstanceConfig.getReleaseKey());
+    assertEquals(someConfigClusterName, someInstanceConfig.getConfigClusterName());
+  }
+
+  @Test
+  public void testDoAuditWithConcurrentInstanceConfigInsertion() throws Exception {
+    long someInstanceId = 1;
+
+    when(instanceService.findInstances(someAppId, someClusterName, Sets.newHashSet(someIp)))
+        .thenReturn(Lists.newArrayList(assembleInstance(someInstanceId)));
+    when(instanceService.batchCreateInstanceConfigs(anyList()))
+        .thenThrow(new DataIntegrityViolationException("someError"));
+
+    instanceConfigAuditUtil.doAudit(Lists.newArrayList(someAuditModel));
+
     verify(instanceService, times(1)).createInstanceConfig(any(InstanceConfig.class));
   }
 
+  private Instance assembleInstance(long id) {
+    Instance instance = new Instance();
+    instance.setId(id);
+    instance.setAppId(someAppId);
+    instance.setClusterName(someClusterName);
+    instance.setDataCenter(someDataCenter);
+    instance.setIp(someIp);
+    return instance;
+  }
+
 
 }
@@ -0,0 +1,75 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.configservice.service.DeferredResultRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class LongPollTimeoutUtilTest {
+  private LongPollTimeoutUtil longPollTimeoutUtil;
+  @Mock
+  private BizConfig bizConfig;
+  @Mock
+  private DeferredResultRegistry deferredResults;
+  private int someMinTimeout;
+  private int someMaxTimeout;
+  private int someHighLoadThreshold;
+
+  @Before
+  public void setUp() throws Exception {
+    longPollTimeoutUtil = new LongPollTimeoutUtil(bizConfig, deferredResults);
+    someMinTimeout = 50000;
+    someMaxTimeout = 70000;
+    someHighLoadThreshold = 100;
+  }
+
+  @Test
+  public void testTimeoutWithLowLoad() throws Exception {
+    when(bizConfig.longPollTimeoutMinInMilli()).thenReturn(someMinTimeout);
+    when(bizConfig.longPollTimeoutMaxInMilli()).thenReturn(someMaxTimeout);
+    when(bizConfig.longPollHighLoadThreshold()).thenReturn(someHighLoadThreshold);
+    when(deferredResults.registrationCount()).thenReturn(0);
+
+    long minSeen = Long.MAX_VALUE;
+    long maxSeen = Long.MIN_VALUE;
+    for (int i = 0; i < 1000; i++) {
+      long timeout = longPollTimeoutUtil.nextTimeoutInMillis();
+      assertTrue(timeout >= someMinTimeout && timeout <= someMaxTimeout);
+      minSeen = Math.min(minSeen, timeout);
+      maxSeen = Math.max(maxSeen, timeout);
+    }
+
+    //randomized over the whole band
+    assertTrue(minSeen < someMinTimeout + (someMaxTimeout - someMinTimeout) / 2);
+    assertTrue(maxSeen > someMinTimeout + (someMaxTimeout - someMinTimeout) / 2);
+  }
+
+  @Test
+  public void testTimeoutWithHighLoad() throws Exception {
+    when(bizConfig.longPollTimeoutMinInMilli()).thenReturn(someMinTimeout);
+    when(bizConfig.longPollTimeoutMaxInMilli()).thenReturn(someMaxTimeout);
+    when(bizConfig.longPollHighLoadThreshold()).thenReturn(someHighLoadThreshold);
+    when(deferredResults.registrationCount()).thenReturn(someHighLoadThreshold * 2);
+
+    for (int i = 0; i < 1000; i++) {
+      long timeout = longPollTimeoutUtil.nextTimeoutInMillis();
+      assertTrue(timeout >= someMinTimeout + (someMaxTimeout - someMinTimeout) / 2 && timeout <= someMaxTimeout);
+    }
+  }
+
+  @Test
+  public void testTimeoutWithoutBand() throws Exception {
+    when(bizConfig.longPollTimeoutMinInMilli()).thenReturn(someMinTimeout);
+    when(bizConfig.longPollTimeoutMaxInMilli()).thenReturn(someMinTimeout);
+
+    assertEquals(someMinTimeout, longPollTimeoutUtil.nextTimeoutInMillis());
+  }
+}
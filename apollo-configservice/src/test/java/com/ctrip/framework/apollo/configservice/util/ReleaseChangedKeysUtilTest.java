@@ -0,0 +1,202 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.Release;
+import com.ctrip.framework.apollo.biz.entity.ReleaseHistory;
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.biz.service.ReleaseHistoryService;
+import com.ctrip.framework.apollo.biz.service.ReleaseService;
+import com.ctrip.framework.apollo.common.constants.ReleaseOperation;
+import com.ctrip.framework.apollo.configservice.util.ReleaseChangedKeysUtil.ChangedKeys;
+import com.ctrip.framework.apollo.core.ConfigConsts;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.gson.Gson;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ReleaseChangedKeysUtilTest {
+  @Mock
+  private ReleaseHistoryService releaseHistoryService;
+  @Mock
+  private ReleaseService releaseService;
+  @Mock
+  private BizConfig bizConfig;
+  private ReleaseChangedKeysUtil releaseChangedKeysUtil;
+  private Gson gson;
+
+  private String someAppId;
+  private String someCluster;
+  private String someNamespace;
+  private String someMessage;
+  private ReleaseMessage someReleaseMessage;
+  private ReleaseMessage anotherReleaseMessage;
+  private ReleaseMessage yetAnotherReleaseMessage;
+
+  @Before
+  public void setUp() throws Exception {
+    releaseChangedKeysUtil = new ReleaseChangedKeysUtil(releaseHistoryService, releaseService, bizConfig);
+    gson = new Gson();
+
+    someAppId = "someAppId";
+    someCluster = "someCluster";
+    someNamespace = "someNamespace";
+    someMessage = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
+        .join(someAppId, someCluster, someNamespace);
+    someReleaseMessage = assembleReleaseMessage(1, someMessage);
+    anotherReleaseMessage = assembleReleaseMessage(2, someMessage);
+    yetAnotherReleaseMessage = assembleReleaseMessage(3, someMessage);
+  }
+
+  @Test
+  public void testFindChangedKeys() throws Exception {
+    when(bizConfig.releaseMessageChangedKeysLimit()).thenReturn(100);
+    mockRelease(someCluster, ReleaseOperation.NORMAL_RELEASE, 2, ImmutableMap.of("k1", "v1"),
+        ImmutableMap.of("k1", "v1", "k2", "v2", "k3", "v3"));
+
+    //no previous message to be relative to
+    assertNull(releaseChangedKeysUtil.findChangedKeys(someReleaseMessage));
+
+    mockRelease(someCluster, ReleaseOperation.NORMAL_RELEASE, 3, ImmutableMap.of("k1", "v1", "k2", "v2", "k3", "v3"),
+        ImmutableMap.of("k1", "v1", "k2", "v2-new", "k4", "v4"));
+
+    ChangedKeys changedKeys = releaseChangedKeysUtil.findChangedKeys(anotherReleaseMessage);
+
+    assertEquals(someReleaseMessage.getId(), changedKeys.getPreviousMessageId());
+    assertEquals(Sets.newHashSet("k2", "k3", "k4"), changedKeys.getKeys());
+  }
+
+  @Test
+  public void testFindChangedKeysWithReleasesCommittedBeforeMessagesHandled() throws Exception {
+    when(bizConfig.releaseMessageChangedKeysLimit()).thenReturn(100);
+    mockRelease(someCluster, ReleaseOperation.NORMAL_RELEASE, 2, ImmutableMap.of("k1", "v1"),
+        ImmutableMap.of("k1", "v1-1"));
+    releaseChangedKeysUtil.findChangedKeys(someReleaseMessage);
+
+    //release 3 and 4 are both committed when the message of release 3 is handled
+    mockRelease(someCluster, ReleaseOperation.NORMAL_RELEASE, 4, ImmutableMap.of("k1", "v1-2"),
+        ImmutableMap.of("k1", "v1-3"));
+
+    assertNull(releaseChangedKeysUtil.findChangedKeys(anotherReleaseMessage));
+    assertNull(releaseChangedKeysUtil.findChangedKeys(yetAnotherReleaseMessage));
+  }
+
+  @Test
+  public void testFindChangedKeysWithMessageSkipped() throws Exception {
+    when(bizConfig.releaseMessageChangedKeysLimit()).thenReturn(100);
+    mockRelease(someCluster, ReleaseOperation.NORMAL_RELEASE, 2, ImmutableMap.of("k1", "v1"),
+        ImmutableMap.of("k1", "v1-1"));
+    releaseChangedKeysUtil.findChangedKeys(someReleaseMessage);
+
+    mockRelease(someCluster, ReleaseOperation.NORMAL_RELEASE, 4, ImmutableMap.of("k1", "v1-2"),
+        ImmutableMap.of("k1", "v1-3"));
+
+    assertNull(releaseChangedKeysUtil.findChangedKeys(yetAnotherReleaseMessage));
+  }
+
+  @Test
+  public void testFindChangedKeysOncePerMessage() throws Exception {
+    when(bizConfig.releaseMessageChangedKeysLimit()).thenReturn(100);
+    mockRelease(someCluster, ReleaseOperation.NORMAL_RELEASE, 2, ImmutableMap.of("k1", "v1"),
+        ImmutableMap.of("k1", "v1-1"));
+    releaseChangedKeysUtil.findChangedKeys(someReleaseMessage);
+    mockRelease(someCluster, ReleaseOperation.NORMAL_RELEASE, 3, ImmutableMap.of("k1", "v1-1"),
+        ImmutableMap.of("k1", "v1-2"));
+
+    ChangedKeys changedKeys = releaseChangedKeysUtil.findChangedKeys(anotherReleaseMessage);
+
+    assertSame(changedKeys, releaseChangedKeysUtil.findChangedKeys(anotherReleaseMessage));
+    verify(releaseHistoryService, times(2)).findReleaseHistoriesByNamespace(eq(someAppId), eq(someCluster),
+        eq(someNamespace), any(Pageable.class));
+  }
+
+  @Test
+  public void testFindChangedKeysWithTooManyChanges() throws Exception {
+    when(bizConfig.releaseMessageChangedKeysLimit()).thenReturn(1);
+    mockRelease(someCluster, ReleaseOperation.NORMAL_RELEASE, 2, ImmutableMap.of("k1", "v1"),
+        ImmutableMap.of("k1", "v1-1"));
+    releaseChangedKeysUtil.findChangedKeys(someReleaseMessage);
+    mockRelease(someCluster, ReleaseOperation.ROLLBACK, 3, ImmutableMap.of("k1", "v1-1"),
+        ImmutableMap.of("k1", "v1", "k2", "v2"));
+
+    assertNull(releaseChangedKeysUtil.findChangedKeys(anotherReleaseMessage));
+  }
+
+  @Test
+  public void testFindChangedKeysWithGrayRelease() throws Exception {
+    mockReleaseHistory("someBranch", ReleaseOperation.GRAY_RELEASE, 2);
+
+    assertNull(releaseChangedKeysUtil.findChangedKeys(someReleaseMessage));
+  }
+
+  @Test
+  public void testFindChangedKeysWithOutdatedReleaseHistory() throws Exception {
+    long someReleaseId = 2;
+    mockReleaseHistory(someCluster, ReleaseOperation.NORMAL_RELEASE, someReleaseId);
+    Release newerRelease = new Release();
+    newerRelease.setId(someReleaseId + 1);
+    when(releaseService.findLatestActiveRelease(someAppId, someCluster, someNamespace)).thenReturn(newerRelease);
+
+    assertNull(releaseChangedKeysUtil.findChangedKeys(someReleaseMessage));
+  }
+
+  @Test
+  public void testFindChangedKeysWithInvalidMessage() throws Exception {
+    assertNull(releaseChangedKeysUtil.findChangedKeys(assembleReleaseMessage(1, "someInvalidMessage")));
+  }
+
+  private ReleaseMessage assembleReleaseMessage(long id, String message) {
+    ReleaseMessage releaseMessage = new ReleaseMessage(message);
+    releaseMessage.setId(id);
+    return releaseMessage;
+  }
+
+  /**
+   * Mock the latest release, which is based on the one with the previous id
+   */
+  private void mockRelease(String branchName, int operation, long releaseId,
+                           Map<String, String> previousConfigurations, Map<String, String> latestConfigurations) {
+    mockReleaseHistory(branchName, operation, releaseId);
+
+    Release previousRelease = new Release();
+    previousRelease.setId(releaseId - 1);
+    previousRelease.setConfigurations(gson.toJson(previousConfigurations));
+    Release latestRelease = new Release();
+    latestRelease.setId(releaseId);
+    latestRelease.setConfigurations(gson.toJson(latestConfigurations));
+
+    when(releaseService.findLatestActiveRelease(someAppId, someCluster, someNamespace)).thenReturn(latestRelease);
+    when(releaseService.findOne(releaseId - 1)).thenReturn(previousRelease);
+  }
+
+  private void mockReleaseHistory(String branchName, int operation, long releaseId) {
+    ReleaseHistory releaseHistory = new ReleaseHistory();
+    releaseHistory.setBranchName(branchName);
+    releaseHistory.setOperation(operation);
+    releaseHistory.setReleaseId(releaseId);
+    releaseHistory.setPreviousReleaseId(releaseId - 1);
+
+    when(releaseHistoryService.findReleaseHistoriesByNamespace(eq(someAppId), eq(someCluster), eq(someNamespace),
+        any(Pageable.class)))
+        .thenReturn(new PageImpl<>(Lists.newArrayList(releaseHistory)));
+  }
+}
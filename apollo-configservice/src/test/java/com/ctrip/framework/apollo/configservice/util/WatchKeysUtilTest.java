@@ -10,14 +10,22 @@ import com.google.common.collect.Sets;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Set;
+import java.util.function.Consumer;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -160,6 +168,46 @@ public class WatchKeysUtilTest {
     assertWatchKeys(somePublicAppId, clusters, somePublicNamespace, watchKeysMap.get(somePublicNamespace));
   }
 
+  @Test
+  public void testFindWatchKeysFromCache() throws Exception {
+    WatchKeysUtil.WatchKeys watchKeys = watchKeysUtil.findWatchKeys(someAppId, someCluster,
+        Sets.newHashSet(someNamespace, somePublicNamespace), someDC);
+    WatchKeysUtil.WatchKeys anotherWatchKeys = watchKeysUtil.findWatchKeys(someAppId, someCluster,
+        Sets.newHashSet(somePublicNamespace, someNamespace), someDC);
+
+    assertSame(watchKeys, anotherWatchKeys);
+    assertEquals(Sets.newHashSet(watchKeys.getNamespaceWatchKeys().values()), watchKeys.getAllWatchKeys());
+    verify(appNamespaceService, times(1)).findPublicNamespacesByNames(Sets.newHashSet(someNamespace,
+        somePublicNamespace));
+  }
+
+  @Test
+  public void testFindWatchKeysAfterAppNamespaceChanged() throws Exception {
+    ArgumentCaptor<Consumer<List<AppNamespace>>> listener = ArgumentCaptor.forClass(Consumer.class);
+    verify(appNamespaceService, times(1)).addChangeListener(listener.capture());
+
+    WatchKeysUtil.WatchKeys watchKeys = watchKeysUtil.findWatchKeys(someAppId, someCluster,
+        Sets.newHashSet(someNamespace, somePublicNamespace), someDC);
+
+    //changes of irrelevant app namespaces
+    AppNamespace irrelevantAppNamespace = mock(AppNamespace.class);
+    when(irrelevantAppNamespace.getAppId()).thenReturn("irrelevantAppId");
+    when(irrelevantAppNamespace.getName()).thenReturn("irrelevantNamespace");
+    listener.getValue().accept(Lists.newArrayList(irrelevantAppNamespace));
+
+    assertSame(watchKeys, watchKeysUtil.findWatchKeys(someAppId, someCluster,
+        Sets.newHashSet(someNamespace, somePublicNamespace), someDC));
+
+    //public namespace is changed
+    listener.getValue().accept(Lists.newArrayList(somePublicAppNamespace));
+
+    WatchKeysUtil.WatchKeys anotherWatchKeys = watchKeysUtil.findWatchKeys(someAppId, someCluster,
+        Sets.newHashSet(someNamespace, somePublicNamespace), someDC);
+
+    assertNotSame(watchKeys, anotherWatchKeys);
+    assertEquals(watchKeys.getNamespaceWatchKeys(), anotherWatchKeys.getNamespaceWatchKeys());
+  }
+
   private void assertWatchKeys(String appId, Set<String> clusters, String namespaceName,
                                Collection<String> watchedKeys) {
     for (String cluster : clusters) {
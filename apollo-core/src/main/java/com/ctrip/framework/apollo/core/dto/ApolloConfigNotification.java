@@ -1,5 +1,7 @@
 package com.ctrip.framework.apollo.core.dto;
 
+import java.util.Set;
+
 /**
  * @author Jason Song(song_s@ctrip.com)
  */
@@ -7,6 +9,8 @@ public class ApolloConfigNotification {
   private String namespaceName;
   private long notificationId;
   private volatile ApolloNotificationMessages messages;
+  //the configuration keys changed by this notification, null means unknown
+  private Set<String> changedKeys;
 
   //for json converter
   public ApolloConfigNotification() {
@@ -37,6 +41,14 @@ public class ApolloConfigNotification {
     this.messages = messages;
   }
 
+  public Set<String> getChangedKeys() {
+    return changedKeys;
+  }
+
+  public void setChangedKeys(Set<String> changedKeys) {
+    this.changedKeys = changedKeys;
+  }
+
   public void addMessage(String key, long notificationId) {
     if (this.messages == null) {
       synchronized (this) {
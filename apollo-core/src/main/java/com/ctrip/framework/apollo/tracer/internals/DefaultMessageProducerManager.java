@@ -3,6 +3,7 @@ package com.ctrip.framework.apollo.tracer.internals;
 import com.ctrip.framework.apollo.core.utils.ClassLoaderUtil;
 import com.ctrip.framework.apollo.tracer.internals.cat.CatMessageProducer;
 import com.ctrip.framework.apollo.tracer.internals.cat.CatNames;
+import com.ctrip.framework.apollo.tracer.metrics.MetricsMessageProducerManager;
 import com.ctrip.framework.apollo.tracer.spi.MessageProducer;
 import com.ctrip.framework.apollo.tracer.spi.MessageProducerManager;
 
@@ -13,7 +14,9 @@ public class DefaultMessageProducerManager implements MessageProducerManager {
   private static MessageProducer producer;
 
   public DefaultMessageProducerManager() {
-    if (ClassLoaderUtil.isClassPresent(CatNames.CAT_CLASS)) {
+    if (Boolean.parseBoolean(System.getProperty("apollo.metrics.enabled"))) {
+      producer = new MetricsMessageProducerManager().getProducer();
+    } else if (ClassLoaderUtil.isClassPresent(CatNames.CAT_CLASS)) {
       producer = new CatMessageProducer();
     } else {
       producer = new NullMessageProducerManager().getProducer();
@@ -0,0 +1,227 @@
+package com.ctrip.framework.apollo.tracer.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Metrics aggregated from the transactions and events of the Apollo client, see {@link MetricsMessageProducerManager}.
+ * <br />
+ * The metrics could be pulled with {@link #getInstance()}, or read from JMX as {@value #OBJECT_NAME}.
+ */
+public class ClientMetrics implements ClientMetricsMXBean {
+  private static final Logger logger = LoggerFactory.getLogger(ClientMetrics.class);
+  public static final String OBJECT_NAME = "com.ctrip.framework.apollo:type=ClientMetrics";
+
+  static final String CONFIG_SERVICE_TYPE = "Apollo.ConfigService";
+  static final String QUERY_CONFIG_NAME = "queryConfig";
+  static final String POLL_NOTIFICATION_NAME = "pollNotification";
+  static final String SYNC_LOCAL_CONFIG_NAME = "syncLocalConfig";
+  static final String CONFIG_CHANGE_LISTENER_TYPE = "Apollo.ConfigChangeListener";
+  static final String CONFIG_FILE_CHANGE_LISTENER_TYPE = "Apollo.ConfigFileChangeListener";
+  //logged after each successful sync, e.g. Apollo.Client.Configs.application
+  static final String CONFIGS_SYNCED_EVENT_PREFIX = "Apollo.Client.Configs.";
+  //to protect the memory from unexpected transaction types or names
+  private static final int MAX_TRACKED_NAMES = 1000;
+  private static final String OTHERS = "others";
+  private static final String SEPARATOR = "/";
+
+  private static final ClientMetrics INSTANCE = new ClientMetrics();
+
+  private final ConcurrentMap<String, TransactionStats> m_transactions = Maps.newConcurrentMap();
+  private final ConcurrentMap<String, AtomicLong> m_events = Maps.newConcurrentMap();
+  private final ConcurrentMap<String, Long> m_namespaceLastSyncTimes = Maps.newConcurrentMap();
+  private final AtomicLong m_errorCount = new AtomicLong();
+  private final AtomicBoolean m_mbeanRegistered = new AtomicBoolean(false);
+
+  ClientMetrics() {
+  }
+
+  public static ClientMetrics getInstance() {
+    return INSTANCE;
+  }
+
+  void registerMBean() {
+    if (!m_mbeanRegistered.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+      ObjectName objectName = new ObjectName(OBJECT_NAME);
+      if (!mBeanServer.isRegistered(objectName)) {
+        mBeanServer.registerMBean(this, objectName);
+      }
+    } catch (Throwable ex) {
+      logger.warn("Register {} failed, the client metrics are only available via ClientMetrics.getInstance()",
+          OBJECT_NAME, ex);
+    }
+  }
+
+  void recordTransaction(String type, String name, long durationInNanos, boolean success, Object statusCode) {
+    TransactionStats stats = m_transactions.get(key(type, name));
+    if (stats == null) {
+      String key = m_transactions.size() < MAX_TRACKED_NAMES ? key(type, name) : key(OTHERS, OTHERS);
+      m_transactions.putIfAbsent(key, new TransactionStats());
+      stats = m_transactions.get(key);
+    }
+    stats.record(durationInNanos, success, statusCode);
+  }
+
+  void recordEvent(String type, String name) {
+    if (type == null) {
+      return;
+    }
+    if (type.startsWith(CONFIGS_SYNCED_EVENT_PREFIX)) {
+      m_namespaceLastSyncTimes.put(type.substring(CONFIGS_SYNCED_EVENT_PREFIX.length()), System.currentTimeMillis());
+      return;
+    }
+
+    //only count by type as the names could be anything, e.g. exception messages
+    AtomicLong counter = m_events.get(type);
+    if (counter == null) {
+      String key = m_events.size() < MAX_TRACKED_NAMES ? type : OTHERS;
+      m_events.putIfAbsent(key, new AtomicLong());
+      counter = m_events.get(key);
+    }
+    counter.incrementAndGet();
+  }
+
+  void recordError() {
+    m_errorCount.incrementAndGet();
+  }
+
+  /**
+   * @return the stats of the transactions with the given type and name, or null if there is no such transaction yet
+   */
+  public TransactionStats getTransactionStats(String type, String name) {
+    return m_transactions.get(key(type, name));
+  }
+
+  /**
+   * @return all the transaction stats, keyed by type/name
+   */
+  public Map<String, TransactionStats> getAllTransactionStats() {
+    return Collections.unmodifiableMap(m_transactions);
+  }
+
+  @Override
+  public long getQueryConfigCount() {
+    TransactionStats stats = getTransactionStats(CONFIG_SERVICE_TYPE, QUERY_CONFIG_NAME);
+    return stats == null ? 0 : stats.getCount();
+  }
+
+  @Override
+  public long getQueryConfigFailureCount() {
+    TransactionStats stats = getTransactionStats(CONFIG_SERVICE_TYPE, QUERY_CONFIG_NAME);
+    return stats == null ? 0 : stats.getFailureCount();
+  }
+
+  @Override
+  public double getQueryConfigAverageTimeInMillis() {
+    TransactionStats stats = getTransactionStats(CONFIG_SERVICE_TYPE, QUERY_CONFIG_NAME);
+    return stats == null ? 0 : stats.getAverageTimeInMillis();
+  }
+
+  @Override
+  public double getQueryConfigP99TimeInMillis() {
+    TransactionStats stats = getTransactionStats(CONFIG_SERVICE_TYPE, QUERY_CONFIG_NAME);
+    return stats == null ? 0 : stats.getPercentileTimeInMillis(99);
+  }
+
+  @Override
+  public double getQueryConfigNotModifiedRatio() {
+    TransactionStats stats = getTransactionStats(CONFIG_SERVICE_TYPE, QUERY_CONFIG_NAME);
+    return stats == null ? 0 : stats.getNotModifiedRatio();
+  }
+
+  @Override
+  public long getLongPollCount() {
+    TransactionStats stats = getTransactionStats(CONFIG_SERVICE_TYPE, POLL_NOTIFICATION_NAME);
+    return stats == null ? 0 : stats.getCount();
+  }
+
+  @Override
+  public long getLongPollFailureCount() {
+    TransactionStats stats = getTransactionStats(CONFIG_SERVICE_TYPE, POLL_NOTIFICATION_NAME);
+    return stats == null ? 0 : stats.getFailureCount();
+  }
+
+  @Override
+  public double getLongPollAverageTimeInMillis() {
+    TransactionStats stats = getTransactionStats(CONFIG_SERVICE_TYPE, POLL_NOTIFICATION_NAME);
+    return stats == null ? 0 : stats.getAverageTimeInMillis();
+  }
+
+  @Override
+  public double getLongPollNotModifiedRatio() {
+    TransactionStats stats = getTransactionStats(CONFIG_SERVICE_TYPE, POLL_NOTIFICATION_NAME);
+    return stats == null ? 0 : stats.getNotModifiedRatio();
+  }
+
+  @Override
+  public long getLocalCacheFallbackCount() {
+    TransactionStats stats = getTransactionStats(CONFIG_SERVICE_TYPE, SYNC_LOCAL_CONFIG_NAME);
+    return stats == null ? 0 : stats.getCount();
+  }
+
+  @Override
+  public Map<String, Long> getNamespaceStalenessInMillis() {
+    long now = System.currentTimeMillis();
+    Map<String, Long> staleness = Maps.newTreeMap();
+    for (Map.Entry<String, Long> entry : m_namespaceLastSyncTimes.entrySet()) {
+      staleness.put(entry.getKey(), Math.max(0, now - entry.getValue()));
+    }
+    return staleness;
+  }
+
+  @Override
+  public long getMaxNamespaceStalenessInMillis() {
+    long max = 0;
+    for (Long staleness : getNamespaceStalenessInMillis().values()) {
+      max = Math.max(max, staleness);
+    }
+    return max;
+  }
+
+  @Override
+  public Map<String, Double> getListenerAverageTimeInMillis() {
+    Map<String, Double> result = Maps.newTreeMap();
+    for (Map.Entry<String, TransactionStats> entry : m_transactions.entrySet()) {
+      String key = entry.getKey();
+      if (key.startsWith(CONFIG_CHANGE_LISTENER_TYPE + SEPARATOR)
+          || key.startsWith(CONFIG_FILE_CHANGE_LISTENER_TYPE + SEPARATOR)) {
+        result.put(key.substring(key.indexOf(SEPARATOR) + 1), entry.getValue().getAverageTimeInMillis());
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public Map<String, Long> getEventCounts() {
+    Map<String, Long> result = Maps.newTreeMap();
+    for (Map.Entry<String, AtomicLong> entry : m_events.entrySet()) {
+      result.put(entry.getKey(), entry.getValue().get());
+    }
+    return result;
+  }
+
+  @Override
+  public long getErrorCount() {
+    return m_errorCount.get();
+  }
+
+  private String key(String type, String name) {
+    return type + SEPARATOR + name;
+  }
+}
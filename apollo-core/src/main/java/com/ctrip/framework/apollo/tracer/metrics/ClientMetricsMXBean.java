@@ -0,0 +1,51 @@
+package com.ctrip.framework.apollo.tracer.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link ClientMetrics}, registered as {@value ClientMetrics#OBJECT_NAME}
+ */
+public interface ClientMetricsMXBean {
+
+  long getQueryConfigCount();
+
+  long getQueryConfigFailureCount();
+
+  double getQueryConfigAverageTimeInMillis();
+
+  double getQueryConfigP99TimeInMillis();
+
+  /**
+   * @return the ratio of config queries answered with HTTP 304
+   */
+  double getQueryConfigNotModifiedRatio();
+
+  long getLongPollCount();
+
+  long getLongPollFailureCount();
+
+  double getLongPollAverageTimeInMillis();
+
+  double getLongPollNotModifiedRatio();
+
+  /**
+   * @return how many times the configs are loaded from the local cache files because the upstream is not available
+   */
+  long getLocalCacheFallbackCount();
+
+  /**
+   * @return the time since the last successful sync with the config service, per namespace
+   */
+  Map<String, Long> getNamespaceStalenessInMillis();
+
+  long getMaxNamespaceStalenessInMillis();
+
+  /**
+   * @return the average execution time of the config change listeners, per listener class
+   */
+  Map<String, Double> getListenerAverageTimeInMillis();
+
+  Map<String, Long> getEventCounts();
+
+  long getErrorCount();
+}
@@ -0,0 +1,50 @@
+package com.ctrip.framework.apollo.tracer.metrics;
+
+import com.ctrip.framework.apollo.tracer.spi.MessageProducer;
+import com.ctrip.framework.apollo.tracer.spi.Transaction;
+
+/**
+ * Message producer which aggregates the messages into {@link ClientMetrics} before passing them to the delegate
+ */
+public class MetricsMessageProducer implements MessageProducer {
+  private final MessageProducer m_delegate;
+  private final ClientMetrics m_metrics;
+
+  public MetricsMessageProducer(MessageProducer delegate) {
+    this(delegate, ClientMetrics.getInstance());
+  }
+
+  MetricsMessageProducer(MessageProducer delegate, ClientMetrics metrics) {
+    m_delegate = delegate;
+    m_metrics = metrics;
+  }
+
+  @Override
+  public void logError(Throwable cause) {
+    m_metrics.recordError();
+    m_delegate.logError(cause);
+  }
+
+  @Override
+  public void logError(String message, Throwable cause) {
+    m_metrics.recordError();
+    m_delegate.logError(message, cause);
+  }
+
+  @Override
+  public void logEvent(String type, String name) {
+    m_metrics.recordEvent(type, name);
+    m_delegate.logEvent(type, name);
+  }
+
+  @Override
+  public void logEvent(String type, String name, String status, String nameValuePairs) {
+    m_metrics.recordEvent(type, name);
+    m_delegate.logEvent(type, name, status, nameValuePairs);
+  }
+
+  @Override
+  public Transaction newTransaction(String type, String name) {
+    return new MetricsTransaction(type, name, m_delegate.newTransaction(type, name), m_metrics);
+  }
+}
@@ -0,0 +1,35 @@
+package com.ctrip.framework.apollo.tracer.metrics;
+
+import com.ctrip.framework.apollo.core.utils.ClassLoaderUtil;
+import com.ctrip.framework.apollo.tracer.internals.NullMessageProducerManager;
+import com.ctrip.framework.apollo.tracer.internals.cat.CatMessageProducer;
+import com.ctrip.framework.apollo.tracer.internals.cat.CatNames;
+import com.ctrip.framework.apollo.tracer.spi.MessageProducer;
+import com.ctrip.framework.apollo.tracer.spi.MessageProducerManager;
+
+/**
+ * Message producer manager which collects {@link ClientMetrics} and still sends the messages to CAT if it's present.
+ * <br />
+ * To use it, either specify -Dapollo.metrics.enabled=true, or declare
+ * <code>com.ctrip.framework.apollo.tracer.metrics.MetricsMessageProducerManager</code> in the application's
+ * /META-INF/services/com.ctrip.framework.apollo.tracer.spi.MessageProducerManager
+ */
+public class MetricsMessageProducerManager implements MessageProducerManager {
+  private static MessageProducer producer;
+
+  public MetricsMessageProducerManager() {
+    MessageProducer delegate;
+    if (ClassLoaderUtil.isClassPresent(CatNames.CAT_CLASS)) {
+      delegate = new CatMessageProducer();
+    } else {
+      delegate = new NullMessageProducerManager().getProducer();
+    }
+    ClientMetrics.getInstance().registerMBean();
+    producer = new MetricsMessageProducer(delegate);
+  }
+
+  @Override
+  public MessageProducer getProducer() {
+    return producer;
+  }
+}
@@ -0,0 +1,61 @@
+package com.ctrip.framework.apollo.tracer.metrics;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.ctrip.framework.apollo.tracer.spi.Transaction;
+
+/**
+ * Transaction which records its duration and status into {@link ClientMetrics} when completed
+ */
+class MetricsTransaction implements Transaction {
+  private static final String STATUS_CODE = "StatusCode";
+
+  private final String m_type;
+  private final String m_name;
+  private final Transaction m_delegate;
+  private final ClientMetrics m_metrics;
+  private final long m_startTimeInNanos;
+  private final AtomicBoolean m_completed = new AtomicBoolean(false);
+  private volatile boolean m_success = true;
+  private volatile Object m_statusCode;
+
+  MetricsTransaction(String type, String name, Transaction delegate, ClientMetrics metrics) {
+    m_type = type;
+    m_name = name;
+    m_delegate = delegate;
+    m_metrics = metrics;
+    m_startTimeInNanos = System.nanoTime();
+  }
+
+  @Override
+  public void setStatus(String status) {
+    m_success = SUCCESS.equals(status);
+    m_delegate.setStatus(status);
+  }
+
+  @Override
+  public void setStatus(Throwable e) {
+    m_success = false;
+    m_delegate.setStatus(e);
+  }
+
+  @Override
+  public void addData(String key, Object value) {
+    if (STATUS_CODE.equals(key)) {
+      m_statusCode = value;
+    }
+    m_delegate.addData(key, value);
+  }
+
+  @Override
+  public void complete() {
+    try {
+      m_delegate.complete();
+    } finally {
+      if (m_completed.compareAndSet(false, true)) {
+        m_metrics.recordTransaction(m_type, m_name, System.nanoTime() - m_startTimeInNanos, m_success,
+            m_statusCode);
+      }
+    }
+  }
+}
@@ -0,0 +1,117 @@
+package com.ctrip.framework.apollo.tracer.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and a latency histogram of the transactions with the same type and name.
+ * <br />
+ * The histogram uses fixed buckets, so percentiles are approximated by the upper bound of the matching bucket.
+ */
+public class TransactionStats {
+  private static final long[] BUCKET_UPPER_BOUNDS_IN_MILLIS =
+      {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000, 60000, 90000};
+  private static final String NOT_MODIFIED = "304";
+
+  private final AtomicLong m_count = new AtomicLong();
+  private final AtomicLong m_failureCount = new AtomicLong();
+  private final AtomicLong m_notModifiedCount = new AtomicLong();
+  private final AtomicLong m_totalTimeInNanos = new AtomicLong();
+  private final AtomicLong m_maxTimeInNanos = new AtomicLong();
+  //the last bucket is for the durations beyond the largest upper bound
+  private final AtomicLongArray m_buckets = new AtomicLongArray(BUCKET_UPPER_BOUNDS_IN_MILLIS.length + 1);
+
+  void record(long durationInNanos, boolean success, Object statusCode) {
+    m_count.incrementAndGet();
+    if (!success) {
+      m_failureCount.incrementAndGet();
+    }
+    if (statusCode != null && NOT_MODIFIED.equals(String.valueOf(statusCode))) {
+      m_notModifiedCount.incrementAndGet();
+    }
+    m_totalTimeInNanos.addAndGet(durationInNanos);
+
+    long max = m_maxTimeInNanos.get();
+    while (durationInNanos > max && !m_maxTimeInNanos.compareAndSet(max, durationInNanos)) {
+      max = m_maxTimeInNanos.get();
+    }
+
+    m_buckets.incrementAndGet(bucketOf(TimeUnit.NANOSECONDS.toMillis(durationInNanos)));
+  }
+
+  private int bucketOf(long durationInMillis) {
+    for (int i = 0; i < BUCKET_UPPER_BOUNDS_IN_MILLIS.length; i++) {
+      if (durationInMillis <= BUCKET_UPPER_BOUNDS_IN_MILLIS[i]) {
+        return i;
+      }
+    }
+    return BUCKET_UPPER_BOUNDS_IN_MILLIS.length;
+  }
+
+  public long getCount() {
+    return m_count.get();
+  }
+
+  public long getFailureCount() {
+    return m_failureCount.get();
+  }
+
+  /**
+   * @return the number of transactions answered with HTTP 304
+   */
+  public long getNotModifiedCount() {
+    return m_notModifiedCount.get();
+  }
+
+  public double getNotModifiedRatio() {
+    long count = m_count.get();
+    return count == 0 ? 0 : (double) m_notModifiedCount.get() / count;
+  }
+
+  public double getAverageTimeInMillis() {
+    long count = m_count.get();
+    return count == 0 ? 0 : m_totalTimeInNanos.get() / 1000000.0 / count;
+  }
+
+  public double getMaxTimeInMillis() {
+    return m_maxTimeInNanos.get() / 1000000.0;
+  }
+
+  /**
+   * @param percentile the percentile, e.g. 99 for p99
+   * @return the approximate duration in milliseconds which the given percentile of the transactions finished within
+   */
+  public double getPercentileTimeInMillis(double percentile) {
+    long total = 0;
+    long[] counts = new long[m_buckets.length()];
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = m_buckets.get(i);
+      total += counts[i];
+    }
+    if (total == 0) {
+      return 0;
+    }
+
+    long threshold = (long) Math.ceil(total * Math.min(Math.max(percentile, 0), 100) / 100);
+    long accumulated = 0;
+    for (int i = 0; i < BUCKET_UPPER_BOUNDS_IN_MILLIS.length; i++) {
+      accumulated += counts[i];
+      if (accumulated >= threshold) {
+        return Math.min(BUCKET_UPPER_BOUNDS_IN_MILLIS[i], getMaxTimeInMillis());
+      }
+    }
+    return getMaxTimeInMillis();
+  }
+
+  @Override
+  public String toString() {
+    return "TransactionStats{" +
+        "count=" + getCount() +
+        ", failureCount=" + getFailureCount() +
+        ", notModifiedCount=" + getNotModifiedCount() +
+        ", averageTimeInMillis=" + getAverageTimeInMillis() +
+        ", maxTimeInMillis=" + getMaxTimeInMillis() +
+        '}';
+  }
+}
@@ -0,0 +1,103 @@
+package com.ctrip.framework.apollo.tracer.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ctrip.framework.apollo.tracer.spi.MessageProducer;
+import com.ctrip.framework.apollo.tracer.spi.Transaction;
+
+public class MetricsMessageProducerTest {
+  private MessageProducer someDelegate;
+  private Transaction someDelegateTransaction;
+  private ClientMetrics metrics;
+  private MetricsMessageProducer producer;
+
+  @Before
+  public void setUp() throws Exception {
+    someDelegate = mock(MessageProducer.class);
+    someDelegateTransaction = mock(Transaction.class);
+    when(someDelegate.newTransaction(ClientMetrics.CONFIG_SERVICE_TYPE, ClientMetrics.QUERY_CONFIG_NAME))
+        .thenReturn(someDelegateTransaction);
+    metrics = new ClientMetrics();
+    producer = new MetricsMessageProducer(someDelegate, metrics);
+  }
+
+  @Test
+  public void testQueryConfigTransaction() throws Exception {
+    Transaction transaction = producer.newTransaction(ClientMetrics.CONFIG_SERVICE_TYPE,
+        ClientMetrics.QUERY_CONFIG_NAME);
+    transaction.addData("StatusCode", 304);
+    transaction.setStatus(Transaction.SUCCESS);
+    transaction.complete();
+
+    Transaction anotherTransaction = producer.newTransaction(ClientMetrics.CONFIG_SERVICE_TYPE,
+        ClientMetrics.QUERY_CONFIG_NAME);
+    anotherTransaction.setStatus(new RuntimeException("some exception"));
+    anotherTransaction.complete();
+    //complete twice should not be counted
+    anotherTransaction.complete();
+
+    assertEquals(2, metrics.getQueryConfigCount());
+    assertEquals(1, metrics.getQueryConfigFailureCount());
+    assertEquals(0.5, metrics.getQueryConfigNotModifiedRatio(), 0.0001);
+    assertTrue(metrics.getQueryConfigP99TimeInMillis() >= 0);
+
+    verify(someDelegateTransaction, times(1)).addData("StatusCode", 304);
+    verify(someDelegateTransaction, times(3)).complete();
+  }
+
+  @Test
+  public void testListenerTransaction() throws Exception {
+    String someListener = "someListener";
+    when(someDelegate.newTransaction(ClientMetrics.CONFIG_CHANGE_LISTENER_TYPE, someListener))
+        .thenReturn(someDelegateTransaction);
+
+    Transaction transaction = producer.newTransaction(ClientMetrics.CONFIG_CHANGE_LISTENER_TYPE, someListener);
+    transaction.setStatus(Transaction.SUCCESS);
+    transaction.complete();
+
+    assertTrue(metrics.getListenerAverageTimeInMillis().containsKey(someListener));
+  }
+
+  @Test
+  public void testEvents() throws Exception {
+    String someNamespace = "someNamespace";
+    String someType = "someType";
+
+    producer.logEvent(ClientMetrics.CONFIGS_SYNCED_EVENT_PREFIX + someNamespace, "someReleaseKey");
+    producer.logEvent(someType, "someName");
+    producer.logEvent(someType, "anotherName", Transaction.SUCCESS, null);
+    producer.logError(new RuntimeException("some exception"));
+
+    Map<String, Long> staleness = metrics.getNamespaceStalenessInMillis();
+    assertEquals(1, staleness.size());
+    assertTrue(staleness.get(someNamespace) >= 0);
+    assertEquals(2, metrics.getEventCounts().get(someType).longValue());
+    assertEquals(1, metrics.getErrorCount());
+
+    verify(someDelegate, times(1)).logEvent(someType, "someName");
+  }
+
+  @Test
+  public void testPercentile() throws Exception {
+    TransactionStats stats = new TransactionStats();
+    for (int i = 0; i < 99; i++) {
+      stats.record(3 * 1000000L, true, null);
+    }
+    stats.record(700 * 1000000L, true, null);
+
+    assertEquals(5, stats.getPercentileTimeInMillis(50), 0.0001);
+    assertEquals(5, stats.getPercentileTimeInMillis(99), 0.0001);
+    assertEquals(700, stats.getPercentileTimeInMillis(100), 0.0001);
+    assertEquals(700, stats.getMaxTimeInMillis(), 0.0001);
+  }
+}
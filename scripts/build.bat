@@ -1,7 +1,7 @@
 @echo off
 
 rem apollo config db info
-set apollo_config_db_url="jdbc:mysql://localhost:3306/ApolloConfigDB?characterEncoding=utf8"
+set apollo_config_db_url="jdbc:mysql://localhost:3306/ApolloConfigDB?characterEncoding=utf8&useCursorFetch=true"
 set apollo_config_db_username="root"
 set apollo_config_db_password=""
 
@@ -1,7 +1,7 @@
 #!/bin/sh
 
 # apollo config db info
-apollo_config_db_url=jdbc:mysql://fill-in-the-correct-server:3306/ApolloConfigDB?characterEncoding=utf8
+apollo_config_db_url="jdbc:mysql://fill-in-the-correct-server:3306/ApolloConfigDB?characterEncoding=utf8&useCursorFetch=true"
 apollo_config_db_username=FillInCorrectUser
 apollo_config_db_password=FillInCorrectPassword
 